@@ -0,0 +1,1396 @@
+package java.util;
+
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * 基于B+树的NavigableMap，接口与语义与TreeMap相同
+ * case:
+ * 1、TreeMap每个映射是一个单独分配的Entry（key、value、left、right、parent、color），
+ * 查找与范围遍历几乎每一步都是一次缓存未命中；这里每个节点最多NODE_CAPACITY个有序的键，
+ * 节点内二分查找，映射全部存放在叶子中，叶子之间用prev/next串成双向链表，范围遍历是顺序扫描数组；
+ * 2、内部节点有n个孩子、n-1个分隔键，孩子i中的键k满足keys[i-1] <= k < keys[i]；
+ * 3、除根以外的节点至少有MIN_SIZE个键或孩子，删除时先向兄弟借，借不到再与兄弟合并；
+ * 4、子映射（subMap、headMap、tailMap、descendingMap）是同一个SubMap类，只记录上下界与方向。
+ * <p>
+ * 注意：
+ * 1、与TreeMap一样不是线程安全的，自然排序时不允许null键；
+ * 2、迭代器返回的条目setValue()写回映射；floorEntry()等方法返回的条目是不可修改的快照；
+ * 3、迭代器的remove()会按下一个键重新定位，代价是O(log n)。
+ */
+public class BTreeMap<K,V>
+        extends AbstractMap<K,V>
+        implements NavigableMap<K,V>, Cloneable, java.io.Serializable
+{
+    // 每个节点最多的键（叶子）或孩子（内部节点）个数
+    static final int NODE_CAPACITY = 64;
+
+    // 非根节点最少的键或孩子个数
+    static final int MIN_SIZE = NODE_CAPACITY / 2;
+
+    // 只有根叶子时初始的数组长度，按2倍增长到NODE_CAPACITY + 1
+    static final int INITIAL_LEAF_CAPACITY = 8;
+
+    // 关系查找的方向：小于、小于等于、大于等于、大于
+    static final int LT = 0, LE = 1, GE = 2, GT = 3;
+
+    // 比较器，为null时使用自然排序
+    private final Comparator<? super K> comparator;
+
+    // 根节点，空映射为null
+    transient BNode root;
+
+    // 根到叶子之间内部节点的层数，根为叶子时为0
+    transient int height;
+
+    // 叶子链表的首尾
+    transient Leaf<K,V> head, tail;
+
+    transient int size;
+
+    transient int modCount;
+
+    // put/remove时记录从根到叶子的路径，只由修改操作使用，读操作不会触碰
+    private transient Inner[] path;
+    private transient int[] pathIndex;
+
+    // 节点公共部分：叶子中size为键的个数，内部节点中size为孩子的个数
+    abstract static class BNode {
+        Object[] keys;
+        int size;
+    }
+
+    // 叶子节点
+    static final class Leaf<K,V> extends BNode {
+        Object[] vals;
+        Leaf<K,V> prev, next;
+
+        Leaf(int capacity) {
+            keys = new Object[capacity];
+            vals = new Object[capacity];
+        }
+
+        @SuppressWarnings("unchecked")
+        K key(int i) {
+            return (K) keys[i];
+        }
+
+        @SuppressWarnings("unchecked")
+        V val(int i) {
+            return (V) vals[i];
+        }
+
+        // 在下标i处插入，调用方保证不超过NODE_CAPACITY + 1
+        void insert(int i, Object key, Object value) {
+            int n = size;
+            if (n == keys.length) {
+                int cap = Math.min(n << 1, NODE_CAPACITY + 1);
+                keys = Arrays.copyOf(keys, cap);
+                vals = Arrays.copyOf(vals, cap);
+            }
+            System.arraycopy(keys, i, keys, i + 1, n - i);
+            System.arraycopy(vals, i, vals, i + 1, n - i);
+            keys[i] = key;
+            vals[i] = value;
+            size = n + 1;
+        }
+
+        void removeAt(int i) {
+            int n = --size;
+            System.arraycopy(keys, i + 1, keys, i, n - i);
+            System.arraycopy(vals, i + 1, vals, i, n - i);
+            keys[n] = null;
+            vals[n] = null;
+        }
+    }
+
+    // 内部节点
+    static final class Inner extends BNode {
+        BNode[] children;
+
+        Inner() {
+            keys = new Object[NODE_CAPACITY];
+            children = new BNode[NODE_CAPACITY + 1];
+        }
+    }
+
+    // 关系查找的结果：叶子与下标
+    static final class Slot<K,V> {
+        final Leaf<K,V> leaf;
+        final int index;
+
+        Slot(Leaf<K,V> leaf, int index) {
+            this.leaf = leaf;
+            this.index = index;
+        }
+
+        K key() {
+            return leaf.key(index);
+        }
+
+        Map.Entry<K,V> export() {
+            return new AbstractMap.SimpleImmutableEntry<>(leaf.key(index), leaf.val(index));
+        }
+    }
+
+    // 默认构造函数
+    public BTreeMap() {
+        comparator = null;
+    }
+
+    // 带比较器的构造函数
+    public BTreeMap(Comparator<? super K> comparator) {
+        this.comparator = comparator;
+    }
+
+    // 带Map的构造函数
+    public BTreeMap(Map<? extends K, ? extends V> m) {
+        comparator = null;
+        putAll(m);
+    }
+
+    // 带SortedMap的构造函数，沿用它的比较器，线性时间批量构建
+    public BTreeMap(SortedMap<K, ? extends V> m) {
+        comparator = m.comparator();
+        int n = m.size();
+        Object[] ks = new Object[n], vs = new Object[n];
+        int i = 0;
+        for (Map.Entry<K, ? extends V> e : m.entrySet()) {
+            ks[i] = e.getKey();
+            vs[i++] = e.getValue();
+        }
+        buildFromSorted(ks, vs, i);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Comparator<? super K> comparator() {
+        return comparator;
+    }
+
+    @SuppressWarnings("unchecked")
+    final int compare(Object k1, Object k2) {
+        return comparator == null ? ((Comparable<? super K>) k1).compareTo((K) k2)
+                : comparator.compare((K) k1, (K) k2);
+    }
+
+    // 在keys[0, n)中二分查找，找到返回下标，否则返回-(插入点+1)
+    @SuppressWarnings("unchecked")
+    final int search(Object[] keys, int n, Object key) {
+        int lo = 0, hi = n - 1;
+        Comparator<? super K> cpr = comparator;
+        if (cpr == null) {
+            Comparable<Object> k = (Comparable<Object>) key;
+            if (k == null)
+                throw new NullPointerException();
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int c = k.compareTo(keys[mid]);
+                if (c > 0)
+                    lo = mid + 1;
+                else if (c < 0)
+                    hi = mid - 1;
+                else
+                    return mid;
+            }
+        } else {
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int c = cpr.compare((K) key, (K) keys[mid]);
+                if (c > 0)
+                    lo = mid + 1;
+                else if (c < 0)
+                    hi = mid - 1;
+                else
+                    return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    // 内部节点中key所在孩子的下标
+    final int childIndex(Inner p, Object key) {
+        int i = search(p.keys, p.size - 1, key);
+        return (i >= 0) ? i + 1 : -(i + 1);
+    }
+
+    // key可能所在的叶子
+    @SuppressWarnings("unchecked")
+    final Leaf<K,V> findLeaf(Object key) {
+        BNode n = root;
+        for (int d = height; d > 0; --d) {
+            Inner p = (Inner) n;
+            n = p.children[childIndex(p, key)];
+        }
+        return (Leaf<K,V>) n;
+    }
+
+    // 返回映射中是否包含“键(key)”
+    public boolean containsKey(Object key) {
+        Leaf<K,V> l;
+        return (l = findLeaf(key)) != null && search(l.keys, l.size, key) >= 0;
+    }
+
+    // 按叶子链表顺序扫描
+    public boolean containsValue(Object value) {
+        for (Leaf<K,V> l = head; l != null; l = l.next) {
+            for (int i = 0; i < l.size; ++i)
+                if (Objects.equals(value, l.vals[i]))
+                    return true;
+        }
+        return false;
+    }
+
+    public V get(Object key) {
+        Leaf<K,V> l;
+        int i;
+        return ((l = findLeaf(key)) == null || (i = search(l.keys, l.size, key)) < 0) ?
+                null : l.val(i);
+    }
+
+    // 关系查找，返回满足rel的最近位置，不存在时返回null
+    final Slot<K,V> seek(Object key, int rel) {
+        Leaf<K,V> l = findLeaf(key);
+        if (l == null)
+            return null;
+        int i = search(l.keys, l.size, key), j;
+        if (i >= 0)
+            j = (rel == LT) ? i - 1 : (rel == GT) ? i + 1 : i;
+        else
+            j = (rel <= LE) ? -(i + 1) - 1 : -(i + 1);
+        // 前驱在前一个叶子的末尾，后继在后一个叶子的开头
+        if (j < 0) {
+            if ((l = l.prev) == null)
+                return null;
+            j = l.size - 1;
+        } else if (j >= l.size) {
+            if ((l = l.next) == null)
+                return null;
+            j = 0;
+        }
+        return new Slot<>(l, j);
+    }
+
+    final Slot<K,V> firstSlot() {
+        Leaf<K,V> l = head;
+        return (l == null) ? null : new Slot<>(l, 0);
+    }
+
+    final Slot<K,V> lastSlot() {
+        Leaf<K,V> l = tail;
+        return (l == null) ? null : new Slot<>(l, l.size - 1);
+    }
+
+    // 记录路径用的数组，长度不小于height
+    private Inner[] pathFor(int h) {
+        Inner[] p = path;
+        if (p == null || p.length < h) {
+            path = p = new Inner[h + 4];
+            pathIndex = new int[h + 4];
+        }
+        return p;
+    }
+
+    // 从根下降到key所在的叶子，沿途记录路径
+    @SuppressWarnings("unchecked")
+    private Leaf<K,V> descend(Object key, Inner[] p, int[] pi) {
+        BNode n = root;
+        for (int d = 0, h = height; d < h; ++d) {
+            Inner q = (Inner) n;
+            int ci = childIndex(q, key);
+            p[d] = q;
+            pi[d] = ci;
+            n = q.children[ci];
+        }
+        return (Leaf<K,V>) n;
+    }
+
+    // 插入“key-value”，key已存在时替换值并返回旧值
+    public V put(K key, V value) {
+        if (root == null) {
+            compare(key, key); // type (and possibly null) check
+            Leaf<K,V> l = new Leaf<>(INITIAL_LEAF_CAPACITY);
+            l.insert(0, key, value);
+            root = head = tail = l;
+            height = 0;
+            size = 1;
+            modCount++;
+            return null;
+        }
+        Inner[] p = pathFor(height);
+        int[] pi = pathIndex;
+        Leaf<K,V> l = descend(key, p, pi);
+        int i = search(l.keys, l.size, key);
+        if (i >= 0) {
+            V oldValue = l.val(i);
+            l.vals[i] = value;
+            return oldValue;
+        }
+        l.insert(-(i + 1), key, value);
+        size++;
+        modCount++;
+        if (l.size > NODE_CAPACITY)
+            splitLeaf(l, p, pi);
+        return null;
+    }
+
+    // 叶子溢出：后一半移到新叶子，新叶子的第一个键作为分隔键插入父节点
+    private void splitLeaf(Leaf<K,V> l, Inner[] p, int[] pi) {
+        int n = l.size, m = n >>> 1;
+        Leaf<K,V> r = new Leaf<>(NODE_CAPACITY + 1);
+        System.arraycopy(l.keys, m, r.keys, 0, n - m);
+        System.arraycopy(l.vals, m, r.vals, 0, n - m);
+        Arrays.fill(l.keys, m, n, null);
+        Arrays.fill(l.vals, m, n, null);
+        r.size = n - m;
+        l.size = m;
+        if ((r.next = l.next) != null)
+            r.next.prev = r;
+        else
+            tail = r;
+        r.prev = l;
+        l.next = r;
+        insertIntoParent(l, r.keys[0], r, p, pi, height - 1);
+    }
+
+    // 把分隔键sep与右孩子right插入第d层的父节点，父节点溢出时继续向上分裂
+    private void insertIntoParent(BNode left, Object sep, BNode right, Inner[] p, int[] pi, int d) {
+        for (;;) {
+            if (d < 0) {
+                // 根分裂，树长高一层
+                Inner nr = new Inner();
+                nr.children[0] = left;
+                nr.children[1] = right;
+                nr.keys[0] = sep;
+                nr.size = 2;
+                root = nr;
+                height++;
+                return;
+            }
+            Inner q = p[d];
+            int ci = pi[d], n = q.size;
+            System.arraycopy(q.keys, ci, q.keys, ci + 1, n - 1 - ci);
+            q.keys[ci] = sep;
+            System.arraycopy(q.children, ci + 1, q.children, ci + 2, n - 1 - ci);
+            q.children[ci + 1] = right;
+            if ((q.size = ++n) <= NODE_CAPACITY)
+                return;
+            // 内部节点分裂：左边保留m个孩子，中间的分隔键上移
+            int m = n >>> 1;
+            Inner r = new Inner();
+            System.arraycopy(q.children, m, r.children, 0, n - m);
+            System.arraycopy(q.keys, m, r.keys, 0, n - m - 1);
+            sep = q.keys[m - 1];
+            Arrays.fill(q.children, m, n, null);
+            Arrays.fill(q.keys, m - 1, n - 1, null);
+            r.size = n - m;
+            q.size = m;
+            left = q;
+            right = r;
+            --d;
+        }
+    }
+
+    // 删除“键(key)”对应的映射，返回值
+    public V remove(Object key) {
+        if (root == null)
+            return null;
+        Inner[] p = pathFor(height);
+        int[] pi = pathIndex;
+        Leaf<K,V> l = descend(key, p, pi);
+        int i = search(l.keys, l.size, key);
+        if (i < 0)
+            return null;
+        V oldValue = l.val(i);
+        deleteAt(l, i, p, pi);
+        return oldValue;
+    }
+
+    // 删除叶子l中下标i的映射，p与pi是descend()记录的路径
+    private void deleteAt(Leaf<K,V> l, int i, Inner[] p, int[] pi) {
+        l.removeAt(i);
+        size--;
+        modCount++;
+        int h = height;
+        if (h == 0) {
+            if (l.size == 0)
+                root = head = tail = null;
+            return;
+        }
+        if (l.size >= MIN_SIZE)
+            return;
+        Inner q = p[h - 1];
+        int ci = pi[h - 1];
+        @SuppressWarnings("unchecked")
+        Leaf<K,V> left = (ci > 0) ? (Leaf<K,V>) q.children[ci - 1] : null;
+        @SuppressWarnings("unchecked")
+        Leaf<K,V> right = (ci + 1 < q.size) ? (Leaf<K,V>) q.children[ci + 1] : null;
+        if (left != null && left.size > MIN_SIZE) {
+            // 从左兄弟借最后一个
+            int j = left.size - 1;
+            l.insert(0, left.keys[j], left.vals[j]);
+            left.removeAt(j);
+            q.keys[ci - 1] = l.keys[0];
+        } else if (right != null && right.size > MIN_SIZE) {
+            // 从右兄弟借第一个
+            l.insert(l.size, right.keys[0], right.vals[0]);
+            right.removeAt(0);
+            q.keys[ci] = right.keys[0];
+        } else {
+            if (left != null) {
+                mergeLeaves(left, l);
+                removeChild(q, ci);
+            } else {
+                mergeLeaves(l, right);
+                removeChild(q, ci + 1);
+            }
+            rebalanceInner(q, p, pi, h - 1);
+        }
+    }
+
+    // 把叶子b合并到它左边的叶子a
+    private void mergeLeaves(Leaf<K,V> a, Leaf<K,V> b) {
+        System.arraycopy(b.keys, 0, a.keys, a.size, b.size);
+        System.arraycopy(b.vals, 0, a.vals, a.size, b.size);
+        a.size += b.size;
+        if ((a.next = b.next) != null)
+            a.next.prev = a;
+        else
+            tail = a;
+    }
+
+    // 删除内部节点q的第k个孩子以及它左边的分隔键
+    private static void removeChild(Inner q, int k) {
+        int n = q.size;
+        System.arraycopy(q.keys, k, q.keys, k - 1, n - 1 - k);
+        q.keys[n - 2] = null;
+        System.arraycopy(q.children, k + 1, q.children, k, n - 1 - k);
+        q.children[n - 1] = null;
+        q.size = n - 1;
+    }
+
+    // 第d层的内部节点q少了一个孩子后恢复B+树的性质
+    @SuppressWarnings("unchecked")
+    private void rebalanceInner(Inner q, Inner[] p, int[] pi, int d) {
+        for (;;) {
+            if (d == 0) {
+                // 根只剩一个孩子时树变矮一层
+                if (q.size == 1) {
+                    root = q.children[0];
+                    height--;
+                }
+                return;
+            }
+            if (q.size >= MIN_SIZE)
+                return;
+            Inner g = p[d - 1];
+            int ci = pi[d - 1];
+            Inner left = (ci > 0) ? (Inner) g.children[ci - 1] : null;
+            Inner right = (ci + 1 < g.size) ? (Inner) g.children[ci + 1] : null;
+            int n = q.size;
+            if (left != null && left.size > MIN_SIZE) {
+                // 经父节点从左兄弟右旋一个孩子
+                int ln = left.size;
+                System.arraycopy(q.keys, 0, q.keys, 1, n - 1);
+                System.arraycopy(q.children, 0, q.children, 1, n);
+                q.keys[0] = g.keys[ci - 1];
+                q.children[0] = left.children[ln - 1];
+                g.keys[ci - 1] = left.keys[ln - 2];
+                left.children[ln - 1] = null;
+                left.keys[ln - 2] = null;
+                left.size = ln - 1;
+                q.size = n + 1;
+                return;
+            }
+            if (right != null && right.size > MIN_SIZE) {
+                // 经父节点从右兄弟左旋一个孩子
+                int rn = right.size;
+                q.keys[n - 1] = g.keys[ci];
+                q.children[n] = right.children[0];
+                g.keys[ci] = right.keys[0];
+                System.arraycopy(right.keys, 1, right.keys, 0, rn - 2);
+                System.arraycopy(right.children, 1, right.children, 0, rn - 1);
+                right.keys[rn - 2] = null;
+                right.children[rn - 1] = null;
+                right.size = rn - 1;
+                q.size = n + 1;
+                return;
+            }
+            if (left != null) {
+                mergeInner(left, g.keys[ci - 1], q);
+                removeChild(g, ci);
+            } else {
+                mergeInner(q, g.keys[ci], right);
+                removeChild(g, ci + 1);
+            }
+            q = g;
+            --d;
+        }
+    }
+
+    // 把内部节点b与分隔键sep合并到它左边的a
+    private static void mergeInner(Inner a, Object sep, Inner b) {
+        int an = a.size, bn = b.size;
+        a.keys[an - 1] = sep;
+        System.arraycopy(b.keys, 0, a.keys, an, bn - 1);
+        System.arraycopy(b.children, 0, a.children, an, bn);
+        a.size = an + bn;
+    }
+
+    // 删除key对应的映射，不存在时什么也不做
+    final void deleteKey(Object key) {
+        remove(key);
+    }
+
+    // 清空
+    public void clear() {
+        modCount++;
+        size = 0;
+        root = head = tail = null;
+        height = 0;
+        path = null;
+        pathIndex = null;
+    }
+
+    // 克隆：按顺序批量重建，O(n)
+    @SuppressWarnings("unchecked")
+    public Object clone() {
+        BTreeMap<K,V> clone;
+        try {
+            clone = (BTreeMap<K,V>) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
+        clone.root = null;
+        clone.head = clone.tail = null;
+        clone.height = clone.size = clone.modCount = 0;
+        clone.path = null;
+        clone.pathIndex = null;
+        clone.entrySet = null;
+        clone.navigableKeySet = null;
+        clone.descendingMap = null;
+        int n = size, k = 0;
+        Object[] ks = new Object[n], vs = new Object[n];
+        for (Leaf<K,V> l = head; l != null; l = l.next) {
+            System.arraycopy(l.keys, 0, ks, k, l.size);
+            System.arraycopy(l.vals, 0, vs, k, l.size);
+            k += l.size;
+        }
+        clone.buildFromSorted(ks, vs, n);
+        return clone;
+    }
+
+    /**
+     * 由有序且不重复的ks[0, n)、vs[0, n)自底向上构建，O(n)
+     * case:叶子与内部节点都尽量装满，个数向上取整后平均分配，因此除根以外的节点都不少于MIN_SIZE。
+     */
+    final void buildFromSorted(Object[] ks, Object[] vs, int n) {
+        modCount++;
+        path = null;
+        pathIndex = null;
+        if (n == 0) {
+            root = head = tail = null;
+            height = size = 0;
+            return;
+        }
+        int count = (n + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        BNode[] level = new BNode[count];
+        Object[] mins = new Object[count];
+        Leaf<K,V> prev = null;
+        for (int i = 0, off = 0; i < count; ++i) {
+            int c = n / count + ((i < n % count) ? 1 : 0);
+            Leaf<K,V> l = new Leaf<>(count == 1 ? Math.max(c, INITIAL_LEAF_CAPACITY) : NODE_CAPACITY + 1);
+            System.arraycopy(ks, off, l.keys, 0, c);
+            System.arraycopy(vs, off, l.vals, 0, c);
+            l.size = c;
+            off += c;
+            if ((l.prev = prev) == null)
+                head = l;
+            else
+                prev.next = l;
+            prev = l;
+            level[i] = l;
+            mins[i] = l.keys[0];
+        }
+        tail = prev;
+        int h = 0;
+        while (count > 1) {
+            int pc = (count + NODE_CAPACITY - 1) / NODE_CAPACITY;
+            BNode[] up = new BNode[pc];
+            Object[] upMins = new Object[pc];
+            for (int i = 0, off = 0; i < pc; ++i) {
+                int c = count / pc + ((i < count % pc) ? 1 : 0);
+                Inner q = new Inner();
+                System.arraycopy(level, off, q.children, 0, c);
+                System.arraycopy(mins, off + 1, q.keys, 0, c - 1);
+                q.size = c;
+                up[i] = q;
+                upMins[i] = mins[off];
+                off += c;
+            }
+            level = up;
+            mins = upMins;
+            count = pc;
+            ++h;
+        }
+        root = level[0];
+        height = h;
+        size = n;
+    }
+
+    // 获取第一个节点对应的key
+    public K firstKey() {
+        Leaf<K,V> l = head;
+        if (l == null)
+            throw new NoSuchElementException();
+        return l.key(0);
+    }
+
+    // 获取最后一个节点对应的key
+    public K lastKey() {
+        Leaf<K,V> l = tail;
+        if (l == null)
+            throw new NoSuchElementException();
+        return l.key(l.size - 1);
+    }
+
+    static <K,V> Map.Entry<K,V> exportEntry(Slot<K,V> s) {
+        return (s == null) ? null : s.export();
+    }
+
+    static <K,V> K keyOrNull(Slot<K,V> s) {
+        return (s == null) ? null : s.key();
+    }
+
+    static <K,V> K key(Slot<K,V> s) {
+        if (s == null)
+            throw new NoSuchElementException();
+        return s.key();
+    }
+
+    public Map.Entry<K,V> firstEntry() {
+        return exportEntry(firstSlot());
+    }
+
+    public Map.Entry<K,V> lastEntry() {
+        return exportEntry(lastSlot());
+    }
+
+    // 获取并删除第一个映射
+    public Map.Entry<K,V> pollFirstEntry() {
+        Slot<K,V> s = firstSlot();
+        Map.Entry<K,V> result = exportEntry(s);
+        if (s != null)
+            deleteKey(s.key());
+        return result;
+    }
+
+    // 获取并删除最后一个映射
+    public Map.Entry<K,V> pollLastEntry() {
+        Slot<K,V> s = lastSlot();
+        Map.Entry<K,V> result = exportEntry(s);
+        if (s != null)
+            deleteKey(s.key());
+        return result;
+    }
+
+    public Map.Entry<K,V> lowerEntry(K key) {
+        return exportEntry(seek(key, LT));
+    }
+
+    public K lowerKey(K key) {
+        return keyOrNull(seek(key, LT));
+    }
+
+    public Map.Entry<K,V> floorEntry(K key) {
+        return exportEntry(seek(key, LE));
+    }
+
+    public K floorKey(K key) {
+        return keyOrNull(seek(key, LE));
+    }
+
+    public Map.Entry<K,V> ceilingEntry(K key) {
+        return exportEntry(seek(key, GE));
+    }
+
+    public K ceilingKey(K key) {
+        return keyOrNull(seek(key, GE));
+    }
+
+    public Map.Entry<K,V> higherEntry(K key) {
+        return exportEntry(seek(key, GT));
+    }
+
+    public K higherKey(K key) {
+        return keyOrNull(seek(key, GT));
+    }
+
+    // 按叶子顺序遍历
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        int expectedModCount = modCount;
+        for (Leaf<K,V> l = head; l != null; l = l.next) {
+            for (int i = 0; i < l.size; ++i) {
+                action.accept(l.key(i), l.val(i));
+                if (expectedModCount != modCount)
+                    throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        Objects.requireNonNull(function);
+        int expectedModCount = modCount;
+        for (Leaf<K,V> l = head; l != null; l = l.next) {
+            for (int i = 0; i < l.size; ++i) {
+                l.vals[i] = function.apply(l.key(i), l.val(i));
+                if (expectedModCount != modCount)
+                    throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    // Views
+
+    private transient EntrySet entrySet = null;
+
+    private transient KeySet<K> navigableKeySet = null;
+
+    private transient NavigableMap<K,V> descendingMap = null;
+
+    public Set<K> keySet() {
+        return navigableKeySet();
+    }
+
+    public NavigableSet<K> navigableKeySet() {
+        KeySet<K> nks = navigableKeySet;
+        return (nks != null) ? nks : (navigableKeySet = new KeySet<>(this));
+    }
+
+    public NavigableSet<K> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    public Collection<V> values() {
+        return new Values();
+    }
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        EntrySet es = entrySet;
+        return (es != null) ? es : (entrySet = new EntrySet());
+    }
+
+    public NavigableMap<K,V> descendingMap() {
+        NavigableMap<K,V> km = descendingMap;
+        return (km != null) ? km :
+                (descendingMap = new SubMap<>(this, true, null, true, true, null, true, true));
+    }
+
+    public NavigableMap<K,V> subMap(K fromKey, boolean fromInclusive,
+                                    K toKey,   boolean toInclusive) {
+        return new SubMap<>(this, false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+    }
+
+    public NavigableMap<K,V> headMap(K toKey, boolean inclusive) {
+        return new SubMap<>(this, true, null, true, false, toKey, inclusive, false);
+    }
+
+    public NavigableMap<K,V> tailMap(K fromKey, boolean inclusive) {
+        return new SubMap<>(this, false, fromKey, inclusive, true, null, true, false);
+    }
+
+    public SortedMap<K,V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    public SortedMap<K,V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    public SortedMap<K,V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    Iterator<K> keyIterator() {
+        return new KeyIterator(firstSlot(), false, null);
+    }
+
+    Iterator<K> descendingKeyIterator() {
+        return new KeyIterator(lastSlot(), true, null);
+    }
+
+    class Values extends AbstractCollection<V> {
+        public Iterator<V> iterator() {
+            return new ValueIterator(firstSlot(), false, null);
+        }
+
+        public int size() {
+            return BTreeMap.this.size();
+        }
+
+        public boolean contains(Object o) {
+            return BTreeMap.this.containsValue(o);
+        }
+
+        public void clear() {
+            BTreeMap.this.clear();
+        }
+    }
+
+    class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator(firstSlot(), false, null);
+        }
+
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> entry = (Map.Entry<?,?>) o;
+            Object key = entry.getKey();
+            Leaf<K,V> l;
+            int i;
+            return (l = findLeaf(key)) != null && (i = search(l.keys, l.size, key)) >= 0 &&
+                    Objects.equals(l.vals[i], entry.getValue());
+        }
+
+        public boolean remove(Object o) {
+            if (contains(o)) {
+                deleteKey(((Map.Entry<?,?>) o).getKey());
+                return true;
+            }
+            return false;
+        }
+
+        public int size() {
+            return BTreeMap.this.size();
+        }
+
+        public void clear() {
+            BTreeMap.this.clear();
+        }
+    }
+
+    // 与TreeMap.KeySet相同，迭代器来自BTreeMap或SubMap
+    static final class KeySet<E> extends AbstractSet<E> implements NavigableSet<E> {
+        private final NavigableMap<E, ?> m;
+        KeySet(NavigableMap<E, ?> map) { m = map; }
+
+        @SuppressWarnings("unchecked")
+        public Iterator<E> iterator() {
+            if (m instanceof BTreeMap)
+                return ((BTreeMap<E,?>) m).keyIterator();
+            else
+                return ((SubMap<E,?>) m).keyIterator();
+        }
+
+        @SuppressWarnings("unchecked")
+        public Iterator<E> descendingIterator() {
+            if (m instanceof BTreeMap)
+                return ((BTreeMap<E,?>) m).descendingKeyIterator();
+            else
+                return ((SubMap<E,?>) m).descendingKeyIterator();
+        }
+
+        public int size() { return m.size(); }
+        public boolean isEmpty() { return m.isEmpty(); }
+        public boolean contains(Object o) { return m.containsKey(o); }
+        public void clear() { m.clear(); }
+        public E lower(E e) { return m.lowerKey(e); }
+        public E floor(E e) { return m.floorKey(e); }
+        public E ceiling(E e) { return m.ceilingKey(e); }
+        public E higher(E e) { return m.higherKey(e); }
+        public E first() { return m.firstKey(); }
+        public E last() { return m.lastKey(); }
+        public Comparator<? super E> comparator() { return m.comparator(); }
+        public E pollFirst() {
+            Map.Entry<E,?> e = m.pollFirstEntry();
+            return (e == null) ? null : e.getKey();
+        }
+        public E pollLast() {
+            Map.Entry<E,?> e = m.pollLastEntry();
+            return (e == null) ? null : e.getKey();
+        }
+        public boolean remove(Object o) {
+            int oldSize = size();
+            m.remove(o);
+            return size() != oldSize;
+        }
+        @SuppressWarnings("unchecked")
+        public NavigableSet<E> subSet(E fromElement, boolean fromInclusive,
+                                      E toElement,   boolean toInclusive) {
+            return new TreeSet<>((NavigableMap<E,Object>) m.subMap(fromElement, fromInclusive,
+                    toElement, toInclusive));
+        }
+        @SuppressWarnings("unchecked")
+        public NavigableSet<E> headSet(E toElement, boolean inclusive) {
+            return new TreeSet<>((NavigableMap<E,Object>) m.headMap(toElement, inclusive));
+        }
+        @SuppressWarnings("unchecked")
+        public NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
+            return new TreeSet<>((NavigableMap<E,Object>) m.tailMap(fromElement, inclusive));
+        }
+        public SortedSet<E> subSet(E fromElement, E toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+        public SortedSet<E> headSet(E toElement) {
+            return headSet(toElement, false);
+        }
+        public SortedSet<E> tailSet(E fromElement) {
+            return tailSet(fromElement, true);
+        }
+        @SuppressWarnings("unchecked")
+        public NavigableSet<E> descendingSet() {
+            return new TreeSet<>((NavigableMap<E,Object>) m.descendingMap());
+        }
+    }
+
+    /**
+     * 迭代器公共部分：(leaf, index)是下一个位置，range不为null时越过它的边界即结束
+     * case:remove()删除上一个键之后，节点可能被借用或合并，因此按下一个键重新定位。
+     */
+    abstract class PrivateEntryIterator<T> implements Iterator<T> {
+        Leaf<K,V> leaf;
+        int index;
+        Leaf<K,V> lastLeaf;
+        int lastIndex;
+        final boolean descending;
+        final SubMap<K,V> range;
+        int expectedModCount;
+
+        PrivateEntryIterator(Slot<K,V> first, boolean descending, SubMap<K,V> range) {
+            this.descending = descending;
+            this.range = range;
+            expectedModCount = modCount;
+            if (first != null) {
+                leaf = first.leaf;
+                index = first.index;
+                checkBound();
+            }
+        }
+
+        final void checkBound() {
+            if (leaf != null && range != null &&
+                    (descending ? range.tooLow(leaf.keys[index]) : range.tooHigh(leaf.keys[index])))
+                leaf = null;
+        }
+
+        public final boolean hasNext() {
+            return leaf != null;
+        }
+
+        // 移到下一个位置，返回当前位置的叶子，下标在lastIndex中
+        final Leaf<K,V> nextSlot() {
+            Leaf<K,V> l = leaf;
+            if (l == null)
+                throw new NoSuchElementException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            lastLeaf = l;
+            lastIndex = index;
+            if (!descending) {
+                if (++index >= l.size) {
+                    leaf = l.next;
+                    index = 0;
+                }
+            } else if (--index < 0) {
+                leaf = l.prev;
+                index = (leaf == null) ? 0 : leaf.size - 1;
+            }
+            checkBound();
+            return l;
+        }
+
+        public void remove() {
+            if (lastLeaf == null)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            Object lastKey = lastLeaf.keys[lastIndex];
+            Object nextKey = (leaf != null) ? leaf.keys[index] : null;
+            boolean hasNextKey = leaf != null;
+            lastLeaf = null;
+            deleteKey(lastKey);
+            expectedModCount = modCount;
+            if (hasNextKey) {
+                Slot<K,V> s = seek(nextKey, descending ? LE : GE);
+                leaf = s.leaf;
+                index = s.index;
+            }
+        }
+    }
+
+    final class EntryIterator extends PrivateEntryIterator<Map.Entry<K,V>> {
+        EntryIterator(Slot<K,V> first, boolean descending, SubMap<K,V> range) {
+            super(first, descending, range);
+        }
+        public Map.Entry<K,V> next() {
+            Leaf<K,V> l = nextSlot();
+            return new LeafEntry(l, lastIndex);
+        }
+    }
+
+    final class ValueIterator extends PrivateEntryIterator<V> {
+        ValueIterator(Slot<K,V> first, boolean descending, SubMap<K,V> range) {
+            super(first, descending, range);
+        }
+        public V next() {
+            return nextSlot().val(lastIndex);
+        }
+    }
+
+    final class KeyIterator extends PrivateEntryIterator<K> {
+        KeyIterator(Slot<K,V> first, boolean descending, SubMap<K,V> range) {
+            super(first, descending, range);
+        }
+        public K next() {
+            return nextSlot().key(lastIndex);
+        }
+    }
+
+    /**
+     * 迭代器返回的条目
+     * case:映射仍在原来的位置时直接写叶子，否则（之后发生过借用、合并等）按键写回，键已删除时不再插入。
+     */
+    final class LeafEntry extends AbstractMap.SimpleEntry<K,V> {
+        private static final long serialVersionUID = -1394850711425238730L;
+        private final transient Leaf<K,V> leaf;
+        private final transient int index;
+
+        LeafEntry(Leaf<K,V> leaf, int index) {
+            super(leaf.key(index), leaf.val(index));
+            this.leaf = leaf;
+            this.index = index;
+        }
+
+        public V setValue(V value) {
+            K k = getKey();
+            if (index < leaf.size && leaf.keys[index] == k)
+                leaf.vals[index] = value;
+            else
+                replace(k, value);
+            return super.setValue(value);
+        }
+    }
+
+    /**
+     * 子映射视图，对应TreeMap的AscendingSubMap与DescendingSubMap
+     * case:
+     * 1、lo/hi是底层映射中的上下界，与方向无关；descending为true时所有“第一个”“更小”等语义反过来；
+     * 2、size()按叶子计数：两端叶子各算一部分，中间的叶子直接加size，不逐个遍历映射。
+     */
+    static final class SubMap<K,V> extends AbstractMap<K,V>
+            implements NavigableMap<K,V>, java.io.Serializable {
+        private static final long serialVersionUID = -6520786458950516097L;
+
+        final BTreeMap<K,V> m;
+        final K lo, hi;
+        final boolean fromStart, toEnd;
+        final boolean loInclusive, hiInclusive;
+        final boolean descending;
+
+        SubMap(BTreeMap<K,V> m,
+               boolean fromStart, K lo, boolean loInclusive,
+               boolean toEnd,     K hi, boolean hiInclusive,
+               boolean descending) {
+            if (!fromStart && !toEnd) {
+                if (m.compare(lo, hi) > 0)
+                    throw new IllegalArgumentException("fromKey > toKey");
+            } else {
+                if (!fromStart) // type check
+                    m.compare(lo, lo);
+                if (!toEnd)
+                    m.compare(hi, hi);
+            }
+            this.m = m;
+            this.fromStart = fromStart;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.toEnd = toEnd;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+        }
+
+        final boolean tooLow(Object key) {
+            if (!fromStart) {
+                int c = m.compare(key, lo);
+                if (c < 0 || (c == 0 && !loInclusive))
+                    return true;
+            }
+            return false;
+        }
+
+        final boolean tooHigh(Object key) {
+            if (!toEnd) {
+                int c = m.compare(key, hi);
+                if (c > 0 || (c == 0 && !hiInclusive))
+                    return true;
+            }
+            return false;
+        }
+
+        final boolean inRange(Object key) {
+            return !tooLow(key) && !tooHigh(key);
+        }
+
+        final boolean inClosedRange(Object key) {
+            return (fromStart || m.compare(key, lo) >= 0)
+                    && (toEnd || m.compare(hi, key) >= 0);
+        }
+
+        final boolean inRange(Object key, boolean inclusive) {
+            return inclusive ? inRange(key) : inClosedRange(key);
+        }
+
+        final Slot<K,V> absLowest() {
+            Slot<K,V> s = fromStart ? m.firstSlot() : m.seek(lo, loInclusive ? GE : GT);
+            return (s == null || tooHigh(s.key())) ? null : s;
+        }
+
+        final Slot<K,V> absHighest() {
+            Slot<K,V> s = toEnd ? m.lastSlot() : m.seek(hi, hiInclusive ? LE : LT);
+            return (s == null || tooLow(s.key())) ? null : s;
+        }
+
+        final Slot<K,V> absCeiling(K key) {
+            if (tooLow(key))
+                return absLowest();
+            Slot<K,V> s = m.seek(key, GE);
+            return (s == null || tooHigh(s.key())) ? null : s;
+        }
+
+        final Slot<K,V> absHigher(K key) {
+            if (tooLow(key))
+                return absLowest();
+            Slot<K,V> s = m.seek(key, GT);
+            return (s == null || tooHigh(s.key())) ? null : s;
+        }
+
+        final Slot<K,V> absFloor(K key) {
+            if (tooHigh(key))
+                return absHighest();
+            Slot<K,V> s = m.seek(key, LE);
+            return (s == null || tooLow(s.key())) ? null : s;
+        }
+
+        final Slot<K,V> absLower(K key) {
+            if (tooHigh(key))
+                return absHighest();
+            Slot<K,V> s = m.seek(key, LT);
+            return (s == null || tooLow(s.key())) ? null : s;
+        }
+
+        final Slot<K,V> subLowest()        { return descending ? absHighest() : absLowest(); }
+        final Slot<K,V> subHighest()       { return descending ? absLowest() : absHighest(); }
+        final Slot<K,V> subCeiling(K key)  { return descending ? absFloor(key) : absCeiling(key); }
+        final Slot<K,V> subHigher(K key)   { return descending ? absLower(key) : absHigher(key); }
+        final Slot<K,V> subFloor(K key)    { return descending ? absCeiling(key) : absFloor(key); }
+        final Slot<K,V> subLower(K key)    { return descending ? absHigher(key) : absLower(key); }
+
+        Iterator<K> keyIterator() {
+            return m.new KeyIterator(subLowest(), descending, this);
+        }
+
+        Iterator<K> descendingKeyIterator() {
+            return m.new KeyIterator(subHighest(), !descending, this);
+        }
+
+        public Comparator<? super K> comparator() {
+            return descending ? Collections.reverseOrder(m.comparator()) : m.comparator();
+        }
+
+        public boolean isEmpty() {
+            return (fromStart && toEnd) ? m.isEmpty() : absLowest() == null;
+        }
+
+        // 按叶子计数，O(log n + 叶子个数)
+        public int size() {
+            if (fromStart && toEnd)
+                return m.size();
+            Slot<K,V> a = absLowest(), b;
+            if (a == null || (b = absHighest()) == null || m.compare(a.key(), b.key()) > 0)
+                return 0;
+            if (a.leaf == b.leaf)
+                return b.index - a.index + 1;
+            int n = a.leaf.size - a.index + b.index + 1;
+            for (Leaf<K,V> l = a.leaf.next; l != b.leaf; l = l.next)
+                n += l.size;
+            return n;
+        }
+
+        public boolean containsKey(Object key) {
+            return inRange(key) && m.containsKey(key);
+        }
+
+        public V put(K key, V value) {
+            if (!inRange(key))
+                throw new IllegalArgumentException("key out of range");
+            return m.put(key, value);
+        }
+
+        public V get(Object key) {
+            return !inRange(key) ? null : m.get(key);
+        }
+
+        public V remove(Object key) {
+            return !inRange(key) ? null : m.remove(key);
+        }
+
+        public Map.Entry<K,V> ceilingEntry(K key) { return exportEntry(subCeiling(key)); }
+        public K ceilingKey(K key)                { return keyOrNull(subCeiling(key)); }
+        public Map.Entry<K,V> higherEntry(K key)  { return exportEntry(subHigher(key)); }
+        public K higherKey(K key)                 { return keyOrNull(subHigher(key)); }
+        public Map.Entry<K,V> floorEntry(K key)   { return exportEntry(subFloor(key)); }
+        public K floorKey(K key)                  { return keyOrNull(subFloor(key)); }
+        public Map.Entry<K,V> lowerEntry(K key)   { return exportEntry(subLower(key)); }
+        public K lowerKey(K key)                  { return keyOrNull(subLower(key)); }
+        public K firstKey()                       { return key(subLowest()); }
+        public K lastKey()                        { return key(subHighest()); }
+        public Map.Entry<K,V> firstEntry()        { return exportEntry(subLowest()); }
+        public Map.Entry<K,V> lastEntry()         { return exportEntry(subHighest()); }
+
+        public Map.Entry<K,V> pollFirstEntry() {
+            Slot<K,V> s = subLowest();
+            Map.Entry<K,V> result = exportEntry(s);
+            if (s != null)
+                m.deleteKey(s.key());
+            return result;
+        }
+
+        public Map.Entry<K,V> pollLastEntry() {
+            Slot<K,V> s = subHighest();
+            Map.Entry<K,V> result = exportEntry(s);
+            if (s != null)
+                m.deleteKey(s.key());
+            return result;
+        }
+
+        // Views
+        transient NavigableMap<K,V> descendingMapView = null;
+        transient Set<Map.Entry<K,V>> entrySetView = null;
+        transient KeySet<K> navigableKeySetView = null;
+
+        public NavigableSet<K> navigableKeySet() {
+            KeySet<K> nksv = navigableKeySetView;
+            return (nksv != null) ? nksv : (navigableKeySetView = new KeySet<>(this));
+        }
+
+        public Set<K> keySet() {
+            return navigableKeySet();
+        }
+
+        public NavigableSet<K> descendingKeySet() {
+            return descendingMap().navigableKeySet();
+        }
+
+        public NavigableMap<K,V> descendingMap() {
+            NavigableMap<K,V> mv = descendingMapView;
+            return (mv != null) ? mv :
+                    (descendingMapView = new SubMap<>(m, fromStart, lo, loInclusive,
+                            toEnd, hi, hiInclusive, !descending));
+        }
+
+        public NavigableMap<K,V> subMap(K fromKey, boolean fromInclusive,
+                                        K toKey,   boolean toInclusive) {
+            if (!inRange(fromKey, fromInclusive))
+                throw new IllegalArgumentException("fromKey out of range");
+            if (!inRange(toKey, toInclusive))
+                throw new IllegalArgumentException("toKey out of range");
+            return descending ?
+                    new SubMap<>(m, false, toKey, toInclusive, false, fromKey, fromInclusive, true) :
+                    new SubMap<>(m, false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+        }
+
+        public NavigableMap<K,V> headMap(K toKey, boolean inclusive) {
+            if (!inRange(toKey, inclusive))
+                throw new IllegalArgumentException("toKey out of range");
+            return descending ?
+                    new SubMap<>(m, false, toKey, inclusive, toEnd, hi, hiInclusive, true) :
+                    new SubMap<>(m, fromStart, lo, loInclusive, false, toKey, inclusive, false);
+        }
+
+        public NavigableMap<K,V> tailMap(K fromKey, boolean inclusive) {
+            if (!inRange(fromKey, inclusive))
+                throw new IllegalArgumentException("fromKey out of range");
+            return descending ?
+                    new SubMap<>(m, fromStart, lo, loInclusive, false, fromKey, inclusive, true) :
+                    new SubMap<>(m, false, fromKey, inclusive, toEnd, hi, hiInclusive, false);
+        }
+
+        public SortedMap<K,V> subMap(K fromKey, K toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        public SortedMap<K,V> headMap(K toKey) {
+            return headMap(toKey, false);
+        }
+
+        public SortedMap<K,V> tailMap(K fromKey) {
+            return tailMap(fromKey, true);
+        }
+
+        public Set<Map.Entry<K,V>> entrySet() {
+            Set<Map.Entry<K,V>> es = entrySetView;
+            return (es != null) ? es : (entrySetView = new AbstractSet<Map.Entry<K,V>>() {
+                public Iterator<Map.Entry<K,V>> iterator() {
+                    return m.new EntryIterator(subLowest(), descending, SubMap.this);
+                }
+
+                public int size() {
+                    return SubMap.this.size();
+                }
+
+                public boolean isEmpty() {
+                    return SubMap.this.isEmpty();
+                }
+
+                public boolean contains(Object o) {
+                    if (!(o instanceof Map.Entry))
+                        return false;
+                    Object key = ((Map.Entry<?,?>) o).getKey();
+                    return inRange(key) && m.entrySet().contains(o);
+                }
+
+                public boolean remove(Object o) {
+                    if (!(o instanceof Map.Entry))
+                        return false;
+                    Object key = ((Map.Entry<?,?>) o).getKey();
+                    return inRange(key) && m.entrySet().remove(o);
+                }
+            });
+        }
+    }
+
+    private static final long serialVersionUID = 4393452148232624185L;
+
+    // 写入比较器、映射个数，再按顺序写入所有的键和值
+    private void writeObject(java.io.ObjectOutputStream s)
+            throws java.io.IOException {
+        s.defaultWriteObject();
+        s.writeInt(size);
+        for (Leaf<K,V> l = head; l != null; l = l.next) {
+            for (int i = 0; i < l.size; ++i) {
+                s.writeObject(l.keys[i]);
+                s.writeObject(l.vals[i]);
+            }
+        }
+    }
+
+    // 按写入的顺序读出后批量构建
+    private void readObject(final java.io.ObjectInputStream s)
+            throws java.io.IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        int n = s.readInt();
+        if (n < 0)
+            throw new java.io.InvalidObjectException("Illegal mappings count: " + n);
+        Object[] ks = new Object[n], vs = new Object[n];
+        for (int i = 0; i < n; ++i) {
+            ks[i] = s.readObject();
+            vs[i] = s.readObject();
+        }
+        buildFromSorted(ks, vs, n);
+    }
+}
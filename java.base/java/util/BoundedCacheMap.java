@@ -0,0 +1,601 @@
+package java.util;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.function.Function;
+
+/**
+ * 有容量上限的缓存映射，建立在HashMap的newNode/afterNodeAccess/afterNodeInsertion/afterNodeRemoval回调之上
+ * case:
+ * 1、节点与LinkedHashMap相同，都是LinkedHashMap.Entry（树形桶中为TreeNode，不使用有序数组桶），
+ * 通过before/after串成淘汰队列，访问、插入、淘汰都是O(1)；
+ * 2、LRU：一条按访问顺序排列的队列，淘汰队首；
+ * 3、LFU：一条按访问次数升序排列的队列，次数相同的按访问顺序排列，
+ * 每个次数记录该组的队尾，访问时节点只需移到下一组的队尾，淘汰队首；
+ * 4、W_TINY_LFU：新节点先进入约占1%容量的LRU窗口，被挤出窗口的节点作为候选，
+ * 与主区试用队列（probation）的队首比较频率草图（count-min sketch，4位计数器）中的估计值，
+ * 频率高的留下；主区被再次访问的节点晋升到受保护队列（protected，约占主区80%）。
+ * <p>
+ * 注意：
+ * 1、get/getOrDefault/computeIfAbsent会统计命中、未命中次数，containsKey不算作访问；
+ * 2、视图按桶的顺序遍历，与淘汰顺序无关；
+ * 3、序列化时只写入容量、策略和按淘汰顺序排列的映射，访问次数与频率草图不写入流中。
+ */
+public class BoundedCacheMap<K, V> extends HashMap<K, V> {
+
+    private static final long serialVersionUID = 4736104837361904551L;
+
+    /**
+     * 淘汰策略
+     */
+    public enum EvictionPolicy {
+        LRU, LFU, W_TINY_LFU
+    }
+
+    /*
+     * W_TINY_LFU的三条队列，LRU和LFU只使用WINDOW这一条
+     */
+    static final int WINDOW = 0;
+    static final int PROBATION = 1;
+    static final int PROTECTED = 2;
+
+    /**
+     * LFU访问次数的上限，到达后只在本组内调整顺序
+     */
+    static final int MAX_FREQUENCY = Integer.MAX_VALUE;
+
+    /**
+     * 缓存节点，比LinkedHashMap.Entry多一个策略相关的字段：
+     * LFU为访问次数，W_TINY_LFU为所在队列
+     */
+    static final class CacheEntry<K, V> extends LinkedHashMap.Entry<K, V> {
+        int meta;
+
+        CacheEntry(int hash, K key, V value, Node<K, V> next) {
+            super(hash, key, value, next);
+        }
+    }
+
+    final int maximumSize;
+
+    final EvictionPolicy policy;
+
+    /**
+     * 各队列的队首（最先淘汰）、队尾与长度
+     */
+    transient LinkedHashMap.Entry<K, V>[] heads;
+    transient LinkedHashMap.Entry<K, V>[] tails;
+    transient int[] counts;
+
+    /**
+     * 树形桶中节点的meta，TreeNode不能再增加字段；这样的桶很少出现，通常为null
+     */
+    transient IdentityHashMap<LinkedHashMap.Entry<K, V>, Integer> treeMeta;
+
+    /**
+     * LFU：访问次数到该组队尾的映射
+     */
+    transient IntObjectHashMap<LinkedHashMap.Entry<K, V>> groupTails;
+
+    /**
+     * W_TINY_LFU：频率草图，窗口与受保护队列的容量
+     */
+    transient FrequencySketch sketch;
+    transient int windowMax;
+    transient int protectedMax;
+
+    transient long hitCount;
+    transient long missCount;
+    transient long evictionCount;
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * @param maximumSize 映射个数的上限
+     * @param policy      淘汰策略
+     */
+    public BoundedCacheMap(int maximumSize, EvictionPolicy policy) {
+        if (maximumSize <= 0)
+            throw new IllegalArgumentException("Illegal maximum size: " +
+                    maximumSize);
+        this.maximumSize = maximumSize;
+        this.policy = Objects.requireNonNull(policy);
+        initPolicy();
+    }
+
+    public BoundedCacheMap(int maximumSize) {
+        this(maximumSize, EvictionPolicy.LRU);
+    }
+
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    public EvictionPolicy policy() {
+        return policy;
+    }
+
+    public long hitCount() {
+        return hitCount;
+    }
+
+    public long missCount() {
+        return missCount;
+    }
+
+    public long evictionCount() {
+        return evictionCount;
+    }
+
+    public void resetCounters() {
+        hitCount = missCount = evictionCount = 0L;
+    }
+
+    public V get(Object key) {
+        int hash = hashOf(key);
+        Node<K, V> e;
+        if ((e = getNode(hash, key)) == null) {
+            recordMiss(hash);
+            return null;
+        }
+        ++hitCount;
+        afterNodeAccess(e);
+        return e.value;
+    }
+
+    public V getOrDefault(Object key, V defaultValue) {
+        int hash = hashOf(key);
+        Node<K, V> e;
+        if ((e = getNode(hash, key)) == null) {
+            recordMiss(hash);
+            return defaultValue;
+        }
+        ++hitCount;
+        afterNodeAccess(e);
+        return e.value;
+    }
+
+    /**
+     * 已有非null值时算作命中，否则算作未命中并交给HashMap计算、插入
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        int hash = hashOf(key);
+        Node<K, V> e;
+        V v;
+        if ((e = getNode(hash, key)) != null && (v = e.value) != null) {
+            ++hitCount;
+            afterNodeAccess(e);
+            return v;
+        }
+        recordMiss(hash);
+        return super.computeIfAbsent(key, mappingFunction);
+    }
+
+    public void clear() {
+        super.clear();
+        initPolicy();
+    }
+
+    /**
+     * 副本保持原映射的淘汰顺序、访问次数与频率草图，计数器从0开始
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object clone() {
+        BoundedCacheMap<K, V> result = (BoundedCacheMap<K, V>) super.clone();
+        result.initPolicy();
+        for (int q = WINDOW; q <= PROTECTED; ++q) {
+            for (LinkedHashMap.Entry<K, V> e = heads[q]; e != null; e = e.after) {
+                LinkedHashMap.Entry<K, V> r = (LinkedHashMap.Entry<K, V>) result.getNode(e.hash, e.key);
+                int m = meta(e);
+                result.setMeta(r, m);
+                result.linkLast(q, r);
+                if (policy == EvictionPolicy.LFU)
+                    result.groupTails.put(m, r);
+            }
+        }
+        if (sketch != null)
+            result.sketch = sketch.copy();
+        result.resetCounters();
+        return result;
+    }
+
+    /* ---------------- Policy state -------------- */
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    final void initPolicy() {
+        heads = (LinkedHashMap.Entry<K, V>[]) new LinkedHashMap.Entry[PROTECTED + 1];
+        tails = (LinkedHashMap.Entry<K, V>[]) new LinkedHashMap.Entry[PROTECTED + 1];
+        counts = new int[PROTECTED + 1];
+        treeMeta = null;
+        groupTails = (policy == EvictionPolicy.LFU) ? new IntObjectHashMap<>() : null;
+        if (policy == EvictionPolicy.W_TINY_LFU) {
+            windowMax = Math.max(1, maximumSize / 100);
+            protectedMax = (int) ((maximumSize - windowMax) * 4L / 5);
+            sketch = new FrequencySketch(maximumSize);
+        } else {
+            sketch = null;
+        }
+    }
+
+    @Override
+    void reinitialize() {
+        super.reinitialize();
+        initPolicy();
+    }
+
+    final int meta(LinkedHashMap.Entry<K, V> e) {
+        if (e instanceof CacheEntry)
+            return ((CacheEntry<K, V>) e).meta;
+        Integer m;
+        return (treeMeta == null || (m = treeMeta.get(e)) == null) ? 0 : m;
+    }
+
+    final void setMeta(LinkedHashMap.Entry<K, V> e, int m) {
+        if (e instanceof CacheEntry)
+            ((CacheEntry<K, V>) e).meta = m;
+        else if (policy != EvictionPolicy.LRU) {
+            if (treeMeta == null)
+                treeMeta = new IdentityHashMap<>();
+            treeMeta.put(e, m);
+        }
+    }
+
+    /**
+     * 节点所在的队列
+     */
+    final int queueOf(LinkedHashMap.Entry<K, V> e) {
+        return (policy == EvictionPolicy.W_TINY_LFU) ? meta(e) : WINDOW;
+    }
+
+    final void recordMiss(int hash) {
+        ++missCount;
+        if (sketch != null)
+            sketch.increment(hash);
+    }
+
+    /* ---------------- Queue operations -------------- */
+
+    final void linkLast(int q, LinkedHashMap.Entry<K, V> p) {
+        linkAfter(q, tails[q], p);
+    }
+
+    /**
+     * 把p插入到队列q中x之后，x为null时插入到队首
+     */
+    final void linkAfter(int q, LinkedHashMap.Entry<K, V> x, LinkedHashMap.Entry<K, V> p) {
+        LinkedHashMap.Entry<K, V> a = (x == null) ? heads[q] : x.after;
+        p.before = x;
+        p.after = a;
+        if (x == null)
+            heads[q] = p;
+        else
+            x.after = p;
+        if (a == null)
+            tails[q] = p;
+        else
+            a.before = p;
+        ++counts[q];
+    }
+
+    final void unlink(int q, LinkedHashMap.Entry<K, V> p) {
+        LinkedHashMap.Entry<K, V> b = p.before, a = p.after;
+        p.before = p.after = null;
+        if (b == null)
+            heads[q] = a;
+        else
+            b.after = a;
+        if (a == null)
+            tails[q] = b;
+        else
+            a.before = b;
+        --counts[q];
+    }
+
+    /**
+     * LFU：把p从队列中摘下，p是本组队尾时由前驱（同组时）接替
+     */
+    final void unlinkFrequency(LinkedHashMap.Entry<K, V> p, int f) {
+        LinkedHashMap.Entry<K, V> b = p.before;
+        if (groupTails.get(f) == p) {
+            if (b != null && meta(b) == f)
+                groupTails.put(f, b);
+            else
+                groupTails.remove(f);
+        }
+        unlink(WINDOW, p);
+    }
+
+    /**
+     * LFU：访问次数加1，移到新组的队尾
+     * case:
+     * 新组存在时插到它的队尾之后；否则原组还有节点时插到原组队尾之后，
+     * 再否则插回原来的位置（前驱是更低次数组的队尾或者队首）。
+     */
+    final void incrementFrequency(LinkedHashMap.Entry<K, V> p) {
+        int f = meta(p);
+        int nf = (f == MAX_FREQUENCY) ? f : f + 1;
+        LinkedHashMap.Entry<K, V> b = p.before, x;
+        unlinkFrequency(p, f);
+        if ((x = groupTails.get(nf)) == null && (x = groupTails.get(f)) == null)
+            x = b;
+        linkAfter(WINDOW, x, p);
+        setMeta(p, nf);
+        groupTails.put(nf, p);
+    }
+
+    /* ---------------- HashMap callbacks -------------- */
+
+    /**
+     * 淘汰队列依赖afterNodeInsertion，批量拷贝时也要逐个插入
+     */
+    boolean canCopyNodes() {
+        return false;
+    }
+
+    Node<K, V> newNode(int hash, K key, V value, Node<K, V> next) {
+        CacheEntry<K, V> p = new CacheEntry<>(hash, key, value, next);
+        linkNew(p);
+        return p;
+    }
+
+    Node<K, V> replacementNode(Node<K, V> p, Node<K, V> next) {
+        CacheEntry<K, V> q = new CacheEntry<>(p.hash, p.key, p.value, next);
+        transferLinks((LinkedHashMap.Entry<K, V>) p, q);
+        return q;
+    }
+
+    TreeNode<K, V> newTreeNode(int hash, K key, V value, Node<K, V> next) {
+        TreeNode<K, V> p = new TreeNode<>(hash, key, value, next);
+        linkNew(p);
+        return p;
+    }
+
+    TreeNode<K, V> replacementTreeNode(Node<K, V> p, Node<K, V> next) {
+        TreeNode<K, V> q = new TreeNode<>(p.hash, p.key, p.value, next);
+        transferLinks((LinkedHashMap.Entry<K, V>) p, q);
+        return q;
+    }
+
+    /**
+     * 新节点入队：LRU、W_TINY_LFU进入队尾，LFU以次数1进入第一组的队尾
+     */
+    final void linkNew(LinkedHashMap.Entry<K, V> p) {
+        switch (policy) {
+            case LRU:
+                linkLast(WINDOW, p);
+                break;
+            case LFU:
+                setMeta(p, 1);
+                linkAfter(WINDOW, groupTails.get(1), p);
+                groupTails.put(1, p);
+                break;
+            default:
+                sketch.increment(p.hash);
+                setMeta(p, WINDOW);
+                linkLast(WINDOW, p);
+        }
+    }
+
+    /**
+     * 桶在链表与树之间转换时，用dst替换src在队列中的位置
+     */
+    final void transferLinks(LinkedHashMap.Entry<K, V> src, LinkedHashMap.Entry<K, V> dst) {
+        int m = meta(src), q = queueOf(src);
+        LinkedHashMap.Entry<K, V> b = dst.before = src.before;
+        LinkedHashMap.Entry<K, V> a = dst.after = src.after;
+        if (b == null)
+            heads[q] = dst;
+        else
+            b.after = dst;
+        if (a == null)
+            tails[q] = dst;
+        else
+            a.before = dst;
+        if (treeMeta != null)
+            treeMeta.remove(src);
+        setMeta(dst, m);
+        if (groupTails != null && groupTails.get(m) == src)
+            groupTails.put(m, dst);
+    }
+
+    void afterNodeRemoval(Node<K, V> e) {
+        LinkedHashMap.Entry<K, V> p = (LinkedHashMap.Entry<K, V>) e;
+        if (policy == EvictionPolicy.LFU)
+            unlinkFrequency(p, meta(p));
+        else
+            unlink(queueOf(p), p);
+        if (treeMeta != null)
+            treeMeta.remove(p);
+    }
+
+    void afterNodeAccess(Node<K, V> e) {
+        LinkedHashMap.Entry<K, V> p = (LinkedHashMap.Entry<K, V>) e;
+        switch (policy) {
+            case LRU:
+                if (tails[WINDOW] != p) {
+                    unlink(WINDOW, p);
+                    linkLast(WINDOW, p);
+                }
+                break;
+            case LFU:
+                incrementFrequency(p);
+                break;
+            default:
+                sketch.increment(p.hash);
+                int q = meta(p);
+                if (q == PROBATION) {
+                    //再次访问试用队列中的节点，晋升到受保护队列，超出配额时把受保护队列的队首降回试用队列
+                    unlink(PROBATION, p);
+                    setMeta(p, PROTECTED);
+                    linkLast(PROTECTED, p);
+                    LinkedHashMap.Entry<K, V> d;
+                    if (counts[PROTECTED] > protectedMax && (d = heads[PROTECTED]) != null) {
+                        unlink(PROTECTED, d);
+                        setMeta(d, PROBATION);
+                        linkLast(PROBATION, d);
+                    }
+                } else if (tails[q] != p) {
+                    unlink(q, p);
+                    linkLast(q, p);
+                }
+        }
+    }
+
+    /**
+     * 插入之后按策略淘汰，evict为false（构造、克隆）时只调整W_TINY_LFU的窗口
+     */
+    void afterNodeInsertion(boolean evict) {
+        LinkedHashMap.Entry<K, V> c = null;
+        if (policy == EvictionPolicy.W_TINY_LFU) {
+            //挤出窗口的节点进入试用队列的队尾，成为本次的候选
+            while (counts[WINDOW] > windowMax) {
+                unlink(WINDOW, c = heads[WINDOW]);
+                setMeta(c, PROBATION);
+                linkLast(PROBATION, c);
+            }
+        }
+        if (!evict)
+            return;
+        while (size > maximumSize) {
+            LinkedHashMap.Entry<K, V> v;
+            if (c == null) {
+                if (policy != EvictionPolicy.W_TINY_LFU ||
+                        ((v = heads[PROBATION]) == null && (v = heads[PROTECTED]) == null))
+                    v = heads[WINDOW];
+                //LFU中刚插入的节点是次数为1的组的队尾，不淘汰它，否则新映射永远进不了已满的缓存
+                if (policy == EvictionPolicy.LFU && v == groupTails.get(1) && v.after != null)
+                    v = v.after;
+            } else {
+                //候选与试用队列的队首比较频率，试用队列只有候选时与受保护队列的队首比较
+                if ((v = heads[PROBATION]) == c)
+                    v = heads[PROTECTED];
+                if (v == null || sketch.frequency(c.hash) <= sketch.frequency(v.hash)) {
+                    v = c;
+                    c = null;
+                }
+            }
+            removeNode(v.hash, v.key, null, false, true);
+            ++evictionCount;
+        }
+    }
+
+    /* ---------------- Frequency sketch -------------- */
+
+    /**
+     * count-min sketch：每个long存放16个4位计数器，每个哈希在4个long中各占一个计数器，
+     * 估计值取4个计数器的最小值；计数达到10倍容量时所有计数器减半，让旧的频率逐渐老化
+     */
+    static final class FrequencySketch {
+        static final long[] SEEDS = {
+                0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+                0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        static final long RESET_MASK = 0x7777777777777777L;
+
+        final long[] table;
+        final int sampleSize;
+        int additions;
+
+        FrequencySketch(int maximumSize) {
+            table = new long[HashMap.tableSizeFor(Math.max(maximumSize, 16))];
+            sampleSize = (int) Math.min(10L * maximumSize, Integer.MAX_VALUE);
+        }
+
+        FrequencySketch(FrequencySketch s) {
+            table = s.table.clone();
+            sampleSize = s.sampleSize;
+            additions = s.additions;
+        }
+
+        FrequencySketch copy() {
+            return new FrequencySketch(this);
+        }
+
+        static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
+
+        int indexOf(int item, int i) {
+            long h = (item + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & (table.length - 1);
+        }
+
+        int frequency(int hash) {
+            int item = spread(hash), start = (item & 3) << 2, f = 15;
+            for (int i = 0; i < 4; ++i) {
+                int offset = (start + i) << 2;
+                f = Math.min(f, (int) ((table[indexOf(item, i)] >>> offset) & 0xfL));
+            }
+            return f;
+        }
+
+        void increment(int hash) {
+            int item = spread(hash), start = (item & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; ++i) {
+                int index = indexOf(item, i), offset = (start + i) << 2;
+                long mask = 0xfL << offset;
+                if ((table[index] & mask) != mask) {
+                    table[index] += 1L << offset;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize)
+                reset();
+        }
+
+        void reset() {
+            for (int i = 0; i < table.length; ++i)
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            additions >>>= 1;
+        }
+    }
+
+    /* ---------------- Serialization -------------- */
+
+    private Object writeReplace() {
+        return new SerializationProxy(this);
+    }
+
+    private void readObject(ObjectInputStream s) throws InvalidObjectException {
+        throw new InvalidObjectException("Proxy required");
+    }
+
+    /**
+     * 序列化形式：容量、策略以及按淘汰顺序（先淘汰的在前）键值交错的映射
+     */
+    private static final class SerializationProxy implements Serializable {
+        private static final long serialVersionUID = -2158468097640735163L;
+
+        private final int maximumSize;
+        private final EvictionPolicy policy;
+        private final Object[] entries;
+
+        SerializationProxy(BoundedCacheMap<?, ?> m) {
+            maximumSize = m.maximumSize;
+            policy = m.policy;
+            entries = new Object[m.size << 1];
+            int i = 0;
+            for (int q : new int[]{PROBATION, PROTECTED, WINDOW}) {
+                for (LinkedHashMap.Entry<?, ?> e = m.heads[q]; e != null; e = e.after) {
+                    entries[i++] = e.key;
+                    entries[i++] = e.value;
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object readResolve() throws InvalidObjectException {
+            if (maximumSize <= 0 || policy == null || (entries.length & 1) != 0)
+                throw new InvalidObjectException("Invalid cache map");
+            BoundedCacheMap<Object, Object> m = new BoundedCacheMap<>(maximumSize, policy);
+            for (int i = 0; i < entries.length; i += 2)
+                m.put(entries[i], entries[i + 1]);
+            return m;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package java.util;
+
+import java.io.Serializable;
+import java.util.function.BiFunction;
+import java.util.function.DoubleFunction;
+
+/**
+ * 以基本类型double为键的有序映射，排序与TreeMap<Double, V>的自然排序（Double.compare）相同
+ * case:
+ * 1、每个double键按toSortable()变换成long后存放在LongTreeMap中：非负数的位模式本身就按大小递增，
+ * 负数把除符号位以外的位取反后按绝对值递减，于是变换后的long按有符号比较的顺序就是Double.compare的顺序；
+ * 2、变换是双射（NaN先由doubleToLongBits规范化），查找、范围遍历只比较long，不装箱也不拆箱；
+ * 3、与Double.compare相同，-0.0小于0.0，所有NaN是同一个键并且大于正无穷。
+ * <p>
+ * 注意：
+ * 1、不是线程安全的，值可以为null；
+ * 2、游标与forEach的fail-fast规则与LongTreeMap相同。
+ */
+public class DoubleTreeMap<V> implements Cloneable, Serializable {
+
+    private static final long serialVersionUID = 7467254082617593028L;
+
+    /**
+     * 遍历用的回调，键以double传入，避免装箱
+     */
+    @FunctionalInterface
+    public interface DoubleObjectConsumer<V> {
+        void accept(double key, V value);
+    }
+
+    /**
+     * 不可修改的映射快照，键是基本类型double
+     */
+    public static final class Entry<V> {
+        final double key;
+        final V value;
+
+        Entry(double key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public double getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry))
+                return false;
+            Entry<?> e = (Entry<?>) o;
+            return Double.compare(key, e.key) == 0 && Objects.equals(value, e.value);
+        }
+
+        // 与Map.Entry的约定相同
+        public int hashCode() {
+            return Double.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    /**
+     * 保存变换后的键
+     */
+    final LongTreeMap<V> map;
+
+    public DoubleTreeMap() {
+        map = new LongTreeMap<>();
+    }
+
+    private DoubleTreeMap(LongTreeMap<V> map) {
+        this.map = map;
+    }
+
+    /**
+     * 由按Double.compare严格升序的keys与对应的values构建，O(n)
+     *
+     * @throws IllegalArgumentException keys不是严格升序或与values长度不同
+     */
+    public static <V> DoubleTreeMap<V> fromSorted(double[] keys, V[] values) {
+        long[] ks = new long[keys.length];
+        for (int i = 0; i < ks.length; ++i)
+            ks[i] = toSortable(keys[i]);
+        return new DoubleTreeMap<>(LongTreeMap.fromSorted(ks, values));
+    }
+
+    /**
+     * double到long的保序变换
+     */
+    static long toSortable(double key) {
+        long bits = Double.doubleToLongBits(key);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    /**
+     * toSortable的逆变换，符号位不变，因此与toSortable是同一个异或
+     */
+    static double fromSortable(long k) {
+        return Double.longBitsToDouble(k ^ ((k >> 63) & Long.MAX_VALUE));
+    }
+
+    public int size() {
+        return map.size;
+    }
+
+    public boolean isEmpty() {
+        return map.size == 0;
+    }
+
+    public V get(double key) {
+        return map.get(toSortable(key));
+    }
+
+    public V getOrDefault(double key, V defaultValue) {
+        return map.getOrDefault(toSortable(key), defaultValue);
+    }
+
+    public boolean containsKey(double key) {
+        return map.containsKey(toSortable(key));
+    }
+
+    public boolean containsValue(Object value) {
+        return map.containsValue(value);
+    }
+
+    public V put(double key, V value) {
+        return map.putVal(toSortable(key), value, false);
+    }
+
+    public V putIfAbsent(double key, V value) {
+        return map.putVal(toSortable(key), value, true);
+    }
+
+    public V remove(double key) {
+        return map.remove(toSortable(key));
+    }
+
+    /**
+     * 与LongTreeMap.computeIfAbsent语义一致
+     */
+    public V computeIfAbsent(double key, DoubleFunction<? extends V> mappingFunction) {
+        if (mappingFunction == null)
+            throw new NullPointerException();
+        return map.computeIfAbsent(toSortable(key), k -> mappingFunction.apply(key));
+    }
+
+    /**
+     * 与LongTreeMap.merge语义一致
+     */
+    public V merge(double key, V value,
+                   BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        return map.merge(toSortable(key), value, remappingFunction);
+    }
+
+    public void clear() {
+        map.clear();
+    }
+
+    /* ---------------- Navigation -------------- */
+
+    public double firstKey() {
+        return fromSortable(map.firstKey());
+    }
+
+    public double lastKey() {
+        return fromSortable(map.lastKey());
+    }
+
+    static <V> Entry<V> entryAt(LongTreeMap.Leaf<V> l, int i) {
+        return (l == null) ? null : new Entry<>(fromSortable(l.keys[i]), l.val(i));
+    }
+
+    public Entry<V> firstEntry() {
+        return entryAt(map.head, 0);
+    }
+
+    public Entry<V> lastEntry() {
+        LongTreeMap.Leaf<V> l = map.tail;
+        return (l == null) ? null : entryAt(l, l.size - 1);
+    }
+
+    public Entry<V> pollFirstEntry() {
+        Entry<V> e = firstEntry();
+        if (e != null)
+            map.remove(toSortable(e.key));
+        return e;
+    }
+
+    public Entry<V> pollLastEntry() {
+        Entry<V> e = lastEntry();
+        if (e != null)
+            map.remove(toSortable(e.key));
+        return e;
+    }
+
+    /**
+     * 与LongTreeMap.seekEntry相同，直接由叶子构造Entry，不经过LongTreeMap.Entry
+     */
+    final Entry<V> seekEntry(double key, int rel) {
+        long k = toSortable(key);
+        LongTreeMap.Leaf<V> l = map.findLeaf(k);
+        if (l == null)
+            return null;
+        int j = LongTreeMap.position(l, k, rel);
+        if (j < 0) {
+            if ((l = l.prev) == null)
+                return null;
+            j = l.size - 1;
+        } else if (j >= l.size) {
+            if ((l = l.next) == null)
+                return null;
+            j = 0;
+        }
+        return entryAt(l, j);
+    }
+
+    public Entry<V> lowerEntry(double key) {
+        return seekEntry(key, LongTreeMap.LT);
+    }
+
+    public Entry<V> floorEntry(double key) {
+        return seekEntry(key, LongTreeMap.LE);
+    }
+
+    public Entry<V> ceilingEntry(double key) {
+        return seekEntry(key, LongTreeMap.GE);
+    }
+
+    public Entry<V> higherEntry(double key) {
+        return seekEntry(key, LongTreeMap.GT);
+    }
+
+    /* ---------------- Range queries -------------- */
+
+    /**
+     * 键在区间内的映射个数，相当于subMap(from, fromInclusive, to, toInclusive).size()
+     *
+     * @throws IllegalArgumentException from按Double.compare大于to
+     */
+    public int countInRange(double from, boolean fromInclusive, double to, boolean toInclusive) {
+        return map.countInRange(toSortable(from), fromInclusive, toSortable(to), toInclusive);
+    }
+
+    public void forEach(DoubleObjectConsumer<? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        for (Cursor c = cursor(); c.advance(); )
+            action.accept(c.key(), c.value());
+    }
+
+    public void forEachInRange(double from, boolean fromInclusive, double to, boolean toInclusive,
+                               DoubleObjectConsumer<? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        for (Cursor c = cursor(from, fromInclusive, to, toInclusive); c.advance(); )
+            action.accept(c.key(), c.value());
+    }
+
+    public Cursor cursor() {
+        return new Cursor(map.cursor());
+    }
+
+    public Cursor descendingCursor() {
+        return new Cursor(map.descendingCursor());
+    }
+
+    /**
+     * @throws IllegalArgumentException from按Double.compare大于to
+     */
+    public Cursor cursor(double from, boolean fromInclusive, double to, boolean toInclusive) {
+        return new Cursor(map.cursor(toSortable(from), fromInclusive, toSortable(to), toInclusive));
+    }
+
+    /**
+     * @throws IllegalArgumentException from按Double.compare大于to
+     */
+    public Cursor descendingCursor(double from, boolean fromInclusive, double to, boolean toInclusive) {
+        return new Cursor(map.descendingCursor(toSortable(from), fromInclusive, toSortable(to), toInclusive));
+    }
+
+    /**
+     * LongTreeMap.Cursor的包装，key()返回变换回来的double
+     */
+    public final class Cursor {
+        final LongTreeMap<V>.Cursor c;
+
+        Cursor(LongTreeMap<V>.Cursor c) {
+            this.c = c;
+        }
+
+        public Cursor reset() {
+            c.reset();
+            return this;
+        }
+
+        public boolean advance() {
+            return c.advance();
+        }
+
+        public double key() {
+            return fromSortable(c.key());
+        }
+
+        public V value() {
+            return c.value();
+        }
+
+        public V setValue(V value) {
+            return c.setValue(value);
+        }
+
+        public void remove() {
+            c.remove();
+        }
+    }
+
+    /**
+     * 浅拷贝：不复制值对象本身
+     */
+    @Override
+    public DoubleTreeMap<V> clone() {
+        return new DoubleTreeMap<>(map.clone());
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder().append('{');
+        for (Cursor c = cursor(); c.advance(); ) {
+            if (sb.length() > 1)
+                sb.append(", ");
+            V v = c.value();
+            sb.append(c.key()).append('=').append(v == this ? "(this Map)" : v);
+        }
+        return sb.append('}').toString();
+    }
+}
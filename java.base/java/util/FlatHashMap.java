@@ -0,0 +1,730 @@
+package java.util;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * 基于开放寻址的扁平哈希表实现的{@code Map}接口（SwissTable风格）
+ * case:
+ * HashMap每次查找至少要经过 table槽位 -> Node -> key 两次指针跳转，且Node分散在堆中。
+ * 这里把键、值分别存放在两个平行的Object[]中，另外为每个槽位维护一个控制字节：
+ * 1、控制字节为0x80表示空槽（EMPTY），0xFE表示已删除（DELETED），
+ * 最高位为0时表示占用，低7位保存哈希指纹h2；
+ * 2、每8个控制字节打包在一个long中组成一组，查找时用SWAR位运算一次比较整组的指纹，
+ * 只有指纹相同的槽位才会去访问keys数组并调用equals；
+ * 3、组之间使用三角数序列探测，容量为2的幂时可以遍历所有组。
+ * <p>
+ * 注意：
+ * 1、与HashMap相同，允许null键和null值，null键在内部以NULL_KEY代替；
+ * 2、负载（占用槽位+已删除槽位）最多为容量的7/8，保证探测总能遇到空槽；
+ * 3、迭代器是fail-fast的，迭代器的remove只把槽位标记为空或已删除，不会移动其它元素。
+ */
+public class FlatHashMap<K, V> extends AbstractMap<K, V>
+        implements Map<K, V>, Cloneable, Serializable {
+
+    private static final long serialVersionUID = 5406289127441723016L;
+
+    /**
+     * 每组的槽位个数，也是最小容量
+     */
+    static final int GROUP_WIDTH = 8;
+
+    /**
+     * 默认初始容量
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * 最大容量
+     */
+    static final int MAXIMUM_CAPACITY = HashMap.MAXIMUM_CAPACITY;
+
+    /**
+     * 控制字节：空槽与已删除
+     */
+    static final byte EMPTY = (byte) 0x80;
+    static final byte DELETED = (byte) 0xFE;
+
+    /**
+     * SWAR常量：每个字节的最低位、最高位
+     */
+    static final long LSBS = 0x0101010101010101L;
+    static final long MSBS = 0x8080808080808080L;
+
+    /**
+     * 整组都是空槽的控制字
+     */
+    static final long EMPTY_GROUP = 0x8080808080808080L;
+
+    /**
+     * null键的占位对象
+     */
+    static final Object NULL_KEY = new Object();
+
+    /* ---------------- Fields -------------- */
+
+    /**
+     * 控制字数组，每个long保存一组8个控制字节；第一次使用时初始化
+     */
+    transient long[] ctrl;
+
+    /**
+     * 与槽位一一对应的键、值数组
+     */
+    transient Object[] keys;
+    transient Object[] vals;
+
+    /**
+     * 映射个数
+     */
+    transient int size;
+
+    /**
+     * 被标记为DELETED的槽位个数，它们同样会拉长探测链，因此计入负载
+     */
+    transient int deleted;
+
+    /**
+     * 结构修改次数，用于fail-fast
+     */
+    transient int modCount;
+
+    /**
+     * 扩容阈值：表未初始化时保存初始容量
+     */
+    int threshold;
+
+    transient Set<Map.Entry<K, V>> entrySet;
+
+    /* ---------------- Public operations -------------- */
+
+    public FlatHashMap(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    initialCapacity);
+        this.threshold = tableSizeFor(initialCapacity);
+    }
+
+    public FlatHashMap() {
+        this.threshold = DEFAULT_INITIAL_CAPACITY;
+    }
+
+    public FlatHashMap(Map<? extends K, ? extends V> m) {
+        this.threshold = tableSizeFor(capacityFor(m.size()));
+        putAll(m);
+    }
+
+    /* ---------------- Static utilities -------------- */
+
+    /**
+     * 不小于cap的2的幂，且至少为一组
+     */
+    static int tableSizeFor(int cap) {
+        return Math.max(GROUP_WIDTH, HashMap.tableSizeFor(cap));
+    }
+
+    /**
+     * 容纳n个映射所需的容量（按7/8负载计算）
+     */
+    static int capacityFor(int n) {
+        long c = (long) n + (n >>> 3) + 1;
+        return (c >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY : (int) c;
+    }
+
+    /**
+     * 容量对应的阈值：容量的7/8
+     */
+    static int thresholdFor(int cap) {
+        return cap - (cap >>> 3);
+    }
+
+    static Object maskNull(Object key) {
+        return (key == null ? NULL_KEY : key);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K> K unmaskNull(Object key) {
+        return (K) (key == NULL_KEY ? null : key);
+    }
+
+    /**
+     * 哈希指纹h2：用乘法把所有位混合到高7位后取出，与决定组下标的低位相互独立
+     */
+    static int h2(int h) {
+        return (h * 0x9E3779B9) >>> 25;
+    }
+
+    /**
+     * 整组中控制字节等于b的位置（每个匹配字节的最高位置1）
+     * case:可能有假阳性（紧跟在真实匹配之后的字节），调用方需要再比较键
+     */
+    static long matchByte(long group, int b) {
+        long x = group ^ (LSBS * b);
+        return (x - LSBS) & ~x & MSBS;
+    }
+
+    /**
+     * 整组中的空槽位置
+     */
+    static long matchEmpty(long group) {
+        return group & ~(group << 6) & MSBS;
+    }
+
+    /**
+     * 整组中的空槽或已删除槽位置
+     */
+    static long matchEmptyOrDeleted(long group) {
+        return group & ~(group << 7) & MSBS;
+    }
+
+    /**
+     * 匹配位图中最低的一个匹配对应的组内偏移
+     */
+    static int lowestOffset(long match) {
+        return Long.numberOfTrailingZeros(match) >>> 3;
+    }
+
+    static byte ctrlAt(long[] c, int i) {
+        return (byte) (c[i >>> 3] >>> ((i & 7) << 3));
+    }
+
+    static void setCtrl(long[] c, int i, byte b) {
+        int shift = (i & 7) << 3;
+        c[i >>> 3] = (c[i >>> 3] & ~(0xFFL << shift)) | ((long) (b & 0xFF) << shift);
+    }
+
+    /* ---------------- Table operations -------------- */
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 查找键（已经过maskNull）所在的槽位，不存在时返回-1
+     */
+    final int findSlot(Object k, int h) {
+        long[] c;
+        if ((c = ctrl) == null)
+            return -1;
+        Object[] ks = keys;
+        int gmask = c.length - 1, fp = h2(h);
+        for (int g = h & gmask, step = 1; ; g = (g + step++) & gmask) {
+            long group = c[g];
+            for (long m = matchByte(group, fp); m != 0; m &= m - 1) {
+                int i = (g << 3) | lowestOffset(m);
+                Object x = ks[i];
+                if (x == k || (x != null && k.equals(x)))
+                    return i;
+            }
+            //组内只要有空槽，说明探测链在此结束
+            if (matchEmpty(group) != 0)
+                return -1;
+        }
+    }
+
+    /**
+     * 沿探测序列找到第一个空槽或已删除槽，调用方保证表中存在空槽
+     */
+    static int findInsertSlot(long[] c, int h) {
+        int gmask = c.length - 1;
+        for (int g = h & gmask, step = 1; ; g = (g + step++) & gmask) {
+            long m = matchEmptyOrDeleted(c[g]);
+            if (m != 0)
+                return (g << 3) | lowestOffset(m);
+        }
+    }
+
+    public V get(Object key) {
+        Object k = maskNull(key);
+        int i = findSlot(k, HashMap.hash(key));
+        return (i < 0) ? null : valueAt(i);
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        Object k = maskNull(key);
+        int i = findSlot(k, HashMap.hash(key));
+        return (i < 0) ? defaultValue : valueAt(i);
+    }
+
+    public boolean containsKey(Object key) {
+        return findSlot(maskNull(key), HashMap.hash(key)) >= 0;
+    }
+
+    public boolean containsValue(Object value) {
+        long[] c;
+        if ((c = ctrl) != null && size > 0) {
+            Object[] vs = vals;
+            for (int i = 0, n = vs.length; i < n; ++i) {
+                if (ctrlAt(c, i) >= 0 && Objects.equals(vs[i], value))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    final V valueAt(int i) {
+        return (V) vals[i];
+    }
+
+    public V put(K key, V value) {
+        return putVal(key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return putVal(key, value, true);
+    }
+
+    /**
+     * put的底层实现，语义与HashMap.putVal一致
+     */
+    final V putVal(K key, V value, boolean onlyIfAbsent) {
+        Object k = maskNull(key);
+        int h = HashMap.hash(key), i;
+        if ((i = findSlot(k, h)) >= 0) {
+            V oldValue = valueAt(i);
+            if (!onlyIfAbsent || oldValue == null)
+                vals[i] = value;
+            return oldValue;
+        }
+        long[] c;
+        if ((c = ctrl) == null)
+            c = resize(threshold);
+        i = findInsertSlot(c, h);
+        if (ctrlAt(c, i) == EMPTY) {
+            //占用一个空槽会使负载增加，必要时先扩容（或清理已删除槽）再重新定位
+            if (size + deleted >= thresholdFor(keys.length)) {
+                c = rehash();
+                i = findInsertSlot(c, h);
+            }
+        } else
+            --deleted;
+        setCtrl(c, i, (byte) h2(h));
+        keys[i] = k;
+        vals[i] = value;
+        ++size;
+        ++modCount;
+        return null;
+    }
+
+    /**
+     * 负载达到上限时调用：已删除槽位较多时原容量重建即可，否则容量翻倍
+     */
+    final long[] rehash() {
+        int cap = keys.length;
+        if (size < (thresholdFor(cap) >>> 1) || cap >= MAXIMUM_CAPACITY) {
+            if (deleted == 0)
+                throw new IllegalStateException("FlatHashMap is full");
+            return resize(cap);
+        }
+        return resize(cap << 1);
+    }
+
+    /**
+     * 以newCap为容量重建表，丢弃所有DELETED标记
+     */
+    final long[] resize(int newCap) {
+        long[] oldCtrl = ctrl;
+        Object[] oldKeys = keys, oldVals = vals;
+        long[] c = new long[newCap >>> 3];
+        Arrays.fill(c, EMPTY_GROUP);
+        Object[] ks = new Object[newCap], vs = new Object[newCap];
+        if (oldCtrl != null) {
+            for (int j = 0, n = oldKeys.length; j < n; ++j) {
+                Object k;
+                if (ctrlAt(oldCtrl, j) >= 0) {
+                    int h = HashMap.hash(unmaskNull(k = oldKeys[j]));
+                    int i = findInsertSlot(c, h);
+                    setCtrl(c, i, (byte) h2(h));
+                    ks[i] = k;
+                    vs[i] = oldVals[j];
+                }
+            }
+        }
+        ctrl = c;
+        keys = ks;
+        vals = vs;
+        deleted = 0;
+        threshold = thresholdFor(newCap);
+        return c;
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        int s = m.size();
+        if (s > 0) {
+            int cap = tableSizeFor(capacityFor(size + s));
+            if (ctrl == null)
+                threshold = Math.max(threshold, cap);
+            else if (cap > keys.length)
+                resize(cap);
+            for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
+                putVal(e.getKey(), e.getValue(), false);
+        }
+    }
+
+    public V remove(Object key) {
+        int i = findSlot(maskNull(key), HashMap.hash(key));
+        if (i < 0)
+            return null;
+        V oldValue = valueAt(i);
+        removeAt(i);
+        return oldValue;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        int i = findSlot(maskNull(key), HashMap.hash(key));
+        if (i < 0 || !Objects.equals(vals[i], value))
+            return false;
+        removeAt(i);
+        return true;
+    }
+
+    /**
+     * 删除槽位i上的映射
+     * case:
+     * 组以8对齐，探测只会在遇到含空槽的组时停止。如果i所在组中已经有空槽，
+     * 就没有探测链穿过该组，可以直接标记为EMPTY；否则只能标记为DELETED。
+     */
+    final void removeAt(int i) {
+        long[] c = ctrl;
+        if (matchEmpty(c[i >>> 3]) != 0)
+            setCtrl(c, i, EMPTY);
+        else {
+            setCtrl(c, i, DELETED);
+            ++deleted;
+        }
+        keys[i] = null;
+        vals[i] = null;
+        --size;
+        ++modCount;
+    }
+
+    public void clear() {
+        modCount++;
+        long[] c;
+        if ((c = ctrl) != null && (size > 0 || deleted > 0)) {
+            size = 0;
+            deleted = 0;
+            Arrays.fill(c, EMPTY_GROUP);
+            Arrays.fill(keys, null);
+            Arrays.fill(vals, null);
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        long[] c;
+        if (action == null)
+            throw new NullPointerException();
+        if (size > 0 && (c = ctrl) != null) {
+            int mc = modCount;
+            Object[] ks = keys, vs = vals;
+            for (int i = 0; i < ks.length && mc == modCount; ++i) {
+                if (ctrlAt(c, i) >= 0)
+                    action.accept(unmaskNull(ks[i]), valueAt(i));
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        long[] c;
+        if (function == null)
+            throw new NullPointerException();
+        if (size > 0 && (c = ctrl) != null) {
+            int mc = modCount;
+            Object[] ks = keys, vs = vals;
+            for (int i = 0; i < ks.length; ++i) {
+                if (ctrlAt(c, i) >= 0)
+                    vs[i] = function.apply(unmaskNull(ks[i]), (V) vs[i]);
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    /* ---------------- Views -------------- */
+
+    public Set<K> keySet() {
+        Set<K> ks = keySet;
+        if (ks == null) {
+            ks = new KeySet();
+            keySet = ks;
+        }
+        return ks;
+    }
+
+    public Collection<V> values() {
+        Collection<V> vs = values;
+        if (vs == null) {
+            vs = new Values();
+            values = vs;
+        }
+        return vs;
+    }
+
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class KeySet extends AbstractSet<K> {
+        public final int size() {
+            return size;
+        }
+
+        public final void clear() {
+            FlatHashMap.this.clear();
+        }
+
+        public final Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        public final boolean remove(Object key) {
+            int i = findSlot(maskNull(key), HashMap.hash(key));
+            if (i < 0)
+                return false;
+            removeAt(i);
+            return true;
+        }
+
+        public final void forEach(Consumer<? super K> action) {
+            if (action == null)
+                throw new NullPointerException();
+            FlatHashMap.this.forEach((k, v) -> action.accept(k));
+        }
+    }
+
+    final class Values extends AbstractCollection<V> {
+        public final int size() {
+            return size;
+        }
+
+        public final void clear() {
+            FlatHashMap.this.clear();
+        }
+
+        public final Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsValue(o);
+        }
+
+        public final void forEach(Consumer<? super V> action) {
+            if (action == null)
+                throw new NullPointerException();
+            FlatHashMap.this.forEach((k, v) -> action.accept(v));
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        public final int size() {
+            return size;
+        }
+
+        public final void clear() {
+            FlatHashMap.this.clear();
+        }
+
+        public final Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object key = e.getKey();
+            int i = findSlot(maskNull(key), HashMap.hash(key));
+            return i >= 0 && Objects.equals(vals[i], e.getValue());
+        }
+
+        public final boolean remove(Object o) {
+            if (o instanceof Map.Entry) {
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                return FlatHashMap.this.remove(e.getKey(), e.getValue());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 迭代器返回的条目：记住所在的槽位，setValue直接写回vals（替换值不是结构修改）
+     * case:与HashMap的节点相同，映射被删除（或扩容后槽位失效）之后setValue只修改条目本身，
+     * 不会把键重新放回映射，也不需要再次探测。
+     */
+    final class SlotEntry extends AbstractMap.SimpleEntry<K, V> {
+        private static final long serialVersionUID = -2591430155960460651L;
+
+        final transient Object[] table;   // keys array the slot belongs to
+        final transient int slot;
+
+        SlotEntry(K key, V value, Object[] table, int slot) {
+            super(key, value);
+            this.table = table;
+            this.slot = slot;
+        }
+
+        public V setValue(V value) {
+            V oldValue = super.setValue(value);
+            Object[] ks = table;
+            if (ks == keys && ks[slot] == maskNull(getKey()))
+                vals[slot] = value;
+            return oldValue;
+        }
+    }
+
+    /* ---------------- Iterators -------------- */
+
+    abstract class FlatIterator {
+        int next;              // next occupied slot, or capacity when exhausted
+        int current = -1;      // slot returned by the last next()
+        int expectedModCount;  // for fast-fail
+
+        FlatIterator() {
+            expectedModCount = modCount;
+            next = (size > 0) ? advance(0) : capacity();
+        }
+
+        final int capacity() {
+            return (keys == null) ? 0 : keys.length;
+        }
+
+        final int advance(int i) {
+            long[] c = ctrl;
+            int n = capacity();
+            while (i < n && ctrlAt(c, i) < 0)
+                ++i;
+            return i;
+        }
+
+        public final boolean hasNext() {
+            return next < capacity();
+        }
+
+        final int nextSlot() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            int i = next;
+            if (i >= capacity())
+                throw new NoSuchElementException();
+            next = advance(i + 1);
+            return current = i;
+        }
+
+        public final void remove() {
+            int i = current;
+            if (i < 0)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            current = -1;
+            removeAt(i);
+            expectedModCount = modCount;
+        }
+    }
+
+    final class KeyIterator extends FlatIterator implements Iterator<K> {
+        public final K next() {
+            return unmaskNull(keys[nextSlot()]);
+        }
+    }
+
+    final class ValueIterator extends FlatIterator implements Iterator<V> {
+        public final V next() {
+            return valueAt(nextSlot());
+        }
+    }
+
+    final class EntryIterator extends FlatIterator implements Iterator<Map.Entry<K, V>> {
+        public final Map.Entry<K, V> next() {
+            int i = nextSlot();
+            return new SlotEntry(unmaskNull(keys[i]), valueAt(i), keys, i);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // Cloning and serialization
+
+    /**
+     * 浅拷贝：复制内部数组，但不复制键值对象本身
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object clone() {
+        FlatHashMap<K, V> result;
+        try {
+            result = (FlatHashMap<K, V>) super.clone();
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+        if (ctrl != null) {
+            result.ctrl = ctrl.clone();
+            result.keys = keys.clone();
+            result.vals = vals.clone();
+        }
+        result.entrySet = null;
+        result.keySet = null;
+        result.values = null;
+        result.modCount = 0;
+        return result;
+    }
+
+    /**
+     * 序列化格式与HashMap相同：容量(int)、映射个数(int)，随后是每个映射的键和值
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+            throws IOException {
+        s.defaultWriteObject();
+        s.writeInt(keys == null ? threshold : keys.length);
+        s.writeInt(size);
+        long[] c;
+        if (size > 0 && (c = ctrl) != null) {
+            for (int i = 0; i < keys.length; ++i) {
+                if (ctrlAt(c, i) >= 0) {
+                    s.writeObject(unmaskNull(keys[i]));
+                    s.writeObject(vals[i]);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(java.io.ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        s.readInt();                // Read and ignore capacity
+        int mappings = s.readInt();
+        if (mappings < 0)
+            throw new InvalidObjectException("Illegal mappings count: " +
+                    mappings);
+        threshold = tableSizeFor(capacityFor(mappings));
+        for (int i = 0; i < mappings; i++) {
+            K key = (K) s.readObject();
+            V value = (V) s.readObject();
+            putVal(key, value, false);
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package java.util;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 构建之后不可修改的紧凑哈希表，用于启动时构建、之后只读的映射
+ * case:
+ * 1、键值交错存放在同一个Object[]中（键在2i，值在2i+1），线性探测，
+ * 命中时键和值通常位于同一条缓存行，没有Node对象，也没有modCount和树化逻辑；
+ * 2、容量在构建时按映射个数一次确定：size*4/3+1，不取整为2的幂，负载固定在3/4左右，
+ * 每个映射约占11字节（压缩指针），HashMap的Node加上桶数组为37~43字节，任何大小下都不到它的一半；
+ * 3、哈希沿用HashMap.hash()，由带种子的HashMap冻结而来时沿用它的种子；
+ * 容量不是2的幂，哈希经过fmix32混合后用乘法取高32位映射到[0, 容量)（见indexFor）。
+ * <p>
+ * 注意：
+ * 1、允许null键和null值，null键在内部以NULL_KEY代替；
+ * 2、所有修改操作都抛出UnsupportedOperationException，即使它们不会改变映射。
+ */
+public final class FrozenHashMap<K, V> extends AbstractMap<K, V>
+        implements Map<K, V>, Serializable {
+
+    private static final long serialVersionUID = -7315027196203417594L;
+
+    /**
+     * null键的占位对象
+     */
+    static final Object NULL_KEY = new Object();
+
+    /**
+     * 最大容量，槽位数组的长度为它的2倍
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 29;
+
+    /**
+     * 键值交错的槽位数组，长度为容量的2倍，键为null表示空槽
+     */
+    transient Object[] table;
+
+    /**
+     * 映射个数
+     */
+    transient int size;
+
+    /**
+     * 哈希种子，为0时使用HashMap.hash()
+     */
+    transient int hashSeed;
+
+    transient Set<Map.Entry<K, V>> entrySet;
+
+    FrozenHashMap(int size, int hashSeed) {
+        this.size = size;
+        this.hashSeed = hashSeed;
+        this.table = new Object[2 * capacityFor(size)];
+    }
+
+    /**
+     * 冻结m，m本身就是FrozenHashMap时直接返回
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> FrozenHashMap<K, V> ofMap(Map<? extends K, ? extends V> m) {
+        if (m instanceof FrozenHashMap)
+            return (FrozenHashMap<K, V>) m;
+        int seed = (m instanceof HashMap) ? ((HashMap<?, ?>) m).hashSeed : 0;
+        FrozenHashMap<K, V> f = new FrozenHashMap<>(m.size(), seed);
+        int n = 0;
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            f.insert(e.getKey(), e.getValue());
+            ++n;
+        }
+        if (n != f.size)
+            throw new ConcurrentModificationException();
+        return f;
+    }
+
+    /* ---------------- Static utilities -------------- */
+
+    /**
+     * 不小于size*4/3，再加1保证至少有一个空槽
+     */
+    static int capacityFor(int size) {
+        long c = (long) size + (size + 2) / 3 + 1;
+        if (c > MAXIMUM_CAPACITY)
+            throw new IllegalArgumentException("Map too large: " + size);
+        return (int) c;
+    }
+
+    /**
+     * 哈希h在容量为cap的表中的初始槽位
+     * case:先经过murmur3的fmix32使各位的差异扩散到高位，再把32位无符号数按比例缩放到[0, cap)，
+     * 不需要取模，容量也不必是2的幂。
+     */
+    static int indexFor(int h, int cap) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return (int) ((h & 0xffffffffL) * cap >>> 32);
+    }
+
+    static Object maskNull(Object key) {
+        return (key == null) ? NULL_KEY : key;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K> K unmaskNull(Object key) {
+        return (key == NULL_KEY) ? null : (K) key;
+    }
+
+    static UnsupportedOperationException uoe() {
+        return new UnsupportedOperationException();
+    }
+
+    final int hashOf(Object key) {
+        int seed;
+        return ((seed = hashSeed) == 0) ? HashMap.hash(key) : HashMap.seededHash(key, seed);
+    }
+
+    /**
+     * 构建时插入，调用方保证key互不相同
+     */
+    final void insert(Object key, Object value) {
+        Object[] tab = table;
+        int n = tab.length;
+        int i = indexFor(hashOf(key), n >>> 1) << 1;
+        while (tab[i] != null) {
+            if ((i += 2) == n)
+                i = 0;
+        }
+        tab[i] = maskNull(key);
+        tab[i + 1] = value;
+    }
+
+    /**
+     * 线性探测查找key所在的槽位（键的下标），不存在时返回-1
+     */
+    final int indexOf(Object key) {
+        Object[] tab = table;
+        Object k = maskNull(key), p;
+        int n = tab.length;
+        for (int i = indexFor(hashOf(key), n >>> 1) << 1; (p = tab[i]) != null; ) {
+            if (p == k || k.equals(p))
+                return i;
+            if ((i += 2) == n)
+                i = 0;
+        }
+        return -1;
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int i;
+        return ((i = indexOf(key)) < 0) ? null : (V) table[i + 1];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(Object key, V defaultValue) {
+        int i;
+        return ((i = indexOf(key)) < 0) ? defaultValue : (V) table[i + 1];
+    }
+
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    public boolean containsValue(Object value) {
+        Object[] tab = table;
+        for (int i = 0; i < tab.length; i += 2) {
+            if (tab[i] != null && Objects.equals(value, tab[i + 1]))
+                return true;
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        Object[] tab = table;
+        for (int i = 0; i < tab.length; i += 2) {
+            Object k;
+            if ((k = tab[i]) != null)
+                action.accept(unmaskNull(k), (V) tab[i + 1]);
+        }
+    }
+
+    public V put(K key, V value) {
+        throw uoe();
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        throw uoe();
+    }
+
+    public V remove(Object key) {
+        throw uoe();
+    }
+
+    public void clear() {
+        throw uoe();
+    }
+
+    public V putIfAbsent(K key, V value) {
+        throw uoe();
+    }
+
+    public boolean remove(Object key, Object value) {
+        throw uoe();
+    }
+
+    public boolean replace(K key, V oldValue, V newValue) {
+        throw uoe();
+    }
+
+    public V replace(K key, V value) {
+        throw uoe();
+    }
+
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        throw uoe();
+    }
+
+    public V computeIfPresent(K key,
+                              BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        throw uoe();
+    }
+
+    public V compute(K key,
+                     BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        throw uoe();
+    }
+
+    public V merge(K key, V value,
+                   BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        throw uoe();
+    }
+
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        throw uoe();
+    }
+
+    /* ---------------- Views -------------- */
+
+    public Set<K> keySet() {
+        Set<K> ks;
+        return (ks = keySet) == null ? (keySet = new KeySet()) : ks;
+    }
+
+    public Collection<V> values() {
+        Collection<V> vs;
+        return (vs = values) == null ? (values = new Values()) : vs;
+    }
+
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class KeySet extends AbstractSet<K> {
+        public int size() {
+            return size;
+        }
+
+        public boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        public Iterator<K> iterator() {
+            return new FrozenIterator<K>() {
+                K at(int i) {
+                    return unmaskNull(table[i]);
+                }
+            };
+        }
+    }
+
+    final class Values extends AbstractCollection<V> {
+        public int size() {
+            return size;
+        }
+
+        public boolean contains(Object o) {
+            return containsValue(o);
+        }
+
+        public Iterator<V> iterator() {
+            return new FrozenIterator<V>() {
+                @SuppressWarnings("unchecked")
+                V at(int i) {
+                    return (V) table[i + 1];
+                }
+            };
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        public int size() {
+            return size;
+        }
+
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            int i;
+            return (i = indexOf(e.getKey())) >= 0 && Objects.equals(e.getValue(), table[i + 1]);
+        }
+
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new FrozenIterator<Map.Entry<K, V>>() {
+                @SuppressWarnings("unchecked")
+                Map.Entry<K, V> at(int i) {
+                    return new AbstractMap.SimpleImmutableEntry<>(unmaskNull(table[i]), (V) table[i + 1]);
+                }
+            };
+        }
+    }
+
+    /**
+     * 按槽位顺序遍历，映射不可变，因此不需要fail-fast检查，也不支持remove
+     */
+    abstract class FrozenIterator<T> implements Iterator<T> {
+        int next;   // 下一个已占用槽位的键下标，没有时为table.length
+
+        FrozenIterator() {
+            next = advance(0);
+        }
+
+        final int advance(int i) {
+            Object[] tab = table;
+            while (i < tab.length && tab[i] == null)
+                i += 2;
+            return i;
+        }
+
+        abstract T at(int i);
+
+        public final boolean hasNext() {
+            return next < table.length;
+        }
+
+        public final T next() {
+            int i = next;
+            if (i >= table.length)
+                throw new NoSuchElementException();
+            next = advance(i + 2);
+            return at(i);
+        }
+    }
+
+    /* ---------------- Serialization -------------- */
+
+    /**
+     * 序列化为是否使用了随机种子(boolean)、映射个数(int)，随后是每个映射的键和值；
+     * 种子本身不写入流中，反序列化时按该标志重新生成
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+            throws IOException {
+        s.defaultWriteObject();
+        s.writeBoolean(hashSeed != 0);
+        s.writeInt(size);
+        Object[] tab = table;
+        for (int i = 0; i < tab.length; i += 2) {
+            if (tab[i] != null) {
+                s.writeObject(unmaskNull(tab[i]));
+                s.writeObject(tab[i + 1]);
+            }
+        }
+    }
+
+    private void readObject(java.io.ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        boolean seeded = s.readBoolean();
+        int mappings = s.readInt();
+        if (mappings < 0)
+            throw new InvalidObjectException("Illegal mappings count: " +
+                    mappings);
+        hashSeed = seeded ? HashMap.newHashSeed() : 0;
+        size = mappings;
+        table = new Object[2 * capacityFor(mappings)];
+        for (int i = 0; i < mappings; i++) {
+            Object key = s.readObject();
+            if (indexOf(key) >= 0)
+                throw new InvalidObjectException("Duplicate key: " + key);
+            insert(key, s.readObject());
+        }
+    }
+}
@@ -11,6 +11,12 @@ import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.IntBinaryOperator;
+import java.util.function.Predicate;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
 
 import jdk.internal.misc.SharedSecrets;
 
@@ -59,6 +65,40 @@ public class HashMap<K, V> extends AbstractMap<K, V>
      */
     static final int MIN_TREEIFY_CAPACITY = 64;
 
+    /**
+     * 有序数组桶的最大节点个数
+     * case:键都是同一个可比较的类时，桶在树化阈值处先转为有序数组桶（见SortedBin），
+     * 超过这个值后插入的移动开销变大，再转为红黑树。
+     */
+    static final int SORTED_BIN_CAPACITY = 64;
+
+    /**
+     * 渐进式扩容模式下，每次get/put/remove最多顺序迁移的旧桶个数
+     * case:新表阈值比旧表多出约0.75*oldCap次插入，只要该值不小于2，
+     * 在下一次扩容前旧表一定已经迁移完毕。
+     */
+    static final int RESIZE_TRANSFER_STEP = 4;
+
+    /**
+     * 分裂迭代器按段统计节点个数时，段的个数最多为2^SPLIT_SEGMENT_BITS
+     */
+    static final int SPLIT_SEGMENT_BITS = 10;
+
+    /**
+     * 映射个数不小于该值时，并行统计各段的节点个数
+     */
+    static final int PARALLEL_COUNT_THRESHOLD = 1 << 16;
+
+    /**
+     * 统计信息中桶长度直方图的格数，最后一格汇总长度不小于TREEIFY_THRESHOLD的桶
+     */
+    static final int STAT_HISTOGRAM_BINS = TREEIFY_THRESHOLD + 1;
+
+    /**
+     * getAll()每批同时发出访存的键个数
+     */
+    static final int GET_ALL_BATCH = 32;
+
     /**
      * 基本的节点定义：继承MAP的Entry内部类
      * case:
@@ -132,6 +172,70 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         return (key == null) ? 0 : (h = key.hashCode()) ^ (h >>> 16);
     }
 
+    /**
+     * 与hash(Object)相同的高低位异或扰动，但直接作用于已经得到的int哈希码。
+     * case:基本类型键的哈希表（IntObjectHashMap等）复用该扰动，避免为计算哈希而装箱。
+     */
+    static final int spreadHash(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 带种子的哈希，结果经过murmur3的fmix32终结函数充分混合
+     * case:
+     * 1、String键不使用hashCode，而是以种子为初值对字符内容做murmur3_32（与JDK 7u6的替代哈希相同），
+     * "Aa"、"BB"这类hashCode相同的字符串在不同种子下也不再冲突；
+     * 2、其它键先把hashCode与种子异或，攻击者不知道种子，就无法构造出在低位（桶下标）上大量冲突的键；
+     * 但hashCode完全相同的非String键仍然冲突，这部分依旧由树形桶兜底。
+     * <p>
+     * 注意：String每次都按长度重新计算，不能利用String缓存的hashCode。
+     */
+    static final int seededHash(Object key, int seed) {
+        if (key == null)
+            return 0;
+        int h = (key instanceof String) ? murmur3(seed, (String) key) : key.hashCode() ^ seed;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * murmur3_32的主循环，每两个char组成一个32位块，末尾不足一块的char单独混入，不含fmix32
+     */
+    static int murmur3(int seed, String s) {
+        int h1 = seed, n = s.length(), i = 0;
+        for (; i + 1 < n; i += 2) {
+            int k1 = s.charAt(i) | (s.charAt(i + 1) << 16);
+            k1 *= 0xcc9e2d51;
+            k1 = Integer.rotateLeft(k1, 15);
+            k1 *= 0x1b873593;
+            h1 ^= k1;
+            h1 = Integer.rotateLeft(h1, 13);
+            h1 = h1 * 5 + 0xe6546b64;
+        }
+        if (i < n) {
+            int k1 = s.charAt(i);
+            k1 *= 0xcc9e2d51;
+            k1 = Integer.rotateLeft(k1, 15);
+            k1 *= 0x1b873593;
+            h1 ^= k1;
+        }
+        //长度按字节计
+        return h1 ^ (n << 1);
+    }
+
+    /**
+     * 生成一个非0的随机种子
+     */
+    static int newHashSeed() {
+        int seed;
+        while ((seed = ThreadLocalRandom.current().nextInt()) == 0)
+            ;
+        return seed;
+    }
+
     /**
      * Returns x's Class if it is of the form "class C implements
      * Comparable<C>", else null.
@@ -227,6 +331,46 @@ public class HashMap<K, V> extends AbstractMap<K, V>
      */
     final float loadFactor;
 
+    /**
+     * 是否使用渐进式扩容
+     * case:为true时resize()只分配新表，旧表中的桶由后续的get/put/remove分批迁移，
+     * 单次操作的最坏耗时不再随映射大小增长。
+     */
+    final boolean incrementalResize;
+
+    /**
+     * 是否使用带随机种子的哈希
+     */
+    final boolean seededHash;
+
+    /**
+     * 本实例的哈希种子，为0时使用经典的hash()；只保存在内存中，反序列化时重新生成
+     */
+    transient int hashSeed;
+
+    /**
+     * 渐进式扩容中尚未迁移完的旧表，没有迁移进行时为null
+     * case:旧桶j中的节点只会迁移到新表的j与j+oldCap两个桶，操作某个key之前先迁移它所在的旧桶，
+     * 因此getNode/putVal/removeNode之后的逻辑只需要面对table。
+     */
+    transient Node<K, V>[] oldTable;
+
+    /**
+     * 下一个需要顺序迁移的旧桶下标
+     */
+    transient int transferIndex;
+
+    /**
+     * 分裂迭代器使用的按段节点计数，第一次按计数切分时建立，
+     * 以table和modCount校验是否仍然有效
+     */
+    transient SegmentCounts splitCounts;
+
+    /**
+     * 扩容与树化计数器，为null（默认）时不做任何统计
+     */
+    transient StatCounters statCounters;
+
     /* ---------------- Public operations -------------- */
 
     /**
@@ -238,6 +382,35 @@ public class HashMap<K, V> extends AbstractMap<K, V>
      * 2、第一次初始化的阈值为大于初始化参数的最近2次幂的数值
      */
     public HashMap(int initialCapacity, float loadFactor) {
+        this(initialCapacity, loadFactor, false, false);
+    }
+
+    /**
+     * 可以选择渐进式扩容的构造器
+     * <p>
+     * 注意：
+     * 1、渐进式扩容时新旧两张表会短暂共存，内存峰值与一次性扩容相同；
+     * 2、迁移由get等读操作推进，因此即便只有读操作，多线程共享时也必须外部同步。
+     *
+     * @param incrementalResize 为true时扩容分摊到后续的get/put/remove中完成
+     */
+    public HashMap(int initialCapacity, float loadFactor, boolean incrementalResize) {
+        this(initialCapacity, loadFactor, incrementalResize, false);
+    }
+
+    /**
+     * 可以选择渐进式扩容以及带种子哈希的构造器
+     * <p>
+     * 注意：
+     * 1、键来自不可信输入（例如公开API的请求参数）时使用带种子的哈希，
+     * 每个实例有各自的随机种子，攻击者无法预先构造出落在同一个桶中的大量键；
+     * 2、带种子的哈希比hash()多两次乘法，String键还要按内容重新计算（见seededHash），
+     * 并且映射的遍历顺序随实例变化。
+     *
+     * @param seededHash 为true时使用seededHash()代替hash()
+     */
+    public HashMap(int initialCapacity, float loadFactor,
+                   boolean incrementalResize, boolean seededHash) {
         if (initialCapacity < 0)
             throw new IllegalArgumentException("Illegal initial capacity: " +
                     initialCapacity);
@@ -247,6 +420,9 @@ public class HashMap<K, V> extends AbstractMap<K, V>
             throw new IllegalArgumentException("Illegal load factor: " +
                     loadFactor);
         this.loadFactor = loadFactor;
+        this.incrementalResize = incrementalResize;
+        this.seededHash = seededHash;
+        this.hashSeed = seededHash ? newHashSeed() : 0;
         //这里需要注意，第一次初始化的阈值为大于初始化参数的最近2次幂的数值
         this.threshold = tableSizeFor(initialCapacity);
     }
@@ -263,6 +439,8 @@ public class HashMap<K, V> extends AbstractMap<K, V>
      */
     public HashMap() {
         this.loadFactor = DEFAULT_LOAD_FACTOR; // all other fields defaulted
+        this.incrementalResize = false;
+        this.seededHash = false;
     }
 
     /**
@@ -270,6 +448,8 @@ public class HashMap<K, V> extends AbstractMap<K, V>
      */
     public HashMap(Map<? extends K, ? extends V> m) {
         this.loadFactor = DEFAULT_LOAD_FACTOR;
+        this.incrementalResize = false;
+        this.seededHash = false;
         putMapEntries(m, false);
     }
 
@@ -279,6 +459,13 @@ public class HashMap<K, V> extends AbstractMap<K, V>
     final void putMapEntries(Map<? extends K, ? extends V> m, boolean evict) {
         int s = m.size();
         if (s > 0) {
+            //空表从另一个HashMap（迁移已完成、哈希种子相同）拷贝时，直接按桶复制节点
+            if (size == 0 && m instanceof HashMap && canCopyNodes() &&
+                    ((HashMap<? extends K, ? extends V>) m).oldTable == null &&
+                    ((HashMap<? extends K, ? extends V>) m).hashSeed == hashSeed) {
+                copyNodes((HashMap<? extends K, ? extends V>) m);
+                return;
+            }
             if (table == null) { // pre-size
                 float ft = ((float) s / loadFactor) + 1.0F;
                 int t = ((ft < (float) MAXIMUM_CAPACITY) ?
@@ -293,11 +480,83 @@ public class HashMap<K, V> extends AbstractMap<K, V>
             for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
                 K key = e.getKey();
                 V value = e.getValue();
-                putVal(hash(key), key, value, false, evict);
+                putVal(hashOf(key), key, value, false, evict);
             }
         }
     }
 
+    /**
+     * putMapEntries能否走copyNodes的批量拷贝路径
+     * case:copyNodes按桶而不是按m的迭代顺序插入，也不调用afterNodeInsertion，
+     * 依赖插入顺序或该回调的子类（如JDK的LinkedHashMap）不能使用，
+     * 因此默认只有HashMap本身返回true，子类确认不依赖这些时可以覆盖。
+     */
+    boolean canCopyNodes() {
+        return getClass() == HashMap.class;
+    }
+
+    /**
+     * putMapEntries的批量拷贝路径，只在本表为空时调用
+     * case:
+     * 1、按源表大小一次性预分配，之后不会再触发resize；
+     * 2、逐桶复制节点并直接复用源节点中缓存的hash，不再调用hash()、putVal()、
+     * afterNodeAccess/afterNodeInsertion，modCount也只增加一次；
+     * 3、源表的树形桶同样通过next链表遍历，全部拷贝成普通节点后，
+     * 再扫描目标表，对长度达到TREEIFY_THRESHOLD的目标桶各做一次树化。
+     */
+    final void copyNodes(HashMap<? extends K, ? extends V> m) {
+        Node<? extends K, ? extends V>[] src = m.table;
+        int s = m.size;
+        float ft = ((float) s / loadFactor) + 1.0F;
+        int t = ((ft < (float) MAXIMUM_CAPACITY) ?
+                (int) ft : MAXIMUM_CAPACITY);
+        //本表为空，可以直接丢弃尚未完成的渐进式迁移
+        oldTable = null;
+        transferIndex = 0;
+        Node<K, V>[] tab = table;
+        if (tab == null || tab.length < t) {
+            table = null;
+            threshold = Math.max(tableSizeFor(t), (tab == null) ? threshold : tab.length);
+            tab = resize();
+        }
+        int n = tab.length;
+        for (Node<? extends K, ? extends V> b : src) {
+            for (Node<? extends K, ? extends V> e = b; e != null; e = e.next) {
+                int i = e.hash & (n - 1);
+                tab[i] = newNode(e.hash, e.key, e.value, tab[i]);
+            }
+        }
+        size = s;
+        //源表比本表大时多个源桶会合并进同一个目标桶，因此复制完后逐桶检查长度，而不是只看源桶
+        for (int i = 0; i < tab.length; ++i) {
+            Node<K, V> p = tab[i];
+            if (p instanceof TreeNode || p instanceof SortedNode)
+                continue;
+            int c = 0;
+            for (Node<K, V> q = p; q != null && c < TREEIFY_THRESHOLD; q = q.next)
+                ++c;
+            if (c >= TREEIFY_THRESHOLD) {
+                treeifyBin(tab, p.hash);
+                //表太小时treeifyBin改为扩容，在新表上重新检查
+                if (table != tab) {
+                    if (oldTable != null)
+                        finishTransfer();
+                    tab = table;
+                    i = -1;
+                }
+            }
+        }
+        ++modCount;
+    }
+
+    /**
+     * 本实例使用的哈希函数：没有种子时就是hash()
+     */
+    final int hashOf(Object key) {
+        int seed;
+        return ((seed = hashSeed) == 0) ? hash(key) : seededHash(key, seed);
+    }
+
     /**
      * 获取大小
      */
@@ -320,7 +579,7 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         Node<K, V> e;
         //guess getNode is :by hashValue of key and adjust key == Node.key()
         //this is why can be only key in the hashMap,if not only, in the linked collision may find lots of value!!!
-        return (e = getNode(hash(key), key)) == null ? null : e.value;
+        return (e = getNode(hashOf(key), key)) == null ? null : e.value;
     }
 
     /**
@@ -332,6 +591,8 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         Node<K, V> first, e;
         int n;
         K k;
+        if (oldTable != null)
+            advanceTransfer(hash);
         if ((tab = table) != null && (n = tab.length) > 0 &&
                 (first = tab[(n - 1) & hash]) != null) {
             if (first.hash == hash && // always check first node
@@ -342,6 +603,8 @@ public class HashMap<K, V> extends AbstractMap<K, V>
                 //如果是树节点，则进入树形查找
                 if (first instanceof TreeNode)
                     return ((TreeNode<K, V>) first).getTreeNode(hash, key);
+                if (first instanceof SortedNode)
+                    return ((SortedNode<K, V>) first).bin.find(hash, key);
                 do {
                     //如果是链式节点，则进行遍历
                     if (e.hash == hash &&
@@ -357,14 +620,88 @@ public class HashMap<K, V> extends AbstractMap<K, V>
      * 调用getNode进行链式或者树形查找。
      */
     public boolean containsKey(Object key) {
-        return getNode(hash(key), key) != null;
+        return getNode(hashOf(key), key) != null;
+    }
+
+    /**
+     * 批量查找：out[i]为keys[i]对应的值，不存在时为null
+     * case:
+     * 每GET_ALL_BATCH个键为一批，分三步完成：
+     * 1、先计算整批的hash（渐进式扩容时顺带迁移对应的旧桶）；
+     * 2、再依次读出各个桶的首节点，这些读取彼此独立，CPU可以让它们的缓存缺失重叠；
+     * 3、最后比较首节点，只有首节点不匹配的键才沿着链表或树继续查找。
+     * 逐个调用get()时，下一次访存要等上一次的缓存缺失返回之后才会发出。
+     * 注意：与getNode()相同，不会调用afterNodeAccess()。
+     *
+     * @return 找到映射的键的个数
+     * @throws IllegalArgumentException 如果out比keys短
+     */
+    public int getAll(K[] keys, V[] out) {
+        int n = keys.length;
+        if (out.length < n)
+            throw new IllegalArgumentException("Output array too short: " +
+                    out.length + " < " + n);
+        int found = 0;
+        int batch = Math.min(n, GET_ALL_BATCH);
+        int[] hashes = new int[batch];
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        Node<K, V>[] firsts = (Node<K, V>[]) new Node[batch];
+        for (int base = 0; base < n; base += batch) {
+            int m = Math.min(batch, n - base);
+            for (int i = 0; i < m; ++i) {
+                int h = hashes[i] = hashOf(keys[base + i]);
+                if (oldTable != null)
+                    advanceTransfer(h);
+            }
+            Node<K, V>[] tab = table;
+            if (tab == null || size == 0) {
+                Arrays.fill(out, base, n, null);
+                break;
+            }
+            int mask = tab.length - 1;
+            for (int i = 0; i < m; ++i)
+                firsts[i] = tab[hashes[i] & mask];
+            for (int i = 0; i < m; ++i) {
+                Node<K, V> first = firsts[i], e = null;
+                firsts[i] = null;
+                if (first != null) {
+                    Object key = keys[base + i];
+                    int hash = hashes[i];
+                    K k;
+                    if (first.hash == hash &&
+                            ((k = first.key) == key || (key != null && key.equals(k))))
+                        e = first;
+                    else if (first.next != null) {
+                        if (first instanceof TreeNode)
+                            e = ((TreeNode<K, V>) first).getTreeNode(hash, key);
+                        else if (first instanceof SortedNode)
+                            e = ((SortedNode<K, V>) first).bin.find(hash, key);
+                        else {
+                            for (Node<K, V> p = first.next; p != null; p = p.next) {
+                                if (p.hash == hash &&
+                                        ((k = p.key) == key || (key != null && key.equals(k)))) {
+                                    e = p;
+                                    break;
+                                }
+                            }
+                        }
+                    }
+                }
+                if (e != null) {
+                    out[base + i] = e.value;
+                    ++found;
+                } else
+                    out[base + i] = null;
+            }
+        }
+        return found;
     }
 
     /**
      * 添加时候，如果已经存在相同的key，则会替代掉原有的value
      */
     public V put(K key, V value) {
-        return putVal(hash(key), key, value, false, true);
+        return putVal(hashOf(key), key, value, false, true);
     }
 
     /**
@@ -378,6 +715,8 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         int n, i;
         if ((tab = table) == null || (n = tab.length) == 0)
             n = (tab = resize()).length;
+        else if (oldTable != null)
+            advanceTransfer(hash);
         if ((p = tab[i = (n - 1) & hash]) == null)
             tab[i] = newNode(hash, key, value, null);
         else {
@@ -389,6 +728,9 @@ public class HashMap<K, V> extends AbstractMap<K, V>
             else if (p instanceof TreeNode)
                 //树形添加
                 e = ((TreeNode<K, V>) p).putTreeVal(this, tab, hash, key, value);
+            else if (p instanceof SortedNode)
+                //有序数组桶添加
+                e = ((SortedNode<K, V>) p).bin.putSortedVal(this, tab, hash, key, value);
             else {
                 for (int binCount = 0; ; ++binCount) {
                     //到遍历到尾部
@@ -431,6 +773,13 @@ public class HashMap<K, V> extends AbstractMap<K, V>
      * 执行扩容操作
      */
     final Node<K, V>[] resize() {
+        //上一次渐进式扩容还没有完成时，先把它做完
+        if (oldTable != null)
+            finishTransfer();
+        //旧表的分段计数不再有用，避免它继续持有旧表
+        splitCounts = null;
+        StatCounters sc = statCounters;
+        long start = (sc != null) ? System.nanoTime() : 0L;
         //获取老的表
         Node<K, V>[] oldTab = table;
         //获取容量
@@ -469,59 +818,116 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         table = newTab;
         //oldTab还存在对原表的引用。
         if (oldTab != null) {
-            for (int j = 0; j < oldCap; ++j) {
-                Node<K, V> e;
-                if ((e = oldTab[j]) != null) {
-                    oldTab[j] = null;
-                    if (e.next == null)
-                        //与全局的hash位置定位采用相同算法：hashCode&(length-1)
-                        newTab[e.hash & (newCap - 1)] = e;
-                    else if (e instanceof TreeNode)
-                        //如果原本的桶是红黑树，则进行分裂
-                        ((TreeNode<K, V>) e).split(this, newTab, j, oldCap);
-                    else {
-                        //此处表示为链表结构，同样把链表转移到newCap中，就是把链表遍历后，把值转过去，在置位null
-                        Node<K, V> loHead = null, loTail = null;
-                        Node<K, V> hiHead = null, hiTail = null;
-                        Node<K, V> next;
-                        do {
-                            next = e.next;
-                            //如果index!=0,则操作hi部分；index=0才会操作低部分。
-                            if ((e.hash & oldCap) == 0) {
-                                if (loTail == null)
-                                    loHead = e;
-                                else
-                                    loTail.next = e;
-                                loTail = e;
-                            } else {
-                                if (hiTail == null)
-                                    hiHead = e;
-                                else
-                                    hiTail.next = e;
-                                hiTail = e;
-                            }
-                        } while ((e = next) != null);
-                        if (loTail != null) {
-                            //(e.hash & oldCap) == 0，则会放到j索引位置
-                            loTail.next = null;
-                            newTab[j] = loHead;
-                        }
-                        if (hiTail != null) {
-                            //(e.hash & oldCap) ！= 0，则会放到j+oldCap索引位置
-                            hiTail.next = null;
-                            newTab[j + oldCap] = hiHead;
-                        }
-                    }
+            if (incrementalResize) {
+                //渐进式扩容：只记录旧表，桶的迁移交给后续操作
+                oldTable = oldTab;
+                transferIndex = 0;
+            } else {
+                for (int j = 0; j < oldCap; ++j) {
+                    if (oldTab[j] != null)
+                        transferBin(oldTab, j, newTab);
                 }
             }
         }
+        if (sc != null)
+            sc.recordResize(System.nanoTime() - start);
         return newTab;
     }
 
+    /**
+     * 把旧表中下标为j的桶迁移到新表（容量为旧表的2倍）
+     * case:
+     * 桶中节点只会落到新表的j或j+oldCap位置，由(e.hash & oldCap)是否为0决定。
+     */
+    final void transferBin(Node<K, V>[] oldTab, int j, Node<K, V>[] newTab) {
+        int oldCap = oldTab.length;
+        Node<K, V> e = oldTab[j];
+        oldTab[j] = null;
+        if (e.next == null)
+            //与全局的hash位置定位采用相同算法：hashCode&(length-1)
+            newTab[e.hash & (newTab.length - 1)] = e;
+        else if (e instanceof TreeNode)
+            //如果原本的桶是红黑树，则进行分裂
+            ((TreeNode<K, V>) e).split(this, newTab, j, oldCap);
+        else if (e instanceof SortedNode)
+            ((SortedNode<K, V>) e).bin.split(this, newTab, j, oldCap);
+        else {
+            //此处表示为链表结构，同样把链表转移到newCap中，就是把链表遍历后，把值转过去，在置位null
+            Node<K, V> loHead = null, loTail = null;
+            Node<K, V> hiHead = null, hiTail = null;
+            Node<K, V> next;
+            do {
+                next = e.next;
+                //如果index!=0,则操作hi部分；index=0才会操作低部分。
+                if ((e.hash & oldCap) == 0) {
+                    if (loTail == null)
+                        loHead = e;
+                    else
+                        loTail.next = e;
+                    loTail = e;
+                } else {
+                    if (hiTail == null)
+                        hiHead = e;
+                    else
+                        hiTail.next = e;
+                    hiTail = e;
+                }
+            } while ((e = next) != null);
+            if (loTail != null) {
+                //(e.hash & oldCap) == 0，则会放到j索引位置
+                loTail.next = null;
+                newTab[j] = loHead;
+            }
+            if (hiTail != null) {
+                //(e.hash & oldCap) ！= 0，则会放到j+oldCap索引位置
+                hiTail.next = null;
+                newTab[j + oldCap] = hiHead;
+            }
+        }
+    }
+
+    /**
+     * 渐进式扩容的一步，只在oldTable不为null时调用
+     * case:
+     * 1、先迁移hash所在的旧桶，之后对该key的操作只需要查找新表；
+     * 2、再从transferIndex开始顺序检查最多RESIZE_TRANSFER_STEP个旧桶（空桶也计数），
+     * 保证单次操作的迁移工作量有上界。
+     */
+    final void advanceTransfer(int hash) {
+        Node<K, V>[] oldTab = oldTable, newTab = table;
+        int oldCap = oldTab.length, j;
+        if (oldTab[j = hash & (oldCap - 1)] != null)
+            transferBin(oldTab, j, newTab);
+        int i = transferIndex, bound = Math.min(i + RESIZE_TRANSFER_STEP, oldCap);
+        for (; i < bound; ++i) {
+            if (oldTab[i] != null)
+                transferBin(oldTab, i, newTab);
+        }
+        if ((transferIndex = i) >= oldCap) {
+            oldTable = null;
+            transferIndex = 0;
+        }
+    }
+
+    /**
+     * 一次性完成剩余的迁移，只在oldTable不为null时调用
+     * case:遍历整张表（迭代器、forEach、序列化等）本身就是O(n)的，在此之前直接完成迁移。
+     */
+    final void finishTransfer() {
+        Node<K, V>[] oldTab = oldTable, newTab = table;
+        for (int i = transferIndex; i < oldTab.length; ++i) {
+            if (oldTab[i] != null)
+                transferBin(oldTab, i, newTab);
+        }
+        oldTable = null;
+        transferIndex = 0;
+    }
+
     /**
      * 桶的树化
      * case:
-     * table.length>=MIN_TREEIFY_CAPACITY 这个容量为hash的数组长度。
+     * 1、table.length>=MIN_TREEIFY_CAPACITY 这个容量为hash的数组长度；
+     * 2、键都是同一个可比较的类、且supportsSortedBins()时转为有序数组桶，否则转为红黑树。
      */
     final void treeifyBin(Node<K, V>[] tab, int hash) {
         int n, index;
@@ -529,24 +935,37 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         if (tab == null || (n = tab.length) < MIN_TREEIFY_CAPACITY)
             resize();
         else if ((e = tab[index = (n - 1) & hash]) != null) {
-            TreeNode<K, V> hd = null, tl = null;
-            do {
-                //Node节点转化称为树节点
-                TreeNode<K, V> p = replacementTreeNode(e, null);
-                if (tl == null)
-                    hd = p;
-                else {
-                    p.prev = tl;
-                    tl.next = p;
-                }
-                tl = p;
-            } while ((e = e.next) != null);
-            if ((tab[index] = hd) != null)
-                //树形调整
-                hd.treeify(tab);
+            Class<?> kc;
+            if (!supportsSortedBins() || (kc = SortedBin.sortableClassOf(e)) == null ||
+                    !SortedBin.sortBin(this, tab, index, kc))
+                treeifyChain(tab, index);
+            if (statCounters != null)
+                ++statCounters.treeifications;
         }
     }
 
+    /**
+     * 把tab[index]处的链表（可以是有序数组桶）转化为红黑树
+     */
+    final void treeifyChain(Node<K, V>[] tab, int index) {
+        Node<K, V> e = tab[index];
+        TreeNode<K, V> hd = null, tl = null;
+        do {
+            //Node节点转化称为树节点
+            TreeNode<K, V> p = replacementTreeNode(e, null);
+            if (tl == null)
+                hd = p;
+            else {
+                p.prev = tl;
+                tl.next = p;
+            }
+            tl = p;
+        } while ((e = e.next) != null);
+        tab[index] = hd;
+        //树形调整
+        hd.treeify(tab);
+    }
+
     /**
      * 将一个map全部添加进去。
      */
@@ -560,7 +979,7 @@ public class HashMap<K, V> extends AbstractMap<K, V>
     public V remove(Object key) {
         Node<K, V> e;
         //value=null;matchValue=false;代表无需用值去匹配，只要键相同即可删除
-        return (e = removeNode(hash(key), key, null, false, true)) == null ?
+        return (e = removeNode(hashOf(key), key, null, false, true)) == null ?
                 null : e.value;
     }
 
@@ -579,6 +998,8 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         Node<K, V>[] tab;
         Node<K, V> p;
         int n, index;
+        if (oldTable != null)
+            advanceTransfer(hash);
         if ((tab = table) != null && (n = tab.length) > 0 &&
                 (p = tab[index = (n - 1) & hash]) != null) {
             Node<K, V> node = null, e;
@@ -590,6 +1011,8 @@ public class HashMap<K, V> extends AbstractMap<K, V>
             else if ((e = p.next) != null) {
                 if (p instanceof TreeNode)
                     node = ((TreeNode<K, V>) p).getTreeNode(hash, key);
+                else if (p instanceof SortedNode)
+                    node = ((SortedNode<K, V>) p).bin.find(hash, key);
                 else {
                     do {
                         if (e.hash == hash &&
@@ -606,6 +1029,8 @@ public class HashMap<K, V> extends AbstractMap<K, V>
                     (value != null && value.equals(v)))) {
                 if (node instanceof TreeNode)
                     ((TreeNode<K, V>) node).removeTreeNode(this, tab, movable);
+                else if (node instanceof SortedNode)
+                    ((SortedNode<K, V>) node).bin.removeSortedNode(this, tab, (SortedNode<K, V>) node, movable);
                 else if (node == p)
                     tab[index] = node.next;
                 else
@@ -619,6 +1044,119 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         return null;
     }
 
+    /**
+     * 视图的removeIf、removeAll与retainAll使用的批量删除，摘除filter为true的节点
+     * case:
+     * 1、每个桶只遍历一次，链表桶边遍历边摘除，不需要像removeNode()那样为每个节点重新定位桶；
+     * 2、红黑树桶与有序数组桶先对桶内所有节点求值，再整体重建；
+     * 3、modCount只增加一次，删除后调用shrinkIfSparse()。
+     * 注意：filter抛出异常时，已经摘除的节点仍然是删除状态，映射保持一致。
+     */
+    final boolean removeNodesIf(Predicate<? super Node<K, V>> filter) {
+        Node<K, V>[] tab;
+        if (filter == null)
+            throw new NullPointerException();
+        if (oldTable != null)
+            finishTransfer();
+        if (size == 0 || (tab = table) == null)
+            return false;
+        int mc = modCount, removed = 0;
+        try {
+            for (int i = 0; i < tab.length; ++i) {
+                Node<K, V> first;
+                if ((first = tab[i]) == null)
+                    continue;
+                if (first instanceof TreeNode)
+                    removed += ((TreeNode<K, V>) first).removeNodesIf(this, tab, i, filter);
+                else if (first instanceof SortedNode)
+                    removed += ((SortedNode<K, V>) first).bin.removeNodesIf(this, tab, i, filter);
+                else {
+                    for (Node<K, V> p = null, e = first, next; e != null; e = next) {
+                        next = e.next;
+                        if (filter.test(e)) {
+                            if (p == null)
+                                tab[i] = next;
+                            else
+                                p.next = next;
+                            --size;
+                            ++removed;
+                            afterNodeRemoval(e);
+                        } else
+                            p = e;
+                    }
+                }
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        } finally {
+            if (removed > 0)
+                ++modCount;
+        }
+        if (removed == 0)
+            return false;
+        shrinkIfSparse();
+        return true;
+    }
+
+    /**
+     * 批量删除后的缩容
+     * case:
+     * 1、size不到threshold的1/4且容量大于DEFAULT_INITIAL_CAPACITY时，缩到size约为新阈值一半的容量，
+     * 留出余量，避免随后的插入马上又扩容；
+     * 2、新容量整除旧容量，旧桶j中的节点都落到新表的j & (newCap - 1)；红黑树桶与有序数组桶先还原为链表，
+     * 合并后过长的桶重新树化；
+     * 3、渐进式扩容模式下同样一次完成，调用方的批量删除本身就是O(n)的。
+     * 注意：单个remove()从不缩容，只在removeNodesIf()之后调用。
+     */
+    final void shrinkIfSparse() {
+        Node<K, V>[] oldTab = table;
+        int oldCap;
+        if (oldTab == null || (oldCap = oldTab.length) <= DEFAULT_INITIAL_CAPACITY ||
+                size >= (threshold >>> 2))
+            return;
+        float ft = (float) (size << 1) / loadFactor + 1.0f;
+        int newCap = Math.max(DEFAULT_INITIAL_CAPACITY,
+                tableSizeFor(ft < (float) MAXIMUM_CAPACITY ? (int) ft : MAXIMUM_CAPACITY));
+        if (newCap >= oldCap)
+            return;
+        StatCounters sc = statCounters;
+        long start = (sc != null) ? System.nanoTime() : 0L;
+        splitCounts = null;
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        Node<K, V>[] newTab = (Node<K, V>[]) new Node[newCap];
+        int mask = newCap - 1;
+        for (int j = 0; j < oldCap; ++j) {
+            Node<K, V> e, t;
+            if ((e = oldTab[j]) == null)
+                continue;
+            oldTab[j] = null;
+            if (e instanceof TreeNode)
+                e = ((TreeNode<K, V>) e).untreeify(this);
+            else if (e instanceof SortedNode) {
+                SortedBin<K, V> b = ((SortedNode<K, V>) e).bin;
+                e = SortedBin.untreeify(this, b.nodes, b.size);
+            }
+            //整条链表接到新桶的头部
+            for (t = e; t.next != null; t = t.next)
+                ;
+            t.next = newTab[j & mask];
+            newTab[j & mask] = e;
+        }
+        table = newTab;
+        threshold = (int) (newCap * loadFactor);
+        if (newCap >= MIN_TREEIFY_CAPACITY) {
+            for (int i = 0; i < newCap; ++i) {
+                int len = 0;
+                for (Node<K, V> e = newTab[i]; e != null && len <= TREEIFY_THRESHOLD; e = e.next)
+                    ++len;
+                if (len > TREEIFY_THRESHOLD)
+                    treeifyBin(newTab, newTab[i].hash);
+            }
+        }
+        if (sc != null)
+            sc.recordResize(System.nanoTime() - start);
+    }
+
     /**
      * Removes all of the mappings from this map.
      * The map will be empty after this call returns.
@@ -626,6 +1164,9 @@ public class HashMap<K, V> extends AbstractMap<K, V>
     public void clear() {
         Node<K, V>[] tab;
         modCount++;
+        oldTable = null;
+        transferIndex = 0;
+        splitCounts = null;
         if ((tab = table) != null && size > 0) {
             size = 0;
             for (int i = 0; i < tab.length; ++i)
@@ -633,6 +1174,151 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         }
     }
 
+    /**
+     * 开启或关闭扩容与树化的计数，每次开启都会把计数清零
+     * case:
+     * 关闭时（默认）resize()与treeifyBin()只多一次null判断；开启后每次resize()多两次System.nanoTime()。
+     * 计数不会被clone()与序列化带到新的映射中。
+     */
+    public void setStatisticsEnabled(boolean enabled) {
+        statCounters = enabled ? new StatCounters() : null;
+    }
+
+    /**
+     * 扫描整张表得到统计信息
+     */
+    public Statistics statistics() {
+        return statistics(Integer.MAX_VALUE);
+    }
+
+    /**
+     * 统计信息，桶长度直方图与树形桶个数只在最多sampleBins个等间隔的桶上采样，
+     * 采样起点随机，因此大表上的开销与映射大小无关
+     *
+     * @throws IllegalArgumentException 如果sampleBins不是正数
+     */
+    public Statistics statistics(int sampleBins) {
+        if (sampleBins <= 0)
+            throw new IllegalArgumentException("Illegal sample size: " + sampleBins);
+        if (oldTable != null)
+            finishTransfer();
+        Node<K, V>[] tab = table;
+        long[] histogram = new long[STAT_HISTOGRAM_BINS];
+        int sampled = 0, treeBins = 0, maxBinLength = 0;
+        if (tab != null) {
+            int n = tab.length;
+            int stride = (sampleBins >= n) ? 1 : (n + sampleBins - 1) / sampleBins;
+            int i = (stride == 1) ? 0 : ThreadLocalRandom.current().nextInt(stride);
+            for (; i < n; i += stride, ++sampled) {
+                Node<K, V> e = tab[i];
+                if (e instanceof TreeNode || e instanceof SortedNode)
+                    ++treeBins;
+                int len = 0;
+                for (; e != null; e = e.next)
+                    ++len;
+                ++histogram[Math.min(len, STAT_HISTOGRAM_BINS - 1)];
+                if (len > maxBinLength)
+                    maxBinLength = len;
+            }
+        }
+        StatCounters sc = statCounters;
+        return new Statistics(size, (tab == null) ? 0 : tab.length, sampled, histogram,
+                treeBins, maxBinLength, sc);
+    }
+
+    /**
+     * 由resize()与treeifyBin()更新的计数，只在开启统计时存在
+     */
+    static final class StatCounters {
+        int resizes;
+        long resizeNanos;
+        int treeifications;
+
+        void recordResize(long nanos) {
+            ++resizes;
+            resizeNanos += nanos;
+        }
+    }
+
+    /**
+     * statistics()返回的不可变统计快照
+     * case:
+     * 1、binLengthHistogram()[i]为长度为i的桶个数，最后一格是长度不小于TREEIFY_THRESHOLD的桶，
+     * 空桶多、同时长桶也多通常说明键的hashCode()分布很差；
+     * 2、直方图、treeBins与maxBinLength只覆盖sampledBins个桶，需要时按capacity/sampledBins放大，
+     * treeBins与treeifyCount都包括有序数组桶；
+     * 3、未开启计数时resizeCount等计数为-1。渐进式扩容分摊到后续操作中的迁移时间不计入resizeNanos。
+     */
+    public static final class Statistics {
+        private final int size;
+        private final int capacity;
+        private final int sampledBins;
+        private final long[] histogram;
+        private final int treeBins;
+        private final int maxBinLength;
+        private final int resizes;
+        private final long resizeNanos;
+        private final int treeifications;
+
+        Statistics(int size, int capacity, int sampledBins, long[] histogram,
+                   int treeBins, int maxBinLength, StatCounters sc) {
+            this.size = size;
+            this.capacity = capacity;
+            this.sampledBins = sampledBins;
+            this.histogram = histogram;
+            this.treeBins = treeBins;
+            this.maxBinLength = maxBinLength;
+            this.resizes = (sc == null) ? -1 : sc.resizes;
+            this.resizeNanos = (sc == null) ? -1L : sc.resizeNanos;
+            this.treeifications = (sc == null) ? -1 : sc.treeifications;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int capacity() {
+            return capacity;
+        }
+
+        public int sampledBins() {
+            return sampledBins;
+        }
+
+        public long[] binLengthHistogram() {
+            return histogram.clone();
+        }
+
+        public int treeBins() {
+            return treeBins;
+        }
+
+        public int maxBinLength() {
+            return maxBinLength;
+        }
+
+        public int resizeCount() {
+            return resizes;
+        }
+
+        public long resizeNanos() {
+            return resizeNanos;
+        }
+
+        public int treeifyCount() {
+            return treeifications;
+        }
+
+        public String toString() {
+            return "Statistics{size=" + size + ", capacity=" + capacity +
+                    ", sampledBins=" + sampledBins +
+                    ", histogram=" + Arrays.toString(histogram) +
+                    ", treeBins=" + treeBins + ", maxBinLength=" + maxBinLength +
+                    ", resizes=" + resizes + ", resizeNanos=" + resizeNanos +
+                    ", treeifications=" + treeifications + '}';
+        }
+    }
+
     /**
      * Returns {@code true} if this map maps one or more keys to the
      * specified value.
@@ -644,6 +1330,8 @@ public class HashMap<K, V> extends AbstractMap<K, V>
     public boolean containsValue(Object value) {
         Node<K, V>[] tab;
         V v;
+        if (oldTable != null)
+            finishTransfer();
         if ((tab = table) != null && size > 0) {
             for (Node<K, V> e : tab) {
                 for (; e != null; e = e.next) {
@@ -698,17 +1386,35 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         }
         //移除
         public final boolean remove(Object key) {
-            return removeNode(hash(key), key, null, false, true) != null;
+            return removeNode(hashOf(key), key, null, false, true) != null;
         }
         //分裂迭代器
         public final Spliterator<K> spliterator() {
             return new KeySpliterator<>(HashMap.this, 0, -1, 0, 0);
         }
+        //批量删除，见removeNodesIf
+        public final boolean removeIf(Predicate<? super K> filter) {
+            Objects.requireNonNull(filter);
+            return removeNodesIf(e -> filter.test(e.key));
+        }
+
+        public final boolean removeAll(Collection<?> c) {
+            Objects.requireNonNull(c);
+            //c比较小时逐个删除更快
+            return (size > c.size()) ? super.removeAll(c) : removeNodesIf(e -> c.contains(e.key));
+        }
+
+        public final boolean retainAll(Collection<?> c) {
+            Objects.requireNonNull(c);
+            return removeNodesIf(e -> !c.contains(e.key));
+        }
         //foreach调用的实现
         public final void forEach(Consumer<? super K> action) {
             Node<K, V>[] tab;
             if (action == null)
                 throw new NullPointerException();
+            if (oldTable != null)
+                finishTransfer();
             if (size > 0 && (tab = table) != null) {
                 int mc = modCount;
                 for (Node<K, V> e : tab) {
@@ -766,10 +1472,27 @@ public class HashMap<K, V> extends AbstractMap<K, V>
             return new ValueSpliterator<>(HashMap.this, 0, -1, 0, 0);
         }
 
+        public final boolean removeIf(Predicate<? super V> filter) {
+            Objects.requireNonNull(filter);
+            return removeNodesIf(e -> filter.test(e.value));
+        }
+
+        public final boolean removeAll(Collection<?> c) {
+            Objects.requireNonNull(c);
+            return removeNodesIf(e -> c.contains(e.value));
+        }
+
+        public final boolean retainAll(Collection<?> c) {
+            Objects.requireNonNull(c);
+            return removeNodesIf(e -> !c.contains(e.value));
+        }
+
         public final void forEach(Consumer<? super V> action) {
             Node<K, V>[] tab;
             if (action == null)
                 throw new NullPointerException();
+            if (oldTable != null)
+                finishTransfer();
             if (size > 0 && (tab = table) != null) {
                 int mc = modCount;
                 for (Node<K, V> e : tab) {
@@ -821,7 +1544,7 @@ public class HashMap<K, V> extends AbstractMap<K, V>
                 return false;
             Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
             Object key = e.getKey();
-            Node<K, V> candidate = getNode(hash(key), key);
+            Node<K, V> candidate = getNode(hashOf(key), key);
             return candidate != null && candidate.equals(e);
         }
 
@@ -830,7 +1553,7 @@ public class HashMap<K, V> extends AbstractMap<K, V>
                 Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
                 Object key = e.getKey();
                 Object value = e.getValue();
-                return removeNode(hash(key), key, value, true, true) != null;
+                return removeNode(hashOf(key), key, value, true, true) != null;
             }
             return false;
         }
@@ -839,10 +1562,26 @@ public class HashMap<K, V> extends AbstractMap<K, V>
             return new EntrySpliterator<>(HashMap.this, 0, -1, 0, 0);
         }
 
+        public final boolean removeIf(Predicate<? super Map.Entry<K, V>> filter) {
+            return removeNodesIf(filter);
+        }
+
+        public final boolean removeAll(Collection<?> c) {
+            Objects.requireNonNull(c);
+            return (size > c.size()) ? super.removeAll(c) : removeNodesIf(c::contains);
+        }
+
+        public final boolean retainAll(Collection<?> c) {
+            Objects.requireNonNull(c);
+            return removeNodesIf(e -> !c.contains(e));
+        }
+
         public final void forEach(Consumer<? super Map.Entry<K, V>> action) {
             Node<K, V>[] tab;
             if (action == null)
                 throw new NullPointerException();
+            if (oldTable != null)
+                finishTransfer();
             if (size > 0 && (tab = table) != null) {
                 int mc = modCount;
                 for (Node<K, V> e : tab) {
@@ -867,24 +1606,24 @@ public class HashMap<K, V> extends AbstractMap<K, V>
     @Override
     public V getOrDefault(Object key, V defaultValue) {
         Node<K, V> e;
-        return (e = getNode(hash(key), key)) == null ? defaultValue : e.value;
+        return (e = getNode(hashOf(key), key)) == null ? defaultValue : e.value;
     }
 
     @Override
     public V putIfAbsent(K key, V value) {
-        return putVal(hash(key), key, value, true, true);
+        return putVal(hashOf(key), key, value, true, true);
     }
 
     @Override
     public boolean remove(Object key, Object value) {
-        return removeNode(hash(key), key, value, true, true) != null;
+        return removeNode(hashOf(key), key, value, true, true) != null;
     }
 
     @Override
     public boolean replace(K key, V oldValue, V newValue) {
         Node<K, V> e;
         V v;
-        if ((e = getNode(hash(key), key)) != null &&
+        if ((e = getNode(hashOf(key), key)) != null &&
                 ((v = e.value) == oldValue || (v != null && v.equals(oldValue)))) {
             e.value = newValue;
             afterNodeAccess(e);
@@ -896,7 +1635,7 @@ public class HashMap<K, V> extends AbstractMap<K, V>
     @Override
     public V replace(K key, V value) {
         Node<K, V> e;
-        if ((e = getNode(hash(key), key)) != null) {
+        if ((e = getNode(hashOf(key), key)) != null) {
             V oldValue = e.value;
             e.value = value;
             afterNodeAccess(e);
@@ -920,19 +1659,24 @@ public class HashMap<K, V> extends AbstractMap<K, V>
                              Function<? super K, ? extends V> mappingFunction) {
         if (mappingFunction == null)
             throw new NullPointerException();
-        int hash = hash(key);
+        int hash = hashOf(key);
         Node<K, V>[] tab;
         Node<K, V> first;
         int n, i;
         int binCount = 0;
         TreeNode<K, V> t = null;
+        SortedBin<K, V> sb = null;
         Node<K, V> old = null;
         if (size > threshold || (tab = table) == null ||
                 (n = tab.length) == 0)
             n = (tab = resize()).length;
+        if (oldTable != null)
+            advanceTransfer(hash);
         if ((first = tab[i = (n - 1) & hash]) != null) {
             if (first instanceof TreeNode)
                 old = (t = (TreeNode<K, V>) first).getTreeNode(hash, key);
+            else if (first instanceof SortedNode)
+                old = (sb = ((SortedNode<K, V>) first).bin).find(hash, key);
             else {
                 Node<K, V> e = first;
                 K k;
@@ -964,6 +1708,8 @@ public class HashMap<K, V> extends AbstractMap<K, V>
             return v;
         } else if (t != null)
             t.putTreeVal(this, tab, hash, key, v);
+        else if (sb != null)
+            sb.putSortedVal(this, tab, hash, key, v);
         else {
             tab[i] = newNode(hash, key, v, first);
             if (binCount >= TREEIFY_THRESHOLD - 1)
@@ -992,7 +1738,7 @@ public class HashMap<K, V> extends AbstractMap<K, V>
             throw new NullPointerException();
         Node<K, V> e;
         V oldValue;
-        int hash = hash(key);
+        int hash = hashOf(key);
         if ((e = getNode(hash, key)) != null &&
                 (oldValue = e.value) != null) {
             int mc = modCount;
@@ -1025,19 +1771,24 @@ public class HashMap<K, V> extends AbstractMap<K, V>
                      BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
         if (remappingFunction == null)
             throw new NullPointerException();
-        int hash = hash(key);
+        int hash = hashOf(key);
         Node<K, V>[] tab;
         Node<K, V> first;
         int n, i;
         int binCount = 0;
         TreeNode<K, V> t = null;
+        SortedBin<K, V> sb = null;
         Node<K, V> old = null;
         if (size > threshold || (tab = table) == null ||
                 (n = tab.length) == 0)
             n = (tab = resize()).length;
+        if (oldTable != null)
+            advanceTransfer(hash);
         if ((first = tab[i = (n - 1) & hash]) != null) {
             if (first instanceof TreeNode)
                 old = (t = (TreeNode<K, V>) first).getTreeNode(hash, key);
+            else if (first instanceof SortedNode)
+                old = (sb = ((SortedNode<K, V>) first).bin).find(hash, key);
             else {
                 Node<K, V> e = first;
                 K k;
@@ -1066,6 +1817,8 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         } else if (v != null) {
             if (t != null)
                 t.putTreeVal(this, tab, hash, key, v);
+            else if (sb != null)
+                sb.putSortedVal(this, tab, hash, key, v);
             else {
                 tab[i] = newNode(hash, key, v, first);
                 if (binCount >= TREEIFY_THRESHOLD - 1)
@@ -1095,19 +1848,24 @@ public class HashMap<K, V> extends AbstractMap<K, V>
             throw new NullPointerException();
         if (remappingFunction == null)
             throw new NullPointerException();
-        int hash = hash(key);
+        int hash = hashOf(key);
         Node<K, V>[] tab;
         Node<K, V> first;
         int n, i;
         int binCount = 0;
         TreeNode<K, V> t = null;
+        SortedBin<K, V> sb = null;
         Node<K, V> old = null;
         if (size > threshold || (tab = table) == null ||
                 (n = tab.length) == 0)
             n = (tab = resize()).length;
+        if (oldTable != null)
+            advanceTransfer(hash);
         if ((first = tab[i = (n - 1) & hash]) != null) {
             if (first instanceof TreeNode)
                 old = (t = (TreeNode<K, V>) first).getTreeNode(hash, key);
+            else if (first instanceof SortedNode)
+                old = (sb = ((SortedNode<K, V>) first).bin).find(hash, key);
             else {
                 Node<K, V> e = first;
                 K k;
@@ -1142,6 +1900,8 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         if (value != null) {
             if (t != null)
                 t.putTreeVal(this, tab, hash, key, value);
+            else if (sb != null)
+                sb.putSortedVal(this, tab, hash, key, value);
             else {
                 tab[i] = newNode(hash, key, value, first);
                 if (binCount >= TREEIFY_THRESHOLD - 1)
@@ -1159,6 +1919,8 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         Node<K, V>[] tab;
         if (action == null)
             throw new NullPointerException();
+        if (oldTable != null)
+            finishTransfer();
         if (size > 0 && (tab = table) != null) {
             int mc = modCount;
             for (Node<K, V> e : tab) {
@@ -1170,20 +1932,193 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         }
     }
 
-    @Override
-    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
-        Node<K, V>[] tab;
-        if (function == null)
-            throw new NullPointerException();
-        if (size > 0 && (tab = table) != null) {
-            int mc = modCount;
-            for (Node<K, V> e : tab) {
-                for (; e != null; e = e.next) {
-                    e.value = function.apply(e.key, e.value);
+    @Override
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        Node<K, V>[] tab;
+        if (function == null)
+            throw new NullPointerException();
+        if (oldTable != null)
+            finishTransfer();
+        if (size > 0 && (tab = table) != null) {
+            int mc = modCount;
+            for (Node<K, V> e : tab) {
+                for (; e != null; e = e.next) {
+                    e.value = function.apply(e.key, e.value);
+                }
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // Parallel bulk operations
+
+    /*
+     * 以下批量操作参照ConcurrentHashMap的批量操作：映射个数不小于parallelismThreshold时，
+     * 把table按下标区间切分后交给ForkJoinPool.commonPool()并行处理，否则顺序执行。
+     * parallelismThreshold为Long.MAX_VALUE时总是顺序执行，为1时尽可能并行。
+     * 与顺序版本相同，结束时比较modCount以保持fail-fast语义；
+     * 执行期间不能对本映射做任何结构修改，回调之间也没有同步，由调用方保证线程安全。
+     */
+
+    /**
+     * 对每个映射并行执行action
+     *
+     * @param parallelismThreshold 并行执行所需的（估计）映射个数
+     * @throws ConcurrentModificationException 如果检测到执行期间发生了结构修改
+     */
+    public void parallelForEach(long parallelismThreshold,
+                                BiConsumer<? super K, ? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        bulkApply(parallelismThreshold, e -> action.accept(e.key, e.value));
+    }
+
+    /**
+     * 并行地把每个映射的值替换为function的结果
+     *
+     * @param parallelismThreshold 并行执行所需的（估计）映射个数
+     * @throws ConcurrentModificationException 如果检测到执行期间发生了结构修改
+     */
+    public void parallelReplaceAll(long parallelismThreshold,
+                                   BiFunction<? super K, ? super V, ? extends V> function) {
+        if (function == null)
+            throw new NullPointerException();
+        bulkApply(parallelismThreshold, e -> e.value = function.apply(e.key, e.value));
+    }
+
+    /**
+     * 并行地对每个映射执行transformer，再用reducer合并所有非null的结果
+     *
+     * @param parallelismThreshold 并行执行所需的（估计）映射个数
+     * @return 合并结果，没有任何非null的转换结果时返回null
+     * @throws ConcurrentModificationException 如果检测到执行期间发生了结构修改
+     */
+    public <U> U parallelReduce(long parallelismThreshold,
+                                BiFunction<? super K, ? super V, ? extends U> transformer,
+                                BiFunction<? super U, ? super U, ? extends U> reducer) {
+        Node<K, V>[] tab;
+        if (transformer == null || reducer == null)
+            throw new NullPointerException();
+        if (oldTable != null)
+            finishTransfer();
+        U r = null;
+        if (size > 0 && (tab = table) != null) {
+            int mc = modCount;
+            ReduceTask<K, V, U> task = new ReduceTask<>(tab, 0, tab.length,
+                    bulkBatchSize(parallelismThreshold, tab.length), transformer, reducer);
+            r = (task.batch >= tab.length) ? task.compute() :
+                    ForkJoinPool.commonPool().invoke(task);
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+        return r;
+    }
+
+    /**
+     * parallelForEach/parallelReplaceAll的公共实现
+     */
+    final void bulkApply(long parallelismThreshold, Consumer<Node<K, V>> action) {
+        Node<K, V>[] tab;
+        if (oldTable != null)
+            finishTransfer();
+        if (size > 0 && (tab = table) != null) {
+            int mc = modCount;
+            ForEachTask<K, V> task = new ForEachTask<>(tab, 0, tab.length,
+                    bulkBatchSize(parallelismThreshold, tab.length), action);
+            if (task.batch >= tab.length)
+                task.compute();
+            else
+                ForkJoinPool.commonPool().invoke(task);
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * 每个叶子任务处理的桶个数：映射个数小于阈值或公共池没有并行度时返回n（即顺序执行），
+     * 否则把表大致切成并行度的8倍份，给负载不均的桶留出任务窃取的余地。
+     */
+    final int bulkBatchSize(long parallelismThreshold, int n) {
+        int p = ForkJoinPool.getCommonPoolParallelism();
+        if (size < parallelismThreshold || p <= 1)
+            return n;
+        return Math.max(1, n / (p << 3));
+    }
+
+    /**
+     * 对table[lo, hi)中的节点执行action，区间大于batch时二分后分别执行
+     */
+    static final class ForEachTask<K, V> extends RecursiveAction {
+        private static final long serialVersionUID = -2541386823616513440L;
+        final Node<K, V>[] tab;
+        final int lo, hi, batch;
+        final Consumer<Node<K, V>> action;
+
+        ForEachTask(Node<K, V>[] tab, int lo, int hi, int batch,
+                    Consumer<Node<K, V>> action) {
+            this.tab = tab;
+            this.lo = lo;
+            this.hi = hi;
+            this.batch = batch;
+            this.action = action;
+        }
+
+        protected void compute() {
+            if (hi - lo > batch) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new ForEachTask<>(tab, lo, mid, batch, action),
+                        new ForEachTask<>(tab, mid, hi, batch, action));
+            } else {
+                for (int i = lo; i < hi; ++i) {
+                    for (Node<K, V> e = tab[i]; e != null; e = e.next)
+                        action.accept(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 对table[lo, hi)中的节点做转换与合并，区间大于batch时二分后合并两边结果
+     */
+    static final class ReduceTask<K, V, U> extends RecursiveTask<U> {
+        private static final long serialVersionUID = 8394817524097622419L;
+        final Node<K, V>[] tab;
+        final int lo, hi, batch;
+        final BiFunction<? super K, ? super V, ? extends U> transformer;
+        final BiFunction<? super U, ? super U, ? extends U> reducer;
+
+        ReduceTask(Node<K, V>[] tab, int lo, int hi, int batch,
+                   BiFunction<? super K, ? super V, ? extends U> transformer,
+                   BiFunction<? super U, ? super U, ? extends U> reducer) {
+            this.tab = tab;
+            this.lo = lo;
+            this.hi = hi;
+            this.batch = batch;
+            this.transformer = transformer;
+            this.reducer = reducer;
+        }
+
+        protected U compute() {
+            if (hi - lo > batch) {
+                int mid = (lo + hi) >>> 1;
+                ReduceTask<K, V, U> right =
+                        new ReduceTask<>(tab, mid, hi, batch, transformer, reducer);
+                right.fork();
+                U l = new ReduceTask<>(tab, lo, mid, batch, transformer, reducer).compute();
+                U r = right.join();
+                return (l == null) ? r : (r == null) ? l : reducer.apply(l, r);
+            }
+            U result = null;
+            for (int i = lo; i < hi; ++i) {
+                for (Node<K, V> e = tab[i]; e != null; e = e.next) {
+                    U u;
+                    if ((u = transformer.apply(e.key, e.value)) != null)
+                        result = (result == null) ? u : reducer.apply(result, u);
                 }
             }
-            if (modCount != mc)
-                throw new ConcurrentModificationException();
+            return result;
         }
     }
 
@@ -1211,6 +2146,15 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         return result;
     }
 
+    /**
+     * 返回当前映射的不可变紧凑副本，之后对本映射的修改不会反映到副本中
+     *
+     * @see FrozenHashMap#ofMap(Map)
+     */
+    public FrozenHashMap<K, V> freeze() {
+        return FrozenHashMap.ofMap(this);
+    }
+
     // These methods are also used when serializing HashSets
     final float loadFactor() {
         return loadFactor;
@@ -1252,6 +2196,8 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         // Read in the threshold (ignored), loadfactor, and any hidden stuff
         s.defaultReadObject();
         reinitialize();
+        //种子不写入流中，反序列化得到的映射使用新的随机种子
+        hashSeed = seededHash ? newHashSeed() : 0;
         if (loadFactor <= 0 || Float.isNaN(loadFactor))
             throw new InvalidObjectException("Illegal load factor: " +
                     loadFactor);
@@ -1287,7 +2233,7 @@ public class HashMap<K, V> extends AbstractMap<K, V>
                 K key = (K) s.readObject();
                 @SuppressWarnings("unchecked")
                 V value = (V) s.readObject();
-                putVal(hash(key), key, value, false, false);
+                putVal(hashOf(key), key, value, false, false);
             }
         }
     }
@@ -1301,6 +2247,8 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         int expectedModCount;  // for fast-fail
         int index;             // current slot
         HashIterator() {
+            if (oldTable != null)
+                finishTransfer();
             expectedModCount = modCount;
             Node<K, V>[] t = table;
             current = next = null;
@@ -1359,9 +2307,220 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         }
     }
 
+    /**
+     * 返回一个遍历本映射的游标
+     * case:
+     * 与keySet().iterator()不同，游标不经过keySet/entrySet视图，
+     * 通过reset()可以反复使用同一个游标，热点路径上的循环因此不再分配对象；
+     * 游标只在局部使用时，JIT的逃逸分析通常可以把这次分配也消除掉。
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * 直接在table上移动的游标，用法：
+     * <pre>
+     * for (HashMap.Cursor c = map.cursor(); c.advance(); )
+     *     use(c.key(), c.value());
+     * </pre>
+     * 与迭代器一样是fail-fast的：创建或reset()之后，除了游标自己的remove()/setValue()，
+     * 任何结构修改都会让下一次advance()抛出ConcurrentModificationException。
+     */
+    public final class Cursor {
+        Node<K, V> next;        // next entry to visit
+        Node<K, V> current;     // current entry
+        int expectedModCount;  // for fast-fail
+        int index;             // current slot
+
+        Cursor() {
+            reset();
+        }
+
+        /**
+         * 回到第一个映射之前，可以在映射被修改之后重新使用
+         */
+        public Cursor reset() {
+            if (oldTable != null)
+                finishTransfer();
+            expectedModCount = modCount;
+            Node<K, V>[] t = table;
+            current = next = null;
+            index = 0;
+            if (t != null && size > 0) {
+                do {
+                } while (index < t.length && (next = t[index++]) == null);
+            }
+            return this;
+        }
+
+        /**
+         * 移动到下一个映射，没有更多映射时返回false
+         */
+        public boolean advance() {
+            Node<K, V>[] t;
+            Node<K, V> e = next;
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (e == null) {
+                current = null;
+                return false;
+            }
+            //与HashIterator相同，提前取出下一个节点，remove()之后仍可继续前进
+            if ((next = (current = e).next) == null && (t = table) != null) {
+                do {
+                } while (index < t.length && (next = t[index++]) == null);
+            }
+            return true;
+        }
+
+        public K key() {
+            return currentNode().key;
+        }
+
+        public V value() {
+            return currentNode().value;
+        }
+
+        /**
+         * 替换当前映射的值，不是结构修改
+         */
+        public V setValue(V value) {
+            return currentNode().setValue(value);
+        }
+
+        /**
+         * 删除当前映射，之后直到下一次advance()都没有当前映射
+         */
+        public void remove() {
+            Node<K, V> p = currentNode();
+            current = null;
+            removeNode(p.hash, p.key, null, false, false);
+            expectedModCount = modCount;
+        }
+
+        final Node<K, V> currentNode() {
+            Node<K, V> e;
+            if ((e = current) == null)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            return e;
+        }
+    }
+
     /* ------------------------------------------------------------ */
     // spliterators
 
+    /**
+     * table按段统计的节点个数（前缀和），供分裂迭代器按实际节点个数切分
+     * case:
+     * 1、每段包含2^shift个桶，段数最多为2^SPLIT_SEGMENT_BITS，prefix[s]为前s段的节点总数；
+     * 2、任意区间[lo, hi)的节点个数 = 首尾不完整段中逐桶计数 + 中间完整段的前缀和之差，
+     * 逐桶计数的部分最多两段，因此切分代价与映射大小无关；
+     * 3、建立后只读，通过final字段安全发布，多个工作线程可以同时使用；
+     * 4、桶的计数由counter完成，HashSet的表也用它切分。
+     */
+    static final class SegmentCounts {
+        final Object[] tab;
+        final int modCount;
+        final int shift;
+        final int[] prefix;
+        final IntBinaryOperator counter;    // (lo, hi) -> tab[lo, hi)中的节点个数
+
+        SegmentCounts(Object[] tab, int modCount, int shift, int[] prefix,
+                      IntBinaryOperator counter) {
+            this.tab = tab;
+            this.modCount = modCount;
+            this.shift = shift;
+            this.prefix = prefix;
+            this.counter = counter;
+        }
+
+        /**
+         * 统计表tab的按段节点计数
+         * case:size较大时用Arrays.parallelSetAll并行统计各段，避免切分前的串行全表扫描
+         */
+        static SegmentCounts build(Object[] tab, int modCount, int size,
+                                   IntBinaryOperator counter) {
+            int n = tab.length;
+            final int shift = Math.max(0, Integer.numberOfTrailingZeros(n) - SPLIT_SEGMENT_BITS);
+            int segments = n >>> shift;
+            int[] prefix = new int[segments + 1];
+            if (size >= PARALLEL_COUNT_THRESHOLD) {
+                Arrays.parallelSetAll(prefix, i ->
+                        (i == 0) ? 0 : counter.applyAsInt((i - 1) << shift, i << shift));
+                Arrays.parallelPrefix(prefix, Integer::sum);
+            } else {
+                for (int i = 0; i < segments; ++i)
+                    prefix[i + 1] = prefix[i] + counter.applyAsInt(i << shift, (i + 1) << shift);
+            }
+            return new SegmentCounts(tab, modCount, shift, prefix, counter);
+        }
+
+        /**
+         * 区间[lo, hi)中的节点个数
+         */
+        int count(int lo, int hi) {
+            int shift = this.shift;
+            int as = (lo + (1 << shift) - 1) >>> shift, bs = hi >>> shift;
+            if (as >= bs)
+                return counter.applyAsInt(lo, hi);
+            return counter.applyAsInt(lo, as << shift) + prefix[bs] - prefix[as] +
+                    counter.applyAsInt(bs << shift, hi);
+        }
+
+        /**
+         * 为区间[lo, hi)选择切分点：区间内有段边界时，选择两边节点数最接近的段边界，
+         * 否则（区间落在同一段内）按下标二分
+         */
+        int splitPoint(int lo, int hi) {
+            int shift = this.shift;
+            int a = (lo >>> shift) + 1, b = (hi - 1) >>> shift;
+            if (a > b)
+                return (lo + hi) >>> 1;
+            int[] p = prefix;
+            int target = (p[lo >>> shift] + p[b + 1]) >>> 1;
+            int l = a, h = b;
+            while (l < h) {
+                int m = (l + h) >>> 1;
+                if (p[m] < target)
+                    l = m + 1;
+                else
+                    h = m;
+            }
+            if (l > a && target - p[l - 1] < p[l] - target)
+                --l;
+            return l << shift;
+        }
+    }
+
+    /**
+     * 统计tab[lo, hi)中的节点个数（树形桶同样通过next链表遍历）
+     */
+    static int countBins(Node<?, ?>[] tab, int lo, int hi) {
+        int c = 0;
+        for (int i = lo; i < hi; ++i) {
+            for (Node<?, ?> e = tab[i]; e != null; e = e.next)
+                ++c;
+        }
+        return c;
+    }
+
+    /**
+     * 返回当前table的按段节点计数，缓存失效时重新统计
+     */
+    final SegmentCounts segmentCounts() {
+        final Node<K, V>[] tab;
+        SegmentCounts sc;
+        if ((tab = table) == null)
+            return null;
+        if ((sc = splitCounts) != null && sc.tab == tab && sc.modCount == modCount)
+            return sc;
+        return splitCounts = SegmentCounts.build(tab, modCount, size,
+                (lo, hi) -> countBins(tab, lo, hi));
+    }
+
     static class HashMapSpliterator<K, V> {
         final HashMap<K, V> map;
         Node<K, V> current;          // current node
@@ -1369,6 +2528,8 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         int fence;                  // one past last index
         int est;                    // size estimate
         int expectedModCount;       // for comodification checks
+        boolean exact;              // est is an exact count, set by split
+        int splitEst;               // size estimate of the range handed out by split
         HashMapSpliterator(HashMap<K, V> m, int origin,
                            int fence, int est,
                            int expectedModCount) {
@@ -1382,7 +2543,10 @@ public class HashMap<K, V> extends AbstractMap<K, V>
             int hi;
             if ((hi = fence) < 0) {
                 HashMap<K, V> m = map;
+                if (m.oldTable != null)
+                    m.finishTransfer();
                 est = m.size;
+                exact = true;
                 expectedModCount = m.modCount;
                 Node<K, V>[] tab = m.table;
                 hi = fence = (tab == null) ? 0 : tab.length;
@@ -1393,6 +2557,41 @@ public class HashMap<K, V> extends AbstractMap<K, V>
             getFence(); // force init
             return (long) est;
         }
+
+        /**
+         * 切分出[lo, mid)交给新的分裂迭代器，返回lo，不能切分时返回-1
+         * case:
+         * 映射在绑定后没有被修改时，按段节点计数选择切分点，使两边的节点个数接近，
+         * 并且两边的est都是精确值（SIZED|SUBSIZED）；否则退化为按下标二分、est减半。
+         * 切分成功后index为mid，est为剩余部分的估计，被切出部分的估计为splitEst。
+         */
+        final int split() {
+            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+            if (lo >= mid || current != null)
+                return -1;
+            HashMap<K, V> m = map;
+            SegmentCounts sc;
+            if (m.modCount == expectedModCount && m.table != null &&
+                    m.table.length >= hi && (sc = m.segmentCounts()) != null) {
+                mid = sc.splitPoint(lo, hi);
+                splitEst = sc.count(lo, mid);
+                est = sc.count(mid, hi);
+                exact = true;
+            } else {
+                splitEst = est >>>= 1;
+                exact = false;
+            }
+            index = mid;
+            return lo;
+        }
+
+        /**
+         * SIZED：尚未绑定、est为精确计数或覆盖整个映射；SUBSIZED：按计数切分的结果均为精确值
+         */
+        final int sizeCharacteristics() {
+            return (fence < 0 || exact) ? Spliterator.SIZED | Spliterator.SUBSIZED :
+                    (est == map.size) ? Spliterator.SIZED : 0;
+        }
     }
     static final class KeySpliterator<K, V>
             extends HashMapSpliterator<K, V>
@@ -1403,10 +2602,13 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         }
 
         public KeySpliterator<K, V> trySplit() {
-            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
-            return (lo >= mid || current != null) ? null :
-                    new KeySpliterator<>(map, lo, index = mid, est >>>= 1,
-                            expectedModCount);
+            int lo;
+            if ((lo = split()) < 0)
+                return null;
+            KeySpliterator<K, V> s = new KeySpliterator<>(map, lo, index, splitEst,
+                    expectedModCount);
+            s.exact = exact;
+            return s;
         }
 
         public void forEachRemaining(Consumer<? super K> action) {
@@ -1416,6 +2618,8 @@ public class HashMap<K, V> extends AbstractMap<K, V>
             HashMap<K, V> m = map;
             Node<K, V>[] tab = m.table;
             if ((hi = fence) < 0) {
+                if (m.oldTable != null)
+                    m.finishTransfer();
                 mc = expectedModCount = m.modCount;
                 hi = fence = (tab == null) ? 0 : tab.length;
             } else
@@ -1460,8 +2664,7 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         }
 
         public int characteristics() {
-            return (fence < 0 || est == map.size ? Spliterator.SIZED : 0) |
-                    Spliterator.DISTINCT;
+            return sizeCharacteristics() | Spliterator.DISTINCT;
         }
     }
 
@@ -1474,10 +2677,13 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         }
 
         public ValueSpliterator<K, V> trySplit() {
-            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
-            return (lo >= mid || current != null) ? null :
-                    new ValueSpliterator<>(map, lo, index = mid, est >>>= 1,
-                            expectedModCount);
+            int lo;
+            if ((lo = split()) < 0)
+                return null;
+            ValueSpliterator<K, V> s = new ValueSpliterator<>(map, lo, index, splitEst,
+                    expectedModCount);
+            s.exact = exact;
+            return s;
         }
 
         public void forEachRemaining(Consumer<? super V> action) {
@@ -1487,6 +2693,8 @@ public class HashMap<K, V> extends AbstractMap<K, V>
             HashMap<K, V> m = map;
             Node<K, V>[] tab = m.table;
             if ((hi = fence) < 0) {
+                if (m.oldTable != null)
+                    m.finishTransfer();
                 mc = expectedModCount = m.modCount;
                 hi = fence = (tab == null) ? 0 : tab.length;
             } else
@@ -1531,7 +2739,7 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         }
 
         public int characteristics() {
-            return (fence < 0 || est == map.size ? Spliterator.SIZED : 0);
+            return sizeCharacteristics();
         }
     }
     static final class EntrySpliterator<K, V>
@@ -1543,10 +2751,13 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         }
 
         public EntrySpliterator<K, V> trySplit() {
-            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
-            return (lo >= mid || current != null) ? null :
-                    new EntrySpliterator<>(map, lo, index = mid, est >>>= 1,
-                            expectedModCount);
+            int lo;
+            if ((lo = split()) < 0)
+                return null;
+            EntrySpliterator<K, V> s = new EntrySpliterator<>(map, lo, index, splitEst,
+                    expectedModCount);
+            s.exact = exact;
+            return s;
         }
 
         public void forEachRemaining(Consumer<? super Map.Entry<K, V>> action) {
@@ -1556,6 +2767,8 @@ public class HashMap<K, V> extends AbstractMap<K, V>
             HashMap<K, V> m = map;
             Node<K, V>[] tab = m.table;
             if ((hi = fence) < 0) {
+                if (m.oldTable != null)
+                    m.finishTransfer();
                 mc = expectedModCount = m.modCount;
                 hi = fence = (tab == null) ? 0 : tab.length;
             } else
@@ -1600,8 +2813,7 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         }
 
         public int characteristics() {
-            return (fence < 0 || est == map.size ? Spliterator.SIZED : 0) |
-                    Spliterator.DISTINCT;
+            return sizeCharacteristics() | Spliterator.DISTINCT;
         }
     }
 
@@ -1637,11 +2849,34 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         return new TreeNode<>(p.hash, p.key, p.value, next);
     }
 
+    // Create a sorted-array bin node
+    SortedNode<K, V> newSortedNode(int hash, K key, V value, Node<K, V> next) {
+        return new SortedNode<>(hash, key, value, next);
+    }
+
+    // For SortedBin.sortBin
+    SortedNode<K, V> replacementSortedNode(Node<K, V> p, Node<K, V> next) {
+        return new SortedNode<>(p.hash, p.key, p.value, next);
+    }
+
+    /**
+     * 是否使用有序数组桶
+     * case:SortedNode没有before/after，依赖newNode等回调维护节点链表的子类（如JDK的LinkedHashMap、
+     * BoundedCacheMap）不能使用，因此默认只有HashMap本身返回true，子类确认不依赖节点链表时可以覆盖。
+     */
+    boolean supportsSortedBins() {
+        return getClass() == HashMap.class;
+    }
+
     /**
      * Reset to initial default state.  Called by clone and readObject.
      */
     void reinitialize() {
         table = null;
+        oldTable = null;
+        transferIndex = 0;
+        splitCounts = null;
+        statCounters = null;
         entrySet = null;
         keySet = null;
         values = null;
@@ -1663,6 +2898,8 @@ public class HashMap<K, V> extends AbstractMap<K, V>
     // Called only from writeObject, to ensure compatible ordering.
     void internalWriteEntries(java.io.ObjectOutputStream s) throws IOException {
         Node<K, V>[] tab;
+        if (oldTable != null)
+            finishTransfer();
         if (size > 0 && (tab = table) != null) {
             for (Node<K, V> e : tab) {
                 for (; e != null; e = e.next) {
@@ -1844,13 +3081,15 @@ public class HashMap<K, V> extends AbstractMap<K, V>
 
         /**
          * 将连接到该树结点的其它节点转化成链表接到该节点后面，并且返回该节点。
+         * map为null时（不属于任何HashMap的树，例如HashSet的树形桶）直接创建普通节点。
          */
         final Node<K, V> untreeify(HashMap<K, V> map) {
             Node<K, V> hd = null, tl = null;
             //this = treeNode；
             for (Node<K, V> q = this; q != null; q = q.next) {
                 //map只是为了使用replacementNode方法
-                Node<K, V> p = map.replacementNode(q, null);
+                Node<K, V> p = (map == null) ? new Node<>(q.hash, q.key, q.value, null)
+                        : map.replacementNode(q, null);
                 if (tl == null)
                     hd = p;
                 else
@@ -1862,6 +3101,7 @@ public class HashMap<K, V> extends AbstractMap<K, V>
 
         /**
          * Tree version of putVal.
+         * map为null时直接创建TreeNode，不经过newTreeNode。
          */
         final TreeNode<K, V> putTreeVal(HashMap<K, V> map, Node<K, V>[] tab,
                                         int h, K k, V v) {
@@ -1895,7 +3135,8 @@ public class HashMap<K, V> extends AbstractMap<K, V>
                 TreeNode<K, V> xp = p;
                 if ((p = (dir <= 0) ? p.left : p.right) == null) {
                     Node<K, V> xpn = xp.next;
-                    TreeNode<K, V> x = map.newTreeNode(h, k, v, xpn);
+                    TreeNode<K, V> x = (map == null) ? new TreeNode<>(h, k, v, xpn)
+                            : map.newTreeNode(h, k, v, xpn);
                     if (dir <= 0)
                         xp.left = x;
                     else
@@ -1919,6 +3160,7 @@ public class HashMap<K, V> extends AbstractMap<K, V>
          * linkages. If the current tree appears to have too few nodes,
          * the bin is converted back to a plain bin. (The test triggers
          * somewhere between 2 and 6 nodes, depending on tree structure).
+         * map只用于退化时创建链表节点，可以为null，见untreeify。
          */
         final void removeTreeNode(HashMap<K, V> map, Node<K, V>[] tab,
                                   boolean movable) {
@@ -2072,6 +3314,50 @@ public class HashMap<K, V> extends AbstractMap<K, V>
             }
         }
 
+        /**
+         * removeNodesIf对红黑树桶的处理，返回删除的节点个数
+         * case:先对桶内所有节点求值，filter抛出异常时桶不变；剩余节点按原顺序重新链接，
+         * 不多于UNTREEIFY_THRESHOLD个时还原为链表，否则重新树化。
+         */
+        final int removeNodesIf(HashMap<K, V> map, Node<K, V>[] tab, int index,
+                                Predicate<? super Node<K, V>> filter) {
+            int n = 0, removed = 0, i = 0;
+            for (Node<K, V> e = this; e != null; e = e.next)
+                ++n;
+            boolean[] hit = new boolean[n];
+            for (Node<K, V> e = this; e != null; e = e.next) {
+                if (hit[i++] = filter.test(e))
+                    ++removed;
+            }
+            if (removed == 0)
+                return 0;
+            TreeNode<K, V> hd = null, tl = null;
+            i = 0;
+            for (TreeNode<K, V> e = this, next; e != null; e = next) {
+                next = (TreeNode<K, V>) e.next;
+                e.next = null;
+                if (hit[i++]) {
+                    --map.size;
+                    map.afterNodeRemoval(e);
+                } else {
+                    if ((e.prev = tl) == null)
+                        hd = e;
+                    else
+                        tl.next = e;
+                    tl = e;
+                }
+            }
+            if (hd == null)
+                tab[index] = null;
+            else if (n - removed <= UNTREEIFY_THRESHOLD)
+                tab[index] = hd.untreeify(map);
+            else {
+                tab[index] = hd;
+                hd.treeify(tab);
+            }
+            return removed;
+        }
+
         /* ------------------------------------------------------------ */
         // Red-black tree methods, all adapted from CLR
 
@@ -2275,4 +3561,309 @@ public class HashMap<K, V> extends AbstractMap<K, V>
         }
     }
 
+    /* ------------------------------------------------------------ */
+    // Sorted-array bins
+
+    /**
+     * 有序数组桶的节点
+     * case:
+     * 1、直接继承Node，只增加指向所在桶的bin，压缩指针下与Node同为32字节（bin占用的是对齐填充），TreeNode为56字节；
+     * 2、连同SortedBin与两个按节点数分配的数组，8个节点的桶约384字节、64个约2624字节，
+     * 同样节点数的TreeNode分别为448、3584字节；
+     * 3、没有before/after，只在supportsSortedBins()为true的映射中使用。
+     */
+    static final class SortedNode<K, V> extends Node<K, V> {
+        SortedBin<K, V> bin;
+
+        SortedNode(int hash, K key, V val, Node<K, V> next) {
+            super(hash, key, val, next);
+        }
+    }
+
+    /**
+     * 有序数组桶：桶中的键都是同一个实现了Comparable的类时，树化阈值处用它代替红黑树
+     * case:
+     * 1、节点按(hash, compareTo)升序存放在nodes中，hash另存一份在hashes中，
+     * 查找先在连续的int[]上二分，只有hash相等时才比较键，访存比沿树的指针逐层下降更集中；
+     * 2、节点之间仍然按同样的顺序用next相连，迭代器、扩容与遍历代码不需要区分桶的类型；
+     * 3、插入与删除需要移动数组元素，因此桶最多SORTED_BIN_CAPACITY个节点，超过时转为红黑树；
+     * 插入其它类的键、null键，或者compareTo与equals不一致时同样转为红黑树。
+     * <p>
+     * 注意：阈值策略不变，链表达到TREEIFY_THRESHOLD时转化，不多于UNTREEIFY_THRESHOLD时还原为链表。
+     */
+    static final class SortedBin<K, V> {
+        /**
+         * search()在hash相等、又无法用compareTo确定位置时的返回值
+         */
+        static final int AMBIGUOUS = Integer.MIN_VALUE;
+
+        final Class<?> kc;
+        int[] hashes;
+        SortedNode<K, V>[] nodes;
+        int size;
+
+        /**
+         * 以已经有序的ns[0, n)建立桶，设置各节点的bin并按顺序重新连接next
+         */
+        SortedBin(Class<?> kc, SortedNode<K, V>[] ns, int n) {
+            this.kc = kc;
+            this.nodes = ns;
+            this.size = n;
+            int[] hs = hashes = new int[ns.length];
+            for (int i = 0; i < n; ++i) {
+                SortedNode<K, V> p = ns[i];
+                hs[i] = p.hash;
+                p.bin = this;
+                p.next = (i + 1 < n) ? ns[i + 1] : null;
+            }
+        }
+
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        static <K, V> SortedNode<K, V>[] newNodeArray(int n) {
+            return (SortedNode<K, V>[]) new SortedNode[n];
+        }
+
+        static int compareNodes(Class<?> kc, Node<?, ?> a, Node<?, ?> b) {
+            int ha = a.hash, hb = b.hash;
+            return (ha != hb) ? ((ha < hb) ? -1 : 1) : compareComparables(kc, a.key, b.key);
+        }
+
+        /**
+         * 链表e的键都是同一个可比较的类、且长度不超过SORTED_BIN_CAPACITY时返回该类，否则返回null
+         */
+        static Class<?> sortableClassOf(Node<?, ?> e) {
+            Class<?> kc = comparableClassFor(e.key);
+            if (kc == null)
+                return null;
+            int n = 0;
+            for (; e != null; e = e.next) {
+                Object k;
+                if (++n > SORTED_BIN_CAPACITY || (k = e.key) == null || k.getClass() != kc)
+                    return null;
+            }
+            return kc;
+        }
+
+        /**
+         * 把tab[index]处的链表转化为有序数组桶
+         *
+         * @return 存在compareTo为0的两个键时不做任何修改并返回false
+         */
+        static <K, V> boolean sortBin(HashMap<K, V> map, Node<K, V>[] tab, int index, Class<?> kc) {
+            int n = 0;
+            for (Node<K, V> e = tab[index]; e != null; e = e.next)
+                ++n;
+            @SuppressWarnings({"rawtypes", "unchecked"})
+            Node<K, V>[] a = (Node<K, V>[]) new Node[n];
+            int i = 0;
+            //插入排序，桶在这里只有TREEIFY_THRESHOLD个左右的节点
+            for (Node<K, V> e = tab[index]; e != null; e = e.next, ++i) {
+                int j = i, c = 0;
+                while (j > 0 && (c = compareNodes(kc, a[j - 1], e)) > 0) {
+                    a[j] = a[j - 1];
+                    --j;
+                }
+                if (j > 0 && c == 0)
+                    return false;
+                a[j] = e;
+            }
+            SortedNode<K, V>[] ns = newNodeArray(n);
+            for (i = 0; i < n; ++i)
+                ns[i] = map.replacementSortedNode(a[i], null);
+            tab[index] = new SortedBin<>(kc, ns, n).nodes[0];
+            return true;
+        }
+
+        /**
+         * 二分查找
+         *
+         * @return 找到时为下标；否则为-(插入位置)-1，hash相等的键无法用compareTo定位时为AMBIGUOUS
+         */
+        final int search(int h, Object k) {
+            int[] hs = hashes;
+            SortedNode<K, V>[] ns = nodes;
+            int lo = 0, hi = size - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1, mh = hs[mid];
+                if (mh < h)
+                    lo = mid + 1;
+                else if (mh > h)
+                    hi = mid - 1;
+                else {
+                    K pk = ns[mid].key;
+                    int dir;
+                    if (pk == k || (k != null && k.equals(pk)))
+                        return mid;
+                    if (k == null || k.getClass() != kc ||
+                            (dir = compareComparables(kc, k, pk)) == 0) {
+                        //只能逐个比较hash相等的节点
+                        for (int i = mid; --i >= 0 && hs[i] == h; ) {
+                            if ((pk = ns[i].key) == k || (k != null && k.equals(pk)))
+                                return i;
+                        }
+                        for (int i = mid; ++i < size && hs[i] == h; ) {
+                            if ((pk = ns[i].key) == k || (k != null && k.equals(pk)))
+                                return i;
+                        }
+                        return AMBIGUOUS;
+                    }
+                    if (dir < 0)
+                        hi = mid - 1;
+                    else
+                        lo = mid + 1;
+                }
+            }
+            return -(lo + 1);
+        }
+
+        final SortedNode<K, V> find(int h, Object k) {
+            int i;
+            return ((i = search(h, k)) >= 0) ? nodes[i] : null;
+        }
+
+        /**
+         * Sorted-array version of putVal.
+         *
+         * @return 已经存在的节点，插入了新节点时返回null
+         */
+        final Node<K, V> putSortedVal(HashMap<K, V> map, Node<K, V>[] tab, int h, K k, V v) {
+            int i = search(h, k);
+            if (i >= 0)
+                return nodes[i];
+            int index = (tab.length - 1) & h;
+            if (i == AMBIGUOUS || size >= SORTED_BIN_CAPACITY || k == null || k.getClass() != kc) {
+                map.treeifyChain(tab, index);
+                return ((TreeNode<K, V>) tab[index]).putTreeVal(map, tab, h, k, v);
+            }
+            i = -(i + 1);
+            SortedNode<K, V>[] ns = nodes;
+            int[] hs = hashes;
+            SortedNode<K, V> x = map.newSortedNode(h, k, v, (i < size) ? ns[i] : null);
+            x.bin = this;
+            if (i == 0)
+                tab[index] = x;
+            else
+                ns[i - 1].next = x;
+            if (size == ns.length) {
+                nodes = ns = Arrays.copyOf(ns, Math.min(SORTED_BIN_CAPACITY, size + (size >>> 1)));
+                hashes = hs = Arrays.copyOf(hs, ns.length);
+            }
+            System.arraycopy(ns, i, ns, i + 1, size - i);
+            System.arraycopy(hs, i, hs, i + 1, size - i);
+            ns[i] = x;
+            hs[i] = h;
+            ++size;
+            return null;
+        }
+
+        /**
+         * 删除节点p，movable为false（迭代器删除）时不还原为链表，以免迭代器持有的节点被替换
+         */
+        final void removeSortedNode(HashMap<K, V> map, Node<K, V>[] tab, SortedNode<K, V> p,
+                                    boolean movable) {
+            SortedNode<K, V>[] ns = nodes;
+            int i = search(p.hash, p.key);
+            if (i < 0 || ns[i] != p) {
+                for (i = 0; ns[i] != p; ++i)
+                    ;
+            }
+            int index = (tab.length - 1) & p.hash;
+            if (i == 0)
+                tab[index] = p.next;
+            else
+                ns[i - 1].next = p.next;
+            int n = --size;
+            System.arraycopy(ns, i + 1, ns, i, n - i);
+            System.arraycopy(hashes, i + 1, hashes, i, n - i);
+            ns[n] = null;
+            if (movable && n <= UNTREEIFY_THRESHOLD)
+                tab[index] = untreeify(map, ns, n);
+        }
+
+        /**
+         * removeNodesIf对有序数组桶的处理，返回删除的节点个数
+         * case:先对桶内所有节点求值，再原地压缩数组，剩余节点保持有序，数量太少时还原为链表。
+         */
+        final int removeNodesIf(HashMap<K, V> map, Node<K, V>[] tab, int index,
+                                Predicate<? super Node<K, V>> filter) {
+            SortedNode<K, V>[] ns = nodes;
+            int n = size, removed = 0, k = 0;
+            boolean[] hit = new boolean[n];
+            for (int i = 0; i < n; ++i) {
+                if (hit[i] = filter.test(ns[i]))
+                    ++removed;
+            }
+            if (removed == 0)
+                return 0;
+            for (int i = 0; i < n; ++i) {
+                SortedNode<K, V> p = ns[i];
+                if (hit[i]) {
+                    --map.size;
+                    map.afterNodeRemoval(p);
+                } else {
+                    hashes[k] = hashes[i];
+                    ns[k++] = p;
+                }
+            }
+            Arrays.fill(ns, k, n, null);
+            size = k;
+            if (k == 0)
+                tab[index] = null;
+            else if (k <= UNTREEIFY_THRESHOLD)
+                tab[index] = untreeify(map, ns, k);
+            else {
+                for (int i = 0; i < k; ++i)
+                    ns[i].next = (i + 1 < k) ? ns[i + 1] : null;
+                tab[index] = ns[0];
+            }
+            return removed;
+        }
+
+        /**
+         * 把ns[0, n)还原为普通节点的链表
+         */
+        static <K, V> Node<K, V> untreeify(HashMap<K, V> map, SortedNode<K, V>[] ns, int n) {
+            Node<K, V> next = null;
+            for (int i = n - 1; i >= 0; --i)
+                next = map.replacementNode(ns[i], next);
+            return next;
+        }
+
+        /**
+         * 对应TreeNode.split：按bit拆分为高低两个桶，各自保持原来的顺序，
+         * 不多于UNTREEIFY_THRESHOLD个节点的一半还原为链表。仅从resize调用。
+         */
+        final void split(HashMap<K, V> map, Node<K, V>[] tab, int index, int bit) {
+            SortedNode<K, V>[] ns = nodes, lo = newNodeArray(size), hi = newNodeArray(size);
+            int lc = 0, hc = 0;
+            for (int i = 0; i < size; ++i) {
+                SortedNode<K, V> e = ns[i];
+                if ((e.hash & bit) == 0)
+                    lo[lc++] = e;
+                else
+                    hi[hc++] = e;
+            }
+            if (lc > 0)
+                tab[index] = (lc <= UNTREEIFY_THRESHOLD) ? untreeify(map, lo, lc) :
+                        new SortedBin<>(kc, Arrays.copyOf(lo, lc), lc).nodes[0];
+            if (hc > 0)
+                tab[index + bit] = (hc <= UNTREEIFY_THRESHOLD) ? untreeify(map, hi, hc) :
+                        new SortedBin<>(kc, Arrays.copyOf(hi, hc), hc).nodes[0];
+        }
+
+        /**
+         * Invariant check
+         */
+        final boolean checkInvariants(Node<K, V> first) {
+            Node<K, V> e = first;
+            for (int i = 0; i < size; ++i, e = e.next) {
+                if (e != nodes[i] || hashes[i] != e.hash || nodes[i].bin != this)
+                    return false;
+                if (i > 0 && compareNodes(kc, nodes[i - 1], nodes[i]) >= 0)
+                    return false;
+            }
+            return e == null;
+        }
+    }
+
 }
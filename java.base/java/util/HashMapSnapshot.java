@@ -0,0 +1,307 @@
+package java.util;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * HashMap的二进制快照：写出到文件，以及通过内存映射把文件重新装载为HashMap
+ * case:
+ * writeObject/readObject经过ObjectOutputStream逐个写出键值，每个映射都要付出
+ * 类描述符查找、句柄表以及反射的开销。快照改为由Codec把键值编码成字节，
+ * 装载时把文件按块映射进内存，直接解码并插入预先按大小分配好的表，不会触发resize。
+ * <p>
+ * 文件格式（大端）：
+ * 1、文件头：魔数、版本、标志位（渐进式扩容/带种子哈希）、负载因子、映射个数、写出时的表容量；
+ * 2、之后是若干数据块，每块以[块字节数][映射个数]开头，块内每个映射为
+ * [hash][键长度][值长度][键字节][值字节]，长度为-1表示null；
+ * 3、hash为未加种子的hash(key)，只有键的Codec声明stableHash()并且目标表不带种子时，
+ * 装载才直接复用它而不再调用hashCode()。
+ * <p>
+ * 注意：
+ * 1、映射出的缓冲区要等到被GC回收时才解除映射；
+ * 2、快照不包含迭代顺序之外的任何结构信息，树形桶在装载时按需重新树化。
+ */
+public final class HashMapSnapshot {
+
+    /**
+     * 键或值与字节之间的编解码器
+     */
+    public interface Codec<T> {
+
+        /**
+         * 编码value，value可能为null时由调用方单独处理，这里不会收到null
+         */
+        byte[] encode(T value);
+
+        /**
+         * 从in的[offset, offset + length)中解码，不得修改in的position与limit
+         */
+        T decode(ByteBuffer in, int offset, int length);
+
+        /**
+         * hashCode()是否在不同的JVM之间保持不变（例如String、Integer），
+         * 为true时装载直接复用快照中保存的hash
+         */
+        default boolean stableHash() {
+            return false;
+        }
+    }
+
+    /**
+     * UTF-8编码的String
+     */
+    public static final Codec<String> STRING = new Codec<>() {
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        public String decode(ByteBuffer in, int offset, int length) {
+            return new String(bytesAt(in, offset, length), StandardCharsets.UTF_8);
+        }
+
+        public boolean stableHash() {
+            return true;
+        }
+    };
+
+    /**
+     * 原样保存的byte[]；数组的hashCode是身份哈希，因此不适合作为键
+     */
+    public static final Codec<byte[]> BYTES = new Codec<>() {
+        public byte[] encode(byte[] value) {
+            return value;
+        }
+
+        public byte[] decode(ByteBuffer in, int offset, int length) {
+            return bytesAt(in, offset, length);
+        }
+    };
+
+    public static final Codec<Integer> INTEGER = new Codec<>() {
+        public byte[] encode(Integer value) {
+            return ByteBuffer.allocate(Integer.BYTES).putInt(value).array();
+        }
+
+        public Integer decode(ByteBuffer in, int offset, int length) {
+            return in.getInt(offset);
+        }
+
+        public boolean stableHash() {
+            return true;
+        }
+    };
+
+    public static final Codec<Long> LONG = new Codec<>() {
+        public byte[] encode(Long value) {
+            return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+        }
+
+        public Long decode(ByteBuffer in, int offset, int length) {
+            return in.getLong(offset);
+        }
+
+        public boolean stableHash() {
+            return true;
+        }
+    };
+
+    static final int MAGIC = 0x484D5331; // "HMS1"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int FLAG_INCREMENTAL_RESIZE = 1;
+    static final int FLAG_SEEDED_HASH = 2;
+
+    /**
+     * 每个映射的定长部分：hash、键长度、值长度
+     */
+    static final int RECORD_HEADER = 3 * Integer.BYTES;
+
+    /**
+     * 块头：块字节数与映射个数
+     */
+    static final int BLOCK_HEADER = 2 * Integer.BYTES;
+
+    /**
+     * 数据块的默认大小，超过它的单个映射独占一块
+     */
+    static final int BLOCK_SIZE = 1 << 24;
+
+    private HashMapSnapshot() {
+    }
+
+    /**
+     * 把map写出到file，文件已存在时被覆盖
+     *
+     * @throws ConcurrentModificationException 如果写出过程中map被修改
+     */
+    public static <K, V> void write(HashMap<K, V> map, Path file,
+                                    Codec<? super K> keyCodec,
+                                    Codec<? super V> valueCodec) throws IOException {
+        Objects.requireNonNull(keyCodec);
+        Objects.requireNonNull(valueCodec);
+        if (map.oldTable != null)
+            map.finishTransfer();
+        int mc = map.modCount;
+        int size = map.size;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION)
+                    .putInt((map.incrementalResize ? FLAG_INCREMENTAL_RESIZE : 0) |
+                            (map.seededHash ? FLAG_SEEDED_HASH : 0))
+                    .putFloat(map.loadFactor).putInt(size).putInt(map.capacity())
+                    .putLong(0L).flip();
+            writeFully(ch, header);
+            ByteBuffer block = ByteBuffer.allocateDirect(BLOCK_SIZE);
+            block.position(BLOCK_HEADER);
+            int count = 0, written = 0;
+            HashMap.Node<K, V>[] tab;
+            if (size > 0 && (tab = map.table) != null) {
+                for (HashMap.Node<K, V> e : tab) {
+                    for (; e != null; e = e.next) {
+                        byte[] kb = (e.key == null) ? null : keyCodec.encode(e.key);
+                        byte[] vb = (e.value == null) ? null : valueCodec.encode(e.value);
+                        int len = RECORD_HEADER + (kb == null ? 0 : kb.length) +
+                                (vb == null ? 0 : vb.length);
+                        if (len > block.remaining() && count > 0) {
+                            flushBlock(ch, block, count);
+                            count = 0;
+                        }
+                        ByteBuffer out = block;
+                        //单个映射放不进一个块时为它单独分配一块
+                        if (len > out.remaining()) {
+                            out = ByteBuffer.allocate(BLOCK_HEADER + len);
+                            out.position(BLOCK_HEADER);
+                        }
+                        out.putInt(HashMap.hash(e.key))
+                                .putInt(kb == null ? -1 : kb.length)
+                                .putInt(vb == null ? -1 : vb.length);
+                        if (kb != null)
+                            out.put(kb);
+                        if (vb != null)
+                            out.put(vb);
+                        ++written;
+                        if (out != block)
+                            flushBlock(ch, out, 1);
+                        else
+                            ++count;
+                    }
+                }
+            }
+            if (count > 0)
+                flushBlock(ch, block, count);
+            if (written != size || mc != map.modCount)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * 装载file中的快照，返回的HashMap与写出时的负载因子及构造选项相同
+     *
+     * @throws StreamCorruptedException 如果文件不是合法的快照
+     */
+    public static <K, V> HashMap<K, V> load(Path file,
+                                            Codec<? extends K> keyCodec,
+                                            Codec<? extends V> valueCodec) throws IOException {
+        Objects.requireNonNull(keyCodec);
+        Objects.requireNonNull(valueCodec);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = ch.size();
+            if (length < HEADER_SIZE)
+                throw new StreamCorruptedException("Truncated snapshot header");
+            ByteBuffer header = ch.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+                throw new StreamCorruptedException("Not a HashMap snapshot");
+            int flags = header.getInt(8);
+            float loadFactor = header.getFloat(12);
+            int mappings = header.getInt(16), savedCap = header.getInt(20);
+            if (loadFactor <= 0 || Float.isNaN(loadFactor))
+                throw new StreamCorruptedException("Illegal load factor: " + loadFactor);
+            if (mappings < 0)
+                throw new StreamCorruptedException("Illegal mappings count: " + mappings);
+            if (savedCap <= 0 || savedCap > HashMap.MAXIMUM_CAPACITY)
+                throw new StreamCorruptedException("Illegal capacity: " + savedCap);
+            //与readObject相同，按映射个数预分配，装载过程中不会扩容；
+            //写出时的表更大（例如预先分配过）时沿用写出时的容量
+            float fc = (float) mappings / loadFactor + 1.0f;
+            int cap = (fc >= HashMap.MAXIMUM_CAPACITY) ? HashMap.MAXIMUM_CAPACITY : (int) fc;
+            cap = Math.max(cap, savedCap);
+            HashMap<K, V> map = new HashMap<>(cap, loadFactor,
+                    (flags & FLAG_INCREMENTAL_RESIZE) != 0,
+                    (flags & FLAG_SEEDED_HASH) != 0);
+            boolean reuseHash = keyCodec.stableHash() && map.hashSeed == 0;
+            int loaded = 0;
+            for (long pos = HEADER_SIZE; pos < length; ) {
+                if (length - pos < BLOCK_HEADER)
+                    throw new StreamCorruptedException("Truncated block header");
+                ByteBuffer bh = ch.map(FileChannel.MapMode.READ_ONLY, pos, BLOCK_HEADER);
+                int blockBytes = bh.getInt(0), count = bh.getInt(4);
+                pos += BLOCK_HEADER;
+                if (blockBytes < 0 || count < 0 || length - pos < blockBytes ||
+                        count > mappings - loaded)
+                    throw new StreamCorruptedException("Corrupted block at " + (pos - BLOCK_HEADER));
+                MappedByteBuffer in = ch.map(FileChannel.MapMode.READ_ONLY, pos, blockBytes);
+                loadBlock(map, in, count, keyCodec, valueCodec, reuseHash);
+                loaded += count;
+                pos += blockBytes;
+            }
+            if (loaded != mappings)
+                throw new StreamCorruptedException("Expected " + mappings +
+                        " mappings, found " + loaded);
+            return map;
+        }
+    }
+
+    /**
+     * 解码一个数据块中的count个映射并插入map
+     */
+    static <K, V> void loadBlock(HashMap<K, V> map, ByteBuffer in, int count,
+                                 Codec<? extends K> keyCodec,
+                                 Codec<? extends V> valueCodec,
+                                 boolean reuseHash) throws IOException {
+        int limit = in.limit();
+        for (int i = 0, p = 0; i < count; ++i) {
+            if (limit - p < RECORD_HEADER)
+                throw new StreamCorruptedException("Truncated record");
+            int hash = in.getInt(p), klen = in.getInt(p + 4), vlen = in.getInt(p + 8);
+            p += RECORD_HEADER;
+            if (klen < -1 || vlen < -1 ||
+                    (long) Math.max(klen, 0) + Math.max(vlen, 0) > limit - p)
+                throw new StreamCorruptedException("Truncated record");
+            K key = (klen < 0) ? null : keyCodec.decode(in, p, klen);
+            p += Math.max(klen, 0);
+            V value = (vlen < 0) ? null : valueCodec.decode(in, p, vlen);
+            p += Math.max(vlen, 0);
+            map.putVal(reuseHash ? hash : map.hashOf(key), key, value, false, false);
+        }
+    }
+
+    /**
+     * 补上块头并把block写出，之后block可以继续复用
+     */
+    static void flushBlock(FileChannel ch, ByteBuffer block, int count) throws IOException {
+        block.putInt(0, block.position() - BLOCK_HEADER).putInt(4, count).flip();
+        writeFully(ch, block);
+        block.clear().position(BLOCK_HEADER);
+    }
+
+    static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining())
+            ch.write(buf);
+    }
+
+    /**
+     * 复制in中[offset, offset + length)的字节，不改变in的position
+     */
+    static byte[] bytesAt(ByteBuffer in, int offset, int length) {
+        byte[] b = new byte[length];
+        in.duplicate().position(offset).get(b);
+        return b;
+    }
+}
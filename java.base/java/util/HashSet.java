@@ -1,32 +1,115 @@
 package java.util;
 
 import java.io.InvalidObjectException;
+import java.util.function.Consumer;
 
 import jdk.internal.misc.SharedSecrets;
 
 
+/**
+ * 基于哈希表的Set
+ * case:
+ * 元素直接存放在只有hash、key、next三个字段的Node中，不再借助HashMap并为每个元素保存PRESENT值，
+ * 每个元素少一个引用，add/contains也不再经过putVal/getNode的完整路径。
+ * 容量、负载因子与扩容规则与HashMap完全相同，散列沿用HashMap.hash()；
+ * 桶长度达到TREEIFY_THRESHOLD时同样树化，树形桶复用HashMap.TreeNode，
+ * 由TreeBin放在桶中，红黑树保存在TreeBin自己的单槽表中。
+ * <p>
+ * 注意：LinkedHashSet需要维护插入顺序，仍然使用LinkedHashMap作为底层实现（map不为null）。
+ */
 public class HashSet<E>
         extends AbstractSet<E>
         implements Set<E>, Cloneable, java.io.Serializable {
     static final long serialVersionUID = -5024744406713321676L;
-    //底层是HashMap
+    //只有LinkedHashSet使用，此时下面的哈希表字段都不使用
     private transient HashMap<E, Object> map;
 
     // 常量对象，占位作用
     private static final Object PRESENT = new Object();
 
     /**
-     * 构造HASHMAP
+     * 哈希表，第一次使用时初始化，长度总是2的幂
+     */
+    transient Node<E>[] table;
+
+    /**
+     * 元素个数
+     */
+    transient int size;
+
+    /**
+     * 结构修改次数，用于fail-fast
+     */
+    transient int modCount;
+
+    /**
+     * 扩容阈值，表未初始化时保存初始容量（与HashMap相同）
+     */
+    transient int threshold;
+
+    /**
+     * 负载因子，不属于序列化字段，由writeObject/readObject单独读写
+     */
+    transient float loadFactor;
+
+    /**
+     * 扩容与树化计数器，为null（默认）时不统计
+     */
+    transient HashMap.StatCounters statCounters;
+
+    /**
+     * 分裂迭代器使用的按段节点计数，与HashMap.splitCounts相同
+     */
+    transient HashMap.SegmentCounts splitCounts;
+
+    /**
+     * 只保存元素的链表节点
+     */
+    static class Node<E> {
+        final int hash;
+        final E key;
+        Node<E> next;
+
+        Node(int hash, E key, Node<E> next) {
+            this.hash = hash;
+            this.key = key;
+            this.next = next;
+        }
+    }
+
+    /**
+     * 树形桶：桶中只有这一个节点，元素保存在bin[0]为首的HashMap.TreeNode红黑树中
+     * case:bin是长度为1的表，TreeNode的方法按(n - 1) & hash计算下标时总是0，
+     * 因此treeify/putTreeVal/removeTreeNode可以原样使用，根节点始终位于bin[0]。
+     */
+    static final class TreeBin<E> extends Node<E> {
+        final HashMap.Node<E, Object>[] bin;
+
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        TreeBin(HashMap.TreeNode<E, Object> hd) {
+            super(0, null, null);
+            bin = (HashMap.Node<E, Object>[]) new HashMap.Node[1];
+            //moveRootToFront要求链表头已经在桶中
+            bin[0] = hd;
+            hd.treeify(bin);
+        }
+
+        HashMap.TreeNode<E, Object> first() {
+            return (HashMap.TreeNode<E, Object>) bin[0];
+        }
+    }
+
+    /**
+     * 构造空的HashSet，容量为16，负载因子为0.75
      */
     public HashSet() {
-        map = new HashMap<>();
+        loadFactor = HashMap.DEFAULT_LOAD_FACTOR;
     }
 
     /**
      * 通过集合构造HashSet
      */
     public HashSet(Collection<? extends E> c) {
-        // 创建map。
         // 为什么要调用Math.max((int) (c.size()/.75f) + 1, 16)，从 (c.size()/.75f) + 1 和 16 中选择一个比较大的树呢？
         // 首先，说明(c.size()/.75f) + 1
         //   因为从HashMap的效率(时间成本和空间成本)考虑，HashMap的加载因子是0.75。
@@ -37,17 +120,27 @@ public class HashSet<E>
         //   HashMap的总的大小，必须是2的指数倍。若创建HashMap时，指定的大小不是2的指数倍；
         //   HashMap的构造函数中也会重新计算，找出比“指定大小”大的最小的2的指数倍的数。
         //   所以，这里指定为16是从性能考虑。避免重复计算。
-        map = new HashMap<>(Math.max((int) (c.size() / .75f) + 1, 16));
+        this(Math.max((int) (c.size() / .75f) + 1, 16));
         addAll(c);
     }
 
     // 指定HashSet初始容量和加载因子的构造函数
     public HashSet(int initialCapacity, float loadFactor) {
-        map = new HashMap<>(initialCapacity, loadFactor);
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    initialCapacity);
+        if (initialCapacity > HashMap.MAXIMUM_CAPACITY)
+            initialCapacity = HashMap.MAXIMUM_CAPACITY;
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                    loadFactor);
+        this.loadFactor = loadFactor;
+        this.threshold = HashMap.tableSizeFor(initialCapacity);
     }
+
     // 指定HashSet初始容量的构造函数
     public HashSet(int initialCapacity) {
-        map = new HashMap<>(initialCapacity);
+        this(initialCapacity, HashMap.DEFAULT_LOAD_FACTOR);
     }
 
 
@@ -55,45 +148,393 @@ public class HashSet<E>
         map = new LinkedHashMap<>(initialCapacity, loadFactor);
     }
 
-
     public Iterator<E> iterator() {
-        return map.keySet().iterator();
+        return (map != null) ? map.keySet().iterator() : new KeyIterator();
     }
 
 
     public int size() {
-        return map.size();
+        return (map != null) ? map.size() : size;
     }
 
     public boolean isEmpty() {
-        return map.isEmpty();
+        return size() == 0;
     }
 
 
     public boolean contains(Object o) {
-        return map.containsKey(o);
+        if (map != null)
+            return map.containsKey(o);
+        Node<E>[] tab;
+        Node<E> e;
+        int n, hash;
+        Object k;
+        if ((tab = table) != null && (n = tab.length) > 0 &&
+                (e = tab[(n - 1) & (hash = HashMap.hash(o))]) != null) {
+            if (e instanceof TreeBin)
+                return ((TreeBin<E>) e).first().getTreeNode(hash, o) != null;
+            do {
+                if (e.hash == hash &&
+                        ((k = e.key) == o || (o != null && o.equals(k))))
+                    return true;
+            } while ((e = e.next) != null);
+        }
+        return false;
     }
 
 
     public boolean add(E e) {
-        return map.put(e, PRESENT) == null;
+        if (map != null)
+            return map.put(e, PRESENT) == null;
+        return putKey(HashMap.hash(e), e);
     }
 
 
     public boolean remove(Object o) {
-        return map.remove(o) == PRESENT;
+        if (map != null)
+            return map.remove(o) == PRESENT;
+        return removeKey(HashMap.hash(o), o, true);
     }
 
 
     public void clear() {
-        map.clear();
+        if (map != null) {
+            map.clear();
+            return;
+        }
+        Node<E>[] tab;
+        modCount++;
+        if ((tab = table) != null && size > 0) {
+            size = 0;
+            Arrays.fill(tab, null);
+        }
+    }
+
+    /**
+     * add的底层实现，对应HashMap.putVal
+     */
+    final boolean putKey(int hash, E key) {
+        Node<E>[] tab;
+        Node<E> p;
+        int n, i;
+        if ((tab = table) == null || (n = tab.length) == 0)
+            n = (tab = resize()).length;
+        if ((p = tab[i = (n - 1) & hash]) == null)
+            tab[i] = new Node<>(hash, key, null);
+        else if (p instanceof TreeBin) {
+            TreeBin<E> tb = (TreeBin<E>) p;
+            if (tb.first().putTreeVal(null, tb.bin, hash, key, null) != null)
+                return false;
+        } else {
+            for (int binCount = 0; ; ++binCount) {
+                E k;
+                if (p.hash == hash &&
+                        ((k = p.key) == key || (key != null && key.equals(k))))
+                    return false;
+                if (p.next == null) {
+                    p.next = new Node<>(hash, key, null);
+                    if (binCount >= HashMap.TREEIFY_THRESHOLD - 1) // -1 for 1st
+                        treeifyBin(tab, hash);
+                    break;
+                }
+                p = p.next;
+            }
+        }
+        ++modCount;
+        if (++size > threshold)
+            resize();
+        return true;
+    }
+
+    /**
+     * remove的底层实现，对应HashMap.removeNode
+     * case:movable为false（迭代器删除）时树形桶不移动根节点、不退化为链表，以免迭代器跳过元素
+     */
+    final boolean removeKey(int hash, Object key, boolean movable) {
+        Node<E>[] tab;
+        Node<E> p;
+        int n, index;
+        if ((tab = table) == null || (n = tab.length) == 0 ||
+                (p = tab[index = (n - 1) & hash]) == null)
+            return false;
+        if (p instanceof TreeBin) {
+            TreeBin<E> tb = (TreeBin<E>) p;
+            HashMap.TreeNode<E, Object> t = tb.first().getTreeNode(hash, key);
+            if (t == null)
+                return false;
+            t.removeTreeNode(null, tb.bin, movable);
+            //树太小时removeTreeNode已经把bin[0]退化为HashMap.Node链表
+            HashMap.Node<E, Object> f;
+            if (!((f = tb.bin[0]) instanceof HashMap.TreeNode))
+                tab[index] = untreeify(f);
+        } else {
+            Object k;
+            for (Node<E> prev = null; ; prev = p, p = p.next) {
+                if (p == null)
+                    return false;
+                if (p.hash == hash &&
+                        ((k = p.key) == key || (key != null && key.equals(k)))) {
+                    if (prev == null)
+                        tab[index] = p.next;
+                    else
+                        prev.next = p.next;
+                    break;
+                }
+            }
+        }
+        ++modCount;
+        --size;
+        return true;
+    }
+
+    /**
+     * 与HashMap.treeifyBin相同：表太小时扩容，否则把桶转化为树形桶
+     */
+    final void treeifyBin(Node<E>[] tab, int hash) {
+        int n, index;
+        Node<E> e;
+        if (tab == null || (n = tab.length) < HashMap.MIN_TREEIFY_CAPACITY)
+            resize();
+        else if ((e = tab[index = (n - 1) & hash]) != null) {
+            tab[index] = new TreeBin<>(treeNodesOf(e));
+            if (statCounters != null)
+                ++statCounters.treeifications;
+        }
+    }
+
+    /**
+     * 把链表e复制为以next/prev相连的TreeNode链表
+     */
+    static <E> HashMap.TreeNode<E, Object> treeNodesOf(Node<E> e) {
+        HashMap.TreeNode<E, Object> hd = null, tl = null;
+        for (; e != null; e = e.next) {
+            HashMap.TreeNode<E, Object> p = new HashMap.TreeNode<>(e.hash, e.key, null, null);
+            if (tl == null)
+                hd = p;
+            else {
+                p.prev = tl;
+                tl.next = p;
+            }
+            tl = p;
+        }
+        return hd;
+    }
+
+    /**
+     * 把HashMap.Node链表（可能是TreeNode）转化为本类的链表
+     */
+    static <E> Node<E> untreeify(HashMap.Node<E, Object> q) {
+        Node<E> hd = null, tl = null;
+        for (; q != null; q = q.next) {
+            Node<E> p = new Node<>(q.hash, q.key, null);
+            if (tl == null)
+                hd = p;
+            else
+                tl.next = p;
+            tl = p;
+        }
+        return hd;
+    }
+
+    /**
+     * 初始化或者翻倍扩容，容量与阈值的计算规则与HashMap.resize()相同
+     */
+    final Node<E>[] resize() {
+        splitCounts = null;
+        HashMap.StatCounters sc = statCounters;
+        long start = (sc != null) ? System.nanoTime() : 0L;
+        Node<E>[] oldTab = table;
+        int oldCap = (oldTab == null) ? 0 : oldTab.length;
+        int oldThr = threshold;
+        int newCap, newThr = 0;
+        if (oldCap > 0) {
+            if (oldCap >= HashMap.MAXIMUM_CAPACITY) {
+                threshold = Integer.MAX_VALUE;
+                return oldTab;
+            } else if ((newCap = oldCap << 1) < HashMap.MAXIMUM_CAPACITY &&
+                    oldCap >= HashMap.DEFAULT_INITIAL_CAPACITY)
+                newThr = oldThr << 1;
+        } else if (oldThr > 0)
+            newCap = oldThr;
+        else {
+            newCap = HashMap.DEFAULT_INITIAL_CAPACITY;
+            newThr = (int) (HashMap.DEFAULT_LOAD_FACTOR * HashMap.DEFAULT_INITIAL_CAPACITY);
+        }
+        if (newThr == 0) {
+            float ft = (float) newCap * loadFactor;
+            newThr = (newCap < HashMap.MAXIMUM_CAPACITY && ft < (float) HashMap.MAXIMUM_CAPACITY ?
+                    (int) ft : Integer.MAX_VALUE);
+        }
+        threshold = newThr;
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        Node<E>[] newTab = (Node<E>[]) new Node[newCap];
+        table = newTab;
+        if (oldTab != null) {
+            for (int j = 0; j < oldCap; ++j) {
+                Node<E> e;
+                if ((e = oldTab[j]) != null) {
+                    oldTab[j] = null;
+                    if (e instanceof TreeBin)
+                        splitTreeBin((TreeBin<E>) e, newTab, j, oldCap);
+                    else if (e.next == null)
+                        newTab[e.hash & (newCap - 1)] = e;
+                    else { // preserve order
+                        Node<E> loHead = null, loTail = null;
+                        Node<E> hiHead = null, hiTail = null;
+                        Node<E> next;
+                        do {
+                            next = e.next;
+                            if ((e.hash & oldCap) == 0) {
+                                if (loTail == null)
+                                    loHead = e;
+                                else
+                                    loTail.next = e;
+                                loTail = e;
+                            } else {
+                                if (hiTail == null)
+                                    hiHead = e;
+                                else
+                                    hiTail.next = e;
+                                hiTail = e;
+                            }
+                        } while ((e = next) != null);
+                        if (loTail != null) {
+                            loTail.next = null;
+                            newTab[j] = loHead;
+                        }
+                        if (hiTail != null) {
+                            hiTail.next = null;
+                            newTab[j + oldCap] = hiHead;
+                        }
+                    }
+                }
+            }
+        }
+        if (sc != null)
+            sc.recordResize(System.nanoTime() - start);
+        return newTab;
+    }
+
+    /**
+     * 对应TreeNode.split：按bit把树形桶拆成高低两个桶，
+     * 节点数不超过UNTREEIFY_THRESHOLD的退化为链表，否则重新树化
+     */
+    static <E> void splitTreeBin(TreeBin<E> b, Node<E>[] tab, int index, int bit) {
+        HashMap.TreeNode<E, Object> loHead = null, loTail = null;
+        HashMap.TreeNode<E, Object> hiHead = null, hiTail = null;
+        int lc = 0, hc = 0;
+        for (HashMap.TreeNode<E, Object> e = b.first(), next; e != null; e = next) {
+            next = (HashMap.TreeNode<E, Object>) e.next;
+            e.next = null;
+            if ((e.hash & bit) == 0) {
+                if ((e.prev = loTail) == null)
+                    loHead = e;
+                else
+                    loTail.next = e;
+                loTail = e;
+                ++lc;
+            } else {
+                if ((e.prev = hiTail) == null)
+                    hiHead = e;
+                else
+                    hiTail.next = e;
+                hiTail = e;
+                ++hc;
+            }
+        }
+        if (loHead != null)
+            tab[index] = (lc <= HashMap.UNTREEIFY_THRESHOLD) ?
+                    untreeify(loHead) : new TreeBin<>(loHead);
+        if (hiHead != null)
+            tab[index + bit] = (hc <= HashMap.UNTREEIFY_THRESHOLD) ?
+                    untreeify(hiHead) : new TreeBin<>(hiHead);
+    }
+
+    final int capacity() {
+        if (map != null)
+            return map.capacity();
+        return (table != null) ? table.length :
+                (threshold > 0) ? threshold :
+                        HashMap.DEFAULT_INITIAL_CAPACITY;
+    }
+
+    final float loadFactor() {
+        return (map != null) ? map.loadFactor() : loadFactor;
+    }
+
+    /**
+     * 开启或关闭扩容与树化计数，见HashMap.setStatisticsEnabled
+     */
+    public void setStatisticsEnabled(boolean enabled) {
+        if (map != null)
+            map.setStatisticsEnabled(enabled);
+        else
+            statCounters = enabled ? new HashMap.StatCounters() : null;
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * 哈希表的统计信息，见HashMap.statistics(int)
+     */
+    public HashMap.Statistics statistics(int sampleBins) {
+        if (map != null)
+            return map.statistics(sampleBins);
+        if (sampleBins <= 0)
+            throw new IllegalArgumentException("Illegal sample size: " + sampleBins);
+        Node<E>[] tab = table;
+        long[] histogram = new long[HashMap.STAT_HISTOGRAM_BINS];
+        int sampled = 0, treeBins = 0, maxBinLength = 0;
+        if (tab != null) {
+            int n = tab.length;
+            int stride = (sampleBins >= n) ? 1 : (n + sampleBins - 1) / sampleBins;
+            int i = (stride == 1) ? 0 : java.util.concurrent.ThreadLocalRandom.current().nextInt(stride);
+            for (; i < n; i += stride, ++sampled) {
+                Node<E> e = tab[i];
+                int len = 0;
+                if (e instanceof TreeBin) {
+                    ++treeBins;
+                    for (HashMap.Node<E, Object> t = ((TreeBin<E>) e).first(); t != null; t = t.next)
+                        ++len;
+                } else {
+                    for (; e != null; e = e.next)
+                        ++len;
+                }
+                ++histogram[Math.min(len, HashMap.STAT_HISTOGRAM_BINS - 1)];
+                if (len > maxBinLength)
+                    maxBinLength = len;
+            }
+        }
+        return new HashMap.Statistics(size, (tab == null) ? 0 : tab.length, sampled, histogram,
+                treeBins, maxBinLength, statCounters);
+    }
+
+    public HashMap.Statistics statistics() {
+        return statistics(Integer.MAX_VALUE);
+    }
+
+    /**
+     * 浅拷贝：复制哈希表结构，但不复制元素本身；计数器不会被复制
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
     public Object clone() {
         try {
             HashSet<E> newSet = (HashSet<E>) super.clone();
-            newSet.map = (HashMap<E, Object>) map.clone();
+            if (map != null) {
+                newSet.map = (HashMap<E, Object>) map.clone();
+                return newSet;
+            }
+            newSet.statCounters = null;
+            newSet.splitCounts = null;
+            newSet.modCount = 0;
+            newSet.size = 0;
+            Node<E>[] tab = table;
+            if (tab != null) {
+                newSet.table = (Node<E>[]) new Node[tab.length];
+                for (Iterator<E> it = new KeyIterator(); it.hasNext(); ) {
+                    E e = it.next();
+                    newSet.putKey(HashMap.hash(e), e);
+                }
+                newSet.modCount = 0;
+            }
             return newSet;
         } catch (CloneNotSupportedException e) {
             throw new InternalError(e);
@@ -107,14 +548,14 @@ public class HashSet<E>
         s.defaultWriteObject();
 
         // Write out HashMap capacity and load factor
-        s.writeInt(map.capacity());
-        s.writeFloat(map.loadFactor());
+        s.writeInt(capacity());
+        s.writeFloat(loadFactor());
 
         // Write out size
-        s.writeInt(map.size());
+        s.writeInt(size());
 
         // Write out all elements in the proper order.
-        for (E e : map.keySet())
+        for (E e : this)
             s.writeObject(e);
     }
 
@@ -156,16 +597,19 @@ public class HashSet<E>
         SharedSecrets.getJavaObjectInputStreamAccess()
                 .checkArray(s, Map.Entry[].class, HashMap.tableSizeFor(capacity));
 
-        // Create backing HashMap
-        map = (((HashSet<?>) this) instanceof LinkedHashSet ?
-                new LinkedHashMap<>(capacity, loadFactor) :
-                new HashMap<>(capacity, loadFactor));
+        // Create backing LinkedHashMap, or size our own table the way HashMap would
+        if (((HashSet<?>) this) instanceof LinkedHashSet)
+            map = new LinkedHashMap<>(capacity, loadFactor);
+        else {
+            this.loadFactor = loadFactor;
+            this.threshold = HashMap.tableSizeFor(capacity);
+        }
 
         // Read in all elements in the proper order.
         for (int i = 0; i < size; i++) {
             @SuppressWarnings("unchecked")
             E e = (E) s.readObject();
-            map.put(e, PRESENT);
+            add(e);
         }
     }
 
@@ -173,6 +617,236 @@ public class HashSet<E>
      * 创建分裂迭代器
      */
     public Spliterator<E> spliterator() {
-        return new HashMap.KeySpliterator<>(map, 0, -1, 0, 0);
+        return (map != null) ? map.keySet().spliterator() : new KeySpliterator(0, -1, 0, 0);
+    }
+
+    /**
+     * 返回当前table的按段节点计数，缓存失效时重新统计，与HashMap.segmentCounts相同
+     */
+    final HashMap.SegmentCounts segmentCounts() {
+        final Node<E>[] tab;
+        HashMap.SegmentCounts sc;
+        if ((tab = table) == null)
+            return null;
+        if ((sc = splitCounts) != null && sc.tab == tab && sc.modCount == modCount)
+            return sc;
+        return splitCounts = HashMap.SegmentCounts.build(tab, modCount, size,
+                (lo, hi) -> countBins(tab, lo, hi));
+    }
+
+    /**
+     * 统计tab[lo, hi)中的元素个数，树形桶沿TreeNode的next链表计数
+     */
+    static int countBins(Node<?>[] tab, int lo, int hi) {
+        int c = 0;
+        for (int i = lo; i < hi; ++i) {
+            Node<?> e = tab[i];
+            if (e instanceof TreeBin) {
+                for (HashMap.Node<?, ?> q = ((TreeBin<?>) e).first(); q != null; q = q.next)
+                    ++c;
+            } else {
+                for (; e != null; e = e.next)
+                    ++c;
+            }
+        }
+        return c;
+    }
+
+    /* ------------------------------------------------------------ */
+    // iterators
+
+    /**
+     * 桶内的位置要么是本类的链表节点next，要么是树形桶中的TreeNode treeNext，两者至多一个不为null
+     */
+    final class KeyIterator implements Iterator<E> {
+        Node<E> next;                      // next entry in a plain bin
+        HashMap.Node<E, Object> treeNext;  // next entry in a tree bin
+        E lastReturned;
+        boolean canRemove;
+        int expectedModCount;  // for fast-fail
+        int index;             // current slot
+
+        KeyIterator() {
+            expectedModCount = modCount;
+            Node<E>[] t = table;
+            if (t != null && size > 0)
+                nextBin(t);
+        }
+
+        /**
+         * 从index开始找到下一个非空桶
+         */
+        final void nextBin(Node<E>[] t) {
+            Node<E> e = null;
+            while (index < t.length && (e = t[index++]) == null)
+                ;
+            if (e instanceof TreeBin)
+                treeNext = ((TreeBin<E>) e).first();
+            else
+                next = e;
+        }
+
+        public boolean hasNext() {
+            return next != null || treeNext != null;
+        }
+
+        public E next() {
+            Node<E>[] t;
+            E k;
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (treeNext != null) {
+                k = treeNext.key;
+                treeNext = treeNext.next;
+            } else if (next != null) {
+                k = next.key;
+                next = next.next;
+            } else
+                throw new NoSuchElementException();
+            if (next == null && treeNext == null && (t = table) != null)
+                nextBin(t);
+            lastReturned = k;
+            canRemove = true;
+            return k;
+        }
+
+        public void remove() {
+            if (!canRemove)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            canRemove = false;
+            E k = lastReturned;
+            lastReturned = null;
+            removeKey(HashMap.hash(k), k, false);
+            expectedModCount = modCount;
+        }
+    }
+
+    /**
+     * 分裂迭代器，切分规则与HashMap.HashMapSpliterator相同：
+     * 未被修改时按段元素计数切分，使两边的元素个数接近，否则按桶下标二分
+     */
+    final class KeySpliterator implements Spliterator<E> {
+        int index;                  // current index, modified on advance/split
+        int fence;                  // one past last index
+        int est;                    // size estimate
+        int expectedModCount;       // for comodification checks
+        boolean exact;              // est is an exact count, set by split
+        Node<E> current;            // current plain node
+        HashMap.Node<E, Object> treeCurrent; // current node in a tree bin
+
+        KeySpliterator(int origin, int fence, int est, int expectedModCount) {
+            this.index = origin;
+            this.fence = fence;
+            this.est = est;
+            this.expectedModCount = expectedModCount;
+        }
+
+        final int getFence() { // initialize fence and size on first use
+            int hi;
+            if ((hi = fence) < 0) {
+                est = size;
+                exact = true;
+                expectedModCount = modCount;
+                Node<E>[] tab = table;
+                hi = fence = (tab == null) ? 0 : tab.length;
+            }
+            return hi;
+        }
+
+        public long estimateSize() {
+            getFence(); // force init
+            return (long) est;
+        }
+
+        public KeySpliterator trySplit() {
+            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1, splitEst;
+            if (lo >= mid || current != null || treeCurrent != null)
+                return null;
+            HashMap.SegmentCounts sc;
+            if (modCount == expectedModCount && table != null &&
+                    table.length >= hi && (sc = segmentCounts()) != null) {
+                mid = sc.splitPoint(lo, hi);
+                splitEst = sc.count(lo, mid);
+                est = sc.count(mid, hi);
+                exact = true;
+            } else {
+                splitEst = est >>>= 1;
+                exact = false;
+            }
+            KeySpliterator s = new KeySpliterator(lo, index = mid, splitEst, expectedModCount);
+            s.exact = exact;
+            return s;
+        }
+
+        public void forEachRemaining(Consumer<? super E> action) {
+            int i, hi, mc;
+            if (action == null)
+                throw new NullPointerException();
+            Node<E>[] tab = table;
+            if ((hi = fence) < 0) {
+                mc = expectedModCount = modCount;
+                hi = fence = (tab == null) ? 0 : tab.length;
+            } else
+                mc = expectedModCount;
+            if (tab != null && tab.length >= hi &&
+                    (i = index) >= 0 && (i < (index = hi) || current != null || treeCurrent != null)) {
+                Node<E> p = current;
+                HashMap.Node<E, Object> q = treeCurrent;
+                current = null;
+                treeCurrent = null;
+                do {
+                    if (q != null) {
+                        action.accept(q.key);
+                        q = q.next;
+                    } else if (p != null) {
+                        action.accept(p.key);
+                        p = p.next;
+                    } else if ((p = tab[i++]) instanceof TreeBin) {
+                        q = ((TreeBin<E>) p).first();
+                        p = null;
+                    }
+                } while (p != null || q != null || i < hi);
+                if (modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+
+        public boolean tryAdvance(Consumer<? super E> action) {
+            int hi;
+            if (action == null)
+                throw new NullPointerException();
+            Node<E>[] tab = table;
+            if (tab != null && tab.length >= (hi = getFence()) && index >= 0) {
+                while (current != null || treeCurrent != null || index < hi) {
+                    E k;
+                    if (treeCurrent != null) {
+                        k = treeCurrent.key;
+                        treeCurrent = treeCurrent.next;
+                    } else if (current != null) {
+                        k = current.key;
+                        current = current.next;
+                    } else {
+                        Node<E> e = tab[index++];
+                        if (e instanceof TreeBin)
+                            treeCurrent = ((TreeBin<E>) e).first();
+                        else
+                            current = e;
+                        continue;
+                    }
+                    action.accept(k);
+                    if (modCount != expectedModCount)
+                        throw new ConcurrentModificationException();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public int characteristics() {
+            return ((fence < 0 || exact) ? Spliterator.SIZED | Spliterator.SUBSIZED :
+                    (est == size) ? Spliterator.SIZED : 0) | Spliterator.DISTINCT;
+        }
     }
 }
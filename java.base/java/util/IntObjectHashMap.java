@@ -0,0 +1,397 @@
+package java.util;
+
+import java.io.Serializable;
+import java.util.function.BiFunction;
+import java.util.function.IntFunction;
+
+/**
+ * 以基本类型int为键的开放寻址哈希表
+ * case:
+ * 键直接存放在int[]中，值存放在平行的Object[]中，不再为每个映射分配Node以及装箱的Integer。
+ * 散列沿用HashMap的高低位异或扰动（HashMap.spreadHash），容量沿用tableSizeFor()的2的幂策略，
+ * 因此在相同负载下与HashMap的行为可比。
+ * <p>
+ * 注意：
+ * 1、冲突使用线性探测，删除时采用后移（backward shift）而不是墓碑，探测链始终保持紧凑；
+ * 2、键0被用作空槽标记，因此键0的映射单独存放在hasZeroKey/zeroValue中；
+ * 3、开放寻址要求表中至少有一个空槽，所以阈值最多为容量-1，负载因子大于等于1时按容量-1处理。
+ */
+public class IntObjectHashMap<V> implements Cloneable, Serializable {
+
+    private static final long serialVersionUID = -3318329436178468361L;
+
+    /**
+     * 遍历用的回调，键以int传入，避免装箱
+     */
+    @FunctionalInterface
+    public interface IntObjectConsumer<V> {
+        void accept(int key, V value);
+    }
+
+    /**
+     * 键数组，0表示空槽；第一次put时初始化，长度总是2的幂
+     */
+    int[] keys;
+
+    /**
+     * 与keys平行的值数组
+     */
+    Object[] vals;
+
+    /**
+     * 表中（不含键0）的映射个数
+     */
+    int size;
+
+    /**
+     * 键0是否存在以及它对应的值
+     */
+    boolean hasZeroKey;
+    V zeroValue;
+
+    /**
+     * 扩容阈值，表未初始化时保存初始容量（与HashMap相同）
+     */
+    int threshold;
+
+    /**
+     * 负载因子
+     */
+    final float loadFactor;
+
+    /**
+     * 结构修改次数，用于forEach及computeIfAbsent/merge的并发修改检测
+     */
+    transient int modCount;
+
+    public IntObjectHashMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    initialCapacity);
+        if (initialCapacity > HashMap.MAXIMUM_CAPACITY)
+            initialCapacity = HashMap.MAXIMUM_CAPACITY;
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                    loadFactor);
+        this.loadFactor = loadFactor;
+        this.threshold = HashMap.tableSizeFor(initialCapacity);
+    }
+
+    public IntObjectHashMap(int initialCapacity) {
+        this(initialCapacity, HashMap.DEFAULT_LOAD_FACTOR);
+    }
+
+    public IntObjectHashMap() {
+        this.loadFactor = HashMap.DEFAULT_LOAD_FACTOR;
+    }
+
+    public int size() {
+        return hasZeroKey ? size + 1 : size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 线性探测查找key所在的槽位，不存在时返回-1；不处理键0
+     */
+    final int indexOf(int key) {
+        int[] ks;
+        if ((ks = keys) != null) {
+            int mask = ks.length - 1, k;
+            for (int i = HashMap.spreadHash(key) & mask; (k = ks[i]) != 0; i = (i + 1) & mask) {
+                if (k == key)
+                    return i;
+            }
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (key == 0)
+            return zeroValue;
+        int i;
+        return (i = indexOf(key)) < 0 ? null : (V) vals[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(int key, V defaultValue) {
+        if (key == 0)
+            return hasZeroKey ? zeroValue : defaultValue;
+        int i;
+        return (i = indexOf(key)) < 0 ? defaultValue : (V) vals[i];
+    }
+
+    public boolean containsKey(int key) {
+        return key == 0 ? hasZeroKey : indexOf(key) >= 0;
+    }
+
+    public boolean containsValue(Object value) {
+        if (hasZeroKey && Objects.equals(zeroValue, value))
+            return true;
+        int[] ks;
+        if ((ks = keys) != null && size > 0) {
+            Object[] vs = vals;
+            for (int i = 0; i < ks.length; ++i) {
+                if (ks[i] != 0 && Objects.equals(vs[i], value))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    public V put(int key, V value) {
+        return putVal(key, value, false);
+    }
+
+    public V putIfAbsent(int key, V value) {
+        return putVal(key, value, true);
+    }
+
+    /**
+     * put的底层实现，语义与HashMap.putVal一致：onlyIfAbsent时只替换为null的旧值
+     */
+    @SuppressWarnings("unchecked")
+    final V putVal(int key, V value, boolean onlyIfAbsent) {
+        if (key == 0) {
+            V oldValue = zeroValue;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                ++modCount;
+            }
+            if (!onlyIfAbsent || oldValue == null)
+                zeroValue = value;
+            return oldValue;
+        }
+        int[] ks;
+        if ((ks = keys) == null)
+            ks = resize();
+        int mask = ks.length - 1, i, k;
+        for (i = HashMap.spreadHash(key) & mask; (k = ks[i]) != 0; i = (i + 1) & mask) {
+            if (k == key) {
+                V oldValue = (V) vals[i];
+                if (!onlyIfAbsent || oldValue == null)
+                    vals[i] = value;
+                return oldValue;
+            }
+        }
+        ks[i] = key;
+        vals[i] = value;
+        ++modCount;
+        if (++size > threshold)
+            resize();
+        return null;
+    }
+
+    /**
+     * 初始化或者翻倍扩容，容量与阈值的计算规则与HashMap.resize()相同，
+     * 只是阈值被限制在容量-1以内，保证探测总能遇到空槽。
+     */
+    final int[] resize() {
+        int[] oldKeys = keys;
+        Object[] oldVals = vals;
+        int oldCap = (oldKeys == null) ? 0 : oldKeys.length;
+        int newCap;
+        if (oldCap > 0) {
+            if (oldCap >= HashMap.MAXIMUM_CAPACITY) {
+                if (size >= oldCap - 1)
+                    throw new IllegalStateException("IntObjectHashMap is full");
+                threshold = oldCap - 1;
+                return oldKeys;
+            }
+            newCap = oldCap << 1;
+        } else if (threshold > 0)
+            newCap = threshold;
+        else
+            newCap = HashMap.DEFAULT_INITIAL_CAPACITY;
+        float ft = (float) newCap * loadFactor;
+        threshold = (ft < (float) (newCap - 1)) ? (int) ft : newCap - 1;
+        int[] newKeys = new int[newCap];
+        Object[] newVals = new Object[newCap];
+        keys = newKeys;
+        vals = newVals;
+        if (oldKeys != null) {
+            int mask = newCap - 1, k;
+            for (int j = 0; j < oldCap; ++j) {
+                if ((k = oldKeys[j]) != 0) {
+                    int i = HashMap.spreadHash(k) & mask;
+                    while (newKeys[i] != 0)
+                        i = (i + 1) & mask;
+                    newKeys[i] = k;
+                    newVals[i] = oldVals[j];
+                }
+            }
+        }
+        return newKeys;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        if (key == 0) {
+            V oldValue = zeroValue;
+            if (hasZeroKey) {
+                hasZeroKey = false;
+                zeroValue = null;
+                ++modCount;
+            }
+            return oldValue;
+        }
+        int i;
+        if ((i = indexOf(key)) < 0)
+            return null;
+        V oldValue = (V) vals[i];
+        removeAt(i);
+        return oldValue;
+    }
+
+    /**
+     * 删除槽位i上的映射，并把后面探测链上的元素向前移动填补空洞
+     * case:
+     * 元素j只有在其初始槽位home不落在(i, j]这个（环形）区间内时才能移动到i，
+     * 否则移动后从home出发将无法再探测到它。
+     */
+    final void removeAt(int i) {
+        int[] ks = keys;
+        Object[] vs = vals;
+        int mask = ks.length - 1, k;
+        for (int j = i; ; ) {
+            j = (j + 1) & mask;
+            if ((k = ks[j]) == 0)
+                break;
+            int home = HashMap.spreadHash(k) & mask;
+            if (i <= j ? (i < home && home <= j) : (i < home || home <= j))
+                continue;
+            ks[i] = k;
+            vs[i] = vs[j];
+            i = j;
+        }
+        ks[i] = 0;
+        vs[i] = null;
+        --size;
+        ++modCount;
+    }
+
+    /**
+     * 与HashMap.computeIfAbsent语义一致：已有非null值时直接返回，
+     * 否则计算新值，新值为null时不建立映射。
+     *
+     * @throws ConcurrentModificationException 如果检测到mappingFunction修改了本映射
+     */
+    public V computeIfAbsent(int key, IntFunction<? extends V> mappingFunction) {
+        if (mappingFunction == null)
+            throw new NullPointerException();
+        V v;
+        if ((v = get(key)) != null)
+            return v;
+        int mc = modCount;
+        v = mappingFunction.apply(key);
+        if (mc != modCount)
+            throw new ConcurrentModificationException();
+        if (v != null)
+            putVal(key, v, false);
+        return v;
+    }
+
+    /**
+     * 与HashMap.merge语义一致：旧值为null或不存在时直接放入value，
+     * 否则放入remappingFunction的结果，结果为null时删除该映射。
+     *
+     * @throws ConcurrentModificationException 如果检测到remappingFunction修改了本映射
+     */
+    @SuppressWarnings("unchecked")
+    public V merge(int key, V value,
+                   BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        if (value == null)
+            throw new NullPointerException();
+        if (remappingFunction == null)
+            throw new NullPointerException();
+        V oldValue;
+        int i = -1;
+        if (key == 0)
+            oldValue = zeroValue;
+        else
+            oldValue = (i = indexOf(key)) < 0 ? null : (V) vals[i];
+        if (oldValue == null) {
+            putVal(key, value, false);
+            return value;
+        }
+        int mc = modCount;
+        V v = remappingFunction.apply(oldValue, value);
+        if (mc != modCount)
+            throw new ConcurrentModificationException();
+        if (v == null)
+            remove(key);
+        else if (key == 0)
+            zeroValue = v;
+        else
+            vals[i] = v;
+        return v;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(IntObjectConsumer<? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        if (hasZeroKey)
+            action.accept(0, zeroValue);
+        int[] ks;
+        if ((ks = keys) != null && size > 0) {
+            Object[] vs = vals;
+            for (int i = 0; i < ks.length && mc == modCount; ++i) {
+                if (ks[i] != 0)
+                    action.accept(ks[i], (V) vs[i]);
+            }
+        }
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    /**
+     * 清空映射，保留已经分配的数组
+     */
+    public void clear() {
+        modCount++;
+        hasZeroKey = false;
+        zeroValue = null;
+        int[] ks;
+        if ((ks = keys) != null && size > 0) {
+            size = 0;
+            Arrays.fill(ks, 0);
+            Arrays.fill(vals, null);
+        }
+    }
+
+    /**
+     * 浅拷贝：复制键值数组，但不复制值对象本身
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public IntObjectHashMap<V> clone() {
+        IntObjectHashMap<V> result;
+        try {
+            result = (IntObjectHashMap<V>) super.clone();
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+        if (keys != null) {
+            result.keys = keys.clone();
+            result.vals = vals.clone();
+        }
+        result.modCount = 0;
+        return result;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder().append('{');
+        forEach((k, v) -> {
+            if (sb.length() > 1)
+                sb.append(", ");
+            sb.append(k).append('=').append(v == this ? "(this Map)" : v);
+        });
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,769 @@
+package java.util;
+
+import java.io.Serializable;
+import java.util.function.LongConsumer;
+
+/**
+ * 元素为基本类型long的Set，在开放寻址哈希表与位图两种表示之间自动切换
+ * case:
+ * 1、稀疏时与LongObjectHashMap相同：long[]线性探测，后移删除，元素0单独记录，
+ * 散列沿用HashMap.spreadHash，容量沿用tableSizeFor()；
+ * 2、扩容时如果元素的取值跨度不超过DENSE_FACTOR*size，改用位图：words的第i位表示base+i，
+ * 每个元素最多占4字节，而哈希表平均约16字节；
+ * 3、位图模式下跨度超过SPARSE_FACTOR*size时（插入远处的值或删除过多）退回哈希表，
+ * 两个因子之间留出余量，避免在边界上来回切换；
+ * 4、两个集合都是位图时，addAll/retainAll/removeAll按64位字做或、与、与非。
+ * <p>
+ * 注意：迭代器是fail-fast的，支持remove（见IntHashSet.Itr）。
+ */
+public class LongHashSet implements Cloneable, Serializable {
+
+    private static final long serialVersionUID = -4790412213785546290L;
+
+    /**
+     * 跨度不超过DENSE_FACTOR*size时由哈希表转为位图
+     */
+    static final int DENSE_FACTOR = 32;
+
+    /**
+     * 跨度超过SPARSE_FACTOR*size时由位图转回哈希表
+     */
+    static final int SPARSE_FACTOR = 128;
+
+    /**
+     * 位图最多的字数（2^32位），跨度更大的集合只使用哈希表
+     */
+    static final int MAX_WORDS = 1 << 26;
+
+    /**
+     * 元素类型的取值范围，位图的边界不会超出它
+     */
+    static final long TYPE_MIN = Long.MIN_VALUE;
+    static final long TYPE_MAX = Long.MAX_VALUE;
+
+    /**
+     * 哈希表，0表示空槽；位图模式以及第一次add之前为null，长度总是2的幂
+     */
+    long[] keys;
+
+    /**
+     * 元素0是否存在（只在哈希表模式下使用）
+     */
+    boolean hasZeroKey;
+
+    /**
+     * 位图，不为null时处于位图模式
+     */
+    long[] words;
+
+    /**
+     * 位图第0位对应的值，总是64的倍数
+     */
+    long base;
+
+    /**
+     * 元素总数（两种模式下都包括元素0）
+     */
+    int size;
+
+    /**
+     * 哈希表模式的扩容阈值，表未初始化时保存初始容量（与HashMap相同）
+     */
+    int threshold;
+
+    /**
+     * 结构修改次数，用于迭代器与forEach的并发修改检测
+     */
+    transient int modCount;
+
+    public LongHashSet(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    initialCapacity);
+        if (initialCapacity > HashMap.MAXIMUM_CAPACITY)
+            initialCapacity = HashMap.MAXIMUM_CAPACITY;
+        this.threshold = HashMap.tableSizeFor(initialCapacity);
+    }
+
+    public LongHashSet() {
+    }
+
+    /* ---------------- Static utilities -------------- */
+
+    /**
+     * 闭区间[lo, hi]中值的个数，溢出时返回Long.MAX_VALUE
+     */
+    static long span(long lo, long hi) {
+        long d = hi - lo;
+        return (d < 0 || d == Long.MAX_VALUE) ? Long.MAX_VALUE : d + 1;
+    }
+
+    /**
+     * 按容量计算哈希表的阈值：负载因子0.75，且至少留一个空槽
+     */
+    static int thresholdFor(int cap) {
+        return Math.min((int) (cap * HashMap.DEFAULT_LOAD_FACTOR), cap - 1);
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 当前是否使用位图表示，只用于诊断
+     */
+    public boolean isDense() {
+        return words != null;
+    }
+
+    public boolean contains(long value) {
+        long[] ws;
+        if ((ws = words) != null) {
+            long off = value - base;
+            return Long.compareUnsigned(off, (long) ws.length << 6) < 0 &&
+                    (ws[(int) (off >>> 6)] & (1L << off)) != 0;
+        }
+        return (value == 0) ? hasZeroKey : indexOf(value) >= 0;
+    }
+
+    public boolean add(long value) {
+        if (words != null)
+            return addDense(value);
+        if (value == 0) {
+            if (hasZeroKey)
+                return false;
+            hasZeroKey = true;
+            ++size;
+            ++modCount;
+            return true;
+        }
+        long[] ks;
+        if ((ks = keys) == null)
+            ks = resize();
+        int mask = ks.length - 1, i;
+        long k;
+        for (i = HashMap.spreadHash(Long.hashCode(value)) & mask; (k = ks[i]) != 0; i = (i + 1) & mask) {
+            if (k == value)
+                return false;
+        }
+        ks[i] = value;
+        ++modCount;
+        if (++size - (hasZeroKey ? 1 : 0) > threshold)
+            resize();
+        return true;
+    }
+
+    public boolean remove(long value) {
+        long[] ws;
+        if ((ws = words) != null) {
+            long off = value - base;
+            int w;
+            long bit = 1L << off;
+            if (Long.compareUnsigned(off, (long) ws.length << 6) >= 0 ||
+                    (ws[w = (int) (off >>> 6)] & bit) == 0)
+                return false;
+            ws[w] &= ~bit;
+            --size;
+            ++modCount;
+            maybeSparsify();
+            return true;
+        }
+        if (value == 0) {
+            if (!hasZeroKey)
+                return false;
+            hasZeroKey = false;
+            --size;
+            ++modCount;
+            return true;
+        }
+        int i;
+        if ((i = indexOf(value)) < 0)
+            return false;
+        removeAt(i);
+        return true;
+    }
+
+    /**
+     * 清空集合，哈希表模式保留已经分配的数组，位图模式回到未初始化的哈希表
+     */
+    public void clear() {
+        modCount++;
+        hasZeroKey = false;
+        if (words != null) {
+            words = null;
+            threshold = HashMap.DEFAULT_INITIAL_CAPACITY;
+        } else if (keys != null && size > 0)
+            Arrays.fill(keys, 0);
+        size = 0;
+    }
+
+    public void forEach(LongConsumer action) {
+        if (action == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        long[] ws;
+        if ((ws = words) != null) {
+            for (int i = 0; i < ws.length && mc == modCount; ++i) {
+                for (long w = ws[i]; w != 0; w &= w - 1)
+                    action.accept((base + ((long) i << 6) + Long.numberOfTrailingZeros(w)));
+            }
+        } else {
+            if (hasZeroKey)
+                action.accept(0);
+            long[] ks;
+            if ((ks = keys) != null) {
+                for (int i = 0; i < ks.length && mc == modCount; ++i) {
+                    if (ks[i] != 0)
+                        action.accept(ks[i]);
+                }
+            }
+        }
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    public long[] toArray() {
+        long[] a = new long[size];
+        int[] n = {0};
+        forEach(v -> a[n[0]++] = v);
+        return a;
+    }
+
+    public PrimitiveIterator.OfLong iterator() {
+        return new Itr();
+    }
+
+    /* ---------------- Bulk operations -------------- */
+
+    /**
+     * 并集，本集合被修改时返回true
+     */
+    public boolean addAll(LongHashSet other) {
+        if (other == this || other.size == 0)
+            return false;
+        long[] ows;
+        if (words != null && (ows = other.words) != null) {
+            long lo = Math.min(base, other.base);
+            long hi = Math.max(base + ((long) words.length << 6) - 1,
+                    other.base + ((long) ows.length << 6) - 1);
+            if (denseFits(lo, hi, size + other.size)) {
+                coverRange(lo, hi);
+                long[] ws = words;
+                int d = (int) ((other.base - base) >> 6), added = 0;
+                for (int i = 0; i < ows.length; ++i) {
+                    long w = ws[d + i], nw = w | ows[i];
+                    added += Long.bitCount(nw & ~w);
+                    ws[d + i] = nw;
+                }
+                if (added == 0)
+                    return false;
+                size += added;
+                ++modCount;
+                return true;
+            }
+        }
+        int s = size;
+        other.forEach(this::add);
+        return size != s;
+    }
+
+    /**
+     * 交集，本集合被修改时返回true
+     */
+    public boolean retainAll(LongHashSet other) {
+        if (other == this || size == 0)
+            return false;
+        long[] ws, ows;
+        if ((ws = words) != null) {
+            int removed = 0;
+            if ((ows = other.words) != null) {
+                //重叠部分按字相与，其余部分清零；没有重叠时d取一个使所有j越界的值
+                long d = overlaps(other) ? (other.base - base) >> 6 : Integer.MAX_VALUE;
+                for (int i = 0; i < ws.length; ++i) {
+                    long j = i - d;
+                    long w = ws[i], nw = (j >= 0 && j < ows.length) ? w & ows[(int) j] : 0L;
+                    removed += Long.bitCount(w & ~nw);
+                    ws[i] = nw;
+                }
+            } else {
+                for (int i = 0; i < ws.length; ++i) {
+                    for (long w = ws[i]; w != 0; w &= w - 1) {
+                        int b = Long.numberOfTrailingZeros(w);
+                        if (!other.contains((base + ((long) i << 6) + b))) {
+                            ws[i] &= ~(1L << b);
+                            ++removed;
+                        }
+                    }
+                }
+            }
+            if (removed == 0)
+                return false;
+            size -= removed;
+            ++modCount;
+            maybeSparsify();
+            return true;
+        }
+        return filter(other, true);
+    }
+
+    /**
+     * 差集，本集合被修改时返回true
+     */
+    public boolean removeAll(LongHashSet other) {
+        if (size == 0 || other.size == 0)
+            return false;
+        if (other == this) {
+            clear();
+            return true;
+        }
+        long[] ws, ows;
+        if ((ws = words) != null && (ows = other.words) != null) {
+            if (!overlaps(other))
+                return false;
+            long d = (other.base - base) >> 6;
+            int removed = 0;
+            for (int i = 0; i < ows.length; ++i) {
+                long j = d + i;
+                if (j >= 0 && j < ws.length) {
+                    long w = ws[(int) j], nw = w & ~ows[i];
+                    removed += Long.bitCount(w & ~nw);
+                    ws[(int) j] = nw;
+                }
+            }
+            if (removed == 0)
+                return false;
+            size -= removed;
+            ++modCount;
+            maybeSparsify();
+            return true;
+        }
+        if (ws != null || other.size < size) {
+            int s = size;
+            other.forEach(this::remove);
+            return size != s;
+        }
+        return filter(other, false);
+    }
+
+    /**
+     * 哈希表模式下的retainAll/removeAll：保留other.contains(v) == keep的元素，
+     * 幸存者重新插入同样大小的新表，避免边扫描边后移
+     */
+    final boolean filter(LongHashSet other, boolean keep) {
+        long[] ks = keys;
+        int s = size;
+        if (hasZeroKey && other.contains(0) != keep) {
+            hasZeroKey = false;
+            --size;
+        }
+        if (ks != null) {
+            long[] nks = new long[ks.length];
+            int mask = nks.length - 1;
+            long k;
+            for (int j = 0; j < ks.length; ++j) {
+                if ((k = ks[j]) == 0)
+                    continue;
+                if (other.contains(k) == keep) {
+                    int i = HashMap.spreadHash(Long.hashCode(k)) & mask;
+                    while (nks[i] != 0)
+                        i = (i + 1) & mask;
+                    nks[i] = k;
+                } else
+                    --size;
+            }
+            keys = nks;
+        }
+        if (size == s)
+            return false;
+        ++modCount;
+        return true;
+    }
+
+    /* ---------------- Hash table mode -------------- */
+
+    /**
+     * 线性探测查找value所在的槽位，不存在时返回-1；不处理0
+     */
+    final int indexOf(long value) {
+        long[] ks;
+        long k;
+        if ((ks = keys) != null) {
+            int mask = ks.length - 1;
+            for (int i = HashMap.spreadHash(Long.hashCode(value)) & mask; (k = ks[i]) != 0; i = (i + 1) & mask) {
+                if (k == value)
+                    return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 删除槽位i上的元素，并把后面探测链上的元素向前移动填补空洞，见LongObjectHashMap.removeAt
+     */
+    final void removeAt(int i) {
+        long[] ks = keys;
+        int mask = ks.length - 1;
+        long k;
+        for (int j = i; ; ) {
+            j = (j + 1) & mask;
+            if ((k = ks[j]) == 0)
+                break;
+            int home = HashMap.spreadHash(Long.hashCode(k)) & mask;
+            if (i <= j ? (i < home && home <= j) : (i < home || home <= j))
+                continue;
+            ks[i] = k;
+            i = j;
+        }
+        ks[i] = 0;
+        --size;
+        ++modCount;
+    }
+
+    /**
+     * 初始化或者翻倍扩容；表中已有元素且取值足够密集时改为位图
+     */
+    final long[] resize() {
+        long[] oldKeys = keys;
+        int oldCap = (oldKeys == null) ? 0 : oldKeys.length;
+        int newCap;
+        if (oldCap > 0) {
+            long lo = hasZeroKey ? 0 : Long.MAX_VALUE, hi = hasZeroKey ? 0 : Long.MIN_VALUE;
+            for (long k : oldKeys) {
+                if (k != 0) {
+                    lo = Math.min(lo, k);
+                    hi = Math.max(hi, k);
+                }
+            }
+            if (span(lo, hi) <= (long) DENSE_FACTOR * size) {
+                toDense(lo, hi);
+                return null;
+            }
+            if (oldCap >= HashMap.MAXIMUM_CAPACITY) {
+                if (size - (hasZeroKey ? 1 : 0) >= oldCap - 1)
+                    throw new IllegalStateException("LongHashSet is full");
+                threshold = oldCap - 1;
+                return oldKeys;
+            }
+            newCap = oldCap << 1;
+        } else if (threshold > 0)
+            newCap = Math.max(threshold, 2);
+        else
+            newCap = HashMap.DEFAULT_INITIAL_CAPACITY;
+        threshold = thresholdFor(newCap);
+        long[] newKeys = new long[newCap];
+        keys = newKeys;
+        if (oldKeys != null) {
+            int mask = newCap - 1;
+            long k;
+            for (int j = 0; j < oldCap; ++j) {
+                if ((k = oldKeys[j]) != 0) {
+                    int i = HashMap.spreadHash(Long.hashCode(k)) & mask;
+                    while (newKeys[i] != 0)
+                        i = (i + 1) & mask;
+                    newKeys[i] = k;
+                }
+            }
+        }
+        return newKeys;
+    }
+
+    /* ---------------- Bitmap mode -------------- */
+
+    /**
+     * 跨度为[lo, hi]、元素个数为n时是否适合（继续）使用位图
+     */
+    static boolean denseFits(long lo, long hi, int n) {
+        long s = span(lo, hi);
+        return s <= (long) SPARSE_FACTOR * n && s <= (long) MAX_WORDS << 6;
+    }
+
+    /**
+     * 两个位图覆盖的取值范围是否相交；相交时两者的base之差不会超过位图跨度，计算时不会溢出
+     */
+    final boolean overlaps(LongHashSet other) {
+        return other.base <= base + (((long) words.length << 6) - 1) &&
+                base <= other.base + (((long) other.words.length << 6) - 1);
+    }
+
+    /**
+     * 把哈希表中的元素（取值在[lo, hi]中）搬进位图
+     */
+    final void toDense(long lo, long hi) {
+        long b = lo & ~63L;
+        long[] ws = new long[(int) ((hi - b) >>> 6) + 1];
+        long[] ks = keys;
+        if (ks != null) {
+            for (long k : ks) {
+                if (k != 0) {
+                    long off = k - b;
+                    ws[(int) (off >>> 6)] |= 1L << off;
+                }
+            }
+        }
+        if (hasZeroKey) {
+            long off = -b;
+            ws[(int) (off >>> 6)] |= 1L << off;
+        }
+        base = b;
+        words = ws;
+        keys = null;
+        hasZeroKey = false;
+        ++modCount;
+    }
+
+    /**
+     * 把位图中的元素搬回按size预分配的哈希表
+     */
+    final void toSparse() {
+        long[] ws = words;
+        long b = base;
+        int n = size;
+        words = null;
+        keys = null;
+        hasZeroKey = false;
+        size = 0;
+        threshold = HashMap.tableSizeFor((int) Math.min((long) (n / HashMap.DEFAULT_LOAD_FACTOR) + 1,
+                HashMap.MAXIMUM_CAPACITY));
+        for (int i = 0; i < ws.length; ++i) {
+            for (long w = ws[i]; w != 0; w &= w - 1)
+                add((b + ((long) i << 6) + Long.numberOfTrailingZeros(w)));
+        }
+        ++modCount;
+    }
+
+    /**
+     * 位图过于稀疏时退回哈希表
+     */
+    final void maybeSparsify() {
+        if ((long) words.length << 6 > (long) SPARSE_FACTOR * size)
+            toSparse();
+    }
+
+    final boolean addDense(long value) {
+        long[] ws = words;
+        long off = value - base;
+        if (Long.compareUnsigned(off, (long) ws.length << 6) >= 0) {
+            long lo = Math.min(base, value & ~63L);
+            long hi = Math.max(base + ((long) ws.length << 6) - 1, value | 63L);
+            if (!denseFits(lo, hi, size + 1)) {
+                toSparse();
+                return add(value);
+            }
+            //向value的方向额外预留与现有位图等长的空间，摊还多次扩展的复制
+            long slack = (long) ws.length << 6;
+            if (value < base) {
+                long nlo = lo - slack;
+                lo = (nlo > lo || nlo < TYPE_MIN) ? TYPE_MIN : nlo;
+            } else {
+                long nhi = hi + slack;
+                hi = (nhi < hi || nhi > TYPE_MAX) ? TYPE_MAX : nhi;
+            }
+            if (!denseFits(lo, hi, size + 1)) {
+                lo = Math.min(base, value & ~63L);
+                hi = Math.max(base + ((long) ws.length << 6) - 1, value | 63L);
+            }
+            coverRange(lo, hi);
+            ws = words;
+            off = value - base;
+        }
+        int w = (int) (off >>> 6);
+        long bit = 1L << off;
+        if ((ws[w] & bit) != 0)
+            return false;
+        ws[w] |= bit;
+        ++size;
+        ++modCount;
+        return true;
+    }
+
+    /**
+     * 扩展位图使其覆盖[lo, hi]，lo为64的倍数
+     */
+    final void coverRange(long lo, long hi) {
+        long[] ws = words;
+        long b = Math.min(base, lo & ~63L);
+        long top = Math.max(base + ((long) ws.length << 6) - 1, hi);
+        int len = (int) ((top - b) >>> 6) + 1;
+        if (b == base && len == ws.length)
+            return;
+        long[] nws = new long[len];
+        System.arraycopy(ws, 0, nws, (int) ((base - b) >>> 6), ws.length);
+        words = nws;
+        base = b;
+    }
+
+    /* ---------------- Iterator -------------- */
+
+    /**
+     * 两种模式共用的迭代器：位图模式按字扫描，哈希表模式（0最先返回）从最后一个槽位向前扫描，
+     * remove的处理与IntHashSet.Itr相同
+     */
+    final class Itr implements PrimitiveIterator.OfLong {
+        int index;      // next word to load in bitmap mode; slots [index, length) scanned in hash table mode
+        long word;      // remaining bits of the current word
+        boolean zero;   // whether 0 is still to be returned in hash table mode
+        long[] wrapped; // elements moved into scanned slots by remove
+        int wrappedCount;
+        int lastSlot;   // slot of the last returned element, -1 when unknown or 0
+        long lastValue;
+        boolean canRemove;
+        int expectedModCount = modCount;
+
+        Itr() {
+            if (words == null) {
+                zero = hasZeroKey;
+                index = (keys == null) ? 0 : keys.length;
+            }
+        }
+
+        public boolean hasNext() {
+            long[] ws;
+            if ((ws = words) == null) {
+                if (zero)
+                    return true;
+                long[] ks = keys;
+                if (ks != null) {
+                    while (index > 0 && ks[index - 1] == 0)
+                        --index;
+                }
+                return index > 0 || wrappedCount > 0;
+            }
+            while (word == 0 && index < ws.length)
+                word = ws[index++];
+            return word != 0;
+        }
+
+        public long nextLong() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (!hasNext())
+                throw new NoSuchElementException();
+            canRemove = true;
+            if (words != null) {
+                long w = word;
+                word = w & (w - 1);
+                return lastValue = (base + ((long) (index - 1) << 6) + Long.numberOfTrailingZeros(w));
+            }
+            if (zero) {
+                zero = false;
+                lastSlot = -1;
+                return lastValue = 0;
+            }
+            if (index > 0)
+                return lastValue = keys[lastSlot = --index];
+            lastSlot = -1;
+            return lastValue = wrapped[--wrappedCount];
+        }
+
+        public void remove() {
+            if (!canRemove)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            canRemove = false;
+            long v = lastValue;
+            long[] ws;
+            if ((ws = words) != null) {
+                long off = v - base;
+                ws[(int) (off >>> 6)] &= ~(1L << off);
+                --size;
+                ++modCount;
+            } else if (v == 0) {
+                hasZeroKey = false;
+                --size;
+                ++modCount;
+            } else
+                removeScanned((lastSlot >= 0) ? lastSlot : indexOf(v));
+            expectedModCount = modCount;
+        }
+
+        /**
+         * 删除已扫描区域中槽位i上的元素，后移规则与removeAt相同
+         */
+        final void removeScanned(int i) {
+            long[] ks = keys;
+            int mask = ks.length - 1;
+            long k;
+            for (int j = i; ; ) {
+                j = (j + 1) & mask;
+                if ((k = ks[j]) == 0)
+                    break;
+                int home = HashMap.spreadHash(Long.hashCode(k)) & mask;
+                if (i <= j ? (i < home && home <= j) : (i < home || home <= j))
+                    continue;
+                //绕回表头：未扫描的元素移进已扫描区域
+                if (j < index && i >= index) {
+                    if (wrapped == null)
+                        wrapped = new long[2];
+                    else if (wrappedCount == wrapped.length)
+                        wrapped = Arrays.copyOf(wrapped, wrappedCount << 1);
+                    wrapped[wrappedCount++] = k;
+                }
+                ks[i] = k;
+                i = j;
+            }
+            ks[i] = 0;
+            --size;
+            ++modCount;
+        }
+    }
+
+    /* ---------------- Object methods -------------- */
+
+    /**
+     * 浅拷贝：复制内部数组
+     */
+    @Override
+    public LongHashSet clone() {
+        LongHashSet result;
+        try {
+            result = (LongHashSet) super.clone();
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+        if (keys != null)
+            result.keys = keys.clone();
+        if (words != null)
+            result.words = words.clone();
+        result.modCount = 0;
+        return result;
+    }
+
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof LongHashSet))
+            return false;
+        LongHashSet other = (LongHashSet) o;
+        if (other.size != size)
+            return false;
+        for (PrimitiveIterator.OfLong it = other.iterator(); it.hasNext(); ) {
+            if (!contains(it.nextLong()))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * 与Set.hashCode()的约定一致：各元素哈希码之和
+     */
+    public int hashCode() {
+        int h = 0;
+        for (PrimitiveIterator.OfLong it = iterator(); it.hasNext(); )
+            h += Long.hashCode(it.nextLong());
+        return h;
+    }
+
+    public String toString() {
+        StringJoiner sj = new StringJoiner(", ", "[", "]");
+        forEach(v -> sj.add(String.valueOf(v)));
+        return sj.toString();
+    }
+}
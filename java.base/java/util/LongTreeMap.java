@@ -0,0 +1,1054 @@
+package java.util;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.util.function.BiFunction;
+import java.util.function.LongFunction;
+
+/**
+ * 以基本类型long为键的有序映射，结构与BTreeMap相同的B+树
+ * case:
+ * 1、TreeMap<Long, V>的每个Entry都持有一个装箱的Long，getEntry、getCeilingEntry、getFloorEntry
+ * 每比较一次都要拆箱；这里叶子的键直接存放在long[]中，值存放在平行的Object[]中，
+ * 内部节点的分隔键同样是long[]，查找与范围遍历只比较long，不装箱也不拆箱；
+ * 2、节点的分裂、借用与合并与BTreeMap相同，叶子之间用prev/next串成双向链表；
+ * 3、范围查询使用Cursor：定位一次O(log n)，之后沿叶子链表顺序扫描，遍历期间不分配对象；
+ * countInRange()按叶子计数，不逐个访问映射。
+ * <p>
+ * 注意：
+ * 1、不是线程安全的；与LongObjectHashMap相同，值可以为null，get()返回null时用containsKey()区分；
+ * 2、floorEntry()等方法返回的Entry是不可修改的快照；
+ * 3、游标与forEach是fail-fast的：除了游标自己的remove()/setValue()，
+ * 遍历期间的结构修改会抛出ConcurrentModificationException。
+ */
+public class LongTreeMap<V> implements Cloneable, Serializable {
+
+    private static final long serialVersionUID = -5817603262317295904L;
+
+    /**
+     * 每个节点最多的键（叶子）或孩子（内部节点）个数
+     */
+    static final int NODE_CAPACITY = 64;
+
+    /**
+     * 非根节点最少的键或孩子个数
+     */
+    static final int MIN_SIZE = NODE_CAPACITY / 2;
+
+    /**
+     * 只有根叶子时初始的数组长度，按2倍增长到NODE_CAPACITY + 1
+     */
+    static final int INITIAL_LEAF_CAPACITY = 8;
+
+    /**
+     * 关系查找的方向：小于、小于等于、大于等于、大于
+     */
+    static final int LT = 0, LE = 1, GE = 2, GT = 3;
+
+    /**
+     * 不可修改的映射快照，键是基本类型long
+     */
+    public static final class Entry<V> {
+        final long key;
+        final V value;
+
+        Entry(long key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public long getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry))
+                return false;
+            Entry<?> e = (Entry<?>) o;
+            return key == e.key && Objects.equals(value, e.value);
+        }
+
+        // 与Map.Entry的约定相同
+        public int hashCode() {
+            return Long.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    /**
+     * 节点公共部分：叶子中size为键的个数，内部节点中size为孩子的个数
+     */
+    abstract static class LNode {
+        long[] keys;
+        int size;
+    }
+
+    static final class Leaf<V> extends LNode {
+        Object[] vals;
+        Leaf<V> prev, next;
+
+        Leaf(int capacity) {
+            keys = new long[capacity];
+            vals = new Object[capacity];
+        }
+
+        @SuppressWarnings("unchecked")
+        V val(int i) {
+            return (V) vals[i];
+        }
+
+        // 在下标i处插入，调用方保证不超过NODE_CAPACITY + 1
+        void insert(int i, long key, Object value) {
+            int n = size;
+            if (n == keys.length) {
+                int cap = Math.min(n << 1, NODE_CAPACITY + 1);
+                keys = Arrays.copyOf(keys, cap);
+                vals = Arrays.copyOf(vals, cap);
+            }
+            System.arraycopy(keys, i, keys, i + 1, n - i);
+            System.arraycopy(vals, i, vals, i + 1, n - i);
+            keys[i] = key;
+            vals[i] = value;
+            size = n + 1;
+        }
+
+        void removeAt(int i) {
+            int n = --size;
+            System.arraycopy(keys, i + 1, keys, i, n - i);
+            System.arraycopy(vals, i + 1, vals, i, n - i);
+            vals[n] = null;
+        }
+    }
+
+    static final class Inner extends LNode {
+        LNode[] children;
+
+        Inner() {
+            keys = new long[NODE_CAPACITY];
+            children = new LNode[NODE_CAPACITY + 1];
+        }
+    }
+
+    /**
+     * 根节点，空映射为null
+     */
+    transient LNode root;
+
+    /**
+     * 根到叶子之间内部节点的层数，根为叶子时为0
+     */
+    transient int height;
+
+    /**
+     * 叶子链表的首尾
+     */
+    transient Leaf<V> head, tail;
+
+    transient int size;
+
+    transient int modCount;
+
+    /**
+     * put/remove时记录从根到叶子的路径
+     */
+    private transient Inner[] path;
+    private transient int[] pathIndex;
+
+    public LongTreeMap() {
+    }
+
+    /**
+     * 由严格升序的keys与对应的values构建，O(n)
+     *
+     * @throws IllegalArgumentException keys不是严格升序或与values长度不同
+     */
+    public static <V> LongTreeMap<V> fromSorted(long[] keys, V[] values) {
+        int n = keys.length;
+        if (values.length != n)
+            throw new IllegalArgumentException("keys.length != values.length");
+        for (int i = 1; i < n; ++i) {
+            if (keys[i - 1] >= keys[i])
+                throw new IllegalArgumentException("keys not strictly ascending at index " + i);
+        }
+        LongTreeMap<V> map = new LongTreeMap<>();
+        map.buildFromSorted(keys, Arrays.copyOf(values, n, Object[].class), n);
+        return map;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 内部节点中key所在孩子的下标
+     */
+    static int childIndex(Inner p, long key) {
+        int i = Arrays.binarySearch(p.keys, 0, p.size - 1, key);
+        return (i >= 0) ? i + 1 : -(i + 1);
+    }
+
+    /**
+     * key可能所在的叶子，空映射时为null
+     */
+    @SuppressWarnings("unchecked")
+    final Leaf<V> findLeaf(long key) {
+        LNode n = root;
+        for (int d = height; d > 0; --d) {
+            Inner p = (Inner) n;
+            n = p.children[childIndex(p, key)];
+        }
+        return (Leaf<V>) n;
+    }
+
+    /**
+     * 在findLeaf(key)返回的叶子l中按rel查找，返回下标
+     * case:结果可能落在相邻的叶子中：-1表示前一个叶子的最后一个键，l.size表示后一个叶子的第一个键。
+     */
+    static int position(Leaf<?> l, long key, int rel) {
+        int i = Arrays.binarySearch(l.keys, 0, l.size, key);
+        if (i >= 0)
+            return (rel == LT) ? i - 1 : (rel == GT) ? i + 1 : i;
+        return (rel <= LE) ? -(i + 1) - 1 : -(i + 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        Leaf<V> l;
+        int i;
+        return ((l = findLeaf(key)) == null || (i = Arrays.binarySearch(l.keys, 0, l.size, key)) < 0) ?
+                null : (V) l.vals[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(long key, V defaultValue) {
+        Leaf<V> l;
+        int i;
+        return ((l = findLeaf(key)) == null || (i = Arrays.binarySearch(l.keys, 0, l.size, key)) < 0) ?
+                defaultValue : (V) l.vals[i];
+    }
+
+    public boolean containsKey(long key) {
+        Leaf<V> l;
+        return (l = findLeaf(key)) != null && Arrays.binarySearch(l.keys, 0, l.size, key) >= 0;
+    }
+
+    /**
+     * 按叶子链表顺序扫描
+     */
+    public boolean containsValue(Object value) {
+        for (Leaf<V> l = head; l != null; l = l.next) {
+            for (int i = 0; i < l.size; ++i)
+                if (Objects.equals(value, l.vals[i]))
+                    return true;
+        }
+        return false;
+    }
+
+    public V put(long key, V value) {
+        return putVal(key, value, false);
+    }
+
+    public V putIfAbsent(long key, V value) {
+        return putVal(key, value, true);
+    }
+
+    /**
+     * 记录路径用的数组，长度不小于height
+     */
+    private Inner[] pathFor(int h) {
+        Inner[] p = path;
+        if (p == null || p.length < h) {
+            path = p = new Inner[h + 4];
+            pathIndex = new int[h + 4];
+        }
+        return p;
+    }
+
+    /**
+     * 从根下降到key所在的叶子，沿途记录路径
+     */
+    @SuppressWarnings("unchecked")
+    private Leaf<V> descend(long key, Inner[] p, int[] pi) {
+        LNode n = root;
+        for (int d = 0, h = height; d < h; ++d) {
+            Inner q = (Inner) n;
+            int ci = childIndex(q, key);
+            p[d] = q;
+            pi[d] = ci;
+            n = q.children[ci];
+        }
+        return (Leaf<V>) n;
+    }
+
+    /**
+     * put的底层实现，语义与LongObjectHashMap.putVal一致：onlyIfAbsent时只替换为null的旧值
+     */
+    final V putVal(long key, V value, boolean onlyIfAbsent) {
+        if (root == null) {
+            Leaf<V> l = new Leaf<>(INITIAL_LEAF_CAPACITY);
+            l.insert(0, key, value);
+            root = head = tail = l;
+            height = 0;
+            size = 1;
+            modCount++;
+            return null;
+        }
+        Inner[] p = pathFor(height);
+        int[] pi = pathIndex;
+        Leaf<V> l = descend(key, p, pi);
+        int i = Arrays.binarySearch(l.keys, 0, l.size, key);
+        if (i >= 0) {
+            V oldValue = l.val(i);
+            if (!onlyIfAbsent || oldValue == null)
+                l.vals[i] = value;
+            return oldValue;
+        }
+        l.insert(-(i + 1), key, value);
+        size++;
+        modCount++;
+        if (l.size > NODE_CAPACITY)
+            splitLeaf(l, p, pi);
+        return null;
+    }
+
+    /**
+     * 叶子溢出：后一半移到新叶子，新叶子的第一个键作为分隔键插入父节点
+     */
+    private void splitLeaf(Leaf<V> l, Inner[] p, int[] pi) {
+        int n = l.size, m = n >>> 1;
+        Leaf<V> r = new Leaf<>(NODE_CAPACITY + 1);
+        System.arraycopy(l.keys, m, r.keys, 0, n - m);
+        System.arraycopy(l.vals, m, r.vals, 0, n - m);
+        Arrays.fill(l.vals, m, n, null);
+        r.size = n - m;
+        l.size = m;
+        if ((r.next = l.next) != null)
+            r.next.prev = r;
+        else
+            tail = r;
+        r.prev = l;
+        l.next = r;
+        insertIntoParent(l, r.keys[0], r, p, pi, height - 1);
+    }
+
+    /**
+     * 把分隔键sep与右孩子right插入第d层的父节点，父节点溢出时继续向上分裂
+     */
+    private void insertIntoParent(LNode left, long sep, LNode right, Inner[] p, int[] pi, int d) {
+        for (;;) {
+            if (d < 0) {
+                // 根分裂，树长高一层
+                Inner nr = new Inner();
+                nr.children[0] = left;
+                nr.children[1] = right;
+                nr.keys[0] = sep;
+                nr.size = 2;
+                root = nr;
+                height++;
+                return;
+            }
+            Inner q = p[d];
+            int ci = pi[d], n = q.size;
+            System.arraycopy(q.keys, ci, q.keys, ci + 1, n - 1 - ci);
+            q.keys[ci] = sep;
+            System.arraycopy(q.children, ci + 1, q.children, ci + 2, n - 1 - ci);
+            q.children[ci + 1] = right;
+            if ((q.size = ++n) <= NODE_CAPACITY)
+                return;
+            // 内部节点分裂：左边保留m个孩子，中间的分隔键上移
+            int m = n >>> 1;
+            Inner r = new Inner();
+            System.arraycopy(q.children, m, r.children, 0, n - m);
+            System.arraycopy(q.keys, m, r.keys, 0, n - m - 1);
+            sep = q.keys[m - 1];
+            Arrays.fill(q.children, m, n, null);
+            r.size = n - m;
+            q.size = m;
+            left = q;
+            right = r;
+            --d;
+        }
+    }
+
+    /**
+     * 删除key对应的映射，返回值；不存在时返回null
+     */
+    public V remove(long key) {
+        if (root == null)
+            return null;
+        Inner[] p = pathFor(height);
+        int[] pi = pathIndex;
+        Leaf<V> l = descend(key, p, pi);
+        int i = Arrays.binarySearch(l.keys, 0, l.size, key);
+        if (i < 0)
+            return null;
+        V oldValue = l.val(i);
+        deleteAt(l, i, p, pi);
+        return oldValue;
+    }
+
+    /**
+     * 删除叶子l中下标i的映射，p与pi是descend()记录的路径
+     */
+    private void deleteAt(Leaf<V> l, int i, Inner[] p, int[] pi) {
+        l.removeAt(i);
+        size--;
+        modCount++;
+        int h = height;
+        if (h == 0) {
+            if (l.size == 0)
+                root = head = tail = null;
+            return;
+        }
+        if (l.size >= MIN_SIZE)
+            return;
+        Inner q = p[h - 1];
+        int ci = pi[h - 1];
+        @SuppressWarnings("unchecked")
+        Leaf<V> left = (ci > 0) ? (Leaf<V>) q.children[ci - 1] : null;
+        @SuppressWarnings("unchecked")
+        Leaf<V> right = (ci + 1 < q.size) ? (Leaf<V>) q.children[ci + 1] : null;
+        if (left != null && left.size > MIN_SIZE) {
+            // 从左兄弟借最后一个
+            int j = left.size - 1;
+            l.insert(0, left.keys[j], left.vals[j]);
+            left.removeAt(j);
+            q.keys[ci - 1] = l.keys[0];
+        } else if (right != null && right.size > MIN_SIZE) {
+            // 从右兄弟借第一个
+            l.insert(l.size, right.keys[0], right.vals[0]);
+            right.removeAt(0);
+            q.keys[ci] = right.keys[0];
+        } else {
+            if (left != null) {
+                mergeLeaves(left, l);
+                removeChild(q, ci);
+            } else {
+                mergeLeaves(l, right);
+                removeChild(q, ci + 1);
+            }
+            rebalanceInner(q, p, pi, h - 1);
+        }
+    }
+
+    /**
+     * 把叶子b合并到它左边的叶子a
+     */
+    private void mergeLeaves(Leaf<V> a, Leaf<V> b) {
+        System.arraycopy(b.keys, 0, a.keys, a.size, b.size);
+        System.arraycopy(b.vals, 0, a.vals, a.size, b.size);
+        a.size += b.size;
+        if ((a.next = b.next) != null)
+            a.next.prev = a;
+        else
+            tail = a;
+    }
+
+    /**
+     * 删除内部节点q的第k个孩子以及它左边的分隔键
+     */
+    private static void removeChild(Inner q, int k) {
+        int n = q.size;
+        System.arraycopy(q.keys, k, q.keys, k - 1, n - 1 - k);
+        System.arraycopy(q.children, k + 1, q.children, k, n - 1 - k);
+        q.children[n - 1] = null;
+        q.size = n - 1;
+    }
+
+    /**
+     * 第d层的内部节点q少了一个孩子后恢复B+树的性质，与BTreeMap.rebalanceInner相同
+     */
+    private void rebalanceInner(Inner q, Inner[] p, int[] pi, int d) {
+        for (;;) {
+            if (d == 0) {
+                // 根只剩一个孩子时树变矮一层
+                if (q.size == 1) {
+                    root = q.children[0];
+                    height--;
+                }
+                return;
+            }
+            if (q.size >= MIN_SIZE)
+                return;
+            Inner g = p[d - 1];
+            int ci = pi[d - 1];
+            Inner left = (ci > 0) ? (Inner) g.children[ci - 1] : null;
+            Inner right = (ci + 1 < g.size) ? (Inner) g.children[ci + 1] : null;
+            int n = q.size;
+            if (left != null && left.size > MIN_SIZE) {
+                // 经父节点从左兄弟右旋一个孩子
+                int ln = left.size;
+                System.arraycopy(q.keys, 0, q.keys, 1, n - 1);
+                System.arraycopy(q.children, 0, q.children, 1, n);
+                q.keys[0] = g.keys[ci - 1];
+                q.children[0] = left.children[ln - 1];
+                g.keys[ci - 1] = left.keys[ln - 2];
+                left.children[ln - 1] = null;
+                left.size = ln - 1;
+                q.size = n + 1;
+                return;
+            }
+            if (right != null && right.size > MIN_SIZE) {
+                // 经父节点从右兄弟左旋一个孩子
+                int rn = right.size;
+                q.keys[n - 1] = g.keys[ci];
+                q.children[n] = right.children[0];
+                g.keys[ci] = right.keys[0];
+                System.arraycopy(right.keys, 1, right.keys, 0, rn - 2);
+                System.arraycopy(right.children, 1, right.children, 0, rn - 1);
+                right.children[rn - 1] = null;
+                right.size = rn - 1;
+                q.size = n + 1;
+                return;
+            }
+            if (left != null) {
+                mergeInner(left, g.keys[ci - 1], q);
+                removeChild(g, ci);
+            } else {
+                mergeInner(q, g.keys[ci], right);
+                removeChild(g, ci + 1);
+            }
+            q = g;
+            --d;
+        }
+    }
+
+    /**
+     * 把内部节点b与分隔键sep合并到它左边的a
+     */
+    private static void mergeInner(Inner a, long sep, Inner b) {
+        int an = a.size, bn = b.size;
+        a.keys[an - 1] = sep;
+        System.arraycopy(b.keys, 0, a.keys, an, bn - 1);
+        System.arraycopy(b.children, 0, a.children, an, bn);
+        a.size = an + bn;
+    }
+
+    /**
+     * 与LongObjectHashMap.computeIfAbsent语义一致：已有非null值时直接返回，
+     * 否则计算新值，新值为null时不建立映射。
+     *
+     * @throws ConcurrentModificationException 如果检测到mappingFunction修改了本映射
+     */
+    public V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        if (mappingFunction == null)
+            throw new NullPointerException();
+        V v;
+        if ((v = get(key)) != null)
+            return v;
+        int mc = modCount;
+        v = mappingFunction.apply(key);
+        if (mc != modCount)
+            throw new ConcurrentModificationException();
+        if (v != null)
+            putVal(key, v, false);
+        return v;
+    }
+
+    /**
+     * 与LongObjectHashMap.merge语义一致：旧值为null或不存在时直接放入value，
+     * 否则放入remappingFunction的结果，结果为null时删除该映射。
+     *
+     * @throws ConcurrentModificationException 如果检测到remappingFunction修改了本映射
+     */
+    public V merge(long key, V value,
+                   BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        if (value == null)
+            throw new NullPointerException();
+        if (remappingFunction == null)
+            throw new NullPointerException();
+        V oldValue = get(key);
+        if (oldValue == null) {
+            putVal(key, value, false);
+            return value;
+        }
+        int mc = modCount;
+        V v = remappingFunction.apply(oldValue, value);
+        if (mc != modCount)
+            throw new ConcurrentModificationException();
+        if (v == null)
+            remove(key);
+        else
+            putVal(key, v, false);
+        return v;
+    }
+
+    /**
+     * 清空映射
+     */
+    public void clear() {
+        modCount++;
+        size = 0;
+        root = head = tail = null;
+        height = 0;
+        path = null;
+        pathIndex = null;
+    }
+
+    /**
+     * 由严格升序的ks[0, n)、vs[0, n)自底向上构建，O(n)，与BTreeMap.buildFromSorted相同
+     */
+    final void buildFromSorted(long[] ks, Object[] vs, int n) {
+        modCount++;
+        path = null;
+        pathIndex = null;
+        if (n == 0) {
+            root = head = tail = null;
+            height = size = 0;
+            return;
+        }
+        int count = (n + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        LNode[] level = new LNode[count];
+        long[] mins = new long[count];
+        Leaf<V> prev = null;
+        for (int i = 0, off = 0; i < count; ++i) {
+            int c = n / count + ((i < n % count) ? 1 : 0);
+            Leaf<V> l = new Leaf<>(count == 1 ? Math.max(c, INITIAL_LEAF_CAPACITY) : NODE_CAPACITY + 1);
+            System.arraycopy(ks, off, l.keys, 0, c);
+            System.arraycopy(vs, off, l.vals, 0, c);
+            l.size = c;
+            off += c;
+            if ((l.prev = prev) == null)
+                head = l;
+            else
+                prev.next = l;
+            prev = l;
+            level[i] = l;
+            mins[i] = l.keys[0];
+        }
+        tail = prev;
+        int h = 0;
+        while (count > 1) {
+            int pc = (count + NODE_CAPACITY - 1) / NODE_CAPACITY;
+            LNode[] up = new LNode[pc];
+            long[] upMins = new long[pc];
+            for (int i = 0, off = 0; i < pc; ++i) {
+                int c = count / pc + ((i < count % pc) ? 1 : 0);
+                Inner q = new Inner();
+                System.arraycopy(level, off, q.children, 0, c);
+                System.arraycopy(mins, off + 1, q.keys, 0, c - 1);
+                q.size = c;
+                up[i] = q;
+                upMins[i] = mins[off];
+                off += c;
+            }
+            level = up;
+            mins = upMins;
+            count = pc;
+            ++h;
+        }
+        root = level[0];
+        height = h;
+        size = n;
+    }
+
+    /* ---------------- Navigation -------------- */
+
+    public long firstKey() {
+        Leaf<V> l = head;
+        if (l == null)
+            throw new NoSuchElementException();
+        return l.keys[0];
+    }
+
+    public long lastKey() {
+        Leaf<V> l = tail;
+        if (l == null)
+            throw new NoSuchElementException();
+        return l.keys[l.size - 1];
+    }
+
+    public Entry<V> firstEntry() {
+        Leaf<V> l = head;
+        return (l == null) ? null : new Entry<>(l.keys[0], l.val(0));
+    }
+
+    public Entry<V> lastEntry() {
+        Leaf<V> l = tail;
+        return (l == null) ? null : new Entry<>(l.keys[l.size - 1], l.val(l.size - 1));
+    }
+
+    public Entry<V> pollFirstEntry() {
+        Entry<V> e = firstEntry();
+        if (e != null)
+            remove(e.key);
+        return e;
+    }
+
+    public Entry<V> pollLastEntry() {
+        Entry<V> e = lastEntry();
+        if (e != null)
+            remove(e.key);
+        return e;
+    }
+
+    /**
+     * 按rel查找key，返回快照，不存在时为null
+     */
+    final Entry<V> seekEntry(long key, int rel) {
+        Leaf<V> l = findLeaf(key);
+        if (l == null)
+            return null;
+        int j = position(l, key, rel);
+        if (j < 0) {
+            if ((l = l.prev) == null)
+                return null;
+            j = l.size - 1;
+        } else if (j >= l.size) {
+            if ((l = l.next) == null)
+                return null;
+            j = 0;
+        }
+        return new Entry<>(l.keys[j], l.val(j));
+    }
+
+    public Entry<V> lowerEntry(long key) {
+        return seekEntry(key, LT);
+    }
+
+    public Entry<V> floorEntry(long key) {
+        return seekEntry(key, LE);
+    }
+
+    public Entry<V> ceilingEntry(long key) {
+        return seekEntry(key, GE);
+    }
+
+    public Entry<V> higherEntry(long key) {
+        return seekEntry(key, GT);
+    }
+
+    /* ---------------- Range queries -------------- */
+
+    static void checkRange(long from, long to) {
+        if (from > to)
+            throw new IllegalArgumentException("fromKey > toKey");
+    }
+
+    /**
+     * 键在区间内的映射个数，相当于subMap(from, fromInclusive, to, toInclusive).size()
+     * case:两端的叶子按下标计数，中间的叶子直接加size，代价是O(log n + 叶子个数)。
+     */
+    public int countInRange(long from, boolean fromInclusive, long to, boolean toInclusive) {
+        checkRange(from, to);
+        Leaf<V> a = findLeaf(from), b;
+        if (a == null)
+            return 0;
+        int i = position(a, from, fromInclusive ? GE : GT);
+        if (i >= a.size) {
+            if ((a = a.next) == null)
+                return 0;
+            i = 0;
+        }
+        int j = position(b = findLeaf(to), to, toInclusive ? LE : LT);
+        if (j < 0) {
+            if ((b = b.prev) == null)
+                return 0;
+            j = b.size - 1;
+        }
+        if (a.keys[i] > b.keys[j])
+            return 0;
+        if (a == b)
+            return j - i + 1;
+        int n = a.size - i + j + 1;
+        for (Leaf<V> l = a.next; l != b; l = l.next)
+            n += l.size;
+        return n;
+    }
+
+    /**
+     * 按升序访问所有映射
+     *
+     * @throws ConcurrentModificationException 如果action修改了本映射的结构
+     */
+    public void forEach(LongObjectHashMap.LongObjectConsumer<? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        for (Cursor c = cursor(); c.advance(); )
+            action.accept(c.key(), c.value());
+    }
+
+    /**
+     * 按升序访问键在区间内的映射，相当于subMap(from, fromInclusive, to, toInclusive).forEach(action)
+     *
+     * @throws ConcurrentModificationException 如果action修改了本映射的结构
+     */
+    public void forEachInRange(long from, boolean fromInclusive, long to, boolean toInclusive,
+                               LongObjectHashMap.LongObjectConsumer<? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        for (Cursor c = cursor(from, fromInclusive, to, toInclusive); c.advance(); )
+            action.accept(c.key(), c.value());
+    }
+
+    /**
+     * 按升序遍历所有映射的游标
+     */
+    public Cursor cursor() {
+        return new Cursor(false, true, 0L, false, true, 0L, false);
+    }
+
+    /**
+     * 按降序遍历所有映射的游标
+     */
+    public Cursor descendingCursor() {
+        return new Cursor(true, true, 0L, false, true, 0L, false);
+    }
+
+    /**
+     * 按升序遍历键在区间内的映射的游标
+     *
+     * @throws IllegalArgumentException from大于to
+     */
+    public Cursor cursor(long from, boolean fromInclusive, long to, boolean toInclusive) {
+        checkRange(from, to);
+        return new Cursor(false, false, from, fromInclusive, false, to, toInclusive);
+    }
+
+    /**
+     * 按降序遍历键在区间内的映射的游标，区间的含义与cursor(from, fromInclusive, to, toInclusive)相同
+     *
+     * @throws IllegalArgumentException from大于to
+     */
+    public Cursor descendingCursor(long from, boolean fromInclusive, long to, boolean toInclusive) {
+        checkRange(from, to);
+        return new Cursor(true, false, from, fromInclusive, false, to, toInclusive);
+    }
+
+    /**
+     * 沿叶子链表移动的游标，用法：
+     * <pre>
+     * for (LongTreeMap&lt;V&gt;.Cursor c = map.cursor(from, true, to, false); c.advance(); )
+     *     use(c.key(), c.value());
+     * </pre>
+     * 与HashMap.Cursor一样，reset()之后可以重复使用；remove()之后按下一个键重新定位，代价是O(log n)。
+     */
+    public final class Cursor {
+        final boolean descending;
+        final boolean fromStart, toEnd;
+        final long lo, hi;
+        final boolean loInclusive, hiInclusive;
+        Leaf<V> next;          // leaf of the next mapping
+        int nextIndex;
+        Leaf<V> current;       // leaf of the current mapping
+        int index;
+        int expectedModCount;  // for fast-fail
+
+        Cursor(boolean descending,
+               boolean fromStart, long lo, boolean loInclusive,
+               boolean toEnd, long hi, boolean hiInclusive) {
+            this.descending = descending;
+            this.fromStart = fromStart;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.toEnd = toEnd;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            reset();
+        }
+
+        /**
+         * 回到第一个映射之前，可以在映射被修改之后重新使用
+         */
+        public Cursor reset() {
+            expectedModCount = modCount;
+            current = null;
+            if (!descending) {
+                if (fromStart) {
+                    next = head;
+                    nextIndex = 0;
+                } else
+                    seek(lo, loInclusive ? GE : GT);
+            } else {
+                if (toEnd) {
+                    next = tail;
+                    nextIndex = (next == null) ? 0 : next.size - 1;
+                } else
+                    seek(hi, hiInclusive ? LE : LT);
+            }
+            checkBound();
+            return this;
+        }
+
+        // 把下一个位置定位到满足rel的映射
+        final void seek(long key, int rel) {
+            Leaf<V> l = findLeaf(key);
+            int j = 0;
+            if (l != null) {
+                j = position(l, key, rel);
+                if (j < 0) {
+                    l = l.prev;
+                    j = (l == null) ? 0 : l.size - 1;
+                } else if (j >= l.size) {
+                    l = l.next;
+                    j = 0;
+                }
+            }
+            next = l;
+            nextIndex = j;
+        }
+
+        // 下一个位置越过区间的另一端时结束
+        final void checkBound() {
+            Leaf<V> l;
+            if ((l = next) != null) {
+                long k = l.keys[nextIndex];
+                if (descending ? !fromStart && (k < lo || (k == lo && !loInclusive))
+                        : !toEnd && (k > hi || (k == hi && !hiInclusive)))
+                    next = null;
+            }
+        }
+
+        /**
+         * 移动到下一个映射，没有更多映射时返回false
+         */
+        public boolean advance() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            Leaf<V> l = next;
+            if (l == null) {
+                current = null;
+                return false;
+            }
+            current = l;
+            index = nextIndex;
+            if (!descending) {
+                if (++nextIndex >= l.size) {
+                    next = l.next;
+                    nextIndex = 0;
+                }
+            } else if (--nextIndex < 0) {
+                next = l.prev;
+                nextIndex = (next == null) ? 0 : next.size - 1;
+            }
+            checkBound();
+            return true;
+        }
+
+        public long key() {
+            return currentLeaf().keys[index];
+        }
+
+        public V value() {
+            return currentLeaf().val(index);
+        }
+
+        /**
+         * 替换当前映射的值，不是结构修改
+         */
+        public V setValue(V value) {
+            Leaf<V> l = currentLeaf();
+            V oldValue = l.val(index);
+            l.vals[index] = value;
+            return oldValue;
+        }
+
+        /**
+         * 删除当前映射，之后直到下一次advance()都没有当前映射
+         */
+        public void remove() {
+            Leaf<V> l = currentLeaf(), n = next;
+            long k = l.keys[index];
+            long nk = (n == null) ? 0L : n.keys[nextIndex];
+            current = null;
+            LongTreeMap.this.remove(k);
+            expectedModCount = modCount;
+            // 叶子可能被借用或合并，按下一个键重新定位
+            if (n != null)
+                seek(nk, descending ? LE : GE);
+        }
+
+        final Leaf<V> currentLeaf() {
+            Leaf<V> l;
+            if ((l = current) == null)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            return l;
+        }
+    }
+
+    /**
+     * 克隆：按顺序批量重建，O(n)，不复制值对象本身
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public LongTreeMap<V> clone() {
+        LongTreeMap<V> result;
+        try {
+            result = (LongTreeMap<V>) super.clone();
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+        int n = size, k = 0;
+        long[] ks = new long[n];
+        Object[] vs = new Object[n];
+        for (Leaf<V> l = head; l != null; l = l.next) {
+            System.arraycopy(l.keys, 0, ks, k, l.size);
+            System.arraycopy(l.vals, 0, vs, k, l.size);
+            k += l.size;
+        }
+        result.modCount = 0;
+        result.buildFromSorted(ks, vs, n);
+        return result;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder().append('{');
+        for (Cursor c = cursor(); c.advance(); ) {
+            if (sb.length() > 1)
+                sb.append(", ");
+            V v = c.value();
+            sb.append(c.key()).append('=').append(v == this ? "(this Map)" : v);
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * 写入映射个数，再按升序写入所有的键和值
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+            throws IOException {
+        s.defaultWriteObject();
+        s.writeInt(size);
+        for (Leaf<V> l = head; l != null; l = l.next) {
+            for (int i = 0; i < l.size; ++i) {
+                s.writeLong(l.keys[i]);
+                s.writeObject(l.vals[i]);
+            }
+        }
+    }
+
+    /**
+     * 按写入的顺序读出后批量构建
+     */
+    private void readObject(java.io.ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        int n = s.readInt();
+        if (n < 0)
+            throw new InvalidObjectException("Illegal mappings count: " + n);
+        long[] ks = new long[n];
+        Object[] vs = new Object[n];
+        for (int i = 0; i < n; ++i) {
+            ks[i] = s.readLong();
+            if (i > 0 && ks[i - 1] >= ks[i])
+                throw new InvalidObjectException("keys not strictly ascending");
+            vs[i] = s.readObject();
+        }
+        buildFromSorted(ks, vs, n);
+    }
+}
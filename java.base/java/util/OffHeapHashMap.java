@@ -0,0 +1,685 @@
+package java.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 键、值以及索引全部存放在堆外（direct）内存中的{@code String -> byte[]}映射
+ * case:
+ * 大量的键值对留在堆内时，每次GC都要扫描这些对象；这里堆内只保留少量ByteBuffer引用。
+ * 1、数据区由固定大小的direct内存块（chunk）组成，每条记录按
+ * [hash(int) | 键长度(int) | 值长度(int) | 键的UTF-8字节 | 值字节] 追加写入，记录不跨块；
+ * 2、索引是一块direct内存中的long数组，槽位保存记录地址+1（0表示空槽，-1表示已删除），
+ * 冲突使用线性探测；容量沿用HashMap.tableSizeFor()的2的幂策略，
+ * 扩容阈值沿用容量*负载因子的规则（为保证探测能遇到空槽，最多为容量-1）；
+ * 3、散列使用HashMap.hash(key)，并把结果保存在记录中，扩容时无需重新解码键。
+ * <p>
+ * 注意：
+ * 1、不允许null键和null值；get返回的是值的拷贝，修改返回的数组不会影响映射；
+ * 2、get每次返回新的数组，因此containsValue、remove(key, value)、replace(key, oldValue, newValue)、
+ * entrySet().contains/remove、条目与映射的equals/hashCode都按值的内容（Arrays.equals）比较，
+ * 这与Map约定的值equals（byte[]为引用比较）不同：本映射与内容相同的HashMap<String, byte[]>
+ * 用本映射的equals比较时相等，反过来用HashMap的equals比较时仍然不相等；
+ * 3、替换为等长的值时原地覆盖，否则追加新记录，旧记录成为垃圾，
+ * 垃圾超过存活数据时整体压缩到新的内存块中，旧块由GC回收其direct内存；
+ * 4、与HashMap一样不是线程安全的，迭代器是fail-fast的。
+ */
+public class OffHeapHashMap extends AbstractMap<String, byte[]>
+        implements Map<String, byte[]> {
+
+    /**
+     * 默认的数据块大小：64MB
+     */
+    static final int DEFAULT_CHUNK_SIZE = 1 << 26;
+
+    /**
+     * 索引的最大容量：一个direct ByteBuffer最多容纳2^27个long
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 27;
+
+    /**
+     * 记录头：hash、键长度、值长度
+     */
+    static final int HEADER_SIZE = 12;
+
+    /**
+     * 索引槽位中的已删除标记
+     */
+    static final long DELETED = -1L;
+
+    /* ---------------- Fields -------------- */
+
+    /**
+     * 负载因子
+     */
+    final float loadFactor;
+
+    /**
+     * 数据块大小为2^chunkShift，记录地址 = 块下标 << chunkShift | 块内偏移
+     */
+    final int chunkShift;
+
+    /**
+     * 数据块
+     */
+    final ArrayList<ByteBuffer> chunks = new ArrayList<>();
+
+    /**
+     * 最后一个数据块的写入位置
+     */
+    int chunkPos;
+
+    /**
+     * 索引，第一次put时分配
+     */
+    ByteBuffer index;
+
+    /**
+     * 索引容量
+     */
+    int capacity;
+
+    /**
+     * 映射个数、已删除槽位个数
+     */
+    int size;
+    int tombstones;
+
+    /**
+     * 扩容阈值，索引未分配时保存初始容量
+     */
+    int threshold;
+
+    /**
+     * 存活记录与垃圾记录占用的字节数
+     */
+    long liveBytes;
+    long garbageBytes;
+
+    /**
+     * 结构修改次数，用于fail-fast
+     */
+    transient int modCount;
+
+    transient Set<Map.Entry<String, byte[]>> entrySet;
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * @param initialCapacity 索引的初始容量
+     * @param loadFactor      负载因子
+     * @param chunkSize       数据块大小，向上取整为2的幂，单条记录不能超过该值
+     */
+    public OffHeapHashMap(int initialCapacity, float loadFactor, int chunkSize) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                    loadFactor);
+        if (chunkSize <= HEADER_SIZE)
+            throw new IllegalArgumentException("Illegal chunk size: " +
+                    chunkSize);
+        this.loadFactor = loadFactor;
+        this.threshold = HashMap.tableSizeFor(initialCapacity);
+        this.chunkShift = Integer.numberOfTrailingZeros(HashMap.tableSizeFor(chunkSize));
+    }
+
+    public OffHeapHashMap(int initialCapacity) {
+        this(initialCapacity, HashMap.DEFAULT_LOAD_FACTOR, DEFAULT_CHUNK_SIZE);
+    }
+
+    public OffHeapHashMap() {
+        this(HashMap.DEFAULT_INITIAL_CAPACITY, HashMap.DEFAULT_LOAD_FACTOR, DEFAULT_CHUNK_SIZE);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 已经分配的堆外内存字节数（数据块加索引）
+     */
+    public long offHeapBytes() {
+        return ((long) chunks.size() << chunkShift) +
+                ((index == null) ? 0L : (long) capacity << 3);
+    }
+
+    public byte[] get(Object key) {
+        int i;
+        if (!(key instanceof String) ||
+                (i = find(encode((String) key), HashMap.hash(key))) < 0)
+            return null;
+        return readValue(slot(i) - 1);
+    }
+
+    public boolean containsKey(Object key) {
+        return key instanceof String &&
+                find(encode((String) key), HashMap.hash(key)) >= 0;
+    }
+
+    public byte[] put(String key, byte[] value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        byte[] kb = encode(key);
+        int h = HashMap.hash(key);
+        if (index == null)
+            resize(threshold);
+        int i;
+        if ((i = find(kb, h)) >= 0) {
+            long addr = slot(i) - 1;
+            byte[] oldValue = readValue(addr);
+            replaceValue(i, addr, h, kb, value);
+            return oldValue;
+        }
+        long addr = append(h, kb, value);
+        i = insertSlot(h);
+        if (slot(i) == DELETED)
+            --tombstones;
+        setSlot(i, addr + 1);
+        ++size;
+        ++modCount;
+        if (size + tombstones > threshold)
+            rehash();
+        return null;
+    }
+
+    public byte[] remove(Object key) {
+        int i;
+        if (!(key instanceof String) ||
+                (i = find(encode((String) key), HashMap.hash(key))) < 0)
+            return null;
+        byte[] oldValue = readValue(slot(i) - 1);
+        removeSlot(i);
+        return oldValue;
+    }
+
+    /**
+     * 值按内容比较，见类注释
+     */
+    public boolean remove(Object key, Object value) {
+        int i;
+        if ((i = findEntry(key, value)) < 0)
+            return false;
+        removeSlot(i);
+        return true;
+    }
+
+    /**
+     * oldValue按内容比较，见类注释
+     */
+    public boolean replace(String key, byte[] oldValue, byte[] newValue) {
+        if (newValue == null)
+            throw new NullPointerException();
+        if (findEntry(key, oldValue) < 0)
+            return false;
+        put(key, newValue);
+        return true;
+    }
+
+    /**
+     * 值按内容比较，逐条与堆外的值字节比较，不复制值
+     */
+    public boolean containsValue(Object value) {
+        if (!(value instanceof byte[]))
+            return false;
+        byte[] v = (byte[]) value;
+        for (int i = 0; i < capacity; ++i) {
+            long s = slot(i);
+            if (s != 0L && s != DELETED && valueMatches(s - 1, v))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * 释放全部数据块与索引（direct内存在对应的ByteBuffer被GC后归还）
+     */
+    public void clear() {
+        modCount++;
+        if (index != null) {
+            threshold = capacity;
+            index = null;
+            capacity = 0;
+        }
+        chunks.clear();
+        chunkPos = 0;
+        size = 0;
+        tombstones = 0;
+        liveBytes = 0L;
+        garbageBytes = 0L;
+    }
+
+    public Set<Map.Entry<String, byte[]>> entrySet() {
+        Set<Map.Entry<String, byte[]>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    /**
+     * 与AbstractMap.equals相同，只是值按内容比较
+     */
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof Map))
+            return false;
+        Map<?, ?> m = (Map<?, ?>) o;
+        if (m.size() != size)
+            return false;
+        try {
+            for (Map.Entry<?, ?> e : m.entrySet()) {
+                if (findEntry(e.getKey(), e.getValue()) < 0)
+                    return false;
+            }
+        } catch (ClassCastException | NullPointerException unused) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 各条目hashCode之和，条目的hashCode按值的内容计算（见OffHeapEntry），与equals一致
+     */
+    public int hashCode() {
+        int h = 0;
+        for (int i = 0; i < capacity; ++i) {
+            long s = slot(i);
+            if (s != 0L && s != DELETED) {
+                long addr = s - 1;
+                h += readKey(addr).hashCode() ^ Arrays.hashCode(readValue(addr));
+            }
+        }
+        return h;
+    }
+
+    /* ---------------- Index -------------- */
+
+    final long slot(int i) {
+        return index.getLong(i << 3);
+    }
+
+    final void setSlot(int i, long v) {
+        index.putLong(i << 3, v);
+    }
+
+    /**
+     * 线性探测查找键所在的槽位，不存在时返回-1
+     */
+    final int find(byte[] kb, int h) {
+        if (index == null)
+            return -1;
+        int mask = capacity - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            long s = slot(i);
+            if (s == 0L)
+                return -1;
+            if (s != DELETED && matches(s - 1, h, kb))
+                return i;
+        }
+    }
+
+    /**
+     * 替换槽位i上记录addr（键为kb）的值：等长的值原地覆盖，否则追加新记录并让槽位指向它
+     */
+    final void replaceValue(int i, long addr, int h, byte[] kb, byte[] value) {
+        if (chunkOf(addr).getInt(offsetOf(addr) + 8) == value.length)
+            writeBytes(addr + HEADER_SIZE + kb.length, value);
+        else {
+            setSlot(i, append(h, kb, value) + 1);
+            retire(addr);
+            maybeCompact();
+        }
+    }
+
+    /**
+     * key映射到的值与value内容相同时返回其槽位，否则返回-1
+     */
+    final int findEntry(Object key, Object value) {
+        int i;
+        if (!(key instanceof String) || !(value instanceof byte[]) ||
+                (i = find(encode((String) key), HashMap.hash(key))) < 0 ||
+                !valueMatches(slot(i) - 1, (byte[]) value))
+            return -1;
+        return i;
+    }
+
+    /**
+     * 删除槽位i上的记录，只留下墓碑，不会移动其它槽位
+     */
+    final void removeSlot(int i) {
+        long addr = slot(i) - 1;
+        setSlot(i, DELETED);
+        ++tombstones;
+        --size;
+        ++modCount;
+        retire(addr);
+        maybeCompact();
+    }
+
+    /**
+     * 沿探测序列找到第一个空槽或已删除槽
+     */
+    final int insertSlot(int h) {
+        int mask = capacity - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            long s = slot(i);
+            if (s == 0L || s == DELETED)
+                return i;
+        }
+    }
+
+    /**
+     * 已删除槽位较多时原容量重建索引，否则容量翻倍
+     */
+    final void rehash() {
+        int cap = capacity;
+        if (size < (threshold >>> 1) || cap >= MAXIMUM_CAPACITY) {
+            if (tombstones == 0)
+                throw new IllegalStateException("OffHeapHashMap is full");
+            resize(cap);
+        } else
+            resize(cap << 1);
+    }
+
+    /**
+     * 以newCap为容量重建索引，记录中保存的hash使得无需重新计算键的哈希
+     */
+    final void resize(int newCap) {
+        ByteBuffer oldIndex = index;
+        int oldCap = capacity;
+        if (newCap < 2)
+            newCap = 2;
+        index = ByteBuffer.allocateDirect(newCap << 3);
+        capacity = newCap;
+        float ft = (float) newCap * loadFactor;
+        threshold = (ft < (float) (newCap - 1)) ? (int) ft : newCap - 1;
+        tombstones = 0;
+        if (oldIndex != null) {
+            for (int j = 0; j < oldCap; ++j) {
+                long s = oldIndex.getLong(j << 3);
+                if (s != 0L && s != DELETED)
+                    setSlot(insertSlot(hashAt(s - 1)), s);
+            }
+        }
+    }
+
+    /* ---------------- Records -------------- */
+
+    static byte[] encode(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    final ByteBuffer chunkOf(long addr) {
+        return chunks.get((int) (addr >>> chunkShift));
+    }
+
+    final int offsetOf(long addr) {
+        return (int) addr & ((1 << chunkShift) - 1);
+    }
+
+    final int hashAt(long addr) {
+        return chunkOf(addr).getInt(offsetOf(addr));
+    }
+
+    final int recordSize(long addr) {
+        ByteBuffer c = chunkOf(addr);
+        int off = offsetOf(addr);
+        return HEADER_SIZE + c.getInt(off + 4) + c.getInt(off + 8);
+    }
+
+    /**
+     * 比较记录的hash与键字节
+     */
+    final boolean matches(long addr, int h, byte[] kb) {
+        ByteBuffer c = chunkOf(addr);
+        int off = offsetOf(addr);
+        if (c.getInt(off) != h || c.getInt(off + 4) != kb.length)
+            return false;
+        off += HEADER_SIZE;
+        for (int i = 0; i < kb.length; ++i) {
+            if (c.get(off + i) != kb[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * 比较记录的值字节与v
+     */
+    final boolean valueMatches(long addr, byte[] v) {
+        ByteBuffer c = chunkOf(addr);
+        int off = offsetOf(addr);
+        if (c.getInt(off + 8) != v.length)
+            return false;
+        off += HEADER_SIZE + c.getInt(off + 4);
+        for (int i = 0; i < v.length; ++i) {
+            if (c.get(off + i) != v[i])
+                return false;
+        }
+        return true;
+    }
+
+    final String readKey(long addr) {
+        return new String(readKeyBytes(addr), StandardCharsets.UTF_8);
+    }
+
+    final byte[] readKeyBytes(long addr) {
+        ByteBuffer c = chunkOf(addr);
+        int off = offsetOf(addr);
+        byte[] kb = new byte[c.getInt(off + 4)];
+        c.duplicate().position(off + HEADER_SIZE).get(kb);
+        return kb;
+    }
+
+    final byte[] readValue(long addr) {
+        ByteBuffer c = chunkOf(addr);
+        int off = offsetOf(addr);
+        int klen = c.getInt(off + 4);
+        byte[] v = new byte[c.getInt(off + 8)];
+        c.duplicate().position(off + HEADER_SIZE + klen).get(v);
+        return v;
+    }
+
+    final void writeBytes(long addr, byte[] b) {
+        chunkOf(addr).duplicate().position(offsetOf(addr)).put(b);
+    }
+
+    /**
+     * 追加一条记录并返回其地址；当前块放不下时新分配一个块
+     */
+    final long append(int h, byte[] kb, byte[] value) {
+        int chunkSize = 1 << chunkShift;
+        long len = (long) HEADER_SIZE + kb.length + value.length;
+        if (len > chunkSize)
+            throw new IllegalArgumentException("Record of " + len +
+                    " bytes exceeds chunk size " + chunkSize);
+        if (chunks.isEmpty() || chunkPos + len > chunkSize) {
+            chunks.add(ByteBuffer.allocateDirect(chunkSize));
+            chunkPos = 0;
+        }
+        ByteBuffer c = chunks.get(chunks.size() - 1);
+        int off = chunkPos;
+        c.putInt(off, h);
+        c.putInt(off + 4, kb.length);
+        c.putInt(off + 8, value.length);
+        c.duplicate().position(off + HEADER_SIZE).put(kb).put(value);
+        chunkPos = off + (int) len;
+        liveBytes += len;
+        return ((long) (chunks.size() - 1) << chunkShift) | off;
+    }
+
+    /**
+     * 记录不再被引用，计入垃圾
+     */
+    final void retire(long addr) {
+        int len = recordSize(addr);
+        liveBytes -= len;
+        garbageBytes += len;
+    }
+
+    /**
+     * 垃圾超过存活数据且至少有一个块大小时，把存活记录整体复制到新的数据块中
+     * case:只改变记录地址，槽位位置不变，因此不算结构修改，进行中的迭代不受影响。
+     */
+    final void maybeCompact() {
+        if (garbageBytes <= liveBytes || garbageBytes < (1L << chunkShift))
+            return;
+        ArrayList<ByteBuffer> old = new ArrayList<>(chunks);
+        chunks.clear();
+        chunkPos = 0;
+        liveBytes = 0L;
+        garbageBytes = 0L;
+        int chunkSize = 1 << chunkShift;
+        for (int i = 0; i < capacity; ++i) {
+            long s = slot(i);
+            if (s == 0L || s == DELETED)
+                continue;
+            long addr = s - 1;
+            ByteBuffer c = old.get((int) (addr >>> chunkShift));
+            int off = offsetOf(addr);
+            int len = HEADER_SIZE + c.getInt(off + 4) + c.getInt(off + 8);
+            if (chunks.isEmpty() || chunkPos + len > chunkSize) {
+                chunks.add(ByteBuffer.allocateDirect(chunkSize));
+                chunkPos = 0;
+            }
+            ByteBuffer src = c.duplicate();
+            src.limit(off + len).position(off);
+            chunks.get(chunks.size() - 1).duplicate().position(chunkPos).put(src);
+            setSlot(i, (((long) (chunks.size() - 1) << chunkShift) | chunkPos) + 1);
+            chunkPos += len;
+            liveBytes += len;
+        }
+    }
+
+    /* ---------------- Views -------------- */
+
+    final class EntrySet extends AbstractSet<Map.Entry<String, byte[]>> {
+        public final int size() {
+            return size;
+        }
+
+        public final void clear() {
+            OffHeapHashMap.this.clear();
+        }
+
+        public final Iterator<Map.Entry<String, byte[]>> iterator() {
+            return new EntryIterator();
+        }
+
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return findEntry(e.getKey(), e.getValue()) >= 0;
+        }
+
+        public final boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return OffHeapHashMap.this.remove(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * 迭代器返回的条目：键和值都是从堆外内存解码出的拷贝；equals/hashCode按值的内容计算
+     * case:条目记住所在的索引、槽位以及键的hash与字节，setValue时槽位仍然指向这个键的记录
+     * （压缩只移动记录，槽位不变）就直接写回，不再编码键、也不再探测；
+     * 映射已被删除或索引已经重建时只修改条目本身，与HashMap的节点相同。
+     */
+    final class OffHeapEntry extends AbstractMap.SimpleEntry<String, byte[]> {
+        private static final long serialVersionUID = 2264312879414624405L;
+
+        final transient ByteBuffer table;  // index the slot belongs to
+        final transient int slot;
+        final transient int hash;
+        final transient byte[] keyBytes;
+
+        OffHeapEntry(String key, byte[] value, ByteBuffer table, int slot, int hash, byte[] keyBytes) {
+            super(key, value);
+            this.table = table;
+            this.slot = slot;
+            this.hash = hash;
+            this.keyBytes = keyBytes;
+        }
+
+        public byte[] setValue(byte[] value) {
+            if (value == null)
+                throw new NullPointerException();
+            byte[] oldValue = super.setValue(value);
+            long s;
+            if (table == index && (s = slot(slot)) != 0L && s != DELETED &&
+                    matches(s - 1, hash, keyBytes))
+                replaceValue(slot, s - 1, hash, keyBytes, value);
+            return oldValue;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object v = e.getValue();
+            return getKey().equals(e.getKey()) && v instanceof byte[] &&
+                    Arrays.equals(getValue(), (byte[]) v);
+        }
+
+        public int hashCode() {
+            return getKey().hashCode() ^ Arrays.hashCode(getValue());
+        }
+    }
+
+    final class EntryIterator implements Iterator<Map.Entry<String, byte[]>> {
+        int next;              // next live slot, or capacity when exhausted
+        String lastKey;        // key returned by the last next()
+        int expectedModCount;  // for fast-fail
+
+        EntryIterator() {
+            expectedModCount = modCount;
+            next = advance(0);
+        }
+
+        final int advance(int i) {
+            while (i < capacity) {
+                long s = slot(i);
+                if (s != 0L && s != DELETED)
+                    break;
+                ++i;
+            }
+            return i;
+        }
+
+        public boolean hasNext() {
+            return next < capacity;
+        }
+
+        public Map.Entry<String, byte[]> next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            int i = next;
+            if (i >= capacity)
+                throw new NoSuchElementException();
+            next = advance(i + 1);
+            long addr = slot(i) - 1;
+            byte[] kb = readKeyBytes(addr);
+            lastKey = new String(kb, StandardCharsets.UTF_8);
+            return new OffHeapEntry(lastKey, readValue(addr), index, i, hashAt(addr), kb);
+        }
+
+        public void remove() {
+            if (lastKey == null)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            //删除只留下墓碑，不会移动其它槽位
+            OffHeapHashMap.this.remove(lastKey);
+            lastKey = null;
+            expectedModCount = modCount;
+        }
+    }
+}
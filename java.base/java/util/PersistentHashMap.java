@@ -0,0 +1,714 @@
+package java.util;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.util.function.BiConsumer;
+
+/**
+ * 基于哈希数组映射前缀树（HAMT）的映射，支持O(1)的只读快照
+ * case:
+ * 1、哈希（HashMap.hash()）每5位决定一层，节点用两个32位的位图分别标记本层直接存放的键值对
+ * 与子节点（CHAMP布局：键值对在数组前部，子节点在数组尾部倒序存放），
+ * 32位哈希全部相同的键放在冲突节点中；删除后只剩一个键值对的子节点会被上移，结构始终是规范的；
+ * 2、每个节点记录创建它的编辑令牌（owner），令牌与映射当前的令牌相同时原地修改，
+ * 否则复制从根到修改位置的路径，其余子树与其它映射共享；
+ * 3、snapshot()只是把当前的根交给一个没有令牌的只读映射，再给本映射换一个新令牌，是O(1)的；
+ * 之后本映射的修改都会复制路径，快照看到的内容不会再变化。mutableCopy()、clone()同样是O(1)的。
+ * <p>
+ * 注意：
+ * 1、允许null键和null值；
+ * 2、快照的所有修改操作都抛出UnsupportedOperationException；
+ * 3、迭代器遍历的是创建时的根，创建迭代器会像snapshot()一样更换令牌，
+ * 因此迭代器的remove()与映射的修改不会破坏正在遍历的节点；其它修改仍然会使迭代器快速失败。
+ */
+public class PersistentHashMap<K, V> extends AbstractMap<K, V>
+        implements Map<K, V>, Cloneable, Serializable {
+
+    private static final long serialVersionUID = -5296120813398717063L;
+
+    /**
+     * 每层使用的哈希位数
+     */
+    static final int BITS = 5;
+
+    static final int MASK = (1 << BITS) - 1;
+
+    /**
+     * 前缀树的最大深度：7层位图节点加上最底层的冲突节点
+     */
+    static final int MAX_DEPTH = (32 + BITS - 1) / BITS + 1;
+
+    /**
+     * 查找不到键时的返回值，用来区分值为null的映射
+     */
+    static final Object NOT_FOUND = new Object();
+
+    /**
+     * 共享的空根节点
+     */
+    static final BitmapNode<?, ?> EMPTY = new BitmapNode<>(null, 0, 0, new Object[0]);
+
+    /**
+     * 修改操作的附加结果
+     */
+    static final class Result {
+        boolean found;      // 键原本存在
+        Object oldValue;    // 原来的值
+    }
+
+    /**
+     * 前缀树节点
+     */
+    abstract static class TrieNode<K, V> {
+        /**
+         * 创建该节点的编辑令牌，为null的节点永远不会被原地修改
+         */
+        Object owner;
+
+        abstract Object find(int h, Object key, int shift);
+
+        abstract TrieNode<K, V> put(Object owner, int h, K key, V value, int shift, Result r);
+
+        abstract TrieNode<K, V> remove(Object owner, int h, Object key, int shift, Result r);
+
+        /**
+         * 本节点直接存放的键值对个数
+         */
+        abstract int payloadArity();
+
+        abstract int nodeArity();
+
+        abstract K keyAt(int i);
+
+        abstract V valueAt(int i);
+
+        abstract TrieNode<K, V> nodeAt(int i);
+
+        /**
+         * 删除后只剩一个键值对、没有子节点，父节点应把它上移
+         */
+        final boolean isSingleEntry() {
+            return payloadArity() == 1 && nodeArity() == 0;
+        }
+    }
+
+    static int bitpos(int h, int shift) {
+        return 1 << ((h >>> shift) & MASK);
+    }
+
+    static int index(int bitmap, int bit) {
+        return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    /**
+     * 位图节点
+     */
+    static final class BitmapNode<K, V> extends TrieNode<K, V> {
+        int dataMap;
+        int nodeMap;
+        /**
+         * [k0, v0, k1, v1, ..., nodeN-1, ..., node0]
+         */
+        Object[] content;
+
+        BitmapNode(Object owner, int dataMap, int nodeMap, Object[] content) {
+            this.owner = owner;
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.content = content;
+        }
+
+        /**
+         * 两个键值对合并为一个子树，32位哈希全部相同时为冲突节点
+         */
+        static <K, V> TrieNode<K, V> mergeTwo(Object owner, int h1, K k1, V v1,
+                                              int h2, K k2, V v2, int shift) {
+            if (shift >= 32)
+                return new CollisionNode<>(owner, h1, new Object[]{k1, v1, k2, v2});
+            int b1 = (h1 >>> shift) & MASK, b2 = (h2 >>> shift) & MASK;
+            if (b1 != b2) {
+                Object[] c = (b1 < b2) ? new Object[]{k1, v1, k2, v2} : new Object[]{k2, v2, k1, v1};
+                return new BitmapNode<>(owner, (1 << b1) | (1 << b2), 0, c);
+            }
+            TrieNode<K, V> sub = mergeTwo(owner, h1, k1, v1, h2, k2, v2, shift + BITS);
+            return new BitmapNode<>(owner, 0, 1 << b1, new Object[]{sub});
+        }
+
+        final BitmapNode<K, V> editable(Object owner) {
+            return (owner != null && this.owner == owner) ? this :
+                    new BitmapNode<>(owner, dataMap, nodeMap, content.clone());
+        }
+
+        int payloadArity() {
+            return Integer.bitCount(dataMap);
+        }
+
+        int nodeArity() {
+            return Integer.bitCount(nodeMap);
+        }
+
+        @SuppressWarnings("unchecked")
+        K keyAt(int i) {
+            return (K) content[i << 1];
+        }
+
+        @SuppressWarnings("unchecked")
+        V valueAt(int i) {
+            return (V) content[(i << 1) + 1];
+        }
+
+        @SuppressWarnings("unchecked")
+        TrieNode<K, V> nodeAt(int i) {
+            return (TrieNode<K, V>) content[content.length - 1 - i];
+        }
+
+        Object find(int h, Object key, int shift) {
+            int bit = bitpos(h, shift);
+            if ((dataMap & bit) != 0) {
+                int i = index(dataMap, bit) << 1;
+                return Objects.equals(key, content[i]) ? content[i + 1] : NOT_FOUND;
+            }
+            if ((nodeMap & bit) != 0)
+                return nodeAt(index(nodeMap, bit)).find(h, key, shift + BITS);
+            return NOT_FOUND;
+        }
+
+        TrieNode<K, V> put(Object owner, int h, K key, V value, int shift, Result r) {
+            int bit = bitpos(h, shift);
+            if ((dataMap & bit) != 0) {
+                int i = index(dataMap, bit);
+                K k = keyAt(i);
+                if (Objects.equals(key, k)) {
+                    V old = valueAt(i);
+                    r.found = true;
+                    r.oldValue = old;
+                    if (old == value)
+                        return this;
+                    BitmapNode<K, V> n = editable(owner);
+                    n.content[(i << 1) + 1] = value;
+                    return n;
+                }
+                //与已有的键在这一层冲突，两者一起下移为子树
+                TrieNode<K, V> sub = mergeTwo(owner, HashMap.hash(k), k, valueAt(i),
+                        h, key, value, shift + BITS);
+                return migrateDataToNode(owner, bit, i, sub);
+            }
+            if ((nodeMap & bit) != 0) {
+                int j = index(nodeMap, bit);
+                TrieNode<K, V> sub = nodeAt(j);
+                TrieNode<K, V> ns = sub.put(owner, h, key, value, shift + BITS, r);
+                if (ns == sub)
+                    return this;
+                BitmapNode<K, V> n = editable(owner);
+                n.content[n.content.length - 1 - j] = ns;
+                return n;
+            }
+            int i = index(dataMap, bit) << 1;
+            Object[] c = new Object[content.length + 2];
+            System.arraycopy(content, 0, c, 0, i);
+            c[i] = key;
+            c[i + 1] = value;
+            System.arraycopy(content, i, c, i + 2, content.length - i);
+            return update(owner, dataMap | bit, nodeMap, c);
+        }
+
+        TrieNode<K, V> remove(Object owner, int h, Object key, int shift, Result r) {
+            int bit = bitpos(h, shift);
+            if ((dataMap & bit) != 0) {
+                int i = index(dataMap, bit);
+                if (!Objects.equals(key, keyAt(i)))
+                    return this;
+                r.found = true;
+                r.oldValue = valueAt(i);
+                int p = i << 1;
+                Object[] c = new Object[content.length - 2];
+                System.arraycopy(content, 0, c, 0, p);
+                System.arraycopy(content, p + 2, c, p, content.length - p - 2);
+                return update(owner, dataMap ^ bit, nodeMap, c);
+            }
+            if ((nodeMap & bit) != 0) {
+                int j = index(nodeMap, bit);
+                TrieNode<K, V> sub = nodeAt(j);
+                TrieNode<K, V> ns = sub.remove(owner, h, key, shift + BITS, r);
+                if (!r.found)
+                    return this;
+                if (ns.isSingleEntry()) {
+                    //本节点只有这一个子树时整体上移，否则把剩下的键值对内联到本层
+                    if (shift > 0 && dataMap == 0 && Integer.bitCount(nodeMap) == 1)
+                        return ns;
+                    return migrateNodeToData(owner, bit, j, ns.keyAt(0), ns.valueAt(0));
+                }
+                if (ns == sub)
+                    return this;
+                BitmapNode<K, V> n = editable(owner);
+                n.content[n.content.length - 1 - j] = ns;
+                return n;
+            }
+            return this;
+        }
+
+        final BitmapNode<K, V> update(Object owner, int dataMap, int nodeMap, Object[] c) {
+            if (owner != null && this.owner == owner) {
+                this.dataMap = dataMap;
+                this.nodeMap = nodeMap;
+                this.content = c;
+                return this;
+            }
+            return new BitmapNode<>(owner, dataMap, nodeMap, c);
+        }
+
+        /**
+         * 第i个键值对换成子节点sub
+         */
+        final BitmapNode<K, V> migrateDataToNode(Object owner, int bit, int i, TrieNode<K, V> sub) {
+            int from = i << 1;
+            int to = content.length - 2 - index(nodeMap, bit);
+            Object[] c = new Object[content.length - 1];
+            System.arraycopy(content, 0, c, 0, from);
+            System.arraycopy(content, from + 2, c, from, to - from);
+            c[to] = sub;
+            System.arraycopy(content, to + 2, c, to + 1, content.length - to - 2);
+            return update(owner, dataMap ^ bit, nodeMap | bit, c);
+        }
+
+        /**
+         * 第j个子节点换成键值对(k, v)
+         */
+        final BitmapNode<K, V> migrateNodeToData(Object owner, int bit, int j, K k, V v) {
+            int from = content.length - 1 - j;
+            int to = index(dataMap, bit) << 1;
+            Object[] c = new Object[content.length + 1];
+            System.arraycopy(content, 0, c, 0, to);
+            c[to] = k;
+            c[to + 1] = v;
+            System.arraycopy(content, to, c, to + 2, from - to);
+            System.arraycopy(content, from + 1, c, from + 2, content.length - from - 1);
+            return update(owner, dataMap | bit, nodeMap ^ bit, c);
+        }
+    }
+
+    /**
+     * 32位哈希全部相同的键值对，线性查找
+     */
+    static final class CollisionNode<K, V> extends TrieNode<K, V> {
+        final int hash;
+        Object[] kvs;
+
+        CollisionNode(Object owner, int hash, Object[] kvs) {
+            this.owner = owner;
+            this.hash = hash;
+            this.kvs = kvs;
+        }
+
+        final int indexOf(Object key) {
+            for (int i = 0; i < kvs.length; i += 2) {
+                if (Objects.equals(key, kvs[i]))
+                    return i;
+            }
+            return -1;
+        }
+
+        int payloadArity() {
+            return kvs.length >>> 1;
+        }
+
+        int nodeArity() {
+            return 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        K keyAt(int i) {
+            return (K) kvs[i << 1];
+        }
+
+        @SuppressWarnings("unchecked")
+        V valueAt(int i) {
+            return (V) kvs[(i << 1) + 1];
+        }
+
+        TrieNode<K, V> nodeAt(int i) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        Object find(int h, Object key, int shift) {
+            int i;
+            return (h == hash && (i = indexOf(key)) >= 0) ? kvs[i + 1] : NOT_FOUND;
+        }
+
+        TrieNode<K, V> put(Object owner, int h, K key, V value, int shift, Result r) {
+            int i = indexOf(key);
+            Object[] c;
+            if (i >= 0) {
+                r.found = true;
+                r.oldValue = kvs[i + 1];
+                if (kvs[i + 1] == value)
+                    return this;
+                c = (owner != null && this.owner == owner) ? kvs : kvs.clone();
+                c[i + 1] = value;
+            } else {
+                c = Arrays.copyOf(kvs, kvs.length + 2);
+                c[kvs.length] = key;
+                c[kvs.length + 1] = value;
+            }
+            return update(owner, c);
+        }
+
+        TrieNode<K, V> remove(Object owner, int h, Object key, int shift, Result r) {
+            int i;
+            if (h != hash || (i = indexOf(key)) < 0)
+                return this;
+            r.found = true;
+            r.oldValue = kvs[i + 1];
+            Object[] c = new Object[kvs.length - 2];
+            System.arraycopy(kvs, 0, c, 0, i);
+            System.arraycopy(kvs, i + 2, c, i, kvs.length - i - 2);
+            return update(owner, c);
+        }
+
+        final CollisionNode<K, V> update(Object owner, Object[] c) {
+            if (owner != null && this.owner == owner) {
+                kvs = c;
+                return this;
+            }
+            return new CollisionNode<>(owner, hash, c);
+        }
+    }
+
+    /**
+     * 前缀树的根
+     */
+    transient TrieNode<K, V> root;
+
+    transient int size;
+
+    /**
+     * 当前的编辑令牌，为null时本映射是只读的快照
+     */
+    transient Object owner;
+
+    transient int modCount;
+
+    transient Set<Map.Entry<K, V>> entrySet;
+
+    /* ---------------- Public operations -------------- */
+
+    @SuppressWarnings("unchecked")
+    public PersistentHashMap() {
+        this((TrieNode<K, V>) EMPTY, 0, new Object());
+    }
+
+    public PersistentHashMap(Map<? extends K, ? extends V> m) {
+        this();
+        putAll(m);
+    }
+
+    PersistentHashMap(TrieNode<K, V> root, int size, Object owner) {
+        this.root = root;
+        this.size = size;
+        this.owner = owner;
+    }
+
+    /**
+     * 返回当前内容的只读快照，O(1)
+     * case:本映射更换令牌，之后的修改复制路径，不会影响快照。
+     */
+    public PersistentHashMap<K, V> snapshot() {
+        if (owner == null)
+            return this;
+        owner = new Object();
+        return new PersistentHashMap<>(root, size, null);
+    }
+
+    /**
+     * 返回内容相同、可修改的映射，O(1)；用于从快照开始一批修改，修改完成后再取snapshot()
+     */
+    public PersistentHashMap<K, V> mutableCopy() {
+        if (owner != null)
+            owner = new Object();
+        return new PersistentHashMap<>(root, size, new Object());
+    }
+
+    public boolean isSnapshot() {
+        return owner == null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Object v = root.find(HashMap.hash(key), key, 0);
+        return (v == NOT_FOUND) ? null : (V) v;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(Object key, V defaultValue) {
+        Object v = root.find(HashMap.hash(key), key, 0);
+        return (v == NOT_FOUND) ? defaultValue : (V) v;
+    }
+
+    public boolean containsKey(Object key) {
+        return root.find(HashMap.hash(key), key, 0) != NOT_FOUND;
+    }
+
+    public boolean containsValue(Object value) {
+        return containsValue(root, value);
+    }
+
+    static boolean containsValue(TrieNode<?, ?> n, Object value) {
+        for (int i = 0, c = n.payloadArity(); i < c; ++i) {
+            if (Objects.equals(value, n.valueAt(i)))
+                return true;
+        }
+        for (int i = 0, c = n.nodeArity(); i < c; ++i) {
+            if (containsValue(n.nodeAt(i), value))
+                return true;
+        }
+        return false;
+    }
+
+    final Object checkMutable() {
+        Object o;
+        if ((o = owner) == null)
+            throw new UnsupportedOperationException();
+        return o;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        Object o = checkMutable();
+        Result r = new Result();
+        root = root.put(o, HashMap.hash(key), key, value, 0, r);
+        if (r.found)
+            return (V) r.oldValue;
+        ++size;
+        ++modCount;
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        Object o = checkMutable();
+        Result r = new Result();
+        root = root.remove(o, HashMap.hash(key), key, 0, r);
+        if (!r.found)
+            return null;
+        --size;
+        ++modCount;
+        return (V) r.oldValue;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void clear() {
+        checkMutable();
+        if (size > 0) {
+            root = (TrieNode<K, V>) EMPTY;
+            size = 0;
+            ++modCount;
+        }
+    }
+
+    /**
+     * 与snapshot()相同在O(1)内完成，副本与本映射都换成新令牌
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public PersistentHashMap<K, V> clone() {
+        PersistentHashMap<K, V> result;
+        try {
+            result = (PersistentHashMap<K, V>) super.clone();
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+        if (owner != null) {
+            owner = new Object();
+            result.owner = new Object();
+        }
+        result.entrySet = null;
+        result.modCount = 0;
+        return result;
+    }
+
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        int mc = modCount;
+        forEach(frozenRoot(), action);
+        if (mc != modCount)
+            throw new ConcurrentModificationException();
+    }
+
+    static <K, V> void forEach(TrieNode<K, V> n, BiConsumer<? super K, ? super V> action) {
+        for (int i = 0, c = n.payloadArity(); i < c; ++i)
+            action.accept(n.keyAt(i), n.valueAt(i));
+        for (int i = 0, c = n.nodeArity(); i < c; ++i)
+            forEach(n.nodeAt(i), action);
+    }
+
+    /**
+     * 返回当前的根，并保证之后的修改不会原地改动它
+     */
+    final TrieNode<K, V> frozenRoot() {
+        if (owner != null)
+            owner = new Object();
+        return root;
+    }
+
+    /* ---------------- Views -------------- */
+
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        public int size() {
+            return size;
+        }
+
+        public void clear() {
+            PersistentHashMap.this.clear();
+        }
+
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object key = e.getKey();
+            Object v = root.find(HashMap.hash(key), key, 0);
+            return v != NOT_FOUND && Objects.equals(v, e.getValue());
+        }
+
+        public boolean remove(Object o) {
+            if (contains(o)) {
+                PersistentHashMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * setValue写回映射的条目，快照中的条目抛出UnsupportedOperationException
+     */
+    final class TrieEntry extends AbstractMap.SimpleEntry<K, V> {
+        private static final long serialVersionUID = 2891658384938204457L;
+
+        TrieEntry(K k, V v) {
+            super(k, v);
+        }
+
+        public V setValue(V value) {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+
+    /**
+     * 深度优先遍历创建时的根：先返回节点中的键值对，再依次进入子节点
+     */
+    final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        final TrieNode<K, V>[] stack = (TrieNode<K, V>[]) new TrieNode[MAX_DEPTH];
+        final int[] nextNode = new int[MAX_DEPTH];
+        int depth;
+        TrieNode<K, V> current;     // node whose payload is being returned
+        int index, count;
+        K lastKey;
+        boolean canRemove;
+        int expectedModCount = modCount;
+
+        EntryIterator() {
+            TrieNode<K, V> r = frozenRoot();
+            stack[0] = current = r;
+            count = r.payloadArity();
+        }
+
+        public boolean hasNext() {
+            while (index >= count) {
+                while (depth >= 0 && nextNode[depth] >= stack[depth].nodeArity())
+                    --depth;
+                if (depth < 0)
+                    return false;
+                TrieNode<K, V> n = stack[depth].nodeAt(nextNode[depth]++);
+                stack[++depth] = current = n;
+                nextNode[depth] = 0;
+                index = 0;
+                count = n.payloadArity();
+            }
+            return true;
+        }
+
+        public Map.Entry<K, V> next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (!hasNext())
+                throw new NoSuchElementException();
+            int i = index++;
+            canRemove = true;
+            return new TrieEntry(lastKey = current.keyAt(i), current.valueAt(i));
+        }
+
+        public void remove() {
+            if (!canRemove)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            canRemove = false;
+            PersistentHashMap.this.remove(lastKey);
+            expectedModCount = modCount;
+        }
+    }
+
+    /* ---------------- Serialization -------------- */
+
+    /**
+     * 序列化为是否为快照(boolean)、映射个数(int)，随后是每个映射的键和值
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+            throws IOException {
+        s.defaultWriteObject();
+        s.writeBoolean(owner == null);
+        s.writeInt(size);
+        writeEntries(root, s);
+    }
+
+    static void writeEntries(TrieNode<?, ?> n, java.io.ObjectOutputStream s)
+            throws IOException {
+        for (int i = 0, c = n.payloadArity(); i < c; ++i) {
+            s.writeObject(n.keyAt(i));
+            s.writeObject(n.valueAt(i));
+        }
+        for (int i = 0, c = n.nodeArity(); i < c; ++i)
+            writeEntries(n.nodeAt(i), s);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(java.io.ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        boolean frozen = s.readBoolean();
+        int mappings = s.readInt();
+        if (mappings < 0)
+            throw new InvalidObjectException("Illegal mappings count: " +
+                    mappings);
+        root = (TrieNode<K, V>) EMPTY;
+        owner = new Object();
+        for (int i = 0; i < mappings; i++)
+            put((K) s.readObject(), (V) s.readObject());
+        if (size != mappings)
+            throw new InvalidObjectException("Duplicate keys in stream");
+        if (frozen)
+            owner = null;
+    }
+}
@@ -0,0 +1,1281 @@
+package java.util;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 乐观读的并发有序映射，排序与导航语义与TreeMap相同
+ * case:
+ * 1、映射存放在一个普通的TreeMap（红黑树）中，由一个StampedLock保护；
+ * 2、写操作持有写锁，直接调用TreeMap的put、remove等方法；
+ * 3、get、floorEntry、ceilingEntry、firstEntry等查找先用tryOptimisticRead不加锁地从根节点往下走，
+ * 读出键和值后validate，成功即返回，读操作不写任何共享内存，也不会排在写线程后面；
+ * 乐观读失败、走的步数超过红黑树可能的高度或比较器抛出异常时，才退回读锁重新查找；
+ * 4、迭代器与子映射的遍历每次乐观地复制最多BATCH_SIZE个映射，下一批从上一批最后一个键之后重新定位，
+ * 遍历期间不持有任何锁。
+ * <p>
+ * 注意：
+ * 1、与ConcurrentSkipListMap相同，不允许null键和null值；
+ * 2、compute/merge等方法在持有写锁时调用函数，函数中不得再访问本映射，StampedLock不可重入；
+ * 3、导航方法返回的条目是查找时的快照，不支持setValue()；迭代器返回的条目setValue()写回映射；
+ * 4、视图与迭代器是弱一致的，不会抛出ConcurrentModificationException；
+ * 子映射的size()需要逐个计数，代价是O(子映射的大小)。
+ */
+public class StampedTreeMap<K, V> extends AbstractMap<K, V>
+        implements ConcurrentNavigableMap<K, V>, Serializable {
+
+    private static final long serialVersionUID = -2719045128773306472L;
+
+    /**
+     * 乐观读时最多经过的节点个数。
+     * 红黑树的高度不超过2*log2(n+1)，int范围内的映射个数不超过62层，
+     * 超过时认为读到了写到一半的树（旋转中的指针可能成环），改用读锁
+     */
+    static final int MAX_OPTIMISTIC_STEPS = 64;
+
+    /**
+     * 迭代器每批复制的映射个数
+     */
+    static final int BATCH_SIZE = 64;
+
+    /**
+     * 关系查找的方向：小于、小于等于、等于、大于等于、大于
+     */
+    static final int LT = 0, LE = 1, EQ = 2, GE = 3, GT = 4;
+
+    /**
+     * 乐观读需要退回读锁时locate与successor的返回值
+     */
+    static final TreeMap.Entry<Object, Object> RETRY = new TreeMap.Entry<>(null, null, null);
+
+    /**
+     * 比较器，为null时使用自然排序
+     */
+    private final Comparator<? super K> comparator;
+
+    /**
+     * 保存映射的红黑树，只在持有写锁时修改
+     */
+    transient TreeMap<K, V> map;
+
+    transient StampedLock lock;
+
+    transient KeySet<K> keySetView;
+    transient Set<Map.Entry<K, V>> entrySetView;
+    transient Values valuesView;
+    transient ConcurrentNavigableMap<K, V> descendingMapView;
+
+    /* ---------------- Public operations -------------- */
+
+    public StampedTreeMap() {
+        this((Comparator<? super K>) null);
+    }
+
+    public StampedTreeMap(Comparator<? super K> comparator) {
+        this.comparator = comparator;
+        this.map = new TreeMap<>(comparator);
+        this.lock = new StampedLock();
+    }
+
+    public StampedTreeMap(Map<? extends K, ? extends V> m) {
+        this((Comparator<? super K>) null);
+        putAll(m);
+    }
+
+    /**
+     * 沿用m的比较器，由有序的m线性构建红黑树
+     */
+    public StampedTreeMap(SortedMap<K, ? extends V> m) {
+        this.comparator = m.comparator();
+        for (Map.Entry<K, ? extends V> e : m.entrySet()) {
+            Objects.requireNonNull(e.getKey());
+            Objects.requireNonNull(e.getValue());
+        }
+        this.map = new TreeMap<>(m);
+        this.lock = new StampedLock();
+    }
+
+    /**
+     * 在红黑树中按rel查找key，key为null时表示无界：GE/GT返回第一个节点，LE/LT返回最后一个节点
+     * case:乐观读时树可能正在被修改，节点的键可能还没有写入，左右孩子的指针也可能暂时成环，
+     * 因此遇到null键或步数超过MAX_OPTIMISTIC_STEPS时返回RETRY；加锁时树是一致的，不做这些检查。
+     *
+     * @return 满足条件的节点，不存在时为null，需要加锁重新查找时为RETRY
+     */
+    @SuppressWarnings("unchecked")
+    final TreeMap.Entry<K, V> locate(Object key, int rel, boolean optimistic) {
+        TreeMap<K, V> t = map;
+        TreeMap.Entry<K, V> p = t.root, best = null;
+        for (int steps = 0; p != null; ) {
+            K k = p.key;
+            if (optimistic && (k == null || ++steps > MAX_OPTIMISTIC_STEPS))
+                return (TreeMap.Entry<K, V>) (TreeMap.Entry<?, ?>) RETRY;
+            int c = (key == null) ? (rel >= GE ? -1 : 1) : t.compare(key, k);
+            if (c == 0) {
+                if (rel == LE || rel == EQ || rel == GE)
+                    return p;
+                c = (rel == LT) ? -1 : 1;
+            }
+            if (c < 0) {
+                if (rel >= GE)
+                    best = p;
+                p = p.left;
+            } else {
+                if (rel <= LE)
+                    best = p;
+                p = p.right;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 节点t的后继（descending时为前驱），与TreeMap.successor相同，但步数超过MAX_OPTIMISTIC_STEPS时返回RETRY
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> TreeMap.Entry<K, V> successor(TreeMap.Entry<K, V> t, boolean descending) {
+        int steps = 0;
+        TreeMap.Entry<K, V> p = descending ? t.left : t.right;
+        if (p != null) {
+            for (TreeMap.Entry<K, V> q; (q = descending ? p.right : p.left) != null; p = q) {
+                if (++steps > MAX_OPTIMISTIC_STEPS)
+                    return (TreeMap.Entry<K, V>) (TreeMap.Entry<?, ?>) RETRY;
+            }
+            return p;
+        }
+        TreeMap.Entry<K, V> ch = t;
+        for (p = t.parent; p != null && ch == (descending ? p.left : p.right); p = p.parent) {
+            if (++steps > MAX_OPTIMISTIC_STEPS)
+                return (TreeMap.Entry<K, V>) (TreeMap.Entry<?, ?>) RETRY;
+            ch = p;
+        }
+        return p;
+    }
+
+    /**
+     * 返回key对应的值，乐观读失败时退回读锁
+     */
+    final V getValue(Object key) {
+        StampedLock l = lock;
+        long stamp = l.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                TreeMap.Entry<K, V> e = locate(key, EQ, true);
+                if (e != RETRY) {
+                    V v = (e == null) ? null : e.value;
+                    if (l.validate(stamp))
+                        return v;
+                }
+            } catch (RuntimeException ex) {
+                //不一致的状态下比较器也可能失败，加锁后重新执行
+            }
+        }
+        stamp = l.readLock();
+        try {
+            TreeMap.Entry<K, V> e = locate(key, EQ, false);
+            return (e == null) ? null : e.value;
+        } finally {
+            l.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 按rel查找key，返回不可修改的快照条目，不存在时为null
+     */
+    final Map.Entry<K, V> getNear(Object key, int rel) {
+        StampedLock l = lock;
+        long stamp = l.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                TreeMap.Entry<K, V> e = locate(key, rel, true);
+                if (e != RETRY) {
+                    K k = null;
+                    V v = null;
+                    if (e != null) {
+                        k = e.key;
+                        v = e.value;
+                    }
+                    if (l.validate(stamp))
+                        return (e == null) ? null : new AbstractMap.SimpleImmutableEntry<>(k, v);
+                }
+            } catch (RuntimeException ex) {
+                //同getValue
+            }
+        }
+        stamp = l.readLock();
+        try {
+            TreeMap.Entry<K, V> e = locate(key, rel, false);
+            return (e == null) ? null : new AbstractMap.SimpleImmutableEntry<>(e.key, e.value);
+        } finally {
+            l.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 从按rel定位到的节点开始，沿descending方向把最多kvs.length/2个映射的键和值交错复制到kvs中
+     *
+     * @return 复制到kvs中的元素个数（映射个数的2倍），乐观读需要加锁重来时为-1
+     */
+    final int collect(Object[] kvs, Object from, int rel, boolean descending, boolean optimistic) {
+        int n = 0;
+        for (TreeMap.Entry<K, V> e = locate(from, rel, optimistic);
+             e != null && n < kvs.length; e = successor(e, descending)) {
+            K k;
+            if (e == RETRY || (k = e.key) == null)
+                return -1;
+            kvs[n++] = k;
+            kvs[n++] = e.value;
+        }
+        return n;
+    }
+
+    /**
+     * 迭代器取下一批映射，先乐观地复制，失败时在读锁下复制
+     */
+    final int fill(Object[] kvs, Object from, int rel, boolean descending) {
+        StampedLock l = lock;
+        long stamp = l.tryOptimisticRead();
+        if (stamp != 0L) {
+            int n;
+            try {
+                n = collect(kvs, from, rel, descending, true);
+            } catch (RuntimeException ex) {
+                n = -1;
+            }
+            if (n >= 0 && l.validate(stamp))
+                return n;
+        }
+        stamp = l.readLock();
+        try {
+            return collect(kvs, from, rel, descending, false);
+        } finally {
+            l.unlockRead(stamp);
+        }
+    }
+
+    public int size() {
+        StampedLock l = lock;
+        long stamp = l.tryOptimisticRead();
+        int n = map.size();
+        if (!l.validate(stamp)) {
+            stamp = l.readLock();
+            try {
+                n = map.size();
+            } finally {
+                l.unlockRead(stamp);
+            }
+        }
+        return n;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public Comparator<? super K> comparator() {
+        return comparator;
+    }
+
+    public V get(Object key) {
+        return getValue(Objects.requireNonNull(key));
+    }
+
+    public V getOrDefault(Object key, V defaultValue) {
+        V v;
+        return ((v = get(key)) == null) ? defaultValue : v;
+    }
+
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * 按批遍历所有的值，不持有锁
+     */
+    public boolean containsValue(Object value) {
+        Objects.requireNonNull(value);
+        for (Iterator<V> it = new ValueIterator(null, GE, false, null); it.hasNext(); ) {
+            if (value.equals(it.next()))
+                return true;
+        }
+        return false;
+    }
+
+    public V put(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        long stamp = lock.writeLock();
+        try {
+            return map.put(key, value);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public V putIfAbsent(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        long stamp = lock.writeLock();
+        try {
+            TreeMap.Entry<K, V> e = locate(key, EQ, false);
+            if (e != null)
+                return e.value;
+            map.put(key, value);
+            return null;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
+            put(e.getKey(), e.getValue());
+    }
+
+    public V remove(Object key) {
+        Objects.requireNonNull(key);
+        long stamp = lock.writeLock();
+        try {
+            return map.remove(key);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public boolean remove(Object key, Object value) {
+        Objects.requireNonNull(key);
+        if (value == null)
+            return false;
+        long stamp = lock.writeLock();
+        try {
+            TreeMap.Entry<K, V> e = locate(key, EQ, false);
+            if (e == null || !value.equals(e.value))
+                return false;
+            map.remove(key);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public boolean replace(K key, V oldValue, V newValue) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(oldValue);
+        Objects.requireNonNull(newValue);
+        long stamp = lock.writeLock();
+        try {
+            TreeMap.Entry<K, V> e = locate(key, EQ, false);
+            if (e == null || !oldValue.equals(e.value))
+                return false;
+            e.value = newValue;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public V replace(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        long stamp = lock.writeLock();
+        try {
+            TreeMap.Entry<K, V> e = locate(key, EQ, false);
+            if (e == null)
+                return null;
+            V v = e.value;
+            e.value = value;
+            return v;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 已有映射时只经过乐观读，不获取写锁
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        Objects.requireNonNull(mappingFunction);
+        V v;
+        if ((v = get(key)) != null)
+            return v;
+        long stamp = lock.writeLock();
+        try {
+            return map.computeIfAbsent(key, mappingFunction);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public V computeIfPresent(K key,
+                              BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(remappingFunction);
+        long stamp = lock.writeLock();
+        try {
+            return map.computeIfPresent(key, remappingFunction);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public V compute(K key,
+                     BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(remappingFunction);
+        long stamp = lock.writeLock();
+        try {
+            return map.compute(key, remappingFunction);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public V merge(K key, V value,
+                   BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        Objects.requireNonNull(remappingFunction);
+        long stamp = lock.writeLock();
+        try {
+            return map.merge(key, value, remappingFunction);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 在写锁下替换，function中不得访问本映射
+     */
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        Objects.requireNonNull(function);
+        long stamp = lock.writeLock();
+        try {
+            for (TreeMap.Entry<K, V> e = map.getFirstEntry(); e != null; e = TreeMap.successor(e))
+                e.value = Objects.requireNonNull(function.apply(e.key, e.value));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            map.clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 弱一致：按批复制后在锁外调用action，action可以修改本映射
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        Object[] kvs = new Object[BATCH_SIZE << 1];
+        Object from = null;
+        int rel = GE, n;
+        do {
+            n = fill(kvs, from, rel, false);
+            for (int i = 0; i < n; i += 2) {
+                @SuppressWarnings("unchecked") K k = (K) kvs[i];
+                @SuppressWarnings("unchecked") V v = (V) kvs[i + 1];
+                action.accept(k, v);
+            }
+            if (n > 0)
+                from = kvs[n - 2];
+            rel = GT;
+        } while (n == kvs.length);
+    }
+
+    /* ---------------- Navigation -------------- */
+
+    static <K, V> K keyOrNull(Map.Entry<K, V> e) {
+        return (e == null) ? null : e.getKey();
+    }
+
+    static <K> K key(Map.Entry<K, ?> e) {
+        if (e == null)
+            throw new NoSuchElementException();
+        return e.getKey();
+    }
+
+    public Map.Entry<K, V> firstEntry() {
+        return getNear(null, GE);
+    }
+
+    public Map.Entry<K, V> lastEntry() {
+        return getNear(null, LE);
+    }
+
+    public K firstKey() {
+        return key(firstEntry());
+    }
+
+    public K lastKey() {
+        return key(lastEntry());
+    }
+
+    /**
+     * 空映射时只经过乐观读，不获取写锁
+     */
+    public Map.Entry<K, V> pollFirstEntry() {
+        return pollEdge(null, false);
+    }
+
+    public Map.Entry<K, V> pollLastEntry() {
+        return pollEdge(null, true);
+    }
+
+    /**
+     * 在写锁下取出并删除range中第一个（last为true时最后一个）映射，range为null时表示整个映射
+     */
+    final Map.Entry<K, V> pollEdge(SubMap<K, V> range, boolean last) {
+        if (range == null && isEmpty())
+            return null;
+        long stamp = lock.writeLock();
+        try {
+            TreeMap.Entry<K, V> e;
+            if (range == null)
+                e = locate(null, last ? LE : GE, false);
+            else if (!last)
+                e = range.fromStart ? locate(null, GE, false) :
+                        locate(range.lo, range.loInclusive ? GE : GT, false);
+            else
+                e = range.toEnd ? locate(null, LE, false) :
+                        locate(range.hi, range.hiInclusive ? LE : LT, false);
+            if (e == null || (range != null && !range.inRange(e.key)))
+                return null;
+            Map.Entry<K, V> result = new AbstractMap.SimpleImmutableEntry<>(e.key, e.value);
+            map.remove(e.key);
+            return result;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public Map.Entry<K, V> lowerEntry(K key) {
+        return getNear(Objects.requireNonNull(key), LT);
+    }
+
+    public K lowerKey(K key) {
+        return keyOrNull(lowerEntry(key));
+    }
+
+    public Map.Entry<K, V> floorEntry(K key) {
+        return getNear(Objects.requireNonNull(key), LE);
+    }
+
+    public K floorKey(K key) {
+        return keyOrNull(floorEntry(key));
+    }
+
+    public Map.Entry<K, V> ceilingEntry(K key) {
+        return getNear(Objects.requireNonNull(key), GE);
+    }
+
+    public K ceilingKey(K key) {
+        return keyOrNull(ceilingEntry(key));
+    }
+
+    public Map.Entry<K, V> higherEntry(K key) {
+        return getNear(Objects.requireNonNull(key), GT);
+    }
+
+    public K higherKey(K key) {
+        return keyOrNull(higherEntry(key));
+    }
+
+    /* ---------------- Views -------------- */
+
+    public NavigableSet<K> keySet() {
+        KeySet<K> ks;
+        return (ks = keySetView) == null ? (keySetView = new KeySet<>(this)) : ks;
+    }
+
+    public NavigableSet<K> navigableKeySet() {
+        return keySet();
+    }
+
+    public NavigableSet<K> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    public Collection<V> values() {
+        Values vs;
+        return (vs = valuesView) == null ? (valuesView = new Values()) : vs;
+    }
+
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es;
+        return (es = entrySetView) == null ? (entrySetView = new EntrySet()) : es;
+    }
+
+    public ConcurrentNavigableMap<K, V> descendingMap() {
+        ConcurrentNavigableMap<K, V> dm;
+        return (dm = descendingMapView) == null ?
+                (descendingMapView = new SubMap<>(this, true, null, false, true, null, false, true)) : dm;
+    }
+
+    public ConcurrentNavigableMap<K, V> subMap(K fromKey, boolean fromInclusive,
+                                               K toKey, boolean toInclusive) {
+        Objects.requireNonNull(fromKey);
+        Objects.requireNonNull(toKey);
+        return new SubMap<>(this, false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+    }
+
+    public ConcurrentNavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        Objects.requireNonNull(toKey);
+        return new SubMap<>(this, true, null, true, false, toKey, inclusive, false);
+    }
+
+    public ConcurrentNavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        Objects.requireNonNull(fromKey);
+        return new SubMap<>(this, false, fromKey, inclusive, true, null, true, false);
+    }
+
+    public ConcurrentNavigableMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    public ConcurrentNavigableMap<K, V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    public ConcurrentNavigableMap<K, V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    Iterator<K> keyIterator() {
+        return new KeyIterator(null, GE, false, null);
+    }
+
+    Iterator<K> descendingKeyIterator() {
+        return new KeyIterator(null, LE, true, null);
+    }
+
+    final class Values extends AbstractCollection<V> {
+        public Iterator<V> iterator() {
+            return new ValueIterator(null, GE, false, null);
+        }
+
+        public int size() {
+            return StampedTreeMap.this.size();
+        }
+
+        public boolean isEmpty() {
+            return StampedTreeMap.this.isEmpty();
+        }
+
+        public boolean contains(Object o) {
+            return o != null && containsValue(o);
+        }
+
+        public void clear() {
+            StampedTreeMap.this.clear();
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator(null, GE, false, null);
+        }
+
+        public int size() {
+            return StampedTreeMap.this.size();
+        }
+
+        public boolean isEmpty() {
+            return StampedTreeMap.this.isEmpty();
+        }
+
+        public void clear() {
+            StampedTreeMap.this.clear();
+        }
+
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object k, v, r;
+            return (k = e.getKey()) != null && (v = e.getValue()) != null &&
+                    (r = get(k)) != null && v.equals(r);
+        }
+
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object k;
+            return (k = e.getKey()) != null && StampedTreeMap.this.remove(k, e.getValue());
+        }
+    }
+
+    /**
+     * 键的视图，映射来自StampedTreeMap或SubMap；值不为null，因此remove()按返回值判断是否删除
+     */
+    static final class KeySet<E> extends AbstractSet<E> implements NavigableSet<E> {
+        private final ConcurrentNavigableMap<E, ?> m;
+
+        KeySet(ConcurrentNavigableMap<E, ?> map) {
+            m = map;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Iterator<E> iterator() {
+            if (m instanceof StampedTreeMap)
+                return ((StampedTreeMap<E, ?>) m).keyIterator();
+            else
+                return ((SubMap<E, ?>) m).keyIterator();
+        }
+
+        @SuppressWarnings("unchecked")
+        public Iterator<E> descendingIterator() {
+            if (m instanceof StampedTreeMap)
+                return ((StampedTreeMap<E, ?>) m).descendingKeyIterator();
+            else
+                return ((SubMap<E, ?>) m).descendingKeyIterator();
+        }
+
+        public int size() { return m.size(); }
+        public boolean isEmpty() { return m.isEmpty(); }
+        public boolean contains(Object o) { return m.containsKey(o); }
+        public boolean remove(Object o) { return m.remove(o) != null; }
+        public void clear() { m.clear(); }
+        public E lower(E e) { return m.lowerKey(e); }
+        public E floor(E e) { return m.floorKey(e); }
+        public E ceiling(E e) { return m.ceilingKey(e); }
+        public E higher(E e) { return m.higherKey(e); }
+        public E first() { return m.firstKey(); }
+        public E last() { return m.lastKey(); }
+        public Comparator<? super E> comparator() { return m.comparator(); }
+        public E pollFirst() {
+            Map.Entry<E, ?> e = m.pollFirstEntry();
+            return (e == null) ? null : e.getKey();
+        }
+        public E pollLast() {
+            Map.Entry<E, ?> e = m.pollLastEntry();
+            return (e == null) ? null : e.getKey();
+        }
+        public NavigableSet<E> subSet(E fromElement, boolean fromInclusive,
+                                      E toElement, boolean toInclusive) {
+            return new KeySet<>(m.subMap(fromElement, fromInclusive, toElement, toInclusive));
+        }
+        public NavigableSet<E> headSet(E toElement, boolean inclusive) {
+            return new KeySet<>(m.headMap(toElement, inclusive));
+        }
+        public NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
+            return new KeySet<>(m.tailMap(fromElement, inclusive));
+        }
+        public SortedSet<E> subSet(E fromElement, E toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+        public SortedSet<E> headSet(E toElement) {
+            return headSet(toElement, false);
+        }
+        public SortedSet<E> tailSet(E fromElement) {
+            return tailSet(fromElement, true);
+        }
+        public NavigableSet<E> descendingSet() {
+            return new KeySet<>(m.descendingMap());
+        }
+    }
+
+    /**
+     * setValue写回映射的条目
+     */
+    final class WriteThroughEntry extends AbstractMap.SimpleEntry<K, V> {
+        private static final long serialVersionUID = 2310941580187526574L;
+
+        WriteThroughEntry(K k, V v) {
+            super(k, v);
+        }
+
+        public V setValue(V value) {
+            Objects.requireNonNull(value);
+            V v = super.setValue(value);
+            put(getKey(), value);
+            return v;
+        }
+    }
+
+    /**
+     * 弱一致的迭代器：每次复制一批映射，下一批从这一批最后一个键之后重新定位
+     * case:复制时不检查子映射的边界（不在锁内调用比较器以外的代码），复制后再截掉越界的部分。
+     */
+    abstract class BatchIterator<T> implements Iterator<T> {
+        final Object[] kvs = new Object[BATCH_SIZE << 1];
+        final boolean descending;
+        final SubMap<K, V> range;  // null for the whole map
+        Object from;               // where the next batch starts
+        int rel;
+        int n;                     // length of the current batch in kvs
+        int index;                 // next key position in kvs
+        boolean more;              // whether another batch may follow
+        K nextKey, lastKey;
+        V nextValue;
+
+        BatchIterator(Object from, int rel, boolean descending, SubMap<K, V> range) {
+            this.from = from;
+            this.rel = rel;
+            this.descending = descending;
+            this.range = range;
+            this.more = true;
+            advance();
+        }
+
+        @SuppressWarnings("unchecked")
+        final void advance() {
+            if (index >= n) {
+                if (!more) {
+                    nextKey = null;
+                    return;
+                }
+                n = fill(kvs, from, rel, descending);
+                index = 0;
+                if (n < kvs.length)
+                    more = false;
+                else {
+                    from = kvs[n - 2];
+                    rel = descending ? LT : GT;
+                }
+                if (n == 0) {
+                    nextKey = null;
+                    return;
+                }
+            }
+            K k = (K) kvs[index];
+            if (range != null && (descending ? range.tooLow(k) : range.tooHigh(k))) {
+                n = index = 0;
+                more = false;
+                nextKey = null;
+                return;
+            }
+            nextKey = k;
+            nextValue = (V) kvs[index + 1];
+            index += 2;
+        }
+
+        public final boolean hasNext() {
+            return nextKey != null;
+        }
+
+        // 返回当前的键，值在nextValue中；调用方读出值之后再调用advance()
+        final K nextSlot() {
+            K k;
+            if ((k = nextKey) == null)
+                throw new NoSuchElementException();
+            lastKey = k;
+            return k;
+        }
+
+        public void remove() {
+            K k;
+            if ((k = lastKey) == null)
+                throw new IllegalStateException();
+            lastKey = null;
+            StampedTreeMap.this.remove(k);
+        }
+    }
+
+    final class EntryIterator extends BatchIterator<Map.Entry<K, V>> {
+        EntryIterator(Object from, int rel, boolean descending, SubMap<K, V> range) {
+            super(from, rel, descending, range);
+        }
+
+        public Map.Entry<K, V> next() {
+            K k = nextSlot();
+            V v = nextValue;
+            advance();
+            return new WriteThroughEntry(k, v);
+        }
+    }
+
+    final class ValueIterator extends BatchIterator<V> {
+        ValueIterator(Object from, int rel, boolean descending, SubMap<K, V> range) {
+            super(from, rel, descending, range);
+        }
+
+        public V next() {
+            nextSlot();
+            V v = nextValue;
+            advance();
+            return v;
+        }
+    }
+
+    final class KeyIterator extends BatchIterator<K> {
+        KeyIterator(Object from, int rel, boolean descending, SubMap<K, V> range) {
+            super(from, rel, descending, range);
+        }
+
+        public K next() {
+            K k = nextSlot();
+            advance();
+            return k;
+        }
+    }
+
+    /**
+     * 子映射视图，与BTreeMap.SubMap相同：lo/hi是底层映射中的上下界，与方向无关，
+     * descending为true时所有“第一个”“更小”等语义反过来
+     * case:导航方法先在整个映射中乐观地查找，再在锁外用快照条目的键检查边界。
+     */
+    static final class SubMap<K, V> extends AbstractMap<K, V>
+            implements ConcurrentNavigableMap<K, V>, Serializable {
+        private static final long serialVersionUID = 5904718893245071634L;
+
+        final StampedTreeMap<K, V> m;
+        final K lo, hi;
+        final boolean fromStart, toEnd;
+        final boolean loInclusive, hiInclusive;
+        final boolean descending;
+
+        SubMap(StampedTreeMap<K, V> m,
+               boolean fromStart, K lo, boolean loInclusive,
+               boolean toEnd, K hi, boolean hiInclusive,
+               boolean descending) {
+            if (!fromStart && !toEnd) {
+                if (m.map.compare(lo, hi) > 0)
+                    throw new IllegalArgumentException("fromKey > toKey");
+            } else {
+                if (!fromStart) // type check
+                    m.map.compare(lo, lo);
+                if (!toEnd)
+                    m.map.compare(hi, hi);
+            }
+            this.m = m;
+            this.fromStart = fromStart;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.toEnd = toEnd;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+        }
+
+        final boolean tooLow(Object key) {
+            if (!fromStart) {
+                int c = m.map.compare(key, lo);
+                if (c < 0 || (c == 0 && !loInclusive))
+                    return true;
+            }
+            return false;
+        }
+
+        final boolean tooHigh(Object key) {
+            if (!toEnd) {
+                int c = m.map.compare(key, hi);
+                if (c > 0 || (c == 0 && !hiInclusive))
+                    return true;
+            }
+            return false;
+        }
+
+        final boolean inRange(Object key) {
+            return !tooLow(key) && !tooHigh(key);
+        }
+
+        final boolean inClosedRange(Object key) {
+            return (fromStart || m.map.compare(key, lo) >= 0)
+                    && (toEnd || m.map.compare(hi, key) >= 0);
+        }
+
+        final boolean inRange(Object key, boolean inclusive) {
+            return inclusive ? inRange(key) : inClosedRange(key);
+        }
+
+        final Map.Entry<K, V> absLowest() {
+            Map.Entry<K, V> e = fromStart ? m.getNear(null, GE) : m.getNear(lo, loInclusive ? GE : GT);
+            return (e == null || tooHigh(e.getKey())) ? null : e;
+        }
+
+        final Map.Entry<K, V> absHighest() {
+            Map.Entry<K, V> e = toEnd ? m.getNear(null, LE) : m.getNear(hi, hiInclusive ? LE : LT);
+            return (e == null || tooLow(e.getKey())) ? null : e;
+        }
+
+        final Map.Entry<K, V> absCeiling(K key) {
+            if (tooLow(key))
+                return absLowest();
+            Map.Entry<K, V> e = m.getNear(key, GE);
+            return (e == null || tooHigh(e.getKey())) ? null : e;
+        }
+
+        final Map.Entry<K, V> absHigher(K key) {
+            if (tooLow(key))
+                return absLowest();
+            Map.Entry<K, V> e = m.getNear(key, GT);
+            return (e == null || tooHigh(e.getKey())) ? null : e;
+        }
+
+        final Map.Entry<K, V> absFloor(K key) {
+            if (tooHigh(key))
+                return absHighest();
+            Map.Entry<K, V> e = m.getNear(key, LE);
+            return (e == null || tooLow(e.getKey())) ? null : e;
+        }
+
+        final Map.Entry<K, V> absLower(K key) {
+            if (tooHigh(key))
+                return absHighest();
+            Map.Entry<K, V> e = m.getNear(key, LT);
+            return (e == null || tooLow(e.getKey())) ? null : e;
+        }
+
+        final Map.Entry<K, V> subLowest()        { return descending ? absHighest() : absLowest(); }
+        final Map.Entry<K, V> subHighest()       { return descending ? absLowest() : absHighest(); }
+        final Map.Entry<K, V> subCeiling(K key)  { return descending ? absFloor(key) : absCeiling(key); }
+        final Map.Entry<K, V> subHigher(K key)   { return descending ? absLower(key) : absHigher(key); }
+        final Map.Entry<K, V> subFloor(K key)    { return descending ? absCeiling(key) : absFloor(key); }
+        final Map.Entry<K, V> subLower(K key)    { return descending ? absHigher(key) : absLower(key); }
+
+        // 按方向返回迭代器起点的键与查找方向
+        final Object startKey(boolean desc) {
+            return desc ? (toEnd ? null : hi) : (fromStart ? null : lo);
+        }
+
+        final int startRel(boolean desc) {
+            return desc ? (toEnd || hiInclusive ? LE : LT) : (fromStart || loInclusive ? GE : GT);
+        }
+
+        final Iterator<K> keyIterator(boolean desc) {
+            return m.new KeyIterator(startKey(desc), startRel(desc), desc, this);
+        }
+
+        Iterator<K> keyIterator() {
+            return keyIterator(descending);
+        }
+
+        Iterator<K> descendingKeyIterator() {
+            return keyIterator(!descending);
+        }
+
+        public Comparator<? super K> comparator() {
+            Comparator<? super K> cmp = m.comparator();
+            return descending ? Collections.reverseOrder(cmp) : cmp;
+        }
+
+        public boolean isEmpty() {
+            return (fromStart && toEnd) ? m.isEmpty() : absLowest() == null;
+        }
+
+        // 逐个计数，O(子映射的大小)
+        public int size() {
+            if (fromStart && toEnd)
+                return m.size();
+            int n = 0;
+            for (Iterator<K> it = keyIterator(false); it.hasNext(); it.next())
+                ++n;
+            return n;
+        }
+
+        public boolean containsKey(Object key) {
+            return inRange(Objects.requireNonNull(key)) && m.containsKey(key);
+        }
+
+        public V get(Object key) {
+            return !inRange(Objects.requireNonNull(key)) ? null : m.get(key);
+        }
+
+        public V put(K key, V value) {
+            if (!inRange(Objects.requireNonNull(key)))
+                throw new IllegalArgumentException("key out of range");
+            return m.put(key, value);
+        }
+
+        public V putIfAbsent(K key, V value) {
+            if (!inRange(Objects.requireNonNull(key)))
+                throw new IllegalArgumentException("key out of range");
+            return m.putIfAbsent(key, value);
+        }
+
+        public V remove(Object key) {
+            return !inRange(Objects.requireNonNull(key)) ? null : m.remove(key);
+        }
+
+        public boolean remove(Object key, Object value) {
+            return inRange(Objects.requireNonNull(key)) && m.remove(key, value);
+        }
+
+        public boolean replace(K key, V oldValue, V newValue) {
+            return inRange(Objects.requireNonNull(key)) && m.replace(key, oldValue, newValue);
+        }
+
+        public V replace(K key, V value) {
+            return !inRange(Objects.requireNonNull(key)) ? null : m.replace(key, value);
+        }
+
+        public void clear() {
+            for (Iterator<K> it = keyIterator(false); it.hasNext(); ) {
+                it.next();
+                it.remove();
+            }
+        }
+
+        public Map.Entry<K, V> ceilingEntry(K key) { return subCeiling(Objects.requireNonNull(key)); }
+        public K ceilingKey(K key)                 { return keyOrNull(ceilingEntry(key)); }
+        public Map.Entry<K, V> higherEntry(K key)  { return subHigher(Objects.requireNonNull(key)); }
+        public K higherKey(K key)                  { return keyOrNull(higherEntry(key)); }
+        public Map.Entry<K, V> floorEntry(K key)   { return subFloor(Objects.requireNonNull(key)); }
+        public K floorKey(K key)                   { return keyOrNull(floorEntry(key)); }
+        public Map.Entry<K, V> lowerEntry(K key)   { return subLower(Objects.requireNonNull(key)); }
+        public K lowerKey(K key)                   { return keyOrNull(lowerEntry(key)); }
+        public K firstKey()                        { return key(subLowest()); }
+        public K lastKey()                         { return key(subHighest()); }
+        public Map.Entry<K, V> firstEntry()        { return subLowest(); }
+        public Map.Entry<K, V> lastEntry()         { return subHighest(); }
+
+        // 查找与删除在同一次写锁中完成
+        public Map.Entry<K, V> pollFirstEntry() {
+            return m.pollEdge(this, descending);
+        }
+
+        public Map.Entry<K, V> pollLastEntry() {
+            return m.pollEdge(this, !descending);
+        }
+
+        // Views
+        transient ConcurrentNavigableMap<K, V> descendingMapView = null;
+        transient Set<Map.Entry<K, V>> entrySetView = null;
+        transient KeySet<K> navigableKeySetView = null;
+
+        public NavigableSet<K> navigableKeySet() {
+            KeySet<K> nksv = navigableKeySetView;
+            return (nksv != null) ? nksv : (navigableKeySetView = new KeySet<>(this));
+        }
+
+        public NavigableSet<K> keySet() {
+            return navigableKeySet();
+        }
+
+        public NavigableSet<K> descendingKeySet() {
+            return descendingMap().navigableKeySet();
+        }
+
+        public ConcurrentNavigableMap<K, V> descendingMap() {
+            ConcurrentNavigableMap<K, V> mv = descendingMapView;
+            return (mv != null) ? mv :
+                    (descendingMapView = new SubMap<>(m, fromStart, lo, loInclusive,
+                            toEnd, hi, hiInclusive, !descending));
+        }
+
+        public ConcurrentNavigableMap<K, V> subMap(K fromKey, boolean fromInclusive,
+                                                   K toKey, boolean toInclusive) {
+            if (!inRange(Objects.requireNonNull(fromKey), fromInclusive))
+                throw new IllegalArgumentException("fromKey out of range");
+            if (!inRange(Objects.requireNonNull(toKey), toInclusive))
+                throw new IllegalArgumentException("toKey out of range");
+            return descending ?
+                    new SubMap<>(m, false, toKey, toInclusive, false, fromKey, fromInclusive, true) :
+                    new SubMap<>(m, false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+        }
+
+        public ConcurrentNavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+            if (!inRange(Objects.requireNonNull(toKey), inclusive))
+                throw new IllegalArgumentException("toKey out of range");
+            return descending ?
+                    new SubMap<>(m, false, toKey, inclusive, toEnd, hi, hiInclusive, true) :
+                    new SubMap<>(m, fromStart, lo, loInclusive, false, toKey, inclusive, false);
+        }
+
+        public ConcurrentNavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+            if (!inRange(Objects.requireNonNull(fromKey), inclusive))
+                throw new IllegalArgumentException("fromKey out of range");
+            return descending ?
+                    new SubMap<>(m, fromStart, lo, loInclusive, false, fromKey, inclusive, true) :
+                    new SubMap<>(m, false, fromKey, inclusive, toEnd, hi, hiInclusive, false);
+        }
+
+        public ConcurrentNavigableMap<K, V> subMap(K fromKey, K toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        public ConcurrentNavigableMap<K, V> headMap(K toKey) {
+            return headMap(toKey, false);
+        }
+
+        public ConcurrentNavigableMap<K, V> tailMap(K fromKey) {
+            return tailMap(fromKey, true);
+        }
+
+        public Set<Map.Entry<K, V>> entrySet() {
+            Set<Map.Entry<K, V>> es = entrySetView;
+            return (es != null) ? es : (entrySetView = new AbstractSet<Map.Entry<K, V>>() {
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return m.new EntryIterator(startKey(descending), startRel(descending),
+                            descending, SubMap.this);
+                }
+
+                public int size() {
+                    return SubMap.this.size();
+                }
+
+                public boolean isEmpty() {
+                    return SubMap.this.isEmpty();
+                }
+
+                public void clear() {
+                    SubMap.this.clear();
+                }
+
+                public boolean contains(Object o) {
+                    if (!(o instanceof Map.Entry))
+                        return false;
+                    Object key = ((Map.Entry<?, ?>) o).getKey();
+                    return key != null && inRange(key) && m.entrySet().contains(o);
+                }
+
+                public boolean remove(Object o) {
+                    if (!(o instanceof Map.Entry))
+                        return false;
+                    Object key = ((Map.Entry<?, ?>) o).getKey();
+                    return key != null && inRange(key) && m.entrySet().remove(o);
+                }
+            });
+        }
+    }
+
+    /* ---------------- Serialization -------------- */
+
+    /**
+     * 写入比较器，随后按顺序写入每个映射的键和值，以null结束
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+            throws IOException {
+        s.defaultWriteObject();
+        for (Iterator<Map.Entry<K, V>> it = entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<K, V> e = it.next();
+            s.writeObject(e.getKey());
+            s.writeObject(e.getValue());
+        }
+        s.writeObject(null);
+    }
+
+    /**
+     * 按写入的顺序读出后线性构建红黑树
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(java.io.ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        ArrayList<Object> ks = new ArrayList<>(), vs = new ArrayList<>();
+        for (Object k; (k = s.readObject()) != null; ) {
+            Object v = s.readObject();
+            if (v == null)
+                throw new java.io.InvalidObjectException("null value");
+            ks.add(k);
+            vs.add(v);
+        }
+        try {
+            map = TreeMap.fromSorted((K[]) ks.toArray(), (V[]) vs.toArray(), comparator);
+        } catch (IllegalArgumentException ex) {
+            throw new java.io.InvalidObjectException(ex.getMessage());
+        }
+        lock = new StampedLock();
+    }
+}
@@ -0,0 +1,549 @@
+package java.util;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 分段加锁的并发哈希表
+ * case:
+ * 1、映射按键的哈希分散到2的幂个分段（Stripe）中，每个分段是一个普通的HashMap，
+ * 链表、树化、扩容等桶逻辑全部沿用HashMap；分段本身就是保护它的StampedLock；
+ * 2、写操作只持有所在分段的写锁，不同分段上的写互不阻塞；
+ * 3、get/containsKey先用tryOptimisticRead乐观地直接读分段的table，validate成功即返回，
+ * 读操作不写任何共享内存；乐观读失败、遇到树形桶或链表过长时才退回读锁。
+ * <p>
+ * 注意：
+ * 1、与ConcurrentHashMap相同，不允许null键和null值；
+ * 2、compute/merge等方法在持有分段写锁时调用函数，函数中不得再访问本映射，
+ * StampedLock不可重入，访问同一分段会死锁；
+ * 3、视图与迭代器是弱一致的：逐个分段在读锁下复制其映射，不会抛出ConcurrentModificationException；
+ * 4、size()逐个分段累加，并发修改时只是一个估计值。
+ */
+public class StripedHashMap<K, V> extends AbstractMap<K, V>
+        implements ConcurrentMap<K, V>, Serializable {
+
+    private static final long serialVersionUID = 3390846157215418395L;
+
+    /**
+     * 默认分段个数
+     */
+    static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /**
+     * 最大分段个数，分段下标取自扰动后哈希的高16位
+     */
+    static final int MAX_STRIPES = 1 << 16;
+
+    /**
+     * 乐观读时最多沿链表前进的节点个数，超过时认为读到了不一致的状态，改用读锁
+     */
+    static final int MAX_OPTIMISTIC_STEPS = HashMap.TREEIFY_THRESHOLD * 8;
+
+    /**
+     * 乐观读需要退回读锁时probe的返回值
+     */
+    static final Object RETRY = new Object();
+
+    /**
+     * 分段：StampedLock加上它保护的HashMap
+     */
+    static final class Stripe<K, V> extends StampedLock {
+        private static final long serialVersionUID = -1447385416262286245L;
+
+        final HashMap<K, V> map;
+
+        Stripe(int initialCapacity, float loadFactor) {
+            map = new HashMap<>(initialCapacity, loadFactor);
+        }
+
+        /**
+         * 不加锁地查找key，调用方随后必须validate
+         * case:读到的可能是写线程修改到一半的表，因此只走普通链表并限制步数，
+         * 树形桶的旋转不适合乐观读，直接返回RETRY。
+         *
+         * @return key对应的值，不存在时为null，需要加锁重读时为RETRY
+         */
+        Object probe(int hash, Object key) {
+            try {
+                HashMap.Node<K, V>[] tab;
+                int n;
+                if ((tab = map.table) == null || (n = tab.length) == 0)
+                    return null;
+                HashMap.Node<K, V> e = tab[(n - 1) & hash];
+                for (int steps = 0; e != null; e = e.next) {
+                    if (e instanceof HashMap.TreeNode || ++steps > MAX_OPTIMISTIC_STEPS)
+                        return RETRY;
+                    K k;
+                    if (e.hash == hash && ((k = e.key) == key || key.equals(k)))
+                        return e.value;
+                }
+                return null;
+            } catch (RuntimeException ex) {
+                //不一致的状态下键的equals也可能失败，加锁后重新执行
+                return RETRY;
+            }
+        }
+    }
+
+    /**
+     * 分段数组，长度为2的幂，构造后不再改变
+     */
+    transient Stripe<K, V>[] stripes;
+
+    /**
+     * 各分段HashMap的负载因子
+     */
+    final float loadFactor;
+
+    transient Set<Map.Entry<K, V>> entrySet;
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * @param initialCapacity  所有分段初始容量之和
+     * @param loadFactor       各分段HashMap的负载因子
+     * @param concurrencyLevel 预计同时写的线程数，分段个数为不小于它的2的幂
+     */
+    public StripedHashMap(int initialCapacity, float loadFactor, int concurrencyLevel) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    initialCapacity);
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                    loadFactor);
+        if (concurrencyLevel <= 0)
+            throw new IllegalArgumentException("Illegal concurrency level: " +
+                    concurrencyLevel);
+        this.loadFactor = loadFactor;
+        initStripes(Math.min(HashMap.tableSizeFor(concurrencyLevel), MAX_STRIPES), initialCapacity);
+    }
+
+    public StripedHashMap(int initialCapacity) {
+        this(initialCapacity, HashMap.DEFAULT_LOAD_FACTOR, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    public StripedHashMap() {
+        this(0);
+    }
+
+    public StripedHashMap(Map<? extends K, ? extends V> m) {
+        this(m.size());
+        putAll(m);
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    final void initStripes(int n, int initialCapacity) {
+        Stripe<K, V>[] ss = (Stripe<K, V>[]) new Stripe[n];
+        int cap = (initialCapacity + n - 1) / n;
+        for (int i = 0; i < n; ++i)
+            ss[i] = new Stripe<>(cap, loadFactor);
+        stripes = ss;
+    }
+
+    /**
+     * 分段下标使用乘法散列后的高位，与分段内部HashMap使用的低位相互独立
+     */
+    final Stripe<K, V> stripeFor(int hash) {
+        Stripe<K, V>[] ss = stripes;
+        return ss[((hash * 0x9E3779B9) >>> 16) & (ss.length - 1)];
+    }
+
+    public int size() {
+        long n = 0L;
+        for (Stripe<K, V> s : stripes) {
+            long stamp = s.tryOptimisticRead();
+            int c = s.map.size;
+            if (!s.validate(stamp)) {
+                stamp = s.readLock();
+                try {
+                    c = s.map.size;
+                } finally {
+                    s.unlockRead(stamp);
+                }
+            }
+            n += c;
+        }
+        return (n > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) n;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int hash = HashMap.hash(Objects.requireNonNull(key));
+        Stripe<K, V> s = stripeFor(hash);
+        long stamp = s.tryOptimisticRead();
+        if (stamp != 0L) {
+            Object r = s.probe(hash, key);
+            if (r != RETRY && s.validate(stamp))
+                return (V) r;
+        }
+        stamp = s.readLock();
+        try {
+            return s.map.get(key);
+        } finally {
+            s.unlockRead(stamp);
+        }
+    }
+
+    public V getOrDefault(Object key, V defaultValue) {
+        V v;
+        return ((v = get(key)) == null) ? defaultValue : v;
+    }
+
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    public boolean containsValue(Object value) {
+        Objects.requireNonNull(value);
+        for (Stripe<K, V> s : stripes) {
+            long stamp = s.readLock();
+            try {
+                if (s.map.containsValue(value))
+                    return true;
+            } finally {
+                s.unlockRead(stamp);
+            }
+        }
+        return false;
+    }
+
+    public V put(K key, V value) {
+        Objects.requireNonNull(value);
+        Stripe<K, V> s = stripeFor(HashMap.hash(Objects.requireNonNull(key)));
+        long stamp = s.writeLock();
+        try {
+            return s.map.put(key, value);
+        } finally {
+            s.unlockWrite(stamp);
+        }
+    }
+
+    public V putIfAbsent(K key, V value) {
+        Objects.requireNonNull(value);
+        Stripe<K, V> s = stripeFor(HashMap.hash(Objects.requireNonNull(key)));
+        long stamp = s.writeLock();
+        try {
+            return s.map.putIfAbsent(key, value);
+        } finally {
+            s.unlockWrite(stamp);
+        }
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
+            put(e.getKey(), e.getValue());
+    }
+
+    public V remove(Object key) {
+        Stripe<K, V> s = stripeFor(HashMap.hash(Objects.requireNonNull(key)));
+        long stamp = s.writeLock();
+        try {
+            return s.map.remove(key);
+        } finally {
+            s.unlockWrite(stamp);
+        }
+    }
+
+    public boolean remove(Object key, Object value) {
+        Stripe<K, V> s = stripeFor(HashMap.hash(Objects.requireNonNull(key)));
+        if (value == null)
+            return false;
+        long stamp = s.writeLock();
+        try {
+            return s.map.remove(key, value);
+        } finally {
+            s.unlockWrite(stamp);
+        }
+    }
+
+    public boolean replace(K key, V oldValue, V newValue) {
+        Objects.requireNonNull(oldValue);
+        Objects.requireNonNull(newValue);
+        Stripe<K, V> s = stripeFor(HashMap.hash(Objects.requireNonNull(key)));
+        long stamp = s.writeLock();
+        try {
+            return s.map.replace(key, oldValue, newValue);
+        } finally {
+            s.unlockWrite(stamp);
+        }
+    }
+
+    public V replace(K key, V value) {
+        Objects.requireNonNull(value);
+        Stripe<K, V> s = stripeFor(HashMap.hash(Objects.requireNonNull(key)));
+        long stamp = s.writeLock();
+        try {
+            return s.map.replace(key, value);
+        } finally {
+            s.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 已有映射时只经过乐观读，不获取写锁
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        Objects.requireNonNull(mappingFunction);
+        V v;
+        if ((v = get(key)) != null)
+            return v;
+        Stripe<K, V> s = stripeFor(HashMap.hash(key));
+        long stamp = s.writeLock();
+        try {
+            return s.map.computeIfAbsent(key, mappingFunction);
+        } finally {
+            s.unlockWrite(stamp);
+        }
+    }
+
+    public V computeIfPresent(K key,
+                              BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(remappingFunction);
+        Stripe<K, V> s = stripeFor(HashMap.hash(Objects.requireNonNull(key)));
+        long stamp = s.writeLock();
+        try {
+            return s.map.computeIfPresent(key, remappingFunction);
+        } finally {
+            s.unlockWrite(stamp);
+        }
+    }
+
+    public V compute(K key,
+                     BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(remappingFunction);
+        Stripe<K, V> s = stripeFor(HashMap.hash(Objects.requireNonNull(key)));
+        long stamp = s.writeLock();
+        try {
+            return s.map.compute(key, remappingFunction);
+        } finally {
+            s.unlockWrite(stamp);
+        }
+    }
+
+    public V merge(K key, V value,
+                   BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(value);
+        Objects.requireNonNull(remappingFunction);
+        Stripe<K, V> s = stripeFor(HashMap.hash(Objects.requireNonNull(key)));
+        long stamp = s.writeLock();
+        try {
+            return s.map.merge(key, value, remappingFunction);
+        } finally {
+            s.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 逐个分段在写锁下替换，function中不得访问本映射
+     */
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        Objects.requireNonNull(function);
+        for (Stripe<K, V> s : stripes) {
+            long stamp = s.writeLock();
+            try {
+                s.map.replaceAll((k, v) -> Objects.requireNonNull(function.apply(k, v)));
+            } finally {
+                s.unlockWrite(stamp);
+            }
+        }
+    }
+
+    public void clear() {
+        for (Stripe<K, V> s : stripes) {
+            long stamp = s.writeLock();
+            try {
+                s.map.clear();
+            } finally {
+                s.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * 弱一致：逐个分段复制后在锁外调用action，action可以修改本映射
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        for (Stripe<K, V> s : stripes) {
+            Object[] kvs = snapshot(s);
+            for (int i = 0; i < kvs.length; i += 2) {
+                @SuppressWarnings("unchecked") K k = (K) kvs[i];
+                @SuppressWarnings("unchecked") V v = (V) kvs[i + 1];
+                action.accept(k, v);
+            }
+        }
+    }
+
+    /**
+     * 在读锁下把分段中的映射复制为键值交错的数组
+     */
+    static Object[] snapshot(Stripe<?, ?> s) {
+        long stamp = s.readLock();
+        try {
+            HashMap.Node<?, ?>[] tab;
+            Object[] kvs = new Object[s.map.size << 1];
+            if (kvs.length > 0 && (tab = s.map.table) != null) {
+                int i = 0;
+                for (HashMap.Node<?, ?> e : tab) {
+                    for (; e != null; e = e.next) {
+                        kvs[i++] = e.key;
+                        kvs[i++] = e.value;
+                    }
+                }
+            }
+            return kvs;
+        } finally {
+            s.unlockRead(stamp);
+        }
+    }
+
+    /* ---------------- Views -------------- */
+
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        public int size() {
+            return StripedHashMap.this.size();
+        }
+
+        public void clear() {
+            StripedHashMap.this.clear();
+        }
+
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object k, v, r;
+            return (k = e.getKey()) != null && (v = e.getValue()) != null &&
+                    (r = get(k)) != null && v.equals(r);
+        }
+
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object k;
+            return (k = e.getKey()) != null && StripedHashMap.this.remove(k, e.getValue());
+        }
+    }
+
+    /**
+     * setValue写回映射的条目
+     */
+    final class WriteThroughEntry extends AbstractMap.SimpleEntry<K, V> {
+        private static final long serialVersionUID = 6284470618624127046L;
+
+        WriteThroughEntry(K k, V v) {
+            super(k, v);
+        }
+
+        public V setValue(V value) {
+            Objects.requireNonNull(value);
+            V v = super.setValue(value);
+            put(getKey(), value);
+            return v;
+        }
+    }
+
+    /**
+     * 弱一致的迭代器：每进入一个分段就复制它当前的映射
+     */
+    final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        int stripe;        // next stripe to copy
+        Object[] kvs;      // copy of the current stripe
+        int index;         // next key position in kvs
+        K lastKey;
+
+        EntryIterator() {
+            advance();
+        }
+
+        final void advance() {
+            Stripe<K, V>[] ss = stripes;
+            while ((kvs == null || index >= kvs.length) && stripe < ss.length) {
+                kvs = snapshot(ss[stripe++]);
+                index = 0;
+            }
+        }
+
+        public boolean hasNext() {
+            return kvs != null && index < kvs.length;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            K k = (K) kvs[index];
+            V v = (V) kvs[index + 1];
+            index += 2;
+            advance();
+            lastKey = k;
+            return new WriteThroughEntry(k, v);
+        }
+
+        public void remove() {
+            K k;
+            if ((k = lastKey) == null)
+                throw new IllegalStateException();
+            lastKey = null;
+            StripedHashMap.this.remove(k);
+        }
+    }
+
+    /* ---------------- Serialization -------------- */
+
+    /**
+     * 序列化为分段个数(int)，随后是每个映射的键和值，以null结束
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+            throws IOException {
+        s.defaultWriteObject();
+        s.writeInt(stripes.length);
+        for (Stripe<K, V> st : stripes) {
+            Object[] kvs = snapshot(st);
+            for (Object o : kvs)
+                s.writeObject(o);
+        }
+        s.writeObject(null);
+        s.writeObject(null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(java.io.ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new InvalidObjectException("Illegal load factor: " +
+                    loadFactor);
+        int n = s.readInt();
+        if (n <= 0 || n > MAX_STRIPES || (n & (n - 1)) != 0)
+            throw new InvalidObjectException("Illegal stripe count: " + n);
+        initStripes(n, 0);
+        for (; ; ) {
+            K k = (K) s.readObject();
+            V v = (V) s.readObject();
+            if (k == null || v == null)
+                break;
+            put(k, v);
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package java.util;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
+
 public class TreeMap<K,V>
         extends AbstractMap<K,V>
         implements NavigableMap<K,V>, Cloneable, java.io.Serializable
@@ -12,8 +16,9 @@ public class TreeMap<K,V>
     // 比较器。用来给TreeMap排序
     private final Comparator<? super K> comparator;
 
-    // TreeMap是红黑树实现的，root是红黑书的根节点
-    private transient Entry<K,V> root = null;
+    // TreeMap是红黑树实现的，root是红黑书的根节点。
+    // 包内可见：StampedTreeMap在乐观读时直接从根节点查找
+    transient Entry<K,V> root = null;
 
     // 红黑树的节点总数
     private transient int size = 0;
@@ -21,6 +26,11 @@ public class TreeMap<K,V>
     // 记录红黑树的修改次数
     private transient int modCount = 0;
 
+    // 是否在每个节点上维护子树的节点个数(Entry.count)。
+    // 开启后rank()、select()以及subMap/headMap/tailMap的size()都是O(log n)，
+    // 代价是put/remove时沿父节点链更新计数、旋转时更新两个节点的计数
+    private boolean orderStatistics;
+
     // 默认构造函数
     public TreeMap() {
         comparator = null;
@@ -31,6 +41,12 @@ public class TreeMap<K,V>
         this.comparator = comparator;
     }
 
+    // 带比较器的构造函数，orderStatistics为true时维护子树节点个数
+    public TreeMap(Comparator<? super K> comparator, boolean orderStatistics) {
+        this.comparator = comparator;
+        this.orderStatistics = orderStatistics;
+    }
+
     // 带Map的构造函数，Map会成为TreeMap的子集
     public TreeMap(Map<? extends K, ? extends V> m) {
         comparator = null;
@@ -40,11 +56,45 @@ public class TreeMap<K,V>
     // 带SortedMap的构造函数，SortedMap会成为TreeMap的子集
     public TreeMap(SortedMap<K, ? extends V> m) {
         comparator = m.comparator();
-        try {
-            buildFromSorted(m.size(), m.entrySet().iterator(), null, null);
-        } catch (java.io.IOException cannotHappen) {
-        } catch (ClassNotFoundException cannotHappen) {
-        }
+        buildFromSortedMap(m);
+    }
+
+    // 由升序且不重复的keys与values构建TreeMap，O(n)，不经过put()和fixAfterInsertion的旋转；
+    // 映射个数不小于PARALLEL_BUILD_THRESHOLD时并行构建左右子树。
+    // keys不是严格升序时抛出IllegalArgumentException
+    public static <K,V> TreeMap<K,V> fromSorted(K[] keys, V[] values,
+                                                Comparator<? super K> comparator) {
+        int n = keys.length;
+        if (values.length != n)
+            throw new IllegalArgumentException("keys.length != values.length");
+        TreeMap<K,V> map = new TreeMap<>(comparator);
+        Object[] ks = Arrays.copyOf(keys, n, Object[].class);
+        map.checkAscending(ks, n);
+        map.buildFromSorted(ks, Arrays.copyOf(values, n, Object[].class), n);
+        return map;
+    }
+
+    // 由SortedMap构建TreeMap，沿用它的比较器
+    public static <K,V> TreeMap<K,V> fromSorted(SortedMap<K, ? extends V> m) {
+        return new TreeMap<>(m);
+    }
+
+    // 由按comparator升序且键不重复的流构建TreeMap，流的元素先按遇到的顺序收集到数组中。
+    // 键不是严格升序时抛出IllegalArgumentException
+    public static <K,V> TreeMap<K,V> fromSorted(Stream<? extends Map.Entry<? extends K, ? extends V>> entries,
+                                                Comparator<? super K> comparator) {
+        Object[] es = entries.toArray();
+        int n = es.length;
+        Object[] ks = new Object[n], vs = new Object[n];
+        for (int i = 0; i < n; i++) {
+            Map.Entry<?,?> e = (Map.Entry<?,?>) es[i];
+            ks[i] = e.getKey();
+            vs[i] = e.getValue();
+        }
+        TreeMap<K,V> map = new TreeMap<>(comparator);
+        map.checkAscending(ks, n);
+        map.buildFromSorted(ks, vs, n);
+        return map;
     }
 
     public int size() {
@@ -89,6 +139,7 @@ public class TreeMap<K,V>
     }
 
     // 将map中的全部节点添加到TreeMap中
+    @SuppressWarnings("unchecked")
     public void putAll(Map<? extends K, ? extends V> map) {
         // 获取map的大小
         int mapSize = map.size();
@@ -99,15 +150,16 @@ public class TreeMap<K,V>
             // 则将map的元素全部拷贝到TreeMap中，然后返回！
             if (c == comparator || (c != null && c.equals(comparator))) {
                 ++modCount;
-                try {
-                    buildFromSorted(mapSize, map.entrySet().iterator(),
-                            null, null);
-                } catch (java.io.IOException cannotHappen) {
-                } catch (ClassNotFoundException cannotHappen) {
-                }
+                buildFromSortedMap((SortedMap<K, ? extends V>) map);
                 return;
             }
         }
+        // TreeMap为空时先排序再线性构建，避免逐个put()的旋转；
+        // 子类可能覆盖了put()，因此只对TreeMap本身这样做
+        if (size==0 && mapSize > 1 && getClass() == TreeMap.class) {
+            buildFromUnsorted(map);
+            return;
+        }
         // 调用AbstractMap中的putAll();
         // AbstractMap中的putAll()又会调用到TreeMap的put()
         super.putAll(map);
@@ -346,6 +398,10 @@ public class TreeMap<K,V>
             parent.left = e;
         else
             parent.right = e;
+        // 新节点的所有祖先的子树都多了一个节点
+        if (orderStatistics)
+            for (Entry<K,V> q = parent; q != null; q = q.parent)
+                q.count++;
         // 红黑树插入节点后，不再是一颗红黑树；
         // 这里通过fixAfterInsertion的处理，来恢复红黑树的特性。
         fixAfterInsertion(e);
@@ -474,6 +530,71 @@ public class TreeMap<K,V>
         return keyOrNull(getHigherEntry(key));
     }
 
+    // 返回小于key的映射个数，key不必存在；未开启orderStatistics时从第一个节点开始数
+    public int rank(K key) {
+        return countBelow(key, false);
+    }
+
+    // 返回第k小（从0开始）的键
+    public K select(int k) {
+        return getEntryByRank(k).key;
+    }
+
+    // 返回第k小（从0开始）的映射
+    public Map.Entry<K,V> selectEntry(int k) {
+        return exportEntry(getEntryByRank(k));
+    }
+
+    // 小于key（inclusive时为小于等于）的映射个数。
+    // 开启orderStatistics时沿查找路径累加左子树的节点个数，O(log n)；否则顺序遍历
+    final int countBelow(Object key, boolean inclusive) {
+        int n = 0;
+        if (!orderStatistics) {
+            for (Entry<K,V> e = getFirstEntry(); e != null; e = successor(e)) {
+                int c = compare(e.key, key);
+                if (c > 0 || (c == 0 && !inclusive))
+                    break;
+                n++;
+            }
+            return n;
+        }
+        Entry<K,V> p = root;
+        while (p != null) {
+            int c = compare(key, p.key);
+            if (c < 0 || (c == 0 && !inclusive))
+                p = p.left;
+            else {
+                n += countOf(p.left) + 1;
+                p = p.right;
+            }
+        }
+        return n;
+    }
+
+    // 返回第k小（从0开始）的节点
+    final Entry<K,V> getEntryByRank(int k) {
+        if (k < 0 || k >= size)
+            throw new IndexOutOfBoundsException("Index: " + k + ", Size: " + size);
+        Entry<K,V> p;
+        if (!orderStatistics) {
+            for (p = getFirstEntry(); k > 0; k--)
+                p = successor(p);
+            return p;
+        }
+        p = root;
+        for (;;) {
+            int l = countOf(p.left);
+            if (k < l)
+                p = p.left;
+            else if (k == l)
+                return p;
+            else {
+                k -= l + 1;
+                p = p.right;
+            }
+        }
+    }
+
     // TreeMap的红黑树节点对应的集合
     private transient EntrySet entrySet = null;
     // KeySet为KeySet导航类
@@ -1031,9 +1152,14 @@ public class TreeMap<K,V>
             return (fromStart && toEnd) ? m.isEmpty() : entrySet().isEmpty();
         }
 
-        // 返回SubMap的大小
+        // 返回SubMap的大小，开启orderStatistics时由两端的rank相减得到
         public int size() {
-            return (fromStart && toEnd) ? m.size() : entrySet().size();
+            if (fromStart && toEnd)
+                return m.size();
+            if (m.orderStatistics)
+                return (toEnd ? m.size : m.countBelow(hi, hiInclusive)) -
+                        (fromStart ? 0 : m.countBelow(lo, !loInclusive));
+            return entrySet().size();
         }
 
         // 返回SubMap是否包含键key
@@ -1182,6 +1308,8 @@ public class TreeMap<K,V>
                 // 若SubMap是从“开始节点”到“结尾节点”，则SubMap大小就是原TreeMap的大小
                 if (fromStart && toEnd)
                     return m.size();
+                if (m.orderStatistics)
+                    return NavigableSubMap.this.size();
                 // 若SubMap不是从“开始节点”到“结尾节点”，则调用iterator()遍历EntrySetView中的元素
                 if (size == -1 || sizeModCount != m.modCount) {
                     sizeModCount = m.modCount;
@@ -1621,6 +1749,8 @@ public class TreeMap<K,V>
         Entry<K,V> parent;
         // 当前节点颜色
         boolean color = BLACK;
+        // 以该节点为根的子树中的节点个数，只在开启orderStatistics时维护
+        int count = 1;
 
         // 构造函数
         Entry(K key, V value, Entry<K,V> parent) {
@@ -1727,6 +1857,11 @@ public class TreeMap<K,V>
         }
     }
 
+    // 返回“以节点p为根的子树的节点个数”，空节点为0
+    private static <K,V> int countOf(Entry<K,V> p) {
+        return (p == null ? 0 : p.count);
+    }
+
     // 返回“节点p的颜色”
     // 根据“红黑树的特性”可知：空节点颜色是黑色。
     private static <K,V> boolean colorOf(Entry<K,V> p) {
@@ -1770,6 +1905,11 @@ public class TreeMap<K,V>
                 p.parent.right = r;
             r.left = p;
             p.parent = r;
+            // r接替p的位置，子树节点个数不变；p的子树重新计算
+            if (orderStatistics) {
+                r.count = p.count;
+                p.count = countOf(p.left) + countOf(p.right) + 1;
+            }
         }
     }
 
@@ -1787,6 +1927,10 @@ public class TreeMap<K,V>
             else p.parent.left = l;
             l.right = p;
             p.parent = l;
+            if (orderStatistics) {
+                l.count = p.count;
+                p.count = countOf(p.left) + countOf(p.right) + 1;
+            }
         }
     }
 
@@ -1847,6 +1991,11 @@ public class TreeMap<K,V>
             p = s;
         } // p has 2 children
 
+        // 实际摘除的是p，它的所有祖先的子树都少了一个节点
+        if (orderStatistics)
+            for (Entry<K,V> q = p.parent; q != null; q = q.parent)
+                q.count--;
+
         // Start fixup at replacement node, if it exists.
         Entry<K,V> replacement = (p.left != null ? p.left : p.right);
 
@@ -1869,6 +2018,8 @@ public class TreeMap<K,V>
         } else if (p.parent == null) { // return if we are the only node.
             root = null;
         } else { //  No children. Use self as phantom replacement and unlink.
+            // 作为占位节点参与旋转时不能再计入祖先的节点个数
+            p.count = 0;
             if (p.color == BLACK)
                 fixAfterDeletion(p);
 
@@ -2051,9 +2202,148 @@ public class TreeMap<K,V>
             middle.right = right;
             right.parent = middle;
         }
+        // 子树恰好包含[lo, hi]中的元素
+        middle.count = hi - lo + 1;
+        return middle;
+    }
+
+    // 映射个数不小于该值且公共池有并行度时，并行构建
+    static final int PARALLEL_BUILD_THRESHOLD = 1 << 16;
+
+    // 由SortedMap构建：映射较多时先拷贝到数组再（并行）构建，否则沿用迭代器的顺序构建
+    private void buildFromSortedMap(SortedMap<K, ? extends V> m) {
+        int n = m.size();
+        if (n >= PARALLEL_BUILD_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            Object[] ks = new Object[n], vs = new Object[n];
+            int i = 0;
+            for (Map.Entry<K, ? extends V> e : m.entrySet()) {
+                ks[i] = e.getKey();
+                vs[i++] = e.getValue();
+            }
+            buildFromSorted(ks, vs, i);
+            return;
+        }
+        try {
+            buildFromSorted(n, m.entrySet().iterator(), null, null);
+        } catch (java.io.IOException cannotHappen) {
+        } catch (ClassNotFoundException cannotHappen) {
+        }
+    }
+
+    // 空TreeMap的putAll：按键稳定排序后线性构建，O(n log n)。
+    // 比较相等的键与逐个put()的结果相同：保留先出现的键、最后出现的值
+    private void buildFromUnsorted(Map<? extends K, ? extends V> map) {
+        Object[] es = map.entrySet().toArray();
+        Arrays.sort(es, (a, b) -> compare(((Map.Entry<?,?>) a).getKey(),
+                ((Map.Entry<?,?>) b).getKey()));
+        int n = es.length, k = 0;
+        Object[] ks = new Object[n], vs = new Object[n];
+        for (int i = 0; i < n; i++) {
+            Map.Entry<?,?> e = (Map.Entry<?,?>) es[i];
+            Object key = e.getKey();
+            if (k > 0 && compare(ks[k - 1], key) == 0)
+                vs[k - 1] = e.getValue();
+            else {
+                ks[k] = key;
+                vs[k++] = e.getValue();
+            }
+        }
+        buildFromSorted(ks, vs, k);
+    }
+
+    // 检查ks[0, n)按比较器严格升序
+    private void checkAscending(Object[] ks, int n) {
+        if (n == 1)
+            compare(ks[0], ks[0]); // type (and possibly null) check
+        for (int i = 1; i < n; i++) {
+            if (compare(ks[i - 1], ks[i]) >= 0)
+                throw new IllegalArgumentException("keys not in ascending order at index " + i);
+        }
+    }
+
+    // 由有序数组构建整棵树，映射较多时交给ForkJoinPool.commonPool()并行构建
+    private void buildFromSorted(Object[] ks, Object[] vs, int n) {
+        modCount++;
+        size = n;
+        if (n == 0) {
+            root = null;
+            return;
+        }
+        BuildTask<K,V> task = new BuildTask<>(ks, vs, 0, 0, n - 1,
+                computeRedLevel(n), buildBatchSize(n));
+        root = (task.batch >= n) ? task.compute() : ForkJoinPool.commonPool().invoke(task);
+    }
+
+    // 每个叶子任务顺序构建的映射个数：映射较少或公共池没有并行度时返回n（即顺序执行）
+    private static int buildBatchSize(int n) {
+        int p = ForkJoinPool.getCommonPoolParallelism();
+        if (n < PARALLEL_BUILD_THRESHOLD || p <= 1)
+            return n;
+        return Math.max(PARALLEL_BUILD_THRESHOLD >>> 4, n / (p << 3));
+    }
+
+    // 由ks[lo, hi]、vs[lo, hi]构建子树，与迭代器版本的buildFromSorted取相同的中间元素与红色层，
+    // 因此顺序与并行构建出的树完全相同
+    @SuppressWarnings("unchecked")
+    static <K,V> Entry<K,V> buildFromSorted(int level, int lo, int hi, int redLevel,
+                                            Object[] ks, Object[] vs) {
+        if (hi < lo) return null;
+        int mid = (lo + hi) >>> 1;
+        Entry<K,V> left = (lo < mid) ? buildFromSorted(level + 1, lo, mid - 1, redLevel, ks, vs) : null;
+        Entry<K,V> right = (mid < hi) ? buildFromSorted(level + 1, mid + 1, hi, redLevel, ks, vs) : null;
+        return link((K) ks[mid], (V) vs[mid], level, redLevel, left, right);
+    }
+
+    // 创建中间节点并连接左右子树
+    static <K,V> Entry<K,V> link(K key, V value, int level, int redLevel,
+                                 Entry<K,V> left, Entry<K,V> right) {
+        Entry<K,V> middle = new Entry<K,V>(key, value, null);
+        if (level == redLevel)
+            middle.color = RED;
+        if (left != null) {
+            middle.left = left;
+            left.parent = middle;
+        }
+        if (right != null) {
+            middle.right = right;
+            right.parent = middle;
+        }
+        middle.count = countOf(left) + countOf(right) + 1;
         return middle;
     }
 
+    // 并行构建：区间大于batch时右子树交给其它线程，当前线程构建左子树
+    static final class BuildTask<K,V> extends RecursiveTask<Entry<K,V>> {
+        private static final long serialVersionUID = 6107423562364386475L;
+        final Object[] ks, vs;
+        final int level, lo, hi, redLevel, batch;
+
+        BuildTask(Object[] ks, Object[] vs, int level, int lo, int hi, int redLevel, int batch) {
+            this.ks = ks;
+            this.vs = vs;
+            this.level = level;
+            this.lo = lo;
+            this.hi = hi;
+            this.redLevel = redLevel;
+            this.batch = batch;
+        }
+
+        @SuppressWarnings("unchecked")
+        protected Entry<K,V> compute() {
+            if (hi - lo < batch)
+                return buildFromSorted(level, lo, hi, redLevel, ks, vs);
+            int mid = (lo + hi) >>> 1;
+            BuildTask<K,V> right = (mid < hi) ?
+                    new BuildTask<>(ks, vs, level + 1, mid + 1, hi, redLevel, batch) : null;
+            if (right != null)
+                right.fork();
+            Entry<K,V> left = (lo < mid) ?
+                    new BuildTask<K,V>(ks, vs, level + 1, lo, mid - 1, redLevel, batch).compute() : null;
+            return link((K) ks[mid], (V) vs[mid], level, redLevel, left,
+                    (right != null) ? right.join() : null);
+        }
+    }
+
     // 计算节点树为sz的最大深度，也是红色节点的深度值。
     private static int computeRedLevel(int sz) {
         int level = 0;